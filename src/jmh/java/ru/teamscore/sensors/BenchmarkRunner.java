@@ -0,0 +1,32 @@
+package ru.teamscore.sensors;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Запуск бенчмарков JMH с профилировщиком GC: кроме пропускной способности
+ * выводится скорость выделения памяти (gc.alloc.rate.norm — байт на операцию).
+ * <p>
+ * Принимает обычные параметры командной строки JMH, например:
+ * java -jar target/benchmarks.jar MessageParserBenchmark -rf json -rff baseline.json
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,239 @@
+package ru.teamscore.sensors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.Configuration;
+import ru.teamscore.sensors.aggregator.AggregatorService;
+import ru.teamscore.sensors.aggregator.QuantileSketch;
+import ru.teamscore.sensors.aggregator.TimeInterval;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.config.SchemaManager;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.SensorPresence;
+import ru.teamscore.sensors.common.entity.metric.AccelerometerMetric;
+import ru.teamscore.sensors.common.entity.metric.BarometerMetric;
+import ru.teamscore.sensors.common.entity.metric.LightMetric;
+import ru.teamscore.sensors.common.entity.metric.LocationMetric;
+import ru.teamscore.sensors.consumer.ConsumerService;
+import ru.teamscore.sensors.consumer.MessageParser;
+import ru.teamscore.sensors.producer.ProducerService;
+import ru.teamscore.sensors.producer.SensorDataGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сквозной замер конвейера на встроенной H2 в памяти.
+ * <p>
+ * Производители записывают заданное количество сообщений, одновременно потребитель обрабатывает их пакетами;
+ * затем выполняются типовые запросы агрегатора. Отчёт в JSON содержит скорость записи, пропускную способность
+ * потребителя, задержку от saved_at сообщения до фиксации его метрики и время запросов.
+ * <p>
+ * Запуск после сборки профиля benchmarks:
+ * java -cp target/benchmarks.jar ru.teamscore.sensors.PipelineBenchmark [--messages=N] [--producers=N]
+ * [--batch=N] [--query-runs=N] [--report=файл]
+ */
+public class PipelineBenchmark {
+    private static final int IDLE_BATCHES_AFTER_PRODUCERS = 20;
+    private static final TimeInterval[] QUERY_INTERVALS = {TimeInterval.MINUTE, TimeInterval.HOUR};
+
+    private final int messages;
+    private final int producers;
+    private final int batchSize;
+    private final int queryRuns;
+
+    public PipelineBenchmark(int messages, int producers, int batchSize, int queryRuns) {
+        this.messages = messages;
+        this.producers = producers;
+        this.batchSize = batchSize;
+        this.queryRuns = queryRuns;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        PipelineBenchmark benchmark = new PipelineBenchmark(
+                Integer.parseInt(options.getOrDefault("messages", "20000")),
+                Integer.parseInt(options.getOrDefault("producers", "4")),
+                Integer.parseInt(options.getOrDefault("batch", "1000")),
+                Integer.parseInt(options.getOrDefault("query-runs", "5")));
+
+        Report report = benchmark.run();
+
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        if (options.containsKey("report")) {
+            mapper.writeValue(Path.of(options.get("report")).toFile(), report);
+        } else {
+            System.out.println(mapper.writeValueAsString(report));
+        }
+    }
+
+    public Report run() throws Exception {
+        try (EntityManagerFactory emf = createEntityManagerFactory()) {
+            new SchemaManager(emf).createIndexes();
+            List<SensorDataGenerator.SensorConfig> sensors = new SensorDataGenerator().getSensors();
+            ConsumerService consumer = new ConsumerService(emf, new MessageParser(), 100, batchSize);
+
+            PriorityBlockingQueue<LocalDateTime> pending = new PriorityBlockingQueue<>();
+            AtomicLong remaining = new AtomicLong(messages);
+            LocalDateTime rangeStart = LocalDateTime.now().minusMinutes(1);
+
+            ExecutorService pool = Executors.newFixedThreadPool(producers);
+            long produceStart = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < producers; i++) {
+                ProducerService producer = new ProducerService(emf, new SensorDataGenerator(sensors), 0, 0);
+                futures.add(pool.submit(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        pending.add(producer.produceOne().getSavedAt());
+                    }
+                }));
+            }
+            pool.shutdown();
+
+            QuantileSketch latency = new QuantileSketch();
+            double latencySum = 0;
+            double latencyMax = 0;
+            long consumeStart = System.nanoTime();
+            long produceNanos = 0;
+            int batches = 0;
+            int idleBatches = 0;
+            while (idleBatches < IDLE_BATCHES_AFTER_PRODUCERS) {
+                int processed = consumer.processBatch();
+                LocalDateTime available = LocalDateTime.now();
+                if (processed > 0) {
+                    batches++;
+                    LocalDateTime checkpoint = readCheckpoint(emf);
+                    while (pending.peek() != null && !pending.peek().isAfter(checkpoint)) {
+                        double millis = Duration.between(pending.poll(), available).toNanos() / 1e6;
+                        latency.add(millis);
+                        latencySum += millis;
+                        latencyMax = Math.max(latencyMax, millis);
+                    }
+                }
+                if (pool.isTerminated()) {
+                    if (produceNanos == 0) {
+                        produceNanos = System.nanoTime() - produceStart;
+                    }
+                    if (consumer.getProcessedCount() >= messages) {
+                        break;
+                    }
+                    idleBatches = processed > 0 ? 0 : idleBatches + 1;
+                }
+                if (processed == 0) {
+                    Thread.sleep(10);
+                }
+            }
+            long consumeNanos = System.nanoTime() - consumeStart;
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            long consumed = consumer.getProcessedCount();
+            Rate ingest = new Rate(messages, produceNanos / 1e9, messages / (produceNanos / 1e9));
+            Rate consumption = new Rate(consumed, consumeNanos / 1e9, consumed / (consumeNanos / 1e9));
+            Latency endToEnd = new Latency(latency.getCount(),
+                    latency.getCount() > 0 ? latencySum / latency.getCount() : 0,
+                    latency.getQuantile(0.50), latency.getQuantile(0.95), latency.getQuantile(0.99), latencyMax);
+            List<QueryTiming> queries = runQueries(emf, rangeStart, LocalDateTime.now().plusMinutes(1));
+            return new Report(messages, producers, batchSize, ingest, consumption, batches, endToEnd, queries);
+        }
+    }
+
+    /**
+     * Типовые запросы агрегатора: средние по каждому типу датчика за весь период с минутными и часовыми интервалами.
+     */
+    private List<QueryTiming> runQueries(EntityManagerFactory emf, LocalDateTime start, LocalDateTime end) {
+        AggregatorService aggregator = new AggregatorService(emf, new PrintStream(OutputStream.nullOutputStream()),
+                new ByteArrayInputStream(new byte[0]));
+        List<QueryTiming> timings = new ArrayList<>();
+        for (SensorType type : SensorType.values()) {
+            for (TimeInterval interval : QUERY_INTERVALS) {
+                double min = Double.MAX_VALUE;
+                double max = 0;
+                double sum = 0;
+                int rows = 0;
+                for (int run = 0; run < queryRuns; run++) {
+                    long started = System.nanoTime();
+                    rows = aggregator.fetchAggregatedData(type, start, end, interval, null).size();
+                    double millis = (System.nanoTime() - started) / 1e6;
+                    min = Math.min(min, millis);
+                    max = Math.max(max, millis);
+                    sum += millis;
+                }
+                timings.add(new QueryTiming(type, interval.toString(), rows, min, sum / queryRuns, max));
+            }
+        }
+        return timings;
+    }
+
+    private LocalDateTime readCheckpoint(EntityManagerFactory emf) {
+        try (EntityManager em = emf.createEntityManager()) {
+            return em.find(ProcessingState.class, ConsumerService.COMPONENT_NAME).getLastProcessedTime();
+        }
+    }
+
+    private static EntityManagerFactory createEntityManagerFactory() {
+        return new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .addAnnotatedClass(SensorDevice.class)
+                .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(SensorPresence.class)
+                .addAnnotatedClass(LightMetric.class)
+                .addAnnotatedClass(BarometerMetric.class)
+                .addAnnotatedClass(LocationMetric.class)
+                .addAnnotatedClass(AccelerometerMetric.class)
+                .setProperty("hibernate.connection.provider_class",
+                        "org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:pipeline;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.connection.pool_size", "20")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.show_sql", "false")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .buildSessionFactory();
+    }
+
+    /**
+     * @param perSecond сообщений в секунду
+     */
+    public record Rate(long messages, double seconds, double perSecond) {}
+
+    /**
+     * Задержка от saved_at сообщения до фиксации пакета с его метрикой, в миллисекундах.
+     */
+    public record Latency(long count, double mean, double p50, double p95, double p99, double max) {}
+
+    /**
+     * Время запроса в миллисекундах по нескольким повторам.
+     */
+    public record QueryTiming(SensorType sensorType, String interval, int rows, double minMs, double meanMs, double maxMs) {}
+
+    public record Report(int messages, int producers, int batchSize, Rate ingest, Rate consumer, int consumerBatches,
+                         Latency endToEndLatency, List<QueryTiming> queries) {}
+}
@@ -0,0 +1,93 @@
+package ru.teamscore.sensors.aggregator;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.teamscore.sensors.common.SensorType;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование строк агрегирующего запроса в результаты и форматирование таблицы.
+ * <p>
+ * Строки имитируют то, что возвращает JDBC: имя устройства, номер интервала (Long)
+ * и средние значения (Double).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregatorServiceBenchmark {
+    private static final int ROWS = 1024;
+
+    @Param({"LIGHT", "LOCATION", "ACCELEROMETER"})
+    private SensorType sensorType;
+
+    private final TimeInterval interval = TimeInterval.MINUTE;
+    private Object[][] rows;
+    private AggregatedResult[] results;
+    private TablePrinter printer;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int valueCount = switch (sensorType) {
+            case LIGHT, BAROMETER -> 1;
+            case LOCATION -> 2;
+            case ACCELEROMETER -> 3;
+        };
+        long firstBucket = interval.bucketIndex(LocalDateTime.of(2025, 12, 1, 0, 0, 0));
+        rows = new Object[ROWS][];
+        results = new AggregatedResult[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            Object[] row = new Object[2 + valueCount];
+            row[0] = "Device-" + (i % 16);
+            row[1] = firstBucket + i;
+            for (int v = 0; v < valueCount; v++) {
+                row[2 + v] = random.nextDouble() * 1000;
+            }
+            rows[i] = row;
+            results[i] = AggregatorService.toResult(sensorType, interval, row);
+        }
+        String[] headers = new String[2 + valueCount];
+        headers[0] = "DEVICE";
+        headers[1] = "DATE";
+        for (int v = 0; v < valueCount; v++) {
+            headers[2 + v] = "VALUE_" + v;
+        }
+        printer = new TablePrinter(new PrintStream(OutputStream.nullOutputStream()),
+                new Scanner(""), headers, 2, AggregatorService.PAGE_SIZE);
+    }
+
+    @Benchmark
+    public AggregatedResult toResult() {
+        Object[] row = rows[next];
+        next = (next + 1) % ROWS;
+        return AggregatorService.toResult(sensorType, interval, row);
+    }
+
+    @Benchmark
+    public String[] toCells() {
+        AggregatedResult result = results[next];
+        next = (next + 1) % ROWS;
+        return AggregatorService.toCells(result);
+    }
+
+    /**
+     * Форматирование и постраничный вывод строки в пустой поток.
+     */
+    @Benchmark
+    public void printRow(Blackhole blackhole) {
+        AggregatedResult result = results[next];
+        next = (next + 1) % ROWS;
+        printer.printRow(AggregatorService.toCells(result));
+        blackhole.consume(printer.getRowCount());
+    }
+}
@@ -0,0 +1,49 @@
+package ru.teamscore.sensors.consumer;
+
+import org.openjdk.jmh.annotations.*;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.metric.SensorMetric;
+import ru.teamscore.sensors.producer.SensorDataGenerator;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор JSON сообщения в метрику для каждого типа датчика.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageParserBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"LIGHT", "BAROMETER", "LOCATION", "ACCELEROMETER"})
+    private SensorType sensorType;
+
+    private MessageParser parser;
+    private RawSensorMessage[] messages;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        parser = new MessageParser();
+        SensorDataGenerator generator = new SensorDataGenerator(List.of(
+                new SensorDataGenerator.SensorConfig(UUID.randomUUID(), sensorType, "BenchmarkDevice")));
+        messages = new RawSensorMessage[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = generator.generateRandomMessage();
+        }
+    }
+
+    @Benchmark
+    public SensorMetric parseMessage() {
+        RawSensorMessage message = messages[next];
+        next = (next + 1) % MESSAGES;
+        return parser.parseMessage(message);
+    }
+}
@@ -0,0 +1,29 @@
+package ru.teamscore.sensors.producer;
+
+import org.openjdk.jmh.annotations.*;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Генерация случайного сообщения от одного из датчиков по умолчанию.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SensorDataGeneratorBenchmark {
+    private SensorDataGenerator generator;
+
+    @Setup
+    public void setUp() {
+        generator = new SensorDataGenerator();
+    }
+
+    @Benchmark
+    public RawSensorMessage generateRandomMessage() {
+        return generator.generateRandomMessage();
+    }
+}
@@ -0,0 +1,211 @@
+package ru.teamscore.sensors.aggregator;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Результаты агрегации в столбцовом виде на примитивных массивах.
+ * <p>
+ * Устройство хранится номером в словаре имён, начало интервала — секундами эпохи (UTC), каждый показатель —
+ * отдельным {@code double[]} с битовой маской отсутствующих значений. В отличие от списка
+ * {@link AggregatedResult}, строка не порождает объектов, поэтому большие результаты занимают в разы меньше
+ * памяти, а столбцы можно обрабатывать циклами по массивам. Построчное представление доступно через
+ * {@link #getResult(int)} и {@link #asResults()}.
+ * <p>
+ * Массивы растут по мере добавления строк; методы доступа к столбцам возвращают внутренние массивы,
+ * значимы первые {@link #size()} элементов.
+ */
+public class AggregatedBatch {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final List<String> deviceNames = new ArrayList<>();
+    private final Map<String, Integer> deviceIdsByName = new HashMap<>();
+    private final int valueColumns;
+    private int[] deviceIds;
+    private long[] intervalStarts;
+    private final double[][] values;
+    private final long[][] nulls;
+    private int size;
+    private String lastDeviceName;
+    private int lastDeviceId;
+
+    public AggregatedBatch(int valueColumns) {
+        this(valueColumns, DEFAULT_CAPACITY);
+    }
+
+    public AggregatedBatch(int valueColumns, int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.valueColumns = valueColumns;
+        this.deviceIds = new int[capacity];
+        this.intervalStarts = new long[capacity];
+        this.values = new double[valueColumns][capacity];
+        this.nulls = new long[valueColumns][words(capacity)];
+    }
+
+    /**
+     * Добавляет строку с нулевыми значениями показателей.
+     *
+     * @return номер строки
+     */
+    public int addRow(String deviceName, long intervalStartEpochSecond) {
+        if (size == deviceIds.length) {
+            grow();
+        }
+        int row = size++;
+        deviceIds[row] = deviceId(deviceName);
+        intervalStarts[row] = intervalStartEpochSecond;
+        return row;
+    }
+
+    public void setValue(int column, int row, double value) {
+        values[column][row] = value;
+        nulls[column][row >>> 6] &= ~(1L << row);
+    }
+
+    public void setNull(int column, int row) {
+        values[column][row] = 0;
+        nulls[column][row >>> 6] |= 1L << row;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getValueColumnCount() {
+        return valueColumns;
+    }
+
+    /**
+     * Количество различных устройств в пакете.
+     */
+    public int getDeviceCount() {
+        return deviceNames.size();
+    }
+
+    public int getDeviceId(int row) {
+        return deviceIds[checkRow(row)];
+    }
+
+    public String getDeviceName(int row) {
+        return deviceNames.get(getDeviceId(row));
+    }
+
+    /**
+     * Имя устройства по номеру в словаре.
+     */
+    public String getDeviceNameById(int deviceId) {
+        return deviceNames.get(deviceId);
+    }
+
+    public long getIntervalStartEpochSecond(int row) {
+        return intervalStarts[checkRow(row)];
+    }
+
+    public LocalDateTime getIntervalStart(int row) {
+        return LocalDateTime.ofEpochSecond(getIntervalStartEpochSecond(row), 0, ZoneOffset.UTC);
+    }
+
+    public boolean isNull(int column, int row) {
+        checkRow(row);
+        return (nulls[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Значение показателя; для отсутствующего значения — 0, см. {@link #isNull}.
+     */
+    public double getValue(int column, int row) {
+        return values[column][checkRow(row)];
+    }
+
+    /**
+     * Номера устройств по строкам (внутренний массив).
+     */
+    public int[] getDeviceIdColumn() {
+        return deviceIds;
+    }
+
+    /**
+     * Начала интервалов в секундах эпохи по строкам (внутренний массив).
+     */
+    public long[] getIntervalStartColumn() {
+        return intervalStarts;
+    }
+
+    /**
+     * Значения показателя по строкам (внутренний массив).
+     */
+    public double[] getValueColumn(int column) {
+        return values[column];
+    }
+
+    /**
+     * Строка в виде {@link AggregatedResult}.
+     */
+    public AggregatedResult getResult(int row) {
+        Double[] rowValues = new Double[valueColumns];
+        for (int column = 0; column < valueColumns; column++) {
+            rowValues[column] = isNull(column, row) ? null : values[column][row];
+        }
+        return new AggregatedResult(getDeviceName(row), getIntervalStart(row), rowValues);
+    }
+
+    /**
+     * Построчное представление пакета; объекты строк создаются при обращении.
+     */
+    public List<AggregatedResult> asResults() {
+        return new AbstractList<>() {
+            @Override
+            public AggregatedResult get(int index) {
+                return getResult(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int deviceId(String deviceName) {
+        // строки приходят сгруппированными по устройству
+        if (deviceName.equals(lastDeviceName)) {
+            return lastDeviceId;
+        }
+        Integer id = deviceIdsByName.get(deviceName);
+        if (id == null) {
+            id = deviceNames.size();
+            deviceNames.add(deviceName);
+            deviceIdsByName.put(deviceName, id);
+        }
+        lastDeviceName = deviceName;
+        lastDeviceId = id;
+        return id;
+    }
+
+    private void grow() {
+        int capacity = deviceIds.length * 2;
+        deviceIds = Arrays.copyOf(deviceIds, capacity);
+        intervalStarts = Arrays.copyOf(intervalStarts, capacity);
+        for (int column = 0; column < valueColumns; column++) {
+            values[column] = Arrays.copyOf(values[column], capacity);
+            nulls[column] = Arrays.copyOf(nulls[column], words(capacity));
+        }
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+        }
+        return row;
+    }
+
+    private static int words(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+}
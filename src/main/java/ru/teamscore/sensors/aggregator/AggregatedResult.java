@@ -12,11 +12,39 @@ public class AggregatedResult {
     private final String deviceName;
     private final LocalDateTime intervalStart;
     private final Double[] values;
+    /**
+     * Расширенная статистика по каждому показателю; {@code null}, если запрошены только средние.
+     */
+    private final ValueStatistics[] statistics;
+    /**
+     * Интервал без данных, добавленный при заполнении пропусков.
+     */
+    private final boolean filled;
 
     public AggregatedResult(String deviceName, LocalDateTime intervalStart, Double... values) {
+        this(deviceName, intervalStart, values, false);
+    }
+
+    public AggregatedResult(String deviceName, LocalDateTime intervalStart, Double[] values, boolean filled) {
         this.deviceName = deviceName;
         this.intervalStart = intervalStart;
         this.values = values;
+        this.statistics = null;
+        this.filled = filled;
+    }
+
+    /**
+     * Создаёт результат с расширенной статистикой; значениями считаются средние.
+     */
+    public AggregatedResult(String deviceName, LocalDateTime intervalStart, ValueStatistics[] statistics) {
+        this.deviceName = deviceName;
+        this.intervalStart = intervalStart;
+        this.statistics = statistics;
+        this.filled = false;
+        this.values = new Double[statistics.length];
+        for (int i = 0; i < statistics.length; i++) {
+            values[i] = statistics[i].getMean();
+        }
     }
 
     /**
@@ -25,4 +53,4 @@ public class AggregatedResult {
     public Double getValue() {
         return values.length > 0 ? values[0] : null;
     }
-}
\ No newline at end of file
+}
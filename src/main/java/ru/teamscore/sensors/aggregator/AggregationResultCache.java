@@ -0,0 +1,148 @@
+package ru.teamscore.sensors.aggregator;
+
+import ru.teamscore.sensors.common.SensorType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Кэш результатов агрегации с вытеснением давно не использованных записей (LRU).
+ * <p>
+ * Кэшируются только закрытые интервалы — целиком предшествующие контрольной точке потребителя
+ * за вычетом допустимого опоздания. Потребитель их больше не меняет; остальные писатели сдвигают
+ * {@link ru.teamscore.sensors.common.cache.MetricsRewriteMarker отметку перезаписи}, и при её изменении
+ * кэш очищается целиком ({@link #invalidateIfRewritten}). Размер кэша ограничен суммарным количеством строк результата.
+ */
+public class AggregationResultCache {
+    private final int maxRows;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int totalRows;
+    private long hits;
+    private long misses;
+    private LocalDateTime rewrittenAt;
+
+    public AggregationResultCache(int maxRows) {
+        if (maxRows <= 0) {
+            throw new IllegalArgumentException("Max rows must be positive: " + maxRows);
+        }
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Возвращает закэшированную закрытую часть результата или {@code null}.
+     */
+    public synchronized Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    /**
+     * Сохраняет закрытую часть результата, вытесняя давно не использованные записи при превышении размера.
+     */
+    public synchronized void put(Key key, Entry entry) {
+        if (entry.results().size() > maxRows) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalRows -= previous.results().size();
+        }
+        totalRows += entry.results().size();
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (totalRows > maxRows && eldest.hasNext()) {
+            Map.Entry<Key, Entry> evicted = eldest.next();
+            totalRows -= evicted.getValue().results().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Очищает кэш, если отметка перезаписи метрик изменилась с прошлой проверки.
+     *
+     * @param rewrittenAt текущее значение отметки или {@code null}, если метрики не перезаписывались
+     * @return {@code true}, если кэш очищен
+     */
+    public synchronized boolean invalidateIfRewritten(LocalDateTime rewrittenAt) {
+        if (Objects.equals(this.rewrittenAt, rewrittenAt)) {
+            return false;
+        }
+        this.rewrittenAt = rewrittenAt;
+        clear();
+        return true;
+    }
+
+    /**
+     * Удаляет все записи.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalRows = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Сливает два списка, упорядоченных по {@link AggregatorService#RESULT_ORDER}, сохраняя порядок.
+     */
+    static List<AggregatedResult> merge(List<AggregatedResult> first, List<AggregatedResult> second) {
+        List<AggregatedResult> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            merged.add(AggregatorService.RESULT_ORDER.compare(first.get(i), second.get(j)) <= 0
+                    ? first.get(i++) : second.get(j++));
+        }
+        merged.addAll(first.subList(i, first.size()));
+        merged.addAll(second.subList(j, second.size()));
+        return merged;
+    }
+
+    /**
+     * Ключ запроса агрегации.
+     */
+    public record Key(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                      TimeInterval interval, String deviceName) {
+        public Key {
+            deviceName = deviceName == null || deviceName.isEmpty() ? null : deviceName;
+        }
+    }
+
+    /**
+     * Закрытая часть результата: строки всех интервалов, начинающихся до {@code closedUntil}.
+     *
+     * @param complete результат покрывает весь запрошенный диапазон и не требует досчёта
+     */
+    public record Entry(List<AggregatedResult> results, LocalDateTime closedUntil, boolean complete) {
+        public Entry {
+            results = List.copyOf(results);
+        }
+
+        /**
+         * Возвращает запись, дополненную строками интервалов, закрывшихся с момента прошлого расчёта.
+         */
+        Entry extend(List<AggregatedResult> newlyClosed, LocalDateTime newClosedUntil) {
+            return new Entry(merge(results, newlyClosed), newClosedUntil, false);
+        }
+    }
+}
@@ -1,42 +1,99 @@
 package ru.teamscore.sensors.aggregator;
 
 import jakarta.persistence.EntityManagerFactory;
+import ru.teamscore.sensors.common.GeoGrid;
 import ru.teamscore.sensors.common.SensorType;
 import ru.teamscore.sensors.common.config.EntityManagerFactoryProvider;
+import ru.teamscore.sensors.common.config.JdbcConnectionFactory;
+import ru.teamscore.sensors.common.metrics.MetricsRegistry;
+import ru.teamscore.sensors.common.metrics.MetricsServer;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Приложение Aggregator для агрегации данных датчиков.
  * Запускается с параметрами командной строки.
  * <p>
  * Использование:
- * java AggregatorApp <тип_датчика> <дата_начала> <дата_окончания> <интервал> [название_устройства]
+ * java AggregatorApp <тип_датчика> <дата_начала> <дата_окончания> <интервал> [название_устройства] [опции]
+ * java AggregatorApp --server[=порт] [--bind=адрес] [--threads=N]
  * <p>
  * Параметры:
- *   тип_датчика: LIGHT, BAROMETER, LOCATION, ACCELEROMETER
+ *   тип_датчика: LIGHT, BAROMETER, LOCATION, ACCELEROMETER или ALL — сводка по всем типам за один запрос
  *   дата_начала: формат yyyy-MM-dd HH:mm:ss
  *   дата_окончания: формат yyyy-MM-dd HH:mm:ss
- *   интервал: MINUTE, HOUR, DAY, WEEK
+ *   интервал: MINUTE, HOUR, DAY, WEEK или произвольная ширина: 10s, 5m, 15m, 6h, 2d
  *   название_устройства: опционально
+ * <p>
+ * Опции:
+ *   --stream: потоковый вывод через курсор БД без загрузки всех строк в память;
+ *       страницы выводятся подряд, без ожидания Enter
+ *   --parallel[=N]: параллельная агрегация срезами периода в N потоков (по умолчанию — по числу ядер)
+ *   --origin="yyyy-MM-dd HH:mm:ss": начало отсчёта для выравнивания интервалов
+ *   --stats: расширенная статистика (количество, минимум, максимум, стандартное отклонение, перцентили)
+ *   --export=файл: потоковая выгрузка результатов в файл вместо вывода в консоль
+ *   --format=CSV|COLUMNAR: формат выгрузки (по умолчанию CSV)
+ *   --fill[=EMPTY|PREVIOUS|LINEAR]: непрерывный ряд по устройствам с заполнением пустых интервалов
+ *       (по умолчанию EMPTY — без значений); применяется к потоковому выводу и выгрузке
+ *   --distinct: приближённое количество различных датчиков по устройствам и всего (нужен потребитель с --presence)
+ *   --top=K: K устройств с наибольшим показателем в каждом интервале (для ACCELEROMETER — модуль ускорения)
+ *   --by=AVG|PEAK: показатель рейтинга — среднее или пиковое значение (по умолчанию AVG)
+ *   --lowest: рейтинг по наименьшему показателю
+ *   --motion: для ACCELEROMETER — среднеквадратичный и пиковый модуль ускорения и пиковый рывок
+ *   --grid[=шаг]: тепловая карта координат LOCATION по ячейкам сетки с шагом в градусах (по умолчанию 0.01)
+ *   --bbox=минШирота,минДолгота,максШирота,максДолгота: область тепловой карты
+ *   --server[=порт]: режим HTTP-сервера запросов агрегации (по умолчанию порт 8080), см. {@link AggregatorServer}
+ *   --bind=адрес: адрес, на котором сервер принимает запросы (по умолчанию только локальный, 127.0.0.1);
+ *       --bind=0.0.0.0 открывает сервер для всех интерфейсов
+ *   --threads=N: количество потоков обработки запросов сервера
+ *   --metrics-port=N: HTTP-точка /metrics с метриками в формате Prometheus
+ *   --metrics-bind=адрес: адрес точки /metrics (по умолчанию только локальный, 127.0.0.1)
+ *   --fast: запросы через JDBC с настройками hibernate.properties, без построения Hibernate
+ *   --timing: вывести в stderr время от запуска JVM до первой строки из БД и общее время
  */
 public class AggregatorApp {
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String ALL_TYPES = "ALL";
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final int SERVER_CACHE_ROWS = 500_000;
 
     public static void main(String[] args) {
-        if (args.length < 4) {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        parseArguments(args, positional, options);
+
+        if (options.containsKey("server")) {
+            runServer(options);
+            return;
+        }
+
+        if (positional.size() < 4) {
             printUsage();
             System.exit(1);
         }
 
         try {
-            SensorType sensorType = parseSensorType(args[0]);
-            LocalDateTime startTime = parseDateTime(args[1], "дата начала");
-            LocalDateTime endTime = parseDateTime(args[2], "дата окончания");
-            TimeInterval interval = parseInterval(args[3]);
-            String deviceName = args.length > 4 ? args[4] : null;
+            boolean allTypes = positional.get(0).equalsIgnoreCase(ALL_TYPES);
+            SensorType sensorType = allTypes ? null : parseSensorType(positional.get(0));
+            LocalDateTime startTime = parseDateTime(positional.get(1), "дата начала");
+            LocalDateTime endTime = parseDateTime(positional.get(2), "дата окончания");
+            TimeInterval interval = parseInterval(positional.get(3));
+            if (options.containsKey("origin")) {
+                interval = interval.withOrigin(parseDateTime(options.get("origin"), "начало отсчёта"));
+            }
+            String deviceName = positional.size() > 4 ? positional.get(4) : null;
 
             if (endTime.isBefore(startTime)) {
                 System.err.println("Ошибка: дата окончания должна быть позже даты начала");
@@ -46,7 +103,7 @@ public class AggregatorApp {
             System.out.println("=".repeat(60));
             System.out.println("Агрегация данных датчиков");
             System.out.println("=".repeat(60));
-            System.out.println("Тип датчика: " + sensorType);
+            System.out.println("Тип датчика: " + (allTypes ? ALL_TYPES : sensorType));
             System.out.println("Период: " + startTime.format(DATE_TIME_FORMATTER) + " - " + endTime.format(DATE_TIME_FORMATTER));
             System.out.println("Интервал: " + interval);
             if (deviceName != null) {
@@ -55,33 +112,230 @@ public class AggregatorApp {
             System.out.println("=".repeat(60));
             System.out.println();
 
-            try (EntityManagerFactory emf = EntityManagerFactoryProvider.getEntityManagerFactory()) {
-                AggregatorService aggregatorService = new AggregatorService(emf);
-                aggregatorService.aggregate(sensorType, startTime, endTime, interval, deviceName);
+            boolean fast = options.containsKey("fast");
+            try (MetricsServer metricsServer = startMetricsServer(options);
+                 EntityManagerFactory emf = fast ? null : EntityManagerFactoryProvider.getEntityManagerFactory()) {
+                AggregatorService aggregatorService = fast
+                        ? new AggregatorService(JdbcConnectionFactory.fromHibernateProperties(), System.out, System.in)
+                        : new AggregatorService(emf);
+                if (options.containsKey("distinct")) {
+                    aggregatorService.aggregateDistinctSensors(sensorType, startTime, endTime, interval, deviceName);
+                } else if (allTypes) {
+                    try (AllTypesAggregator allTypesAggregator = new AllTypesAggregator(aggregatorService)) {
+                        aggregatorService.printOverview(allTypesAggregator.fetchOverview(
+                                startTime, endTime, interval, deviceName));
+                    }
+                } else if (options.containsKey("top")) {
+                    aggregatorService.aggregateTopDevices(sensorType, startTime, endTime, interval,
+                            parseInt(options.get("top"), "top"),
+                            parseRankingMeasure(options.getOrDefault("by", "AVG")),
+                            !options.containsKey("lowest"));
+                } else if (options.containsKey("motion")) {
+                    if (sensorType != SensorType.ACCELEROMETER) {
+                        throw new IllegalArgumentException("Опция --motion применима только к ACCELEROMETER");
+                    }
+                    aggregatorService.aggregateMotion(startTime, endTime, interval, deviceName);
+                } else if (options.containsKey("grid")) {
+                    if (sensorType != SensorType.LOCATION) {
+                        throw new IllegalArgumentException("Опция --grid применима только к LOCATION");
+                    }
+                    double cellDegrees = options.get("grid").isEmpty()
+                            ? GeoGrid.CELL_DEGREES
+                            : parseDouble(options.get("grid"), "grid");
+                    BoundingBox boundingBox = options.containsKey("bbox") ? BoundingBox.parse(options.get("bbox")) : null;
+                    aggregatorService.aggregateGrid(startTime, endTime, interval, cellDegrees, boundingBox, deviceName);
+                } else if (options.containsKey("export")) {
+                    Path path = Path.of(options.get("export"));
+                    long rows = aggregatorService.export(sensorType, startTime, endTime, interval, deviceName,
+                            parseFillMode(options), parseExportFormat(options.getOrDefault("format", "CSV")), path);
+                    System.out.println("Выгружено строк: " + rows + " в файл " + path.toAbsolutePath());
+                } else if (options.containsKey("fill")) {
+                    aggregatorService.aggregateFilled(sensorType, startTime, endTime, interval, deviceName,
+                            parseFillMode(options));
+                } else if (options.containsKey("stats")) {
+                    aggregatorService.aggregateStatistics(sensorType, startTime, endTime, interval, deviceName);
+                } else if (options.containsKey("parallel")) {
+                    String threads = options.get("parallel");
+                    int parallelism = threads.isEmpty()
+                            ? Runtime.getRuntime().availableProcessors()
+                            : parseInt(threads, "parallel");
+                    try (ParallelAggregator parallelAggregator = new ParallelAggregator(aggregatorService, parallelism)) {
+                        aggregatorService.printResults(sensorType, parallelAggregator.fetchAggregatedData(
+                                sensorType, startTime, endTime, interval, deviceName));
+                    }
+                } else if (options.containsKey("stream")) {
+                    aggregatorService.aggregateStreaming(sensorType, startTime, endTime, interval, deviceName);
+                } else {
+                    aggregatorService.aggregate(sensorType, startTime, endTime, interval, deviceName);
+                }
+                if (options.containsKey("timing")) {
+                    printTiming(aggregatorService);
+                }
             }
 
         } catch (IllegalArgumentException e) {
             System.err.println("Ошибка: " + e.getMessage());
             printUsage();
             System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Ошибка: не удалось запустить точку метрик: " + e.getMessage());
+            System.exit(1);
         }
     }
 
+    /**
+     * Запускает HTTP-сервер; фабрика EntityManager и кэш результатов живут до остановки процесса.
+     */
+    private static void runServer(Map<String, String> options) {
+        int port;
+        int threads;
+        InetAddress bindAddress;
+        try {
+            String portValue = options.get("server");
+            port = portValue.isEmpty() ? DEFAULT_SERVER_PORT : parseInt(portValue, "server");
+            bindAddress = options.containsKey("bind")
+                    ? parseAddress(options.get("bind"), "bind")
+                    : InetAddress.getLoopbackAddress();
+            threads = options.containsKey("threads")
+                    ? parseInt(options.get("threads"), "threads")
+                    : Runtime.getRuntime().availableProcessors() * 2;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ошибка: " + e.getMessage());
+            printUsage();
+            System.exit(1);
+            return;
+        }
+
+        EntityManagerFactory emf = EntityManagerFactoryProvider.getEntityManagerFactory();
+        AggregationResultCache resultCache = new AggregationResultCache(SERVER_CACHE_ROWS);
+        AggregatorService aggregatorService = new AggregatorService(emf, System.out, System.in, null, resultCache);
+        try {
+            AggregatorServer server = new AggregatorServer(aggregatorService, resultCache,
+                    new InetSocketAddress(bindAddress, port), threads);
+            MetricsServer metricsServer = startMetricsServer(options);
+            if (metricsServer != null) {
+                MetricsRegistry.getDefault().gauge("sensors_aggregator_cache_entries",
+                        "Entries in the aggregation result cache", resultCache::size);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                if (metricsServer != null) {
+                    metricsServer.close();
+                }
+                emf.close();
+            }));
+            server.start();
+            System.out.println("Сервер агрегации запущен: http://" + bindAddress.getHostAddress() + ":"
+                    + server.getPort() + "/aggregate");
+        } catch (IOException e) {
+            emf.close();
+            System.err.println("Ошибка: не удалось запустить сервер: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Выводит время от запуска JVM до получения первой строки из БД и до завершения запроса.
+     */
+    private static void printTiming(AggregatorService aggregatorService) {
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        long firstRow = aggregatorService.getFirstRowMillis();
+        System.err.println("Время до первой строки: " + (firstRow > 0 ? (firstRow - jvmStart) + " мс" : "строк нет")
+                + ", всего: " + (System.currentTimeMillis() - jvmStart) + " мс");
+    }
+
+    /**
+     * Запускает точку /metrics, если задана опция --metrics-port, иначе возвращает {@code null}.
+     */
+    private static MetricsServer startMetricsServer(Map<String, String> options) throws IOException {
+        if (!options.containsKey("metrics-port")) {
+            return null;
+        }
+        return MetricsServer.start(options.get("metrics-bind"), parseInt(options.get("metrics-port"), "metrics-port"));
+    }
+
     private static void printUsage() {
         System.out.println();
         System.out.println("Использование:");
-        System.out.println("  java AggregatorApp <тип_датчика> <дата_начала> <дата_окончания> <интервал> [название_устройства]");
+        System.out.println("  java AggregatorApp <тип_датчика> <дата_начала> <дата_окончания> <интервал> [название_устройства] [опции]");
+        System.out.println("  java AggregatorApp --server[=порт] [--bind=адрес] [--threads=N]");
         System.out.println();
         System.out.println("Параметры:");
-        System.out.println("  тип_датчика: LIGHT, BAROMETER, LOCATION, ACCELEROMETER");
+        System.out.println("  тип_датчика: LIGHT, BAROMETER, LOCATION, ACCELEROMETER или ALL (сводка по всем типам)");
         System.out.println("  дата_начала: формат \"yyyy-MM-dd HH:mm:ss\"");
         System.out.println("  дата_окончания: формат \"yyyy-MM-dd HH:mm:ss\"");
-        System.out.println("  интервал: MINUTE, HOUR, DAY, WEEK");
+        System.out.println("  интервал: MINUTE, HOUR, DAY, WEEK или ширина вида 10s, 5m, 15m, 6h, 2d");
         System.out.println("  название_устройства: опционально, фильтр по устройству");
         System.out.println();
+        System.out.println("Опции:");
+        System.out.println("  --stream: потоковый вывод без загрузки всех строк в память, страницы без паузы");
+        System.out.println("  --parallel[=N]: параллельная агрегация срезами периода в N потоков");
+        System.out.println("  --origin=\"yyyy-MM-dd HH:mm:ss\": начало отсчёта для выравнивания интервалов");
+        System.out.println("  --stats: количество, минимум, максимум, стандартное отклонение и перцентили p50/p95/p99");
+        System.out.println("  --export=файл: выгрузка результатов в файл");
+        System.out.println("  --format=CSV|COLUMNAR: формат выгрузки, по умолчанию CSV");
+        System.out.println("  --fill[=EMPTY|PREVIOUS|LINEAR]: непрерывный ряд с заполнением пустых интервалов, по умолчанию EMPTY");
+        System.out.println("  --distinct: приближённое количество различных датчиков (потребитель запускается с --presence)");
+        System.out.println("  --top=K: K устройств с наибольшим показателем в каждом интервале");
+        System.out.println("  --by=AVG|PEAK: показатель рейтинга, по умолчанию AVG");
+        System.out.println("  --lowest: рейтинг по наименьшему показателю");
+        System.out.println("  --motion: для ACCELEROMETER — RMS и пик модуля ускорения, пик рывка");
+        System.out.println("  --grid[=шаг]: тепловая карта координат LOCATION по ячейкам сетки, шаг в градусах кратен 0.01");
+        System.out.println("  --bbox=минШирота,минДолгота,максШирота,максДолгота: область тепловой карты");
+        System.out.println("  --server[=порт]: HTTP-сервер запросов агрегации, по умолчанию порт " + DEFAULT_SERVER_PORT);
+        System.out.println("  --bind=адрес: адрес сервера, по умолчанию только локальный (127.0.0.1); 0.0.0.0 — все интерфейсы");
+        System.out.println("  --threads=N: количество потоков обработки запросов сервера");
+        System.out.println("  --metrics-port=N: метрики в формате Prometheus на http://localhost:N/metrics");
+        System.out.println("  --metrics-bind=адрес: адрес точки /metrics, по умолчанию только локальный (127.0.0.1)");
+        System.out.println("  --fast: быстрый запуск — запросы через JDBC без построения Hibernate");
+        System.out.println("  --timing: время от запуска до первой строки и общее время (в stderr)");
+        System.out.println();
         System.out.println("Пример:");
         System.out.println("  java AggregatorApp LIGHT \"2025-12-01 00:00:00\" \"2025-12-31 23:59:59\" HOUR");
         System.out.println("  java AggregatorApp LIGHT \"2025-12-01 00:00:00\" \"2025-12-31 23:59:59\" HOUR \"MyHome ZZZ\"");
+        System.out.println("  java AggregatorApp LIGHT \"2025-01-01 00:00:00\" \"2025-12-31 23:59:59\" MINUTE --export=light.csv");
+    }
+
+    /**
+     * Разделяет аргументы на позиционные и опции вида --имя или --имя=значение.
+     */
+    private static void parseArguments(String[] args, List<String> positional, Map<String, String> options) {
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                } else {
+                    options.put(arg.substring(2), "");
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+    }
+
+    private static int parseInt(String value, String optionName) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверное значение опции --" + optionName + ": " + value);
+        }
+    }
+
+    private static InetAddress parseAddress(String value, String optionName) {
+        try {
+            return InetAddress.getByName(value);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Неверное значение опции --" + optionName + ": " + value);
+        }
+    }
+
+    private static double parseDouble(String value, String optionName) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверное значение опции --" + optionName + ": " + value);
+        }
     }
 
     private static SensorType parseSensorType(String value) {
@@ -89,7 +343,7 @@ public class AggregatorApp {
             return SensorType.valueOf(value.toUpperCase());
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Неверный тип датчика: " + value +
-                    ". Допустимые значения: LIGHT, BAROMETER, LOCATION, ACCELEROMETER");
+                    ". Допустимые значения: LIGHT, BAROMETER, LOCATION, ACCELEROMETER, ALL");
         }
     }
 
@@ -102,12 +356,49 @@ public class AggregatorApp {
         }
     }
 
+    private static RankingMeasure parseRankingMeasure(String value) {
+        try {
+            return RankingMeasure.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неверный показатель рейтинга: " + value +
+                    ". Допустимые значения: AVG, PEAK");
+        }
+    }
+
+    private static ExportFormat parseExportFormat(String value) {
+        try {
+            return ExportFormat.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неверный формат выгрузки: " + value +
+                    ". Допустимые значения: CSV, COLUMNAR");
+        }
+    }
+
+    /**
+     * Возвращает способ заполнения пропусков или {@code null}, если опция --fill не задана.
+     */
+    private static FillMode parseFillMode(Map<String, String> options) {
+        String value = options.get("fill");
+        if (value == null) {
+            return null;
+        }
+        if (value.isEmpty()) {
+            return FillMode.EMPTY;
+        }
+        try {
+            return FillMode.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неверный способ заполнения: " + value +
+                    ". Допустимые значения: EMPTY, PREVIOUS, LINEAR");
+        }
+    }
+
     private static TimeInterval parseInterval(String value) {
         try {
-            return TimeInterval.valueOf(value.toUpperCase());
+            return TimeInterval.parse(value);
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Неверный интервал: " + value +
-                    ". Допустимые значения: MINUTE, HOUR, DAY, WEEK");
+                    ". Допустимые значения: MINUTE, HOUR, DAY, WEEK или ширина вида 10s, 5m, 15m, 6h, 2d");
         }
     }
 }
\ No newline at end of file
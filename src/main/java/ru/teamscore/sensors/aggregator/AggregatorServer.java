@@ -0,0 +1,334 @@
+package ru.teamscore.sensors.aggregator;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.config.ConnectionPoolStats;
+import ru.teamscore.sensors.common.config.EntityManagerFactoryProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP-сервер запросов агрегации.
+ * <p>
+ * Держит фабрику EntityManager, пул соединений и кэш результатов прогретыми между запросами,
+ * поэтому запрос не платит за запуск Hibernate. Запросы обрабатываются одновременно в пуле потоков.
+ * <p>
+ * Точки доступа:
+ * <pre>
+ * GET /aggregate?type=LIGHT&amp;from=2025-12-01T00:00:00&amp;to=2025-12-31T23:59:59&amp;interval=15m
+ *               [&amp;device=...][&amp;origin=...][&amp;stats=true]
+ * GET /health
+ * </pre>
+ * Время принимается в формате yyyy-MM-ddTHH:mm:ss или yyyy-MM-dd HH:mm:ss, ответы — JSON.
+ * Неверные параметры отклоняются со статусом 400 до начала ответа. Если ошибка возникает, когда строки
+ * уже передаются со статусом 200, ответ завершается полем {@code error} в корневом объекте.
+ */
+public class AggregatorServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(AggregatorServer.class.getName());
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final AggregatorService aggregatorService;
+    private final AggregationResultCache resultCache;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param resultCache кэш, с которым создан сервис, для вывода статистики; может быть {@code null}
+     * @param threads     количество потоков обработки запросов
+     */
+    public AggregatorServer(AggregatorService aggregatorService, AggregationResultCache resultCache,
+                            InetSocketAddress address, int threads) throws IOException {
+        this.aggregatorService = aggregatorService;
+        this.resultCache = resultCache;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable ->
+                new Thread(runnable, "AggregatorHttp-" + threadNumber.incrementAndGet()));
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/aggregate", exchange -> handle(exchange, this::handleAggregate));
+        server.createContext("/health", exchange -> handle(exchange, this::handleHealth));
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Aggregator server listening on " + server.getAddress());
+    }
+
+    /**
+     * Порт, на котором принимаются запросы (актуально при запуске на порту 0).
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Aggregator server stopped");
+    }
+
+    private void handleAggregate(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+        SensorType sensorType = parseSensorType(required(parameters, "type"));
+        LocalDateTime startTime = parseDateTime(required(parameters, "from"), "from");
+        LocalDateTime endTime = parseDateTime(required(parameters, "to"), "to");
+        TimeInterval interval = TimeInterval.parse(parameters.getOrDefault("interval", "HOUR"));
+        if (parameters.containsKey("origin")) {
+            interval = interval.withOrigin(parseDateTime(parameters.get("origin"), "origin"));
+        }
+        String deviceName = parameters.get("device");
+        if (endTime.isBefore(startTime)) {
+            throw new IllegalArgumentException("'to' must not be before 'from'");
+        }
+        boolean statistics = Boolean.parseBoolean(parameters.get("stats"));
+        String[] valueHeaders = aggregatorService.getValueHeaders(sensorType);
+        // все параметры проверены до отправки заголовков: после них статус 400 уже не передать
+
+        // при расширенной статистике строки передаются клиенту по мере вычисления
+        List<AggregatedResult> results = statistics ? null
+                : aggregatorService.fetchAggregatedData(sensorType, startTime, endTime, interval, deviceName);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(exchange.getResponseBody(), JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("type", sensorType.name());
+            json.writeStringField("interval", interval.toString());
+            json.writeArrayFieldStart("columns");
+            for (String header : valueHeaders) {
+                json.writeString(header);
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("rows");
+            try {
+                if (statistics) {
+                    aggregatorService.streamStatistics(sensorType, startTime, endTime, interval, deviceName,
+                            result -> writeRow(json, result));
+                } else {
+                    for (AggregatedResult result : results) {
+                        writeRow(json, result);
+                    }
+                }
+            } catch (RuntimeException e) {
+                writeErrorMarker(json, e);
+                throw e;
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Завершает ответ, прерванный после отправки статуса 200: закрывает открытые массивы и объекты
+     * и добавляет в корневой объект поле {@code error}, по которому клиент отличает неполный ответ от полного.
+     */
+    private static void writeErrorMarker(JsonGenerator json, RuntimeException cause) {
+        try {
+            JsonStreamContext context = json.getOutputContext();
+            while (context.getParent() != null && !context.getParent().inRoot()) {
+                if (context.inArray()) {
+                    json.writeEndArray();
+                } else {
+                    json.writeEndObject();
+                }
+                context = json.getOutputContext();
+            }
+            json.writeStringField("error", "Response interrupted: internal server error");
+            json.writeEndObject();
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(exchange.getResponseBody(), JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("status", "UP");
+            if (resultCache != null) {
+                json.writeObjectFieldStart("cache");
+                json.writeNumberField("entries", resultCache.size());
+                json.writeNumberField("hits", resultCache.getHits());
+                json.writeNumberField("misses", resultCache.getMisses());
+                json.writeEndObject();
+            }
+            ConnectionPoolStats pool = EntityManagerFactoryProvider.getPoolStats(aggregatorService.getEntityManagerFactory());
+            if (pool != null) {
+                json.writeObjectFieldStart("pool");
+                json.writeNumberField("active", pool.active());
+                json.writeNumberField("idle", pool.idle());
+                json.writeNumberField("total", pool.total());
+                json.writeNumberField("waiting", pool.waiting());
+                json.writeEndObject();
+            }
+            json.writeEndObject();
+        }
+    }
+
+    private static void writeRow(JsonGenerator json, AggregatedResult result) {
+        try {
+            json.writeStartObject();
+            json.writeStringField("device", result.getDeviceName());
+            json.writeStringField("start", result.getIntervalStart().toString());
+            json.writeArrayFieldStart("values");
+            for (Double value : result.getValues()) {
+                writeNumber(json, value);
+            }
+            json.writeEndArray();
+            ValueStatistics[] statistics = result.getStatistics();
+            if (statistics != null) {
+                json.writeArrayFieldStart("statistics");
+                for (ValueStatistics s : statistics) {
+                    json.writeStartObject();
+                    json.writeNumberField("count", s.getCount());
+                    json.writeFieldName("min");
+                    writeNumber(json, s.getMin());
+                    json.writeFieldName("max");
+                    writeNumber(json, s.getMax());
+                    json.writeFieldName("avg");
+                    writeNumber(json, s.getMean());
+                    json.writeFieldName("stddev");
+                    writeNumber(json, s.getStdDev());
+                    json.writeFieldName("p50");
+                    writeNumber(json, s.getPercentile(50));
+                    json.writeFieldName("p95");
+                    writeNumber(json, s.getPercentile(95));
+                    json.writeFieldName("p99");
+                    writeNumber(json, s.getPercentile(99));
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+            }
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write response row", e);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator json, Double value) throws IOException {
+        if (value != null) {
+            json.writeNumber(value);
+        } else {
+            json.writeNull();
+        }
+    }
+
+    /**
+     * Выполняет обработчик и преобразует ошибки в ответы: неверные параметры — 400, прочие ошибки — 500.
+     */
+    private void handle(HttpExchange exchange, Handler handler) {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Method not allowed: " + exchange.getRequestMethod());
+                return;
+            }
+            try {
+                handler.handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Failed to handle " + exchange.getRequestURI() + ": " + e.getMessage(), e);
+                sendError(exchange, 500, "Internal server error");
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to send response: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // заголовки уже отправлены, ответ можно только оборвать
+            return;
+        }
+        byte[] body;
+        try (ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+             JsonGenerator json = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("error", message);
+            json.writeEndObject();
+            json.flush();
+            body = buffer.toByteArray();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter '" + name + "'");
+        }
+        return value;
+    }
+
+    private static SensorType parseSensorType(String value) {
+        try {
+            return SensorType.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown sensor type: " + value);
+        }
+    }
+
+    private static LocalDateTime parseDateTime(String value, String name) {
+        try {
+            return LocalDateTime.parse(value.trim().replace(' ', 'T'));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid '" + name + "': " + value);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> parameters) throws IOException;
+    }
+}
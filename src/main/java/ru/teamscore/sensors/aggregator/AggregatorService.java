@@ -1,39 +1,113 @@
 package ru.teamscore.sensors.aggregator;
 
-import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
-import jakarta.persistence.Query;
-import org.hibernate.Session;
 import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.cache.MetricsRewriteMarker;
+import ru.teamscore.sensors.common.cache.RecentMetricsStore;
+import ru.teamscore.sensors.common.config.JdbcConnectionFactory;
+import ru.teamscore.sensors.consumer.ConsumerService;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-import java.util.Scanner;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Сервис агрегации данных датчиков.
+ * <p>
+ * Все запросы — нативный SQL. Соединения берутся из фабрики EntityManager или, для быстрого запуска
+ * без построения Hibernate, напрямую через {@link JdbcConnectionFactory}.
+ * <p>
+ * Сервис считает средние по интервалам и выводит результаты; остальные виды запросов вынесены
+ * в отдельные классы, работающие через его соединения: {@link StatisticsAggregator},
+ * {@link DistinctSensorsAggregator}, {@link TopDevicesAggregator}, {@link MotionAggregator}, {@link GridAggregator}.
  */
 public class AggregatorService {
-    private static final int PAGE_SIZE = 16;
+    static final int PAGE_SIZE = 16;
+    private static final String[] STATISTIC_NAMES = {"COUNT", "MIN", "MAX", "AVG", "STDDEV", "P50", "P95", "P99"};
+    private static final String[] MOTION_HEADERS = {"DEVICE", "DATE", "MAGNITUDE_RMS", "MAGNITUDE_PEAK", "JERK_PEAK"};
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /**
+     * Порядок результатов запросов: устройство по возрастанию, начало интервала по убыванию.
+     * Слияние потоков из БД и памяти опирается на то, что БД сортирует имена устройств так же,
+     * как {@link String#compareTo}, поэтому в PostgreSQL сортировка идёт в побайтовой сортировке "C",
+     * независимо от сортировки базы (см. {@link #deviceOrder}).
+     */
+    static final Comparator<AggregatedResult> RESULT_ORDER = Comparator
+            .comparing(AggregatedResult::getDeviceName)
+            .thenComparing(AggregatedResult::getIntervalStart, Comparator.reverseOrder());
 
     private final EntityManagerFactory emf;
+    private final QueryRunner queries;
     private final PrintStream out;
     private final InputStream in;
+    private final RecentMetricsStore recentStore;
+    private final AggregationResultCache resultCache;
 
     public AggregatorService(EntityManagerFactory emf) {
         this(emf, System.out, System.in);
     }
 
+    public AggregatorService(EntityManagerFactory emf, RecentMetricsStore recentStore) {
+        this(emf, System.out, System.in, recentStore);
+    }
+
     public AggregatorService(EntityManagerFactory emf, PrintStream out, InputStream in) {
+        this(emf, out, in, null);
+    }
+
+    public AggregatorService(EntityManagerFactory emf, PrintStream out, InputStream in, RecentMetricsStore recentStore) {
+        this(emf, out, in, recentStore, null);
+    }
+
+    /**
+     * @param recentStore хранилище последних метрик или {@code null}
+     * @param resultCache кэш результатов закрытых интервалов или {@code null}
+     */
+    public AggregatorService(EntityManagerFactory emf, PrintStream out, InputStream in, RecentMetricsStore recentStore,
+                             AggregationResultCache resultCache) {
+        this(emf, null, out, in, recentStore, resultCache);
+    }
+
+    /**
+     * Создаёт сервис, работающий через JDBC без Hibernate.
+     */
+    public AggregatorService(JdbcConnectionFactory connectionFactory, PrintStream out, InputStream in) {
+        this(null, connectionFactory, out, in, null, null);
+    }
+
+    private AggregatorService(EntityManagerFactory emf, JdbcConnectionFactory connectionFactory, PrintStream out,
+                              InputStream in, RecentMetricsStore recentStore, AggregationResultCache resultCache) {
         this.emf = emf;
+        this.queries = new QueryRunner(emf, connectionFactory);
         this.out = out;
         this.in = in;
+        this.recentStore = recentStore;
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Фабрика EntityManager или {@code null}, если сервис работает через JDBC.
+     */
+    EntityManagerFactory getEntityManagerFactory() {
+        return emf;
+    }
+
+    /**
+     * Время получения первой строки из БД в миллисекундах эпохи или 0, если строк ещё не было.
+     */
+    public long getFirstRowMillis() {
+        return queries.getFirstRowMillis();
     }
 
     /**
@@ -46,207 +120,580 @@ public class AggregatorService {
     }
 
     /**
-     * Получает агрегированные данные из БД.
+     * Выполняет агрегацию в потоковом режиме: строки читаются через курсор БД
+     * и выводятся постранично по мере поступления, не накапливаясь в памяти.
+     * Страницы выводятся подряд, без ожидания Enter: курсор открыт до конца вывода.
+     */
+    public void aggregateStreaming(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                   TimeInterval interval, String deviceName) {
+        TablePrinter printer = createStreamingPrinter(sensorType);
+        streamAggregatedData(sensorType, startTime, endTime, interval, deviceName,
+                result -> printer.printRow(toCells(result)));
+        finishPrinting(printer);
+    }
+
+    /**
+     * Выводит непрерывный ряд по каждому устройству: интервалы без данных заполняются по {@code fillMode}.
+     * Строки читаются через курсор БД, как в {@link #aggregateStreaming}.
+     */
+    public void aggregateFilled(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                TimeInterval interval, String deviceName, FillMode fillMode) {
+        TablePrinter printer = createStreamingPrinter(sensorType);
+        streamFilledData(sensorType, startTime, endTime, interval, deviceName, fillMode,
+                result -> printer.printRow(toCells(result)));
+        finishPrinting(printer);
+    }
+
+    /**
+     * Выполняет агрегацию с расширенной статистикой (количество, минимум, максимум, среднее,
+     * стандартное отклонение, перцентили p50/p95/p99) и выводит результаты с пагинацией.
+     */
+    public void aggregateStatistics(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                    TimeInterval interval, String deviceName) {
+        List<AggregatedResult> results = new ArrayList<>();
+        streamStatistics(sensorType, startTime, endTime, interval, deviceName, results::add);
+        printPaged(getStatisticsHeaders(sensorType), 2, results, this::toStatisticsCells);
+    }
+
+    /**
+     * Передаёт расширенную статистику в обработчик по мере вычисления.
+     *
+     * @see StatisticsAggregator
+     */
+    public void streamStatistics(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                 TimeInterval interval, String deviceName, Consumer<AggregatedResult> sink) {
+        new StatisticsAggregator(this).streamStatistics(sensorType, startTime, endTime, interval, deviceName, sink);
+    }
+
+    /**
+     * Выводит приближённое количество различных датчиков по устройствам и итог по интервалам.
+     *
+     * @see DistinctSensorsAggregator
+     */
+    public void aggregateDistinctSensors(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                         TimeInterval interval, String deviceName) {
+        List<DistinctSensorsResult> results = new ArrayList<>();
+        new DistinctSensorsAggregator(this).streamDistinctSensors(sensorType, startTime, endTime, interval, deviceName,
+                results::add);
+        printPaged(new String[]{"DEVICE", "DATE", "DISTINCT_SENSORS"}, 2, results, result -> new String[]{
+                result.getDeviceName() != null ? result.getDeviceName() : "(все устройства)",
+                result.getIntervalStart().format(DATE_FORMAT),
+                String.valueOf(result.getDistinctSensors())});
+    }
+
+    /**
+     * Выводит для каждого интервала K устройств с наибольшим или наименьшим показателем.
+     *
+     * @see TopDevicesAggregator
+     */
+    public void aggregateTopDevices(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                    TimeInterval interval, int limit, RankingMeasure measure, boolean highest) {
+        String valueHeader = measure + "_" + TopDevicesAggregator.getRankingHeader(sensorType);
+        List<TopDeviceResult> results = new ArrayList<>();
+        new TopDevicesAggregator(this).streamTopDevices(sensorType, startTime, endTime, interval, limit, measure, highest,
+                results::add);
+        printPaged(new String[]{"DATE", "RANK", "DEVICE", valueHeader}, 3, results, result -> new String[]{
+                result.getIntervalStart().format(DATE_FORMAT),
+                String.valueOf(result.getRank()),
+                result.getDeviceName(),
+                formatValue(result.getValue())});
+    }
+
+    /**
+     * Выводит характеристики движения акселерометров: среднеквадратичный и пиковый модуль ускорения
+     * и пиковый рывок за каждый интервал.
+     *
+     * @see MotionAggregator
+     */
+    public void aggregateMotion(LocalDateTime startTime, LocalDateTime endTime, TimeInterval interval, String deviceName) {
+        List<AggregatedResult> results = new ArrayList<>();
+        new MotionAggregator(this).streamMotion(startTime, endTime, interval, deviceName, results::add);
+        printPaged(MOTION_HEADERS, 2, results, AggregatorService::toCells);
+    }
+
+    /**
+     * Выводит тепловую карту координат: количество точек и их центр по ячейкам сетки за каждый интервал.
+     *
+     * @see GridAggregator
+     */
+    public void aggregateGrid(LocalDateTime startTime, LocalDateTime endTime, TimeInterval interval,
+                              double cellDegrees, BoundingBox boundingBox, String deviceName) {
+        List<GridCellResult> cells = new GridAggregator(this).fetchGrid(startTime, endTime, interval, cellDegrees,
+                boundingBox, deviceName);
+        printPaged(new String[]{"DATE", "CELL_LAT", "CELL_LON", "COUNT", "CENTROID_LAT", "CENTROID_LON"}, 1, cells,
+                cell -> new String[]{
+                        cell.getIntervalStart().format(DATE_FORMAT),
+                        String.format(Locale.US, "%.2f", cell.getCellLatitude()),
+                        String.format(Locale.US, "%.2f", cell.getCellLongitude()),
+                        String.valueOf(cell.getCount()),
+                        String.format(Locale.US, "%.5f", cell.getCentroidLatitude()),
+                        String.format(Locale.US, "%.5f", cell.getCentroidLongitude())});
+    }
+
+    /**
+     * Выгружает результаты агрегации в файл, записывая строки по мере чтения через курсор БД.
+     *
+     * @return количество записанных строк
+     */
+    public long export(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                       TimeInterval interval, String deviceName, ExportFormat format, Path path) {
+        return export(sensorType, startTime, endTime, interval, deviceName, null, format, path);
+    }
+
+    /**
+     * Выгружает результаты агрегации в файл; если задан {@code fillMode}, выгружается непрерывный ряд.
+     *
+     * @return количество записанных строк
+     */
+    public long export(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                       TimeInterval interval, String deviceName, FillMode fillMode, ExportFormat format, Path path) {
+        try (ResultExporter exporter = ResultExporter.open(format, path, getValueHeaders(sensorType))) {
+            if (fillMode != null) {
+                streamFilledData(sensorType, startTime, endTime, interval, deviceName, fillMode, exporter);
+            } else {
+                streamAggregatedData(sensorType, startTime, endTime, interval, deviceName, exporter);
+            }
+            return exporter.getRowCount();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to export results to " + path, e);
+        }
+    }
+
+    /**
+     * Получает агрегированные данные.
+     * <p>
+     * Если задано хранилище последних метрик, окна внутри него считаются в памяти без обращения к БД,
+     * а окна на границе хранилища объединяются из результатов БД и хранилища.
+     * Если задан кэш результатов, закрытые интервалы берутся из него и пересчитывается только открытый хвост.
      */
     public List<AggregatedResult> fetchAggregatedData(SensorType sensorType, LocalDateTime startTime,
                                                        LocalDateTime endTime, TimeInterval interval, String deviceName) {
-        try (EntityManager em = emf.createEntityManager()) {
-            String tableName = getTableName(sensorType);
-            boolean isH2 = isH2Database(em);
-            String truncateFunction = getTruncateFunction(interval, isH2);
-
-            StringBuilder sql = new StringBuilder();
-            sql.append("SELECT d.device_name, ").append(truncateFunction).append(" as interval_start, ");
-            sql.append(getAvgColumns(sensorType));
-            sql.append(" FROM ").append(tableName).append(" m ");
-            sql.append("JOIN sensor_devices d ON m.sensor_id = d.sensor_id ");
-            sql.append("WHERE m.measured_at >= :startTime AND m.measured_at <= :endTime ");
-
-            if (deviceName != null && !deviceName.isEmpty()) {
-                sql.append("AND d.device_name = :deviceName ");
-            }
+        if (resultCache != null) {
+            return fetchCached(sensorType, startTime, endTime, interval, deviceName);
+        }
+        return collectRange(sensorType, startTime, endTime, true, interval, deviceName);
+    }
 
-            sql.append("GROUP BY d.device_name, ").append(truncateFunction).append(" ");
-            sql.append("ORDER BY d.device_name ASC, interval_start DESC");
+    /**
+     * Передаёт агрегированные данные в обработчик по мере чтения, в порядке устройства и убывания начала интервала.
+     */
+    public void streamAggregatedData(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                     TimeInterval interval, String deviceName, Consumer<AggregatedResult> sink) {
+        streamRange(sensorType, startTime, endTime, true, interval, deviceName, sink);
+    }
 
-            Query query = em.createNativeQuery(sql.toString());
-            query.setParameter("startTime", startTime);
-            query.setParameter("endTime", endTime);
+    /**
+     * Передаёт в обработчик непрерывный ряд по каждому устройству, у которого есть данные в диапазоне:
+     * все интервалы от конца диапазона к началу, пропуски заполняются по {@code fillMode}
+     * и помечаются {@link AggregatedResult#isFilled()}.
+     */
+    public void streamFilledData(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                 TimeInterval interval, String deviceName, FillMode fillMode,
+                                 Consumer<AggregatedResult> sink) {
+        GapFiller filler = new GapFiller(startTime, endTime, interval, fillMode, sink);
+        streamAggregatedData(sensorType, startTime, endTime, interval, deviceName, filler);
+        filler.finish();
+    }
 
-            if (deviceName != null && !deviceName.isEmpty()) {
-                query.setParameter("deviceName", deviceName);
+    /**
+     * Получает агрегированные данные из БД в столбцовом виде, в порядке устройства и убывания начала интервала.
+     * <p>
+     * Строки результата читаются из курсора сразу в примитивные массивы, без промежуточных объектов
+     * на строку; хранилище последних метрик и кэш результатов не используются.
+     */
+    public AggregatedBatch fetchAggregatedBatch(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                                TimeInterval interval, String deviceName) {
+        boolean filterByDevice = deviceName != null && !deviceName.isEmpty();
+        String sql = buildAggregationSql(sensorType, interval, true, filterByDevice);
+        List<Object> parameters = rangeParameters(startTime, endTime, deviceName);
+        int valueColumns = getValueColumns(sensorType).length;
+        AggregatedBatch batch = new AggregatedBatch(valueColumns);
+        queries.doWithConnection(connection -> {
+            try (PreparedStatement statement = queries.prepareQuery(connection, sql, parameters);
+                 ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                queries.markFirstRow();
+                do {
+                    int row = batch.addRow(rs.getString(1), interval.bucketStartEpochSecond(rs.getLong(2)));
+                    for (int column = 0; column < valueColumns; column++) {
+                        double value = rs.getDouble(column + 3);
+                        if (rs.wasNull()) {
+                            batch.setNull(column, row);
+                        } else {
+                            batch.setValue(column, row, value);
+                        }
+                    }
+                } while (rs.next());
             }
+        });
+        return batch;
+    }
 
-            List<Object[]> rows = query.getResultList();
+    /**
+     * Получает данные через кэш: интервалы, закончившиеся до контрольной точки потребителя, вычисляются
+     * один раз, а при повторном запросе досчитывается только диапазон после ранее закрытой границы.
+     */
+    private List<AggregatedResult> fetchCached(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                               TimeInterval interval, String deviceName) {
+        LocalDateTime checkpoint = getConsumerCheckpoint();
+        AggregationResultCache.Key key = new AggregationResultCache.Key(sensorType, startTime, endTime, interval, deviceName);
+        AggregationResultCache.Entry cached = resultCache.get(key);
+        if (cached != null && cached.complete()) {
+            return new ArrayList<>(cached.results());
+        }
 
-            List<AggregatedResult> results = new ArrayList<>();
-            for (Object[] row : rows) {
-                String device = (String) row[0];
-                LocalDateTime intervalStart = convertToLocalDateTime(row[1]);
-                Double[] values = extractValues(sensorType, row);
-                results.add(new AggregatedResult(device, intervalStart, values));
-            }
+        LocalDateTime closedUntil = checkpoint != null
+                ? interval.truncate(checkpoint.minus(MetricsRewriteMarker.ALLOWED_LATENESS)) : null;
 
+        if (closedUntil == null || !closedUntil.isAfter(startTime)) {
+            return collectRange(sensorType, startTime, endTime, true, interval, deviceName);
+        }
+
+        // закрытая часть из кэша не пересчитывается, запрашивается только диапазон после её границы
+        LocalDateTime tailStart = cached != null ? cached.closedUntil() : startTime;
+        List<AggregatedResult> tail = collectRange(sensorType, tailStart, endTime, true, interval, deviceName);
+        List<AggregatedResult> results = cached != null ? AggregationResultCache.merge(cached.results(), tail) : tail;
+        if (endTime.isBefore(closedUntil)) {
+            resultCache.put(key, new AggregationResultCache.Entry(results, closedUntil, true));
             return results;
         }
+
+        List<AggregatedResult> newlyClosed = new ArrayList<>();
+        for (AggregatedResult result : tail) {
+            if (result.getIntervalStart().isBefore(closedUntil)) {
+                newlyClosed.add(result);
+            }
+        }
+        if (cached == null) {
+            resultCache.put(key, new AggregationResultCache.Entry(newlyClosed, closedUntil, false));
+        } else if (closedUntil.isAfter(cached.closedUntil())) {
+            resultCache.put(key, cached.extend(newlyClosed, closedUntil));
+        }
+        return results;
     }
 
     /**
-     * Выводит результаты с пагинацией.
+     * Возвращает время последней обработки потребителя или {@code null}, если он ещё не запускался.
+     * Тем же запросом читает отметку перезаписи метрик и очищает кэш результатов, если она изменилась.
      */
-    private void printResults(SensorType sensorType, List<AggregatedResult> results) {
-        if (results.isEmpty()) {
-            out.println("Нет данных за указанный период.");
-            return;
-        }
+    private LocalDateTime getConsumerCheckpoint() {
+        Map<String, LocalDateTime> state = new HashMap<>();
+        streamQuery("SELECT component_name, last_processed_time FROM processing_state WHERE component_name IN (?, ?)",
+                List.of(ConsumerService.COMPONENT_NAME, MetricsRewriteMarker.COMPONENT_NAME),
+                row -> state.put((String) row[0], toLocalDateTime(row[1])));
+        resultCache.invalidateIfRewritten(state.get(MetricsRewriteMarker.COMPONENT_NAME));
+        return state.get(ConsumerService.COMPONENT_NAME);
+    }
 
-        String[] headers = getHeaders(sensorType);
-        int[] columnWidths = calculateColumnWidths(sensorType, results, headers);
+    /**
+     * Возвращает отметку перезаписи метрик или {@code null}, если метрики не перезаписывались.
+     */
+    private LocalDateTime getRewriteMarker() {
+        List<LocalDateTime> marker = new ArrayList<>(1);
+        streamQuery("SELECT last_processed_time FROM processing_state WHERE component_name = ?",
+                List.of(MetricsRewriteMarker.COMPONENT_NAME), row -> marker.add(toLocalDateTime(row[0])));
+        return marker.isEmpty() ? null : marker.get(0);
+    }
 
-        Scanner scanner = new Scanner(in);
-        int totalRows = results.size();
-        int displayedRows = 0;
+    private List<AggregatedResult> collectRange(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                                boolean endInclusive, TimeInterval interval, String deviceName) {
+        List<AggregatedResult> results = new ArrayList<>();
+        streamRange(sensorType, startTime, endTime, endInclusive, interval, deviceName, results::add);
+        return results;
+    }
 
-        while (displayedRows < totalRows) {
-            if (displayedRows % PAGE_SIZE == 0) {
-                printHeader(headers, columnWidths);
+    /**
+     * Передаёт в обработчик агрегаты диапазона, используя хранилище последних метрик, если оно его покрывает.
+     *
+     * @param endInclusive включать ли в выборку правую границу диапазона
+     */
+    private void streamRange(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime, boolean endInclusive,
+                             TimeInterval interval, String deviceName, Consumer<AggregatedResult> sink) {
+        if (recentStore != null) {
+            recentStore.invalidateIfRewritten(getRewriteMarker());
+        }
+        // граница покрытия может сдвинуться между её чтением и обходом — тогда она читается заново
+        while (recentStore != null) {
+            List<AggregatedResult> recent = aggregateRecent(sensorType, startTime, endTime, endInclusive, interval, deviceName);
+            if (recent != null) {
+                recent.forEach(sink);
+                return;
             }
-
-            int pageEnd = Math.min(displayedRows + PAGE_SIZE, totalRows);
-            for (int i = displayedRows; i < pageEnd; i++) {
-                printRow(sensorType, results.get(i), columnWidths);
+            LocalDateTime boundary = interval.ceil(recentStore.getCoveredFrom(sensorType));
+            if (!endTime.isAfter(boundary) && !(endInclusive && endTime.equals(boundary))) {
+                break;
             }
-            displayedRows = pageEnd;
-
-            printSeparator(columnWidths);
-            if (displayedRows >= totalRows) {
-                out.println("Выведено " + displayedRows + " строк из " + totalRows + ". Конец таблицы============");
-            } else {
-                out.println("Выведено " + displayedRows + " строк из " + totalRows + ". Нажмите Enter для продолжения...");
-                scanner.nextLine();
+            recent = aggregateRecent(sensorType, boundary, endTime, endInclusive, interval, deviceName);
+            if (recent != null) {
+                SortedMerge merge = new SortedMerge(recent, sink);
+                streamDatabase(sensorType, startTime, boundary, false, interval, deviceName, merge);
+                merge.finish();
+                return;
             }
         }
+        streamDatabase(sensorType, startTime, endTime, endInclusive, interval, deviceName, sink);
+    }
+
+    /**
+     * Получает агрегированные данные из БД за диапазон, минуя хранилище последних метрик.
+     *
+     * @param endInclusive включать ли в выборку правую границу диапазона
+     */
+    List<AggregatedResult> fetchFromDatabase(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                             boolean endInclusive, TimeInterval interval, String deviceName) {
+        List<AggregatedResult> results = new ArrayList<>();
+        streamDatabase(sensorType, startTime, endTime, endInclusive, interval, deviceName, results::add);
+        return results;
+    }
+
+    /**
+     * Выполняет агрегирующий запрос к БД, читая результат через курсор.
+     *
+     * @param endInclusive включать ли в выборку правую границу диапазона
+     */
+    private void streamDatabase(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                boolean endInclusive, TimeInterval interval, String deviceName,
+                                Consumer<AggregatedResult> sink) {
+        boolean filterByDevice = deviceName != null && !deviceName.isEmpty();
+        streamQuery(buildAggregationSql(sensorType, interval, endInclusive, filterByDevice),
+                rangeParameters(startTime, endTime, deviceName), row -> sink.accept(toResult(sensorType, interval, row)));
+    }
+
+    /**
+     * Преобразует строку агрегирующего запроса: устройство, номер интервала, средние значения.
+     */
+    static AggregatedResult toResult(SensorType sensorType, TimeInterval interval, Object[] row) {
+        return new AggregatedResult((String) row[0], interval.bucketStart(((Number) row[1]).longValue()),
+                extractValues(sensorType, row));
+    }
+
+    /**
+     * Выполняет запрос и передаёт строки результата в обработчик по мере чтения через курсор.
+     *
+     * @see QueryRunner#streamQuery
+     */
+    void streamQuery(String sql, List<Object> parameters, Consumer<Object[]> rowHandler) {
+        queries.streamQuery(sql, parameters, rowHandler);
+    }
+
+    /**
+     * Выражение сортировки по имени устройства, согласованное с {@link #RESULT_ORDER}.
+     */
+    String deviceOrder(String column) {
+        return queries.deviceOrder(column);
+    }
+
+    static List<Object> rangeParameters(LocalDateTime startTime, LocalDateTime endTime, String deviceName) {
+        List<Object> parameters = new ArrayList<>(List.of(startTime, endTime));
+        if (deviceName != null && !deviceName.isEmpty()) {
+            parameters.add(deviceName);
+        }
+        return parameters;
+    }
+
+    private String buildAggregationSql(SensorType sensorType, TimeInterval interval,
+                                       boolean endInclusive, boolean filterByDevice) {
+        String bucketIndex = interval.bucketIndexSql("m.measured_at");
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT d.device_name, ").append(bucketIndex).append(" as bucket, ");
+        sql.append(getAvgColumns(sensorType));
+        appendFromAndFilter(sql, sensorType, endInclusive, filterByDevice);
+        sql.append("GROUP BY d.device_name, ").append(bucketIndex).append(" ");
+        sql.append("ORDER BY ").append(deviceOrder("d.device_name")).append(", bucket DESC");
+        return sql.toString();
     }
 
-    private void printHeader(String[] headers, int[] columnWidths) {
-        printSeparator(columnWidths);
-        StringBuilder headerLine = new StringBuilder("|");
-        for (int i = 0; i < headers.length; i++) {
-            headerLine.append(" ").append(padRight(headers[i], columnWidths[i])).append(" |");
+    static void appendFromAndFilter(StringBuilder sql, SensorType sensorType, boolean endInclusive, boolean filterByDevice) {
+        sql.append(" FROM ").append(sensorType.getTableName()).append(" m ");
+        sql.append("JOIN sensor_devices d ON m.sensor_id = d.sensor_id ");
+        sql.append("WHERE m.measured_at >= ? AND m.measured_at ").append(endInclusive ? "<=" : "<").append(" ? ");
+
+        if (filterByDevice) {
+            sql.append("AND d.device_name = ? ");
         }
-        out.println(headerLine);
-        printSeparator(columnWidths);
     }
 
-    private void printSeparator(int[] columnWidths) {
-        StringBuilder separator = new StringBuilder("+");
-        for (int width : columnWidths) {
-            separator.append("-".repeat(width + 2)).append("+");
+    /**
+     * Агрегирует данные из хранилища последних метрик за диапазон от startTime до endTime.
+     *
+     * @return результаты или {@code null}, если хранилище не покрывает начало диапазона
+     */
+    private List<AggregatedResult> aggregateRecent(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                                   boolean endInclusive, TimeInterval interval, String deviceName) {
+        int columnCount = RecentMetricsStore.getColumnCount(sensorType);
+        Map<String, Map<LocalDateTime, double[]>> buckets = new HashMap<>();
+
+        LocalDateTime scanEnd = endInclusive ? endTime.plusNanos(1_000_000) : endTime;
+        boolean covered = recentStore.scan(sensorType, startTime, scanEnd, deviceName, (device, epochMillis, values) -> {
+            LocalDateTime measuredAt = LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000),
+                    (int) Math.floorMod(epochMillis, 1000) * 1_000_000, ZoneOffset.UTC);
+            // первые columnCount элементов — суммы, следующие — количества
+            double[] acc = buckets.computeIfAbsent(device, d -> new HashMap<>())
+                    .computeIfAbsent(interval.truncate(measuredAt), t -> new double[columnCount * 2]);
+            for (int i = 0; i < columnCount; i++) {
+                if (!Double.isNaN(values[i])) {
+                    acc[i] += values[i];
+                    acc[columnCount + i]++;
+                }
+            }
+        });
+        if (!covered) {
+            return null;
         }
-        out.println(separator);
+
+        List<AggregatedResult> results = new ArrayList<>();
+        buckets.forEach((device, byInterval) -> byInterval.forEach((intervalStart, acc) -> {
+            Double[] averages = new Double[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                averages[i] = acc[columnCount + i] > 0 ? acc[i] / acc[columnCount + i] : null;
+            }
+            results.add(new AggregatedResult(device, intervalStart, averages));
+        }));
+        results.sort(RESULT_ORDER);
+        return results;
     }
 
-    private void printRow(SensorType sensorType, AggregatedResult result, int[] columnWidths) {
-        StringBuilder line = new StringBuilder("|");
-        line.append(" ").append(padRight(result.getDeviceName(), columnWidths[0])).append(" |");
-        line.append(" ").append(padRight(result.getIntervalStart().format(DATE_FORMAT), columnWidths[1])).append(" |");
+    /**
+     * Выводит результаты с пагинацией.
+     */
+    public void printResults(SensorType sensorType, List<AggregatedResult> results) {
+        printPaged(getHeaders(sensorType), 2, results, AggregatorService::toCells);
+    }
 
-        Double[] values = result.getValues();
-        for (int i = 0; i < values.length; i++) {
-            String valueStr = values[i] != null ? String.format(Locale.US, "%.2f", values[i]) : "N/A";
-            line.append(" ").append(padLeft(valueStr, columnWidths[2 + i])).append(" |");
+    /**
+     * Выводит сводку по всем типам датчиков: по колонке на каждый показатель каждого типа.
+     */
+    public void printOverview(List<DeviceOverview> overviews) {
+        List<String> headers = new ArrayList<>(List.of("DEVICE", "DATE"));
+        for (SensorType sensorType : SensorType.values()) {
+            headers.addAll(List.of(getValueHeaders(sensorType)));
         }
-        out.println(line);
+        printPaged(headers.toArray(new String[0]), 2, overviews, overview -> {
+            List<String> cells = new ArrayList<>(headers.size());
+            cells.add(overview.getDeviceName());
+            cells.add(overview.getIntervalStart().format(DATE_FORMAT));
+            for (SensorType sensorType : SensorType.values()) {
+                Double[] values = overview.getValues(sensorType);
+                for (int i = 0; i < getValueColumns(sensorType).length; i++) {
+                    cells.add(values != null ? formatValue(values[i]) : "-");
+                }
+            }
+            return cells.toArray(new String[0]);
+        });
     }
 
-    private String[] getHeaders(SensorType sensorType) {
-        return switch (sensorType) {
-            case LIGHT -> new String[]{"DEVICE", "DATE", "LIGHT"};
-            case BAROMETER -> new String[]{"DEVICE", "DATE", "AIR_PRESSURE"};
-            case LOCATION -> new String[]{"DEVICE", "DATE", "LATITUDE", "LONGITUDE"};
-            case ACCELEROMETER -> new String[]{"DEVICE", "DATE", "X", "Y", "Z"};
-        };
+    /**
+     * Выводит собранные строки, ожидая Enter между страницами. Запрос к этому моменту уже завершён,
+     * поэтому ожидание пользователя не держит транзакцию и курсор БД.
+     */
+    private <T> void printPaged(String[] headers, int leftAlignedColumns, List<T> rows, Function<T, String[]> toCells) {
+        TablePrinter printer = new TablePrinter(out, new Scanner(in), headers, leftAlignedColumns, PAGE_SIZE);
+        printer.setTotalRows(rows.size());
+        for (T row : rows) {
+            printer.printRow(toCells.apply(row));
+        }
+        finishPrinting(printer);
     }
 
-    private int[] calculateColumnWidths(SensorType sensorType, List<AggregatedResult> results, String[] headers) {
-        int[] widths = new int[headers.length];
+    private TablePrinter createStreamingPrinter(SensorType sensorType) {
+        return new TablePrinter(out, getHeaders(sensorType), 2, PAGE_SIZE);
+    }
 
-        for (int i = 0; i < headers.length; i++) {
-            widths[i] = headers[i].length();
+    private void finishPrinting(TablePrinter printer) {
+        if (printer.getRowCount() == 0) {
+            out.println("Нет данных за указанный период.");
+        } else {
+            printer.finish();
         }
+    }
 
-        for (AggregatedResult result : results) {
-            widths[0] = Math.max(widths[0], result.getDeviceName().length());
-            widths[1] = Math.max(widths[1], 19);
+    /**
+     * Ячейки строки таблицы: устройство, начало интервала и значения с двумя знаками после запятой.
+     */
+    static String[] toCells(AggregatedResult result) {
+        Double[] values = result.getValues();
+        String[] cells = new String[2 + values.length];
+        cells[0] = result.getDeviceName();
+        cells[1] = result.getIntervalStart().format(DATE_FORMAT);
+        for (int i = 0; i < values.length; i++) {
+            cells[2 + i] = formatValue(values[i]);
+        }
+        return cells;
+    }
 
-            Double[] values = result.getValues();
-            for (int i = 0; i < values.length; i++) {
-                String valueStr = values[i] != null ? String.format(Locale.US, "%.2f", values[i]) : "N/A";
-                widths[2 + i] = Math.max(widths[2 + i], valueStr.length());
+    private String[] getStatisticsHeaders(SensorType sensorType) {
+        String[] headers = getHeaders(sensorType);
+        List<String> result = new ArrayList<>(List.of(headers[0], headers[1]));
+        for (int i = 2; i < headers.length; i++) {
+            for (String statistic : STATISTIC_NAMES) {
+                result.add(headers[i] + "_" + statistic);
             }
         }
+        return result.toArray(new String[0]);
+    }
 
-        return widths;
+    /**
+     * Количество выводится для каждого показателя: значения NULL пропускаются, поэтому у разных
+     * показателей одного интервала оно может различаться.
+     */
+    private String[] toStatisticsCells(AggregatedResult result) {
+        ValueStatistics[] statistics = result.getStatistics();
+        String[] cells = new String[2 + statistics.length * STATISTIC_NAMES.length];
+        cells[0] = result.getDeviceName();
+        cells[1] = result.getIntervalStart().format(DATE_FORMAT);
+        int cell = 2;
+        for (ValueStatistics s : statistics) {
+            cells[cell++] = String.valueOf(s.getCount());
+            for (Double value : new Double[]{s.getMin(), s.getMax(), s.getMean(), s.getStdDev(),
+                    s.getPercentile(50), s.getPercentile(95), s.getPercentile(99)}) {
+                cells[cell++] = formatValue(value);
+            }
+        }
+        return cells;
     }
 
-    private String getTableName(SensorType sensorType) {
-        return switch (sensorType) {
-            case LIGHT -> "metric_light";
-            case BAROMETER -> "metric_barometer";
-            case LOCATION -> "metric_location";
-            case ACCELEROMETER -> "metric_accelerometer";
-        };
+    private static String formatValue(Double value) {
+        return value != null ? String.format(Locale.US, "%.2f", value) : "N/A";
     }
 
-    private String getAvgColumns(SensorType sensorType) {
+    private String[] getHeaders(SensorType sensorType) {
         return switch (sensorType) {
-            case LIGHT -> "AVG(m.light_value)";
-            case BAROMETER -> "AVG(m.air_pressure)";
-            case LOCATION -> "AVG(m.latitude), AVG(m.longitude)";
-            case ACCELEROMETER -> "AVG(m.val_x), AVG(m.val_y), AVG(m.val_z)";
+            case LIGHT -> new String[]{"DEVICE", "DATE", "LIGHT"};
+            case BAROMETER -> new String[]{"DEVICE", "DATE", "AIR_PRESSURE"};
+            case LOCATION -> new String[]{"DEVICE", "DATE", "LATITUDE", "LONGITUDE"};
+            case ACCELEROMETER -> new String[]{"DEVICE", "DATE", "X", "Y", "Z"};
         };
     }
 
-    private String getTruncateFunction(TimeInterval interval, boolean isH2) {
-        if (isH2) {
-            return switch (interval) {
-                case MINUTE -> "PARSEDATETIME(FORMATDATETIME(m.measured_at, 'yyyy-MM-dd HH:mm:00'), 'yyyy-MM-dd HH:mm:ss')";
-                case HOUR -> "PARSEDATETIME(FORMATDATETIME(m.measured_at, 'yyyy-MM-dd HH:00:00'), 'yyyy-MM-dd HH:mm:ss')";
-                case DAY -> "PARSEDATETIME(FORMATDATETIME(m.measured_at, 'yyyy-MM-dd 00:00:00'), 'yyyy-MM-dd HH:mm:ss')";
-                case WEEK -> "DATEADD('DAY', -(DAY_OF_WEEK(m.measured_at) - 1), PARSEDATETIME(FORMATDATETIME(m.measured_at, 'yyyy-MM-dd 00:00:00'), 'yyyy-MM-dd HH:mm:ss'))";
-            };
-        } else {
-            return switch (interval) {
-                case MINUTE -> "DATE_TRUNC('minute', m.measured_at)";
-                case HOUR -> "DATE_TRUNC('hour', m.measured_at)";
-                case DAY -> "DATE_TRUNC('day', m.measured_at)";
-                case WEEK -> "DATE_TRUNC('week', m.measured_at)";
-            };
-        }
+    /**
+     * Названия показателей в порядке значений {@link AggregatedResult#getValues()}.
+     */
+    String[] getValueHeaders(SensorType sensorType) {
+        String[] headers = getHeaders(sensorType);
+        return Arrays.copyOfRange(headers, 2, headers.length);
     }
 
-    private boolean isH2Database(EntityManager em) {
-        try {
-            String productName = em.unwrap(Session.class)
-                    .doReturningWork(connection -> connection.getMetaData().getDatabaseProductName());
-            return "H2".equalsIgnoreCase(productName);
-        } catch (Exception e) {
-            return false;
-        }
+    static String[] getValueColumns(SensorType sensorType) {
+        return switch (sensorType) {
+            case LIGHT -> new String[]{"m.light_value"};
+            case BAROMETER -> new String[]{"m.air_pressure"};
+            case LOCATION -> new String[]{"m.latitude", "m.longitude"};
+            case ACCELEROMETER -> new String[]{"m.val_x", "m.val_y", "m.val_z"};
+        };
     }
 
-    private LocalDateTime convertToLocalDateTime(Object value) {
-        if (value instanceof LocalDateTime) {
-            return (LocalDateTime) value;
-        } else if (value instanceof java.sql.Timestamp) {
-            return ((java.sql.Timestamp) value).toLocalDateTime();
-        } else if (value instanceof java.time.OffsetDateTime) {
-            return ((java.time.OffsetDateTime) value).toLocalDateTime();
+    private String getAvgColumns(SensorType sensorType) {
+        StringJoiner columns = new StringJoiner(", ");
+        for (String column : getValueColumns(sensorType)) {
+            columns.add("AVG(" + column + ")");
         }
-        throw new IllegalArgumentException("Cannot convert to LocalDateTime: " + value.getClass());
+        return columns.toString();
     }
 
-    private Double[] extractValues(SensorType sensorType, Object[] row) {
+    private static Double[] extractValues(SensorType sensorType, Object[] row) {
         return switch (sensorType) {
             case LIGHT, BAROMETER -> new Double[]{toDouble(row[2])};
             case LOCATION -> new Double[]{toDouble(row[2]), toDouble(row[3])};
@@ -254,20 +701,47 @@ public class AggregatorService {
         };
     }
 
-    private Double toDouble(Object value) {
+    static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime localDateTime) {
+            return localDateTime;
+        }
+        return ((Timestamp) value).toLocalDateTime();
+    }
+
+    static Double toDouble(Object value) {
         if (value == null) return null;
         if (value instanceof Double) return (Double) value;
         if (value instanceof Number) return ((Number) value).doubleValue();
         return Double.parseDouble(value.toString());
     }
 
-    private String padRight(String s, int length) {
-        if (s.length() >= length) return s;
-        return s + " ".repeat(length - s.length());
-    }
+    /**
+     * Сливает упорядоченный поток результатов БД с упорядоченным списком результатов из хранилища.
+     */
+    private static final class SortedMerge implements Consumer<AggregatedResult> {
+        private final List<AggregatedResult> recent;
+        private final Consumer<AggregatedResult> sink;
+        private int next;
+
+        private SortedMerge(List<AggregatedResult> recent, Consumer<AggregatedResult> sink) {
+            this.recent = recent;
+            this.sink = sink;
+        }
+
+        @Override
+        public void accept(AggregatedResult result) {
+            while (next < recent.size() && RESULT_ORDER.compare(recent.get(next), result) < 0) {
+                sink.accept(recent.get(next++));
+            }
+            sink.accept(result);
+        }
 
-    private String padLeft(String s, int length) {
-        if (s.length() >= length) return s;
-        return " ".repeat(length - s.length()) + s;
+        private void finish() {
+            while (next < recent.size()) {
+                sink.accept(recent.get(next++));
+            }
+        }
     }
-}
\ No newline at end of file
+
+
+}
@@ -0,0 +1,83 @@
+package ru.teamscore.sensors.aggregator;
+
+import ru.teamscore.sensors.common.SensorType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сводная агрегация всех типов датчиков за один запрос.
+ * <p>
+ * Запросы к таблицам метрик разных типов выполняются одновременно, каждый через собственное
+ * соединение с БД, а результаты объединяются по устройству и интервалу.
+ */
+public class AllTypesAggregator implements AutoCloseable {
+    static final Comparator<DeviceOverview> OVERVIEW_ORDER = Comparator
+            .comparing(DeviceOverview::getDeviceName)
+            .thenComparing(DeviceOverview::getIntervalStart, Comparator.reverseOrder());
+
+    private final AggregatorService aggregatorService;
+    private final ExecutorService executor;
+
+    public AllTypesAggregator(AggregatorService aggregatorService) {
+        this.aggregatorService = aggregatorService;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(SensorType.values().length, runnable -> {
+            Thread thread = new Thread(runnable, "AggregatorType-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Получает сводку по устройствам в порядке устройства и убывания начала интервала.
+     */
+    public List<DeviceOverview> fetchOverview(LocalDateTime startTime, LocalDateTime endTime,
+                                              TimeInterval interval, String deviceName) {
+        Map<SensorType, Future<List<AggregatedResult>>> futures = new EnumMap<>(SensorType.class);
+        for (SensorType sensorType : SensorType.values()) {
+            futures.put(sensorType, executor.submit(() -> aggregatorService.fetchAggregatedData(
+                    sensorType, startTime, endTime, interval, deviceName)));
+        }
+
+        Map<OverviewKey, DeviceOverview> overviews = new HashMap<>();
+        try {
+            for (Map.Entry<SensorType, Future<List<AggregatedResult>>> entry : futures.entrySet()) {
+                for (AggregatedResult result : entry.getValue().get()) {
+                    overviews.computeIfAbsent(new OverviewKey(result.getDeviceName(), result.getIntervalStart()),
+                                    key -> new DeviceOverview(key.deviceName(), key.intervalStart()))
+                            .put(entry.getKey(), result.getValues());
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.values().forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Overview aggregation interrupted", e);
+        } catch (ExecutionException e) {
+            futures.values().forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Sensor type aggregation failed: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        List<DeviceOverview> results = new ArrayList<>(overviews.values());
+        results.sort(OVERVIEW_ORDER);
+        return results;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private record OverviewKey(String deviceName, LocalDateTime intervalStart) {
+    }
+}
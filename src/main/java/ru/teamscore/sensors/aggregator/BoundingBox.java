@@ -0,0 +1,34 @@
+package ru.teamscore.sensors.aggregator;
+
+/**
+ * Прямоугольная область на карте, границы включаются.
+ */
+public record BoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+
+    public BoundingBox {
+        if (minLatitude < -90 || maxLatitude > 90 || minLongitude < -180 || maxLongitude > 180) {
+            throw new IllegalArgumentException("Bounding box is out of range");
+        }
+        if (minLatitude > maxLatitude || minLongitude > maxLongitude) {
+            throw new IllegalArgumentException("Bounding box minimum must not exceed maximum");
+        }
+    }
+
+    /**
+     * Разбирает область из строки вида "минШирота,минДолгота,максШирота,максДолгота".
+     *
+     * @throws IllegalArgumentException если строка имеет неверный формат
+     */
+    public static BoundingBox parse(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Bounding box must have 4 comma-separated numbers: " + value);
+        }
+        try {
+            return new BoundingBox(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                    Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid bounding box: " + value);
+        }
+    }
+}
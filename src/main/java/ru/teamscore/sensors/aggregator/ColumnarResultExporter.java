@@ -0,0 +1,111 @@
+package ru.teamscore.sensors.aggregator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Экспорт в двоичный колоночный формат. Все числа записываются в порядке little-endian.
+ * <pre>
+ * заголовок: "SAGC", int версия, int число показателей, названия показателей (short длина + UTF-8)
+ * блок:      int число строк N &gt; 0,
+ *            int число новых устройств, их названия (short длина + UTF-8) — словарь пополняется по порядку,
+ *            int[N] номера устройств в словаре,
+ *            long[N] начала интервалов в секундах эпохи (UTC),
+ *            double[N] для каждого показателя (NaN — нет значения)
+ * конец:     int 0
+ * </pre>
+ * Строки накапливаются блоками по {@value #BLOCK_ROWS}, так что каждая колонка блока лежит в файле непрерывно.
+ */
+public class ColumnarResultExporter extends ResultExporter {
+    static final int MAGIC = 0x43474153; // "SAGC" в little-endian
+    static final int VERSION = 1;
+    static final int BLOCK_ROWS = 4096;
+
+    private final Map<String, Integer> deviceIds = new HashMap<>();
+    private final List<String> newDevices = new ArrayList<>();
+    private final int[] devices = new int[BLOCK_ROWS];
+    private final long[] times = new long[BLOCK_ROWS];
+    private final double[][] values;
+    private int blockRows;
+
+    public ColumnarResultExporter(Path path, String[] valueColumns) throws IOException {
+        super(path, valueColumns);
+        this.values = new double[valueColumns.length][BLOCK_ROWS];
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(valueColumns.length);
+        for (String column : valueColumns) {
+            writeString(column);
+        }
+    }
+
+    @Override
+    protected void writeRow(AggregatedResult result) throws IOException {
+        Integer deviceId = deviceIds.get(result.getDeviceName());
+        if (deviceId == null) {
+            deviceId = deviceIds.size();
+            deviceIds.put(result.getDeviceName(), deviceId);
+            newDevices.add(result.getDeviceName());
+        }
+        devices[blockRows] = deviceId;
+        times[blockRows] = result.getIntervalStart().toEpochSecond(ZoneOffset.UTC);
+        Double[] rowValues = result.getValues();
+        for (int i = 0; i < values.length; i++) {
+            Double value = i < rowValues.length ? rowValues[i] : null;
+            values[i][blockRows] = value != null ? value : Double.NaN;
+        }
+        if (++blockRows == BLOCK_ROWS) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        if (blockRows > 0) {
+            writeBlock();
+        }
+        ensureCapacity(Integer.BYTES);
+        buffer.putInt(0);
+    }
+
+    private void writeBlock() throws IOException {
+        ensureCapacity(2 * Integer.BYTES);
+        buffer.putInt(blockRows).putInt(newDevices.size());
+        for (String device : newDevices) {
+            writeString(device);
+        }
+        newDevices.clear();
+
+        for (int i = 0; i < blockRows; i++) {
+            ensureCapacity(Integer.BYTES);
+            buffer.putInt(devices[i]);
+        }
+        for (int i = 0; i < blockRows; i++) {
+            ensureCapacity(Long.BYTES);
+            buffer.putLong(times[i]);
+        }
+        for (double[] column : values) {
+            for (int i = 0; i < blockRows; i++) {
+                ensureCapacity(Double.BYTES);
+                buffer.putDouble(column[i]);
+            }
+            Arrays.fill(column, 0, blockRows, 0);
+        }
+        blockRows = 0;
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String is too long for columnar export: " + bytes.length + " bytes");
+        }
+        ensureCapacity(Short.BYTES);
+        buffer.putShort((short) bytes.length);
+        write(bytes);
+    }
+}
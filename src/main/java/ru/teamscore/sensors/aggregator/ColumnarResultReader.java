@@ -0,0 +1,94 @@
+package ru.teamscore.sensors.aggregator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение файла, записанного {@link ColumnarResultExporter}.
+ */
+public class ColumnarResultReader {
+    private final String[] valueColumns;
+    private final List<AggregatedResult> results;
+
+    private ColumnarResultReader(String[] valueColumns, List<AggregatedResult> results) {
+        this.valueColumns = valueColumns;
+        this.results = results;
+    }
+
+    /**
+     * Читает файл целиком.
+     *
+     * @throws IOException если файл повреждён или имеет другой формат
+     */
+    public static ColumnarResultReader read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.remaining() < 3 * Integer.BYTES || data.getInt() != ColumnarResultExporter.MAGIC) {
+                throw new IOException("Not a columnar export file: " + path);
+            }
+            int version = data.getInt();
+            if (version != ColumnarResultExporter.VERSION) {
+                throw new IOException("Unsupported columnar export version: " + version);
+            }
+            String[] valueColumns = new String[data.getInt()];
+            for (int i = 0; i < valueColumns.length; i++) {
+                valueColumns[i] = readString(data);
+            }
+
+            List<String> devices = new ArrayList<>();
+            List<AggregatedResult> results = new ArrayList<>();
+            int rows;
+            while ((rows = data.getInt()) > 0) {
+                int newDevices = data.getInt();
+                for (int i = 0; i < newDevices; i++) {
+                    devices.add(readString(data));
+                }
+                int[] deviceIds = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                    deviceIds[i] = data.getInt();
+                }
+                long[] times = new long[rows];
+                for (int i = 0; i < rows; i++) {
+                    times[i] = data.getLong();
+                }
+                Double[][] values = new Double[rows][valueColumns.length];
+                for (int column = 0; column < valueColumns.length; column++) {
+                    for (int i = 0; i < rows; i++) {
+                        double value = data.getDouble();
+                        values[i][column] = Double.isNaN(value) ? null : value;
+                    }
+                }
+                for (int i = 0; i < rows; i++) {
+                    results.add(new AggregatedResult(devices.get(deviceIds[i]),
+                            LocalDateTime.ofEpochSecond(times[i], 0, ZoneOffset.UTC), values[i]));
+                }
+            }
+            return new ColumnarResultReader(valueColumns, results);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted columnar export file: " + path, e);
+        }
+    }
+
+    public String[] getValueColumns() {
+        return valueColumns;
+    }
+
+    public List<AggregatedResult> getResults() {
+        return results;
+    }
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getShort()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
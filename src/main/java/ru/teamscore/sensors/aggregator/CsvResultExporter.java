@@ -0,0 +1,51 @@
+package ru.teamscore.sensors.aggregator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Экспорт в CSV (RFC 4180): заголовок DEVICE,DATE,&lt;показатели&gt; и по строке на интервал.
+ * Отсутствующее значение записывается пустой ячейкой, числа — без округления.
+ */
+public class CsvResultExporter extends ResultExporter {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final StringBuilder line = new StringBuilder(128);
+
+    public CsvResultExporter(Path path, String[] valueColumns) throws IOException {
+        super(path, valueColumns);
+        line.append("DEVICE,DATE");
+        for (String column : valueColumns) {
+            line.append(',').append(escape(column));
+        }
+        writeLine();
+    }
+
+    @Override
+    protected void writeRow(AggregatedResult result) throws IOException {
+        line.append(escape(result.getDeviceName())).append(',');
+        DATE_FORMAT.formatTo(result.getIntervalStart(), line);
+        for (Double value : result.getValues()) {
+            line.append(',');
+            if (value != null) {
+                line.append(value.doubleValue());
+            }
+        }
+        writeLine();
+    }
+
+    private void writeLine() throws IOException {
+        line.append('\n');
+        write(line.toString().getBytes(StandardCharsets.UTF_8));
+        line.setLength(0);
+    }
+
+    private static String escape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,34 @@
+package ru.teamscore.sensors.aggregator;
+
+import lombok.Getter;
+import ru.teamscore.sensors.common.SensorType;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Средние значения всех типов датчиков устройства за интервал.
+ */
+@Getter
+public class DeviceOverview {
+    private final String deviceName;
+    private final LocalDateTime intervalStart;
+    private final Map<SensorType, Double[]> values = new EnumMap<>(SensorType.class);
+
+    public DeviceOverview(String deviceName, LocalDateTime intervalStart) {
+        this.deviceName = deviceName;
+        this.intervalStart = intervalStart;
+    }
+
+    /**
+     * Значения датчика указанного типа или {@code null}, если за интервал их нет.
+     */
+    public Double[] getValues(SensorType sensorType) {
+        return values.get(sensorType);
+    }
+
+    void put(SensorType sensorType, Double[] typeValues) {
+        values.put(sensorType, typeValues);
+    }
+}
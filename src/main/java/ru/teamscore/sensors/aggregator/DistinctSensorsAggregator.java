@@ -0,0 +1,106 @@
+package ru.teamscore.sensors.aggregator;
+
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Приближённое количество различных датчиков за интервал.
+ * <p>
+ * Считается объединением поминутных скетчей HyperLogLog, которые сохраняет потребитель, запущенный
+ * с опцией --presence, поэтому интервал должен состоять из целых минут, а границы периода
+ * округляются до минуты. Погрешность — около 1,6%.
+ */
+public class DistinctSensorsAggregator {
+    private final AggregatorService aggregatorService;
+
+    public DistinctSensorsAggregator(AggregatorService aggregatorService) {
+        this.aggregatorService = aggregatorService;
+    }
+
+    /**
+     * Передаёт в обработчик количество различных датчиков за каждый интервал: сначала по устройствам
+     * в порядке {@link AggregatorService#streamAggregatedData}, затем итог по всем устройствам
+     * с {@code deviceName == null} по убыванию интервала.
+     *
+     * @param sensorType тип датчиков или {@code null} для всех типов
+     */
+    public void streamDistinctSensors(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                      TimeInterval interval, String deviceName, Consumer<DistinctSensorsResult> sink) {
+        if (interval.getSeconds() % 60 != 0 || interval.getOrigin().getSecond() != 0) {
+            throw new IllegalArgumentException("Distinct sensor counts require whole-minute intervals: " + interval);
+        }
+        boolean filterByDevice = deviceName != null && !deviceName.isEmpty();
+        StringBuilder sql = new StringBuilder("SELECT device_name, minute_start, sketch FROM sensor_presence ");
+        sql.append("WHERE minute_start >= ? AND minute_start <= ? ");
+        List<Object> parameters = new ArrayList<>(List.of(startTime.truncatedTo(ChronoUnit.MINUTES), endTime));
+        if (sensorType != null) {
+            sql.append("AND sensor_type = ? ");
+            parameters.add(sensorType.name());
+        }
+        if (filterByDevice) {
+            sql.append("AND device_name = ? ");
+            parameters.add(deviceName);
+        }
+        sql.append("ORDER BY ").append(aggregatorService.deviceOrder("device_name")).append(", minute_start DESC");
+
+        SketchGroup group = new SketchGroup(sink);
+        aggregatorService.streamQuery(sql.toString(), parameters, row -> group.add((String) row[0],
+                interval.truncate(AggregatorService.toLocalDateTime(row[1])), HyperLogLog.fromBytes((byte[]) row[2])));
+        group.finish();
+    }
+
+    /**
+     * Скетчи упорядоченного потока: по устройству держится только скетч текущего интервала,
+     * итоги — по одному скетчу на интервал.
+     */
+    private static final class SketchGroup {
+        private final Consumer<DistinctSensorsResult> sink;
+        private final Map<LocalDateTime, HyperLogLog> totals = new TreeMap<>(Comparator.reverseOrder());
+        private String deviceName;
+        private LocalDateTime intervalStart;
+        private HyperLogLog sketch;
+
+        private SketchGroup(Consumer<DistinctSensorsResult> sink) {
+            this.sink = sink;
+        }
+
+        private void add(String deviceName, LocalDateTime intervalStart, HyperLogLog minuteSketch) {
+            if (sketch != null && !(deviceName.equals(this.deviceName) && intervalStart.equals(this.intervalStart))) {
+                flush();
+            }
+            if (sketch == null) {
+                this.deviceName = deviceName;
+                this.intervalStart = intervalStart;
+                this.sketch = new HyperLogLog();
+            }
+            sketch.merge(minuteSketch);
+            totals.computeIfAbsent(intervalStart, b -> new HyperLogLog()).merge(minuteSketch);
+        }
+
+        private void flush() {
+            sink.accept(new DistinctSensorsResult(deviceName, intervalStart, sketch.estimate()));
+            sketch = null;
+        }
+
+        /**
+         * Передаёт скетч последнего интервала и итоги по всем устройствам.
+         */
+        private void finish() {
+            if (sketch != null) {
+                flush();
+            }
+            for (Map.Entry<LocalDateTime, HyperLogLog> total : totals.entrySet()) {
+                sink.accept(new DistinctSensorsResult(null, total.getKey(), total.getValue().estimate()));
+            }
+        }
+    }
+}
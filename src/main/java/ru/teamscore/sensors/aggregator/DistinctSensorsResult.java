@@ -0,0 +1,24 @@
+package ru.teamscore.sensors.aggregator;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Приближённое количество различных датчиков за интервал.
+ */
+@Getter
+public class DistinctSensorsResult {
+    /**
+     * Устройство или {@code null} для итога по всем устройствам.
+     */
+    private final String deviceName;
+    private final LocalDateTime intervalStart;
+    private final long distinctSensors;
+
+    public DistinctSensorsResult(String deviceName, LocalDateTime intervalStart, long distinctSensors) {
+        this.deviceName = deviceName;
+        this.intervalStart = intervalStart;
+        this.distinctSensors = distinctSensors;
+    }
+}
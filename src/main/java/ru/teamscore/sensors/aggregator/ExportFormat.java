@@ -0,0 +1,15 @@
+package ru.teamscore.sensors.aggregator;
+
+/**
+ * Формат файла экспорта результатов агрегации.
+ */
+public enum ExportFormat {
+    /**
+     * Текст CSV: заголовок и по строке на интервал.
+     */
+    CSV,
+    /**
+     * Компактный двоичный колоночный формат, см. {@link ColumnarResultExporter}.
+     */
+    COLUMNAR
+}
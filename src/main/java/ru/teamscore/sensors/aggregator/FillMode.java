@@ -0,0 +1,19 @@
+package ru.teamscore.sensors.aggregator;
+
+/**
+ * Способ заполнения интервалов без данных.
+ */
+public enum FillMode {
+    /**
+     * Значения отсутствуют.
+     */
+    EMPTY,
+    /**
+     * Последнее известное значение до пропуска.
+     */
+    PREVIOUS,
+    /**
+     * Линейная интерполяция между соседними известными значениями; вне них значения отсутствуют.
+     */
+    LINEAR
+}
@@ -0,0 +1,97 @@
+package ru.teamscore.sensors.aggregator;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Превращает поток результатов в непрерывный ряд: для каждого устройства выдаются все интервалы
+ * запрошенного периода, а интервалы без данных заполняются по {@link FillMode} и помечаются
+ * {@link AggregatedResult#isFilled()}.
+ * <p>
+ * Работает на лету над потоком в порядке {@link AggregatorService#streamAggregatedData} (устройство
+ * по возрастанию, интервал по убыванию): пропуск заполняется, как только пришла строка перед ним,
+ * поэтому в памяти держится только последняя строка устройства.
+ * После окончания потока нужно вызвать {@link #finish()}.
+ */
+public class GapFiller implements Consumer<AggregatedResult> {
+    private final TimeInterval interval;
+    private final LocalDateTime firstBucket;
+    private final LocalDateTime lastBucket;
+    private final FillMode mode;
+    private final Consumer<AggregatedResult> sink;
+
+    private AggregatedResult later;
+
+    public GapFiller(LocalDateTime startTime, LocalDateTime endTime, TimeInterval interval, FillMode mode,
+                     Consumer<AggregatedResult> sink) {
+        this.interval = interval;
+        this.firstBucket = interval.truncate(startTime);
+        this.lastBucket = interval.truncate(endTime);
+        this.mode = mode;
+        this.sink = sink;
+    }
+
+    @Override
+    public void accept(AggregatedResult result) {
+        if (later != null && !later.getDeviceName().equals(result.getDeviceName())) {
+            finishDevice();
+        }
+        if (later == null) {
+            // интервалы после последних данных: известно только значение до них
+            fill(result, lastBucket, result.getIntervalStart(), mode == FillMode.PREVIOUS ? result : null, null);
+        } else {
+            fill(result, previous(later.getIntervalStart()), result.getIntervalStart(), result, later);
+        }
+        sink.accept(result);
+        later = result;
+    }
+
+    /**
+     * Заполняет интервалы перед первыми данными последнего устройства.
+     */
+    public void finish() {
+        if (later != null) {
+            finishDevice();
+        }
+    }
+
+    private void finishDevice() {
+        fill(later, previous(later.getIntervalStart()), previous(firstBucket), null, null);
+        later = null;
+    }
+
+    /**
+     * Выдаёт интервалы от {@code from} включительно вниз до {@code until} исключительно.
+     *
+     * @param device строка того же устройства, задающая имя и количество показателей
+     * @param before ближайшая строка с данными раньше пропуска или {@code null}
+     * @param after  ближайшая строка с данными позже пропуска или {@code null}
+     */
+    private void fill(AggregatedResult device, LocalDateTime from, LocalDateTime until,
+                      AggregatedResult before, AggregatedResult after) {
+        int width = device.getValues().length;
+        for (LocalDateTime bucket = from; bucket.isAfter(until); bucket = previous(bucket)) {
+            sink.accept(new AggregatedResult(device.getDeviceName(), bucket, fillValues(bucket, width, before, after), true));
+        }
+    }
+
+    private Double[] fillValues(LocalDateTime bucket, int width, AggregatedResult before, AggregatedResult after) {
+        Double[] values = new Double[width];
+        if (mode == FillMode.PREVIOUS && before != null) {
+            System.arraycopy(before.getValues(), 0, values, 0, width);
+        } else if (mode == FillMode.LINEAR && before != null && after != null) {
+            double span = interval.bucketIndex(after.getIntervalStart()) - interval.bucketIndex(before.getIntervalStart());
+            double position = (interval.bucketIndex(bucket) - interval.bucketIndex(before.getIntervalStart())) / span;
+            for (int i = 0; i < width; i++) {
+                Double from = before.getValues()[i];
+                Double to = after.getValues()[i];
+                values[i] = from != null && to != null ? from + (to - from) * position : null;
+            }
+        }
+        return values;
+    }
+
+    private LocalDateTime previous(LocalDateTime bucket) {
+        return bucket.minusSeconds(interval.getSeconds());
+    }
+}
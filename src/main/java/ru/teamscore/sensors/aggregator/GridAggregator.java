@@ -0,0 +1,105 @@
+package ru.teamscore.sensors.aggregator;
+
+import ru.teamscore.sensors.common.GeoGrid;
+import ru.teamscore.sensors.common.SensorType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Пространственная агрегация координат: точки каждого интервала времени раскладываются по ячейкам
+ * сетки {@link GeoGrid}, для ячейки возвращаются количество точек и их центр.
+ * <p>
+ * Группировка идёт по целочисленному столбцу grid_cell, заполненному при записи, без вычислений
+ * над координатами. Фильтр по прямоугольной области сводится к диапазону номеров ячеек
+ * и использует индекс (grid_cell, measured_at).
+ */
+public class GridAggregator {
+    private final AggregatorService aggregatorService;
+
+    public GridAggregator(AggregatorService aggregatorService) {
+        this.aggregatorService = aggregatorService;
+    }
+
+    /**
+     * Возвращает шаг агрегированной сетки в базовых ячейках для шага в градусах.
+     *
+     * @throws IllegalArgumentException если шаг не кратен {@link GeoGrid#CELL_DEGREES}
+     */
+    public static int cellsPerSide(double cellDegrees) {
+        long cells = Math.round(cellDegrees / GeoGrid.CELL_DEGREES);
+        if (cells < 1 || cells > GeoGrid.ROWS || Math.abs(cells * GeoGrid.CELL_DEGREES - cellDegrees) > 1e-9) {
+            throw new IllegalArgumentException("Grid cell size must be a positive multiple of "
+                    + GeoGrid.CELL_DEGREES + "°: " + cellDegrees);
+        }
+        return (int) cells;
+    }
+
+    public List<GridCellResult> fetchGrid(LocalDateTime startTime, LocalDateTime endTime, TimeInterval interval,
+                                          double cellDegrees, BoundingBox boundingBox, String deviceName) {
+        List<GridCellResult> results = new ArrayList<>();
+        streamGrid(startTime, endTime, interval, cellDegrees, boundingBox, deviceName, results::add);
+        return results;
+    }
+
+    /**
+     * Передаёт ячейки в обработчик по мере чтения: интервалы по убыванию, внутри интервала — с юга на север
+     * и с запада на восток.
+     *
+     * @param cellDegrees шаг сетки в градусах, кратный {@link GeoGrid#CELL_DEGREES}
+     * @param boundingBox область или {@code null} для всех точек
+     * @param deviceName  устройство или {@code null} для всех устройств
+     */
+    public void streamGrid(LocalDateTime startTime, LocalDateTime endTime, TimeInterval interval, double cellDegrees,
+                           BoundingBox boundingBox, String deviceName, Consumer<GridCellResult> sink) {
+        int cells = cellsPerSide(cellDegrees);
+        double size = cells * GeoGrid.CELL_DEGREES;
+        boolean filterByDevice = deviceName != null && !deviceName.isEmpty();
+        String bucketIndex = interval.bucketIndexSql("m.measured_at");
+        String cellRow = "m.grid_cell / " + GeoGrid.COLUMNS + " / " + cells;
+        String cellColumn = "MOD(m.grid_cell, " + GeoGrid.COLUMNS + ") / " + cells;
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ").append(bucketIndex).append(" as bucket, ")
+                .append(cellRow).append(" as cell_row, ").append(cellColumn).append(" as cell_column, ")
+                .append("COUNT(*), AVG(m.latitude), AVG(m.longitude) ");
+        sql.append("FROM ").append(SensorType.LOCATION.getTableName()).append(" m ");
+        if (filterByDevice) {
+            sql.append("JOIN sensor_devices d ON m.sensor_id = d.sensor_id ");
+        }
+        sql.append("WHERE m.measured_at >= ? AND m.measured_at <= ? AND m.grid_cell IS NOT NULL ");
+
+        List<Object> parameters = new ArrayList<>(List.of(startTime, endTime));
+        if (boundingBox != null) {
+            int minRow = GeoGrid.rowOf(boundingBox.minLatitude());
+            int maxRow = GeoGrid.rowOf(boundingBox.maxLatitude());
+            int minColumn = GeoGrid.columnOf(boundingBox.minLongitude());
+            int maxColumn = GeoGrid.columnOf(boundingBox.maxLongitude());
+            // диапазон номеров отсекает строки сетки по индексу, остальные условия уточняют края области
+            sql.append("AND m.grid_cell BETWEEN ? AND ? ");
+            sql.append("AND MOD(m.grid_cell, ").append(GeoGrid.COLUMNS).append(") BETWEEN ? AND ? ");
+            sql.append("AND m.latitude BETWEEN ? AND ? AND m.longitude BETWEEN ? AND ? ");
+            parameters.addAll(List.of((long) minRow * GeoGrid.COLUMNS + minColumn,
+                    (long) maxRow * GeoGrid.COLUMNS + maxColumn, minColumn, maxColumn,
+                    boundingBox.minLatitude(), boundingBox.maxLatitude(),
+                    boundingBox.minLongitude(), boundingBox.maxLongitude()));
+        }
+        if (filterByDevice) {
+            sql.append("AND d.device_name = ? ");
+            parameters.add(deviceName);
+        }
+        sql.append("GROUP BY ").append(bucketIndex).append(", ").append(cellRow).append(", ").append(cellColumn).append(" ");
+        sql.append("ORDER BY bucket DESC, cell_row ASC, cell_column ASC");
+
+        aggregatorService.streamQuery(sql.toString(), parameters, row -> sink.accept(new GridCellResult(
+                interval.bucketStart(((Number) row[0]).longValue()),
+                GeoGrid.rowLatitude(((Number) row[1]).longValue() * cells),
+                GeoGrid.columnLongitude(((Number) row[2]).longValue() * cells),
+                size,
+                ((Number) row[3]).longValue(),
+                ((Number) row[4]).doubleValue(),
+                ((Number) row[5]).doubleValue())));
+    }
+}
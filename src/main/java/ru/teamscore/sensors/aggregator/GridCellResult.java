@@ -0,0 +1,36 @@
+package ru.teamscore.sensors.aggregator;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Количество точек и их центр в ячейке пространственной сетки за интервал времени.
+ */
+@Getter
+public class GridCellResult {
+    private final LocalDateTime intervalStart;
+    /**
+     * Южная граница ячейки.
+     */
+    private final double cellLatitude;
+    /**
+     * Западная граница ячейки.
+     */
+    private final double cellLongitude;
+    private final double cellDegrees;
+    private final long count;
+    private final double centroidLatitude;
+    private final double centroidLongitude;
+
+    public GridCellResult(LocalDateTime intervalStart, double cellLatitude, double cellLongitude, double cellDegrees,
+                          long count, double centroidLatitude, double centroidLongitude) {
+        this.intervalStart = intervalStart;
+        this.cellLatitude = cellLatitude;
+        this.cellLongitude = cellLongitude;
+        this.cellDegrees = cellDegrees;
+        this.count = count;
+        this.centroidLatitude = centroidLatitude;
+        this.centroidLongitude = centroidLongitude;
+    }
+}
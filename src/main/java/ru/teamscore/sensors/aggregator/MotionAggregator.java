@@ -0,0 +1,42 @@
+package ru.teamscore.sensors.aggregator;
+
+import ru.teamscore.sensors.common.SensorType;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Характеристики движения акселерометров за интервал: среднеквадратичный и пиковый модуль ускорения
+ * и пиковый рывок. Считаются по столбцам magnitude и jerk, заполненным при записи, поэтому
+ * противоположные ускорения не гасят друг друга, как в средних по осям.
+ */
+public class MotionAggregator {
+    private final AggregatorService aggregatorService;
+
+    public MotionAggregator(AggregatorService aggregatorService) {
+        this.aggregatorService = aggregatorService;
+    }
+
+    /**
+     * Передаёт характеристики движения в обработчик по мере чтения, в порядке
+     * {@link AggregatorService#streamAggregatedData}. Значения результата: среднеквадратичный модуль,
+     * пиковый модуль и пиковый рывок.
+     */
+    public void streamMotion(LocalDateTime startTime, LocalDateTime endTime, TimeInterval interval,
+                             String deviceName, Consumer<AggregatedResult> sink) {
+        boolean filterByDevice = deviceName != null && !deviceName.isEmpty();
+        String bucketIndex = interval.bucketIndexSql("m.measured_at");
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT d.device_name, ").append(bucketIndex).append(" as bucket, ");
+        sql.append("SQRT(AVG(m.magnitude * m.magnitude)), MAX(m.magnitude), MAX(m.jerk)");
+        AggregatorService.appendFromAndFilter(sql, SensorType.ACCELEROMETER, true, filterByDevice);
+        sql.append("GROUP BY d.device_name, ").append(bucketIndex).append(" ");
+        sql.append("ORDER BY ").append(aggregatorService.deviceOrder("d.device_name")).append(", bucket DESC");
+
+        aggregatorService.streamQuery(sql.toString(), AggregatorService.rangeParameters(startTime, endTime, deviceName),
+                row -> sink.accept(new AggregatedResult((String) row[0],
+                        interval.bucketStart(((Number) row[1]).longValue()), AggregatorService.toDouble(row[2]),
+                        AggregatorService.toDouble(row[3]), AggregatorService.toDouble(row[4]))));
+    }
+}
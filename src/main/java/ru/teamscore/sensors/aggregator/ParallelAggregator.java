@@ -0,0 +1,158 @@
+package ru.teamscore.sensors.aggregator;
+
+import ru.teamscore.sensors.common.SensorType;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Параллельная агрегация длинного периода.
+ * <p>
+ * Диапазон [startTime, endTime] делится на независимые срезы, выровненные по границам интервала,
+ * поэтому каждый интервал целиком попадает в один срез. Срезы выполняются одновременно
+ * в ограниченном пуле потоков, каждый через собственное соединение с БД,
+ * после чего упорядоченные результаты сливаются.
+ */
+public class ParallelAggregator implements AutoCloseable {
+    /**
+     * Количество срезов на один поток: срезы меньшего размера выравнивают нагрузку между потоками.
+     */
+    private static final int SLICES_PER_THREAD = 2;
+
+    private final AggregatorService aggregatorService;
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    public ParallelAggregator(AggregatorService aggregatorService) {
+        this(aggregatorService, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelAggregator(AggregatorService aggregatorService, int parallelism) {
+        this.aggregatorService = aggregatorService;
+        this.parallelism = Math.max(1, parallelism);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "AggregatorSlice-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Получает агрегированные данные, выполняя срезы параллельно.
+     * Порядок результата совпадает с {@link AggregatorService#fetchAggregatedData}.
+     */
+    public List<AggregatedResult> fetchAggregatedData(SensorType sensorType, LocalDateTime startTime,
+                                                      LocalDateTime endTime, TimeInterval interval, String deviceName) {
+        List<LocalDateTime> boundaries = splitRange(startTime, endTime, interval, parallelism * SLICES_PER_THREAD);
+
+        List<Future<List<AggregatedResult>>> futures = new ArrayList<>();
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            LocalDateTime sliceStart = boundaries.get(i);
+            LocalDateTime sliceEnd = boundaries.get(i + 1);
+            boolean last = i + 2 == boundaries.size();
+            futures.add(executor.submit(() -> aggregatorService.fetchFromDatabase(
+                    sensorType, sliceStart, sliceEnd, last, interval, deviceName)));
+        }
+
+        List<List<AggregatedResult>> slices = new ArrayList<>(futures.size());
+        try {
+            for (Future<List<AggregatedResult>> future : futures) {
+                slices.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel aggregation interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Slice aggregation failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        return merge(slices);
+    }
+
+    /**
+     * Делит диапазон на срезы, границы которых (кроме крайних) совпадают с границами интервалов.
+     *
+     * @return упорядоченные границы срезов: первая равна startTime, последняя — endTime
+     */
+    static List<LocalDateTime> splitRange(LocalDateTime startTime, LocalDateTime endTime,
+                                          TimeInterval interval, int maxSlices) {
+        LocalDateTime firstBoundary = interval.ceil(startTime);
+        List<LocalDateTime> boundaries = new ArrayList<>();
+        boundaries.add(startTime);
+
+        if (firstBoundary.isBefore(endTime)) {
+            long seconds = Duration.between(firstBoundary, endTime).getSeconds();
+            long intervals = seconds / interval.getSeconds() + 1;
+            long intervalsPerSlice = Math.max(1, (intervals + maxSlices - 1) / maxSlices);
+            long sliceSeconds = intervalsPerSlice * interval.getSeconds();
+
+            LocalDateTime boundary = firstBoundary.isAfter(startTime) ? firstBoundary : firstBoundary.plusSeconds(sliceSeconds);
+            while (boundary.isBefore(endTime)) {
+                boundaries.add(boundary);
+                boundary = boundary.plusSeconds(sliceSeconds);
+            }
+        }
+        boundaries.add(endTime);
+        return boundaries;
+    }
+
+    /**
+     * Сливает упорядоченные результаты срезов в общий порядок: устройство по возрастанию,
+     * начало интервала по убыванию.
+     */
+    private static List<AggregatedResult> merge(List<List<AggregatedResult>> slices) {
+        int total = slices.stream().mapToInt(List::size).sum();
+        List<AggregatedResult> merged = new ArrayList<>(total);
+
+        PriorityQueue<SliceCursor> queue = new PriorityQueue<>(
+                (a, b) -> AggregatorService.RESULT_ORDER.compare(a.current, b.current));
+        for (List<AggregatedResult> slice : slices) {
+            Iterator<AggregatedResult> iterator = slice.iterator();
+            if (iterator.hasNext()) {
+                queue.add(new SliceCursor(iterator));
+            }
+        }
+        while (!queue.isEmpty()) {
+            SliceCursor cursor = queue.poll();
+            merged.add(cursor.current);
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static final class SliceCursor {
+        private final Iterator<AggregatedResult> iterator;
+        private AggregatedResult current;
+
+        private SliceCursor(Iterator<AggregatedResult> iterator) {
+            this.iterator = iterator;
+            this.current = iterator.next();
+        }
+
+        private boolean advance() {
+            if (iterator.hasNext()) {
+                current = iterator.next();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.teamscore.sensors.aggregator;
+
+import java.util.Arrays;
+
+/**
+ * Объединяемый скетч для приближённого вычисления перцентилей.
+ * <p>
+ * Значения раскладываются по логарифмическим корзинам (схема DDSketch), поэтому любой перцентиль
+ * оценивается с заданной относительной погрешностью, а память зависит только от разброса значений.
+ * Два скетча с одинаковой точностью объединяются сложением счётчиков корзин.
+ */
+public class QuantileSketch {
+    private static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    /**
+     * Значения по модулю меньше порога считаются нулевыми.
+     */
+    private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final BinStore positive = new BinStore();
+    private final BinStore negative = new BinStore();
+    private long zeroCount;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be in (0, 1): " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /**
+     * Добавляет значение в скетч.
+     */
+    public void add(double value) {
+        if (value > MIN_INDEXABLE_VALUE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE_VALUE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+    }
+
+    /**
+     * Добавляет в скетч все значения другого скетча с той же точностью.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different accuracy");
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+    }
+
+    /**
+     * Количество значений в скетче.
+     */
+    public long getCount() {
+        return positive.total + negative.total + zeroCount;
+    }
+
+    /**
+     * Возвращает приближённое значение квантиля.
+     *
+     * @param quantile квантиль в диапазоне [0, 1]
+     * @return оценка или {@code NaN}, если скетч пуст
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]: " + quantile);
+        }
+        long count = getCount();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (count - 1));
+
+        // отрицательные значения — от наибольшего по модулю к наименьшему
+        if (rank < negative.total) {
+            long seen = 0;
+            for (int i = negative.counts.length - 1; i >= 0; i--) {
+                seen += negative.counts[i];
+                if (seen > rank) {
+                    return -value(negative.offset + i);
+                }
+            }
+        }
+        rank -= negative.total;
+        if (rank < zeroCount) {
+            return 0;
+        }
+        rank -= zeroCount;
+        long seen = 0;
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * Плотный массив счётчиков корзин со сдвигом индекса.
+     */
+    private static final class BinStore {
+        private long[] counts = new long[0];
+        private int offset;
+        private long total;
+
+        private void add(int index, long count) {
+            ensureCapacity(index);
+            counts[index - offset] += count;
+            total += count;
+        }
+
+        private void merge(BinStore other) {
+            if (other.total == 0) {
+                return;
+            }
+            ensureCapacity(other.offset);
+            ensureCapacity(other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+            total += other.total;
+        }
+
+        private void ensureCapacity(int index) {
+            if (counts.length == 0) {
+                counts = new long[16];
+                offset = index - 8;
+            } else if (index < offset) {
+                int grow = Math.max(offset - index, counts.length / 2);
+                long[] expanded = new long[counts.length + grow];
+                System.arraycopy(counts, 0, expanded, grow, counts.length);
+                counts = expanded;
+                offset -= grow;
+            } else if (index >= offset + counts.length) {
+                int grow = Math.max(index - offset - counts.length + 1, counts.length / 2);
+                counts = Arrays.copyOf(counts, counts.length + grow);
+            }
+        }
+    }
+}
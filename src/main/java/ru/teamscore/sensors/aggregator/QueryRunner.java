@@ -0,0 +1,180 @@
+package ru.teamscore.sensors.aggregator;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import org.hibernate.Session;
+import ru.teamscore.sensors.common.config.JdbcConnectionFactory;
+import ru.teamscore.sensors.common.metrics.Counter;
+import ru.teamscore.sensors.common.metrics.Histogram;
+import ru.teamscore.sensors.common.metrics.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Выполнение нативных запросов агрегатора: соединение берётся из фабрики EntityManager
+ * или из {@link JdbcConnectionFactory}, результат читается через курсор внутри транзакции.
+ */
+final class QueryRunner {
+    private static final int FETCH_SIZE = 1000;
+    private static final Histogram QUERY_SECONDS = MetricsRegistry.getDefault().histogram(
+            "sensors_aggregator_query_seconds", "Duration of aggregation queries including result streaming",
+            Histogram.DEFAULT_SECONDS_BUCKETS);
+    private static final Counter QUERY_FAILURES = MetricsRegistry.getDefault().counter(
+            "sensors_aggregator_query_failures_total", "Aggregation queries that failed");
+
+    private final EntityManagerFactory emf;
+    private final JdbcConnectionFactory connectionFactory;
+    private volatile long firstRowMillis;
+    private volatile Boolean postgres;
+
+    QueryRunner(EntityManagerFactory emf, JdbcConnectionFactory connectionFactory) {
+        this.emf = emf;
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Время получения первой строки из БД в миллисекундах эпохи или 0, если строк ещё не было.
+     */
+    long getFirstRowMillis() {
+        return firstRowMillis;
+    }
+
+    /**
+     * Выполняет запрос и передаёт строки результата в обработчик по мере чтения через курсор.
+     * Массив значений строки переиспользуется между вызовами.
+     */
+    void streamQuery(String sql, List<Object> parameters, Consumer<Object[]> rowHandler) {
+        doWithConnection(connection -> {
+            try (PreparedStatement statement = prepareQuery(connection, sql, parameters);
+                 ResultSet rs = statement.executeQuery()) {
+                Object[] row = new Object[rs.getMetaData().getColumnCount()];
+                if (!rs.next()) {
+                    return;
+                }
+                markFirstRow();
+                do {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rowHandler.accept(row);
+                } while (rs.next());
+            }
+        });
+    }
+
+    PreparedStatement prepareQuery(Connection connection, String sql, List<Object> parameters) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setFetchSize(FETCH_SIZE);
+        for (int i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+        }
+        return statement;
+    }
+
+    void markFirstRow() {
+        if (firstRowMillis == 0) {
+            firstRowMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Выполняет работу с соединением в транзакции и учитывает её в метриках запросов.
+     * PostgreSQL читает результат порциями только внутри транзакции.
+     */
+    void doWithConnection(ConnectionWork work) {
+        long started = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            inTransaction(work);
+            succeeded = true;
+        } finally {
+            QUERY_SECONDS.observeSince(started);
+            if (!succeeded) {
+                QUERY_FAILURES.increment();
+            }
+        }
+    }
+
+    /**
+     * Выражение сортировки по имени устройства, согласованное с {@link AggregatorService#RESULT_ORDER}.
+     */
+    String deviceOrder(String column) {
+        return deviceOrderSql(column, isPostgres());
+    }
+
+    static String deviceOrderSql(String column, boolean postgres) {
+        return column + (postgres ? " COLLATE \"C\"" : "") + " ASC";
+    }
+
+    /**
+     * Определяет СУБД по первому соединению; H2 сравнивает строки так же, как Java, и COLLATE не поддерживает.
+     */
+    private boolean isPostgres() {
+        Boolean known = postgres;
+        if (known == null) {
+            DatabaseProduct product = new DatabaseProduct();
+            inTransaction(product);
+            known = product.postgres;
+            postgres = known;
+        }
+        return known;
+    }
+
+    private void inTransaction(ConnectionWork work) {
+        if (emf != null) {
+            doWithEntityManager(work);
+        } else {
+            doWithJdbc(work);
+        }
+    }
+
+    private void doWithEntityManager(ConnectionWork work) {
+        try (EntityManager em = emf.createEntityManager()) {
+            EntityTransaction tx = em.getTransaction();
+            tx.begin();
+            try {
+                em.unwrap(Session.class).doWork(work::execute);
+                tx.commit();
+            } finally {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+            }
+        }
+    }
+
+    private void doWithJdbc(ConnectionWork work) {
+        try (Connection connection = connectionFactory.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                work.execute(connection);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Query failed: " + e.getMessage(), e);
+        }
+    }
+
+    @FunctionalInterface
+    interface ConnectionWork {
+        void execute(Connection connection) throws SQLException;
+    }
+
+    private static final class DatabaseProduct implements ConnectionWork {
+        private boolean postgres;
+
+        @Override
+        public void execute(Connection connection) throws SQLException {
+            postgres = "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ru.teamscore.sensors.aggregator;
+
+/**
+ * Величина, по которой устройства ранжируются внутри интервала.
+ */
+public enum RankingMeasure {
+    /**
+     * Среднее значение за интервал.
+     */
+    AVG("AVG"),
+    /**
+     * Наибольшее значение за интервал.
+     */
+    PEAK("MAX");
+
+    private final String sqlFunction;
+
+    RankingMeasure(String sqlFunction) {
+        this.sqlFunction = sqlFunction;
+    }
+
+    String getSqlFunction() {
+        return sqlFunction;
+    }
+}
@@ -0,0 +1,113 @@
+package ru.teamscore.sensors.aggregator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Потоковая запись результатов агрегации в файл.
+ * <p>
+ * Строки принимаются по одной как обработчик {@link AggregatorService#streamAggregatedData}
+ * и накапливаются в буфере, который сбрасывается в канал файла по заполнении,
+ * поэтому расход памяти не зависит от объёма выгрузки.
+ */
+public abstract class ResultExporter implements Consumer<AggregatedResult>, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    protected final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    protected final String[] valueColumns;
+    private long rowCount;
+
+    protected ResultExporter(Path path, String[] valueColumns) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.valueColumns = valueColumns;
+    }
+
+    /**
+     * Открывает файл экспорта в указанном формате.
+     *
+     * @param valueColumns названия показателей в порядке значений {@link AggregatedResult#getValues()}
+     */
+    public static ResultExporter open(ExportFormat format, Path path, String[] valueColumns) throws IOException {
+        return switch (format) {
+            case CSV -> new CsvResultExporter(path, valueColumns);
+            case COLUMNAR -> new ColumnarResultExporter(path, valueColumns);
+        };
+    }
+
+    @Override
+    public void accept(AggregatedResult result) {
+        try {
+            writeRow(result);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write export row", e);
+        }
+        rowCount++;
+    }
+
+    /**
+     * Количество записанных строк.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    protected abstract void writeRow(AggregatedResult result) throws IOException;
+
+    /**
+     * Дописывает оставшиеся данные; вызывается перед закрытием файла.
+     */
+    protected void finish() throws IOException {
+    }
+
+    /**
+     * Гарантирует, что в буфере есть место под указанное количество байт, при необходимости сбрасывая его в файл.
+     */
+    protected void ensureCapacity(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Записывает массив байт произвольной длины через буфер.
+     */
+    protected void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.capacity()) {
+            flushBuffer();
+            ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+            while (wrapped.hasRemaining()) {
+                channel.write(wrapped);
+            }
+            return;
+        }
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    protected void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.teamscore.sensors.aggregator;
+
+import ru.teamscore.sensors.common.SensorType;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Расширенная статистика показателей: количество, минимум, максимум, среднее, стандартное отклонение
+ * и перцентили p50/p95/p99 за каждый интервал.
+ * <p>
+ * Измерения читаются через курсор, упорядоченными по устройству и интервалу, поэтому в памяти
+ * держится только статистика текущего интервала.
+ */
+public class StatisticsAggregator {
+    private final AggregatorService aggregatorService;
+
+    public StatisticsAggregator(AggregatorService aggregatorService) {
+        this.aggregatorService = aggregatorService;
+    }
+
+    /**
+     * Вычисляет статистику за один проход по измерениям и передаёт её в обработчик в том же порядке,
+     * что и {@link AggregatorService#streamAggregatedData}.
+     */
+    public void streamStatistics(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                 TimeInterval interval, String deviceName, Consumer<AggregatedResult> sink) {
+        boolean filterByDevice = deviceName != null && !deviceName.isEmpty();
+        String[] columns = AggregatorService.getValueColumns(sensorType);
+        StatisticsGroup group = new StatisticsGroup(columns.length, sink);
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT d.device_name, ").append(interval.bucketIndexSql("m.measured_at")).append(" as bucket, ");
+        sql.append(String.join(", ", columns));
+        AggregatorService.appendFromAndFilter(sql, sensorType, true, filterByDevice);
+        sql.append("ORDER BY ").append(aggregatorService.deviceOrder("d.device_name")).append(", bucket DESC");
+
+        aggregatorService.streamQuery(sql.toString(),
+                AggregatorService.rangeParameters(startTime, endTime, deviceName), row -> {
+                    group.moveTo((String) row[0], interval.bucketStart(((Number) row[1]).longValue()));
+                    for (int i = 0; i < columns.length; i++) {
+                        Double value = AggregatorService.toDouble(row[2 + i]);
+                        group.statistics[i].add(value != null ? value : Double.NaN);
+                    }
+                });
+        group.flush();
+    }
+
+    /**
+     * Статистика текущего интервала при потоковой обработке упорядоченных измерений.
+     */
+    private static final class StatisticsGroup {
+        private final int columnCount;
+        private final Consumer<AggregatedResult> sink;
+        private String deviceName;
+        private LocalDateTime intervalStart;
+        private ValueStatistics[] statistics;
+
+        private StatisticsGroup(int columnCount, Consumer<AggregatedResult> sink) {
+            this.columnCount = columnCount;
+            this.sink = sink;
+        }
+
+        /**
+         * Переключается на интервал строки, передавая накопленную статистику предыдущего интервала.
+         */
+        private void moveTo(String deviceName, LocalDateTime intervalStart) {
+            if (statistics != null && deviceName.equals(this.deviceName) && intervalStart.equals(this.intervalStart)) {
+                return;
+            }
+            flush();
+            this.deviceName = deviceName;
+            this.intervalStart = intervalStart;
+            this.statistics = new ValueStatistics[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                statistics[i] = new ValueStatistics();
+            }
+        }
+
+        private void flush() {
+            if (statistics != null) {
+                sink.accept(new AggregatedResult(deviceName, intervalStart, statistics));
+                statistics = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package ru.teamscore.sensors.aggregator;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Постраничный вывод таблицы в консоль.
+ * <p>
+ * Строки поступают по одной и буферизуются только в пределах страницы:
+ * ширина колонок вычисляется для каждой страницы отдельно, поэтому
+ * расход памяти не зависит от общего числа строк.
+ * <p>
+ * Если задан {@link Scanner}, после каждой страницы вывод ждёт нажатия Enter. Без него страницы
+ * выводятся подряд: так печатаются строки, поступающие из открытого курсора БД, чтобы ожидание
+ * пользователя не держало транзакцию и соединение.
+ */
+public class TablePrinter {
+    private final PrintStream out;
+    private final Scanner scanner;
+    private final String[] headers;
+    private final int leftAlignedColumns;
+    private final int pageSize;
+    private final List<String[]> page;
+    private int totalRows = -1;
+    private int printedRows;
+
+    /**
+     * Создаёт таблицу, выводящую страницы подряд, без ожидания Enter.
+     */
+    public TablePrinter(PrintStream out, String[] headers, int leftAlignedColumns, int pageSize) {
+        this(out, null, headers, leftAlignedColumns, pageSize);
+    }
+
+    /**
+     * @param scanner            источник нажатий Enter между страницами или {@code null}, чтобы выводить подряд
+     * @param leftAlignedColumns количество первых колонок, выравниваемых по левому краю; остальные — по правому
+     */
+    public TablePrinter(PrintStream out, Scanner scanner, String[] headers, int leftAlignedColumns, int pageSize) {
+        this.out = out;
+        this.scanner = scanner;
+        this.headers = headers;
+        this.leftAlignedColumns = leftAlignedColumns;
+        this.pageSize = pageSize;
+        this.page = new ArrayList<>(pageSize);
+    }
+
+    /**
+     * Задаёт общее количество строк, если оно известно заранее.
+     */
+    public void setTotalRows(int totalRows) {
+        this.totalRows = totalRows;
+    }
+
+    /**
+     * Добавляет строку. Заполненная страница выводится, как только становится известно, что она не последняя.
+     */
+    public void printRow(String[] cells) {
+        if (page.size() == pageSize) {
+            flushPage(false);
+        }
+        page.add(cells);
+    }
+
+    /**
+     * Выводит последнюю страницу.
+     */
+    public void finish() {
+        if (!page.isEmpty()) {
+            flushPage(true);
+        }
+    }
+
+    /**
+     * Количество строк, переданных в таблицу.
+     */
+    public int getRowCount() {
+        return printedRows + page.size();
+    }
+
+    private void flushPage(boolean last) {
+        int[] widths = calculateColumnWidths();
+        printSeparator(widths);
+        printLine(headers, widths, true);
+        printSeparator(widths);
+        for (String[] cells : page) {
+            printLine(cells, widths, false);
+        }
+        printedRows += page.size();
+        page.clear();
+
+        printSeparator(widths);
+        String total = totalRows >= 0 ? " из " + totalRows : "";
+        if (last) {
+            out.println("Выведено " + printedRows + " строк" + total + ". Конец таблицы============");
+        } else if (scanner == null) {
+            out.println("Выведено " + printedRows + " строк" + total + ".");
+        } else {
+            out.println("Выведено " + printedRows + " строк" + total + ". Нажмите Enter для продолжения...");
+            if (scanner.hasNextLine()) {
+                scanner.nextLine();
+            }
+        }
+    }
+
+    private int[] calculateColumnWidths() {
+        int[] widths = new int[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            widths[i] = headers[i].length();
+        }
+        for (String[] cells : page) {
+            for (int i = 0; i < cells.length; i++) {
+                widths[i] = Math.max(widths[i], cells[i].length());
+            }
+        }
+        return widths;
+    }
+
+    private void printLine(String[] cells, int[] widths, boolean header) {
+        StringBuilder line = new StringBuilder("|");
+        for (int i = 0; i < cells.length; i++) {
+            String cell = header || i < leftAlignedColumns ? padRight(cells[i], widths[i]) : padLeft(cells[i], widths[i]);
+            line.append(' ').append(cell).append(" |");
+        }
+        out.println(line);
+    }
+
+    private void printSeparator(int[] widths) {
+        StringBuilder separator = new StringBuilder("+");
+        for (int width : widths) {
+            separator.append("-".repeat(width + 2)).append("+");
+        }
+        out.println(separator);
+    }
+
+    private static String padRight(String s, int length) {
+        if (s.length() >= length) return s;
+        return s + " ".repeat(length - s.length());
+    }
+
+    private static String padLeft(String s, int length) {
+        if (s.length() >= length) return s;
+        return " ".repeat(length - s.length()) + s;
+    }
+}
@@ -1,11 +1,183 @@
 package ru.teamscore.sensors.aggregator;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
- * Интервал времени для агрегации.
+ * Интервал времени для агрегации: корзины произвольной ширины, выровненные относительно начала отсчёта.
+ * <p>
+ * Номер корзины вычисляется целочисленной арифметикой над секундами эпохи, одинаково в PostgreSQL,
+ * H2 и в памяти. По умолчанию начало отсчёта — понедельник 1970-01-05 00:00, поэтому минутные,
+ * часовые и суточные корзины начинаются ровно в начале минуты, часа и суток, а недельные — в понедельник,
+ * как DATE_TRUNC в PostgreSQL.
  */
-public enum TimeInterval {
-    MINUTE,
-    HOUR,
-    DAY,
-    WEEK
-}
\ No newline at end of file
+public final class TimeInterval {
+    public static final LocalDateTime DEFAULT_ORIGIN = LocalDateTime.of(1970, 1, 5, 0, 0, 0);
+
+    public static final TimeInterval MINUTE = new TimeInterval("MINUTE", 60, DEFAULT_ORIGIN);
+    public static final TimeInterval HOUR = new TimeInterval("HOUR", 3600, DEFAULT_ORIGIN);
+    public static final TimeInterval DAY = new TimeInterval("DAY", 86400, DEFAULT_ORIGIN);
+    public static final TimeInterval WEEK = new TimeInterval("WEEK", 604800, DEFAULT_ORIGIN);
+
+    /**
+     * Наибольшая ширина интервала — около 1000 лет; при большей начала корзин выходят за пределы LocalDateTime.
+     */
+    private static final long MAX_WIDTH_SECONDS = 1000L * 366 * 86400;
+    private static final Pattern WIDTH_PATTERN = Pattern.compile("(\\d+)([smhdw])");
+
+    private final String name;
+    private final long seconds;
+    private final long originEpochSecond;
+
+    private TimeInterval(String name, long seconds, LocalDateTime origin) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("Interval width must be positive: " + seconds);
+        }
+        this.name = name;
+        this.seconds = seconds;
+        this.originEpochSecond = origin.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Создаёт интервал заданной ширины в секундах с началом отсчёта по умолчанию.
+     */
+    public static TimeInterval ofSeconds(long seconds) {
+        return new TimeInterval(formatWidth(seconds), seconds, DEFAULT_ORIGIN);
+    }
+
+    /**
+     * Разбирает интервал: MINUTE, HOUR, DAY, WEEK или ширину вида 10s, 5m, 15m, 6h, 1d, 2w.
+     *
+     * @throws IllegalArgumentException если значение не распознано или ширина слишком велика
+     */
+    public static TimeInterval parse(String value) {
+        return switch (value.trim().toUpperCase(Locale.ROOT)) {
+            case "MINUTE" -> MINUTE;
+            case "HOUR" -> HOUR;
+            case "DAY" -> DAY;
+            case "WEEK" -> WEEK;
+            default -> parseWidth(value.trim().toLowerCase(Locale.ROOT));
+        };
+    }
+
+    private static TimeInterval parseWidth(String value) {
+        Matcher matcher = WIDTH_PATTERN.matcher(value);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Unknown interval: " + value);
+        }
+        long unit = switch (matcher.group(2)) {
+            case "s" -> 1;
+            case "m" -> 60;
+            case "h" -> 3600;
+            case "d" -> 86400;
+            default -> 604800;
+        };
+        long seconds;
+        try {
+            seconds = Math.multiplyExact(Long.parseLong(matcher.group(1)), unit);
+        } catch (ArithmeticException | NumberFormatException e) {
+            seconds = Long.MAX_VALUE;
+        }
+        if (seconds > MAX_WIDTH_SECONDS) {
+            throw new IllegalArgumentException("Interval is too wide: " + value);
+        }
+        return new TimeInterval(value, seconds, DEFAULT_ORIGIN);
+    }
+
+    /**
+     * Возвращает интервал той же ширины с другим началом отсчёта.
+     */
+    public TimeInterval withOrigin(LocalDateTime origin) {
+        return new TimeInterval(name, seconds, origin);
+    }
+
+    /**
+     * Длительность интервала в секундах.
+     */
+    public long getSeconds() {
+        return seconds;
+    }
+
+    public LocalDateTime getOrigin() {
+        return LocalDateTime.ofEpochSecond(originEpochSecond, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Номер корзины, содержащей указанный момент.
+     */
+    public long bucketIndex(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC) - originEpochSecond, seconds);
+    }
+
+    /**
+     * Начало корзины с указанным номером.
+     */
+    public LocalDateTime bucketStart(long bucketIndex) {
+        return LocalDateTime.ofEpochSecond(bucketStartEpochSecond(bucketIndex), 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Начало корзины с указанным номером в секундах эпохи (UTC).
+     */
+    public long bucketStartEpochSecond(long bucketIndex) {
+        return originEpochSecond + bucketIndex * seconds;
+    }
+
+    /**
+     * Возвращает начало интервала, содержащего указанный момент.
+     */
+    public LocalDateTime truncate(LocalDateTime time) {
+        return bucketStart(bucketIndex(time));
+    }
+
+    /**
+     * Возвращает начало следующего интервала.
+     */
+    public LocalDateTime next(LocalDateTime intervalStart) {
+        return intervalStart.plusSeconds(seconds);
+    }
+
+    /**
+     * Возвращает ближайшую к моменту границу интервалов, не раньше него.
+     */
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime start = truncate(time);
+        return start.equals(time) ? start : next(start);
+    }
+
+    /**
+     * SQL-выражение номера корзины для столбца времени. Выражение одинаково для PostgreSQL и H2:
+     * EXTRACT(EPOCH ...) для TIMESTAMP без часового пояса в обеих СУБД возвращает секунды как в UTC.
+     */
+    public String bucketIndexSql(String column) {
+        return "CAST(FLOOR((EXTRACT(EPOCH FROM " + column + ") - " + originEpochSecond + ") / " + seconds + ") AS BIGINT)";
+    }
+
+    private static String formatWidth(long seconds) {
+        if (seconds % 604800 == 0) return seconds / 604800 + "w";
+        if (seconds % 86400 == 0) return seconds / 86400 + "d";
+        if (seconds % 3600 == 0) return seconds / 3600 + "h";
+        if (seconds % 60 == 0) return seconds / 60 + "m";
+        return seconds + "s";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TimeInterval other)) return false;
+        return seconds == other.seconds && originEpochSecond == other.originEpochSecond;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(seconds) * 31 + Long.hashCode(originEpochSecond);
+    }
+
+    @Override
+    public String toString() {
+        return originEpochSecond == DEFAULT_ORIGIN.toEpochSecond(ZoneOffset.UTC) ? name : name + " from " + getOrigin();
+    }
+}
@@ -0,0 +1,26 @@
+package ru.teamscore.sensors.aggregator;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Место устройства в рейтинге за интервал.
+ */
+@Getter
+public class TopDeviceResult {
+    private final LocalDateTime intervalStart;
+    /**
+     * Место, начиная с 1.
+     */
+    private final int rank;
+    private final String deviceName;
+    private final double value;
+
+    public TopDeviceResult(LocalDateTime intervalStart, int rank, String deviceName, double value) {
+        this.intervalStart = intervalStart;
+        this.rank = rank;
+        this.deviceName = deviceName;
+        this.value = value;
+    }
+}
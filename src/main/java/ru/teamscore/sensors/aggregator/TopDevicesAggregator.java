@@ -0,0 +1,78 @@
+package ru.teamscore.sensors.aggregator;
+
+import ru.teamscore.sensors.common.SensorType;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Рейтинг устройств: для каждого интервала K устройств с наибольшим или наименьшим показателем —
+ * освещённостью, давлением или модулем ускорения.
+ * <p>
+ * Отбор выполняется в БД оконной функцией ROW_NUMBER по интервалу, поэтому клиенту передаются
+ * только строки рейтинга.
+ */
+public class TopDevicesAggregator {
+    private final AggregatorService aggregatorService;
+
+    public TopDevicesAggregator(AggregatorService aggregatorService) {
+        this.aggregatorService = aggregatorService;
+    }
+
+    /**
+     * Название показателя рейтинга для заголовка таблицы.
+     *
+     * @throws IllegalArgumentException для координат, у которых нет скалярного показателя
+     */
+    public static String getRankingHeader(SensorType sensorType) {
+        return switch (sensorType) {
+            case LIGHT -> "LIGHT";
+            case BAROMETER -> "AIR_PRESSURE";
+            case ACCELEROMETER -> "MAGNITUDE";
+            case LOCATION -> throw new IllegalArgumentException("Location metrics have no scalar value to rank by");
+        };
+    }
+
+    /**
+     * Передаёт в обработчик для каждого интервала не более {@code limit} устройств.
+     * Порядок: интервалы по убыванию, внутри интервала — по месту.
+     *
+     * @throws IllegalArgumentException для координат, у которых нет скалярного показателя
+     */
+    public void streamTopDevices(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                 TimeInterval interval, int limit, RankingMeasure measure, boolean highest,
+                                 Consumer<TopDeviceResult> sink) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Top limit must be positive: " + limit);
+        }
+        String column = getRankingColumn(sensorType);
+        String direction = highest ? "DESC" : "ASC";
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT bucket, rank_in_bucket, device_name, val FROM (");
+        sql.append("SELECT bucket, device_name, val, ROW_NUMBER() OVER (PARTITION BY bucket ORDER BY val ")
+                .append(direction).append(", device_name ASC) AS rank_in_bucket FROM (");
+        sql.append("SELECT d.device_name, ").append(interval.bucketIndexSql("m.measured_at")).append(" AS bucket, ")
+                .append(measure.getSqlFunction()).append("(").append(column).append(") AS val");
+        AggregatorService.appendFromAndFilter(sql, sensorType, true, false);
+        sql.append("AND ").append(column).append(" IS NOT NULL ");
+        sql.append("GROUP BY d.device_name, ").append(interval.bucketIndexSql("m.measured_at"));
+        sql.append(") grouped) ranked WHERE rank_in_bucket <= ? ORDER BY bucket DESC, rank_in_bucket ASC");
+
+        List<Object> parameters = AggregatorService.rangeParameters(startTime, endTime, null);
+        parameters.add(limit);
+        aggregatorService.streamQuery(sql.toString(), parameters, row -> sink.accept(new TopDeviceResult(
+                interval.bucketStart(((Number) row[0]).longValue()), ((Number) row[1]).intValue(),
+                (String) row[2], ((Number) row[3]).doubleValue())));
+    }
+
+    private static String getRankingColumn(SensorType sensorType) {
+        return switch (sensorType) {
+            case LIGHT -> "m.light_value";
+            case BAROMETER -> "m.air_pressure";
+            case ACCELEROMETER -> "m.magnitude";
+            case LOCATION -> throw new IllegalArgumentException("Location metrics have no scalar value to rank by");
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package ru.teamscore.sensors.aggregator;
+
+/**
+ * Расширенная статистика одного показателя за интервал, вычисляемая за один проход:
+ * количество, минимум, максимум, среднее, стандартное отклонение и приближённые перцентили.
+ * <p>
+ * Среднее и дисперсия накапливаются по алгоритму Уэлфорда; две статистики можно объединить.
+ */
+public class ValueStatistics {
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double mean;
+    private double m2;
+    private final QuantileSketch sketch = new QuantileSketch();
+
+    /**
+     * Учитывает значение. Значения {@code NaN} пропускаются, как NULL в агрегатных функциях SQL.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count++;
+        if (count == 1) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        sketch.add(value);
+    }
+
+    /**
+     * Объединяет со статистикой, накопленной по другой части данных.
+     */
+    public void merge(ValueStatistics other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        count = total;
+        sketch.merge(other.sketch);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Double getMin() {
+        return count > 0 ? min : null;
+    }
+
+    public Double getMax() {
+        return count > 0 ? max : null;
+    }
+
+    public Double getMean() {
+        return count > 0 ? mean : null;
+    }
+
+    /**
+     * Выборочное стандартное отклонение, как STDDEV_SAMP в SQL.
+     */
+    public Double getStdDev() {
+        return count > 1 ? Math.sqrt(m2 / (count - 1)) : null;
+    }
+
+    /**
+     * Приближённый перцентиль (относительная погрешность 1%).
+     *
+     * @param percentile перцентиль от 0 до 100
+     */
+    public Double getPercentile(double percentile) {
+        return count > 0 ? sketch.getQuantile(percentile / 100) : null;
+    }
+}
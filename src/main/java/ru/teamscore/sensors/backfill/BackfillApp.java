@@ -0,0 +1,117 @@
+package ru.teamscore.sensors.backfill;
+
+import jakarta.persistence.EntityManagerFactory;
+import ru.teamscore.sensors.common.config.EntityManagerFactoryProvider;
+import ru.teamscore.sensors.common.metrics.MetricsServer;
+import ru.teamscore.sensors.consumer.MessageParser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Пересборка таблиц метрик из сырых сообщений за диапазон времени.
+ * <p>
+ * Использование:
+ * java BackfillApp <задание> <дата_начала> <дата_окончания> [опции]
+ * <p>
+ * Параметры:
+ *   задание: имя задания; повторный запуск с тем же именем продолжает прерванное задание
+ *   дата_начала, дата_окончания: формат yyyy-MM-dd HH:mm:ss, диапазон measured_at [начало, окончание)
+ * <p>
+ * Опции:
+ *   --threads=N: количество параллельно обрабатываемых порций (по умолчанию 4)
+ *   --slice=N: ширина порции по measured_at в минутах (по умолчанию 15)
+ *   --archive=DIR: каталог архива сырых сообщений; без него начало диапазона сдвигается
+ *                  к границе архивации, чтобы не стереть метрики, которых уже нет в сырых сообщениях
+ *   --batch=N: количество метрик между сбросами в БД (по умолчанию 500)
+ *   --rate=N: не более N сообщений в секунду (по умолчанию без ограничения)
+ *   --metrics-port=N: HTTP-точка /metrics с метриками в формате Prometheus
+ *   --metrics-bind=адрес: адрес точки /metrics (по умолчанию только локальный, 127.0.0.1)
+ */
+public class BackfillApp {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static void main(String[] args) throws InterruptedException {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq > 0 ? arg.substring(2, eq) : arg.substring(2), eq > 0 ? arg.substring(eq + 1) : "");
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (positional.size() != 3) {
+            System.out.println("Usage: BackfillApp <job> <start> <end> [--threads=N] [--slice=MINUTES] [--archive=DIR] [--batch=N] [--rate=N]");
+            System.exit(1);
+        }
+
+        LocalDateTime from;
+        LocalDateTime to;
+        try {
+            from = LocalDateTime.parse(positional.get(1), DATE_FORMAT);
+            to = LocalDateTime.parse(positional.get(2), DATE_FORMAT);
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date format. Use: yyyy-MM-dd HH:mm:ss");
+            System.exit(1);
+            return;
+        }
+        if (!from.isBefore(to)) {
+            System.out.println("Start must be before end");
+            System.exit(1);
+        }
+
+        EntityManagerFactory emf = EntityManagerFactoryProvider.getEntityManagerFactory();
+        MetricsServer metricsServer = null;
+        if (options.containsKey("metrics-port")) {
+            try {
+                metricsServer = MetricsServer.start(options.get("metrics-bind"), parseInt(options, "metrics-port", 0));
+            } catch (IOException e) {
+                System.out.println("Failed to start metrics endpoint: " + e.getMessage());
+            }
+        }
+
+        try {
+            BackfillService service = new BackfillService(emf, new MessageParser(),
+                    parseInt(options, "threads", 4),
+                    Duration.ofMinutes(Math.max(1, parseInt(options, "slice", 15))),
+                    parseInt(options, "batch", 500), parseInt(options, "rate", 0),
+                    options.containsKey("archive") ? Path.of(options.get("archive")) : null);
+            BackfillReport report = service.run(positional.get(0), from, to);
+            System.out.println("Chunks: " + report.completedChunks() + "/" + report.chunks()
+                    + ", failed: " + report.failedChunks());
+            System.out.println("Messages processed: " + report.processed() + ", skipped: " + report.skipped());
+            if (!report.isComplete()) {
+                System.out.println("Run the same command again to retry the remaining chunks.");
+                System.exit(2);
+            }
+        } finally {
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            emf.close();
+        }
+    }
+
+    private static int parseInt(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid --" + name + " value, using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
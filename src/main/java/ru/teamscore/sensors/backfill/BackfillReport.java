@@ -0,0 +1,16 @@
+package ru.teamscore.sensors.backfill;
+
+/**
+ * Итог запуска задания повторной обработки.
+ *
+ * @param chunks          количество порций задания
+ * @param completedChunks количество завершённых порций, включая завершённые в прошлых запусках
+ * @param failedChunks    количество порций, завершившихся ошибкой в этом запуске; их обработает следующий запуск
+ * @param processed       количество сообщений, обработанных в этом запуске
+ * @param skipped         количество сообщений, пропущенных из-за ошибки разбора в этом запуске
+ */
+public record BackfillReport(int chunks, int completedChunks, int failedChunks, long processed, long skipped) {
+    public boolean isComplete() {
+        return completedChunks == chunks;
+    }
+}
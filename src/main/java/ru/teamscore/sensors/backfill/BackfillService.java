@@ -0,0 +1,419 @@
+package ru.teamscore.sensors.backfill;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.cache.MetricsRewriteMarker;
+import ru.teamscore.sensors.common.entity.BackfillChunk;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.metric.*;
+import ru.teamscore.sensors.common.metrics.Counter;
+import ru.teamscore.sensors.common.metrics.MetricsRegistry;
+import ru.teamscore.sensors.consumer.MessageParser;
+import ru.teamscore.sensors.consumer.MotionTracker;
+import ru.teamscore.sensors.consumer.RawArchiveReader;
+import ru.teamscore.sensors.consumer.RawMessageArchiver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Повторная обработка сырых сообщений за диапазон measured_at для пересборки таблиц метрик.
+ * <p>
+ * При первом запуске задания недостающие устройства регистрируются, а диапазон делится на отрезки
+ * measured_at ({@link BackfillChunk}). Порции обрабатываются параллельно; каждая в одной транзакции заменяет
+ * метрики с теми же датчиком и measured_at, что у сообщений отрезка, и отмечает своё завершение, поэтому после сбоя
+ * повторный запуск того же задания обрабатывает только незавершённые порции, а читатели видят либо старые, либо новые
+ * метрики отрезка. Метрики, для которых сырого сообщения нет, остаются как есть.
+ * <p>
+ * Сообщения, перенесённые {@link RawMessageArchiver} в архив, читаются из каталога архива, если он задан.
+ * Без архива начало диапазона сдвигается к порогу архивации: раньше него таблица может быть неполной.
+ * <p>
+ * Контрольная точка потребителя не используется и не меняется; вместо неё каждая транзакция, меняющая метрики,
+ * сдвигает {@link MetricsRewriteMarker отметку перезаписи}, по которой агрегаторы очищают кэш результатов. Диапазон
+ * не должен пересекаться с сообщениями, которые в это время обрабатывает потребитель. Рывок акселерометра
+ * вычисляется внутри порции, у первого измерения датчика в порции он не заполняется.
+ */
+public class BackfillService {
+    private static final Counter PROCESSED = MetricsRegistry.getDefault().counter(
+            "sensors_backfill_messages_total", "Raw messages reprocessed by backfill jobs");
+    public static final Duration DEFAULT_SLICE_WIDTH = Duration.ofMinutes(15);
+    private static final Logger LOGGER = Logger.getLogger(BackfillService.class.getName());
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final EntityManagerFactory emf;
+    private final MessageParser messageParser;
+    private final int threads;
+    private final Duration sliceWidth;
+    private final int batchSize;
+    private final Throttle throttle;
+    private final RawArchiveReader archive;
+
+    public BackfillService(EntityManagerFactory emf) {
+        this(emf, new MessageParser(), 4, DEFAULT_SLICE_WIDTH, 500, 0);
+    }
+
+    public BackfillService(EntityManagerFactory emf, MessageParser messageParser, int threads, Duration sliceWidth,
+                           int batchSize, int maxMessagesPerSecond) {
+        this(emf, messageParser, threads, sliceWidth, batchSize, maxMessagesPerSecond, null);
+    }
+
+    /**
+     * @param threads              количество параллельно обрабатываемых порций
+     * @param sliceWidth           ширина отрезка measured_at одной порции; сообщения порции держатся в памяти
+     * @param batchSize            количество метрик между сбросами в БД внутри порции
+     * @param maxMessagesPerSecond общее ограничение скорости обработки; 0 — без ограничения
+     * @param archiveDirectory     каталог архива сырых сообщений или {@code null}
+     */
+    public BackfillService(EntityManagerFactory emf, MessageParser messageParser, int threads, Duration sliceWidth,
+                           int batchSize, int maxMessagesPerSecond, Path archiveDirectory) {
+        if (sliceWidth == null || sliceWidth.isNegative() || sliceWidth.isZero()) {
+            throw new IllegalArgumentException("Slice width must be positive");
+        }
+        this.emf = emf;
+        this.messageParser = messageParser;
+        this.threads = Math.max(1, threads);
+        this.sliceWidth = sliceWidth;
+        this.batchSize = Math.max(1, batchSize);
+        this.throttle = maxMessagesPerSecond > 0 ? new Throttle(maxMessagesPerSecond) : null;
+        this.archive = archiveDirectory != null ? new RawArchiveReader(archiveDirectory) : null;
+    }
+
+    /**
+     * Запускает или продолжает задание повторной обработки сообщений с measured_at в [from, to).
+     *
+     * @throws IllegalStateException если задание с таким именем уже запланировано на другой диапазон
+     */
+    public BackfillReport run(String jobName, LocalDateTime from, LocalDateTime to) throws InterruptedException {
+        List<BackfillChunk> chunks = planIfAbsent(jobName, from, to);
+        List<BackfillChunk> pending = chunks.stream().filter(chunk -> !chunk.isDone()).toList();
+        int alreadyDone = chunks.size() - pending.size();
+        if (alreadyDone > 0 && !pending.isEmpty()) {
+            LOGGER.info("Resuming backfill '" + jobName + "': " + alreadyDone + " of " + chunks.size() + " chunks done");
+        }
+
+        Progress progress = new Progress(jobName, chunks.size(), alreadyDone);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Backfill-" + jobName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(pending.size());
+            for (BackfillChunk chunk : pending) {
+                futures.add(executor.submit(() -> {
+                    processChunk(chunk.getId(), progress);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Backfill worker failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        BackfillReport report = progress.toReport();
+        LOGGER.info("Backfill '" + jobName + "' finished: " + report);
+        return report;
+    }
+
+    /**
+     * Возвращает порции задания, планируя его при первом запуске. Метрики при планировании не удаляются.
+     */
+    private List<BackfillChunk> planIfAbsent(String jobName, LocalDateTime from, LocalDateTime to) {
+        EntityTransaction tx = null;
+        try (EntityManager em = emf.createEntityManager()) {
+            tx = em.getTransaction();
+            tx.begin();
+            List<BackfillChunk> chunks = em.createQuery(
+                    "SELECT c FROM BackfillChunk c WHERE c.jobName = :job ORDER BY c.sliceStart ASC", BackfillChunk.class)
+                    .setParameter("job", jobName)
+                    .getResultList();
+            if (!chunks.isEmpty()) {
+                BackfillChunk first = chunks.get(0);
+                if (!first.getRangeStart().equals(from) || !first.getRangeEnd().equals(to)) {
+                    throw new IllegalStateException("Backfill job '" + jobName + "' is planned for "
+                            + first.getRangeStart() + " - " + first.getRangeEnd());
+                }
+                tx.commit();
+                return chunks;
+            }
+
+            LocalDateTime start = from;
+            LocalDateTime archivedBefore = RawMessageArchiver.getArchivedBefore(em);
+            if (archive == null && archivedBefore != null && archivedBefore.isAfter(from)) {
+                // сообщения, сохранённые раньше порога, могли уйти в архив; measured_at не позже saved_at,
+                // поэтому начиная с порога таблица полна
+                start = archivedBefore.isBefore(to) ? archivedBefore : to;
+                LOGGER.warning("Raw messages saved before " + archivedBefore + " may be archived; backfill '"
+                        + jobName + "' starts at " + start + " instead of " + from + ". Pass the archive directory "
+                        + "to rebuild the earlier part.");
+            }
+            registerMissingDevices(em, start, to);
+
+            for (LocalDateTime sliceStart = start; sliceStart.isBefore(to); sliceStart = sliceStart.plus(sliceWidth)) {
+                LocalDateTime sliceEnd = sliceStart.plus(sliceWidth);
+                BackfillChunk chunk = new BackfillChunk(jobName, from, to, sliceStart, sliceEnd.isBefore(to) ? sliceEnd : to);
+                em.persist(chunk);
+                chunks.add(chunk);
+            }
+            // строка отметки перезаписи создаётся здесь, чтобы параллельные порции не вставляли её наперегонки
+            MetricsRewriteMarker.mark(em);
+            tx.commit();
+            LOGGER.info("Backfill '" + jobName + "' planned: " + chunks.size() + " chunks in " + start + " - " + to);
+            return chunks;
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Регистрирует устройства сообщений диапазона, которых ещё нет в sensor_devices,
+     * чтобы параллельные порции не создавали их наперегонки.
+     */
+    private void registerMissingDevices(EntityManager em, LocalDateTime from, LocalDateTime to) {
+        List<Object[]> sensors = em.createQuery("SELECT m.sensorId, m.deviceName, m.sensorType, MAX(m.measuredAt) "
+                        + "FROM RawSensorMessage m WHERE m.measuredAt >= :from AND m.measuredAt < :to "
+                        + "GROUP BY m.sensorId, m.deviceName, m.sensorType", Object[].class)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList();
+        for (Object[] sensor : sensors) {
+            UUID sensorId = (UUID) sensor[0];
+            if (em.find(SensorDevice.class, sensorId) == null) {
+                em.persist(new SensorDevice(sensorId, (String) sensor[1], (SensorType) sensor[2], (LocalDateTime) sensor[3]));
+            }
+        }
+    }
+
+    private void processChunk(long chunkId, Progress progress) throws InterruptedException {
+        int[] counts = new int[2];
+        EntityTransaction tx = null;
+        try (EntityManager em = emf.createEntityManager()) {
+            tx = em.getTransaction();
+            tx.begin();
+            BackfillChunk chunk = em.find(BackfillChunk.class, chunkId);
+            LocalDateTime sliceStart = chunk.getSliceStart();
+            LocalDateTime sliceEnd = chunk.getSliceEnd();
+            List<RawSensorMessage> messages = loadMessages(em, sliceStart, sliceEnd);
+            em.clear();
+
+            MotionTracker motionTracker = new MotionTracker();
+            List<SensorMetric> metrics = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                if (throttle != null && i % batchSize == 0) {
+                    throttle.acquire(Math.min(batchSize, messages.size() - i));
+                }
+                SensorMetric metric;
+                try {
+                    metric = messageParser.parseMessage(messages.get(i));
+                } catch (IllegalArgumentException e) {
+                    counts[1]++;
+                    continue;
+                }
+                if (metric instanceof AccelerometerMetric accelerometerMetric) {
+                    motionTracker.updateJerk(accelerometerMetric);
+                }
+                metrics.add(metric);
+            }
+
+            deleteReplacedMetrics(em, metrics);
+            for (SensorMetric metric : metrics) {
+                em.persist(metric);
+                if (++counts[0] % batchSize == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+
+            chunk = em.find(BackfillChunk.class, chunkId);
+            chunk.setDone(true);
+            chunk.setProcessedCount(counts[0]);
+            chunk.setSkippedCount(counts[1]);
+            chunk.setAttempts(chunk.getAttempts() + 1);
+            chunk.setLastError(null);
+            chunk.setCompletedAt(LocalDateTime.now());
+            if (!metrics.isEmpty()) {
+                MetricsRewriteMarker.mark(em);
+            }
+            tx.commit();
+        } catch (InterruptedException e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            LOGGER.log(Level.WARNING, "Backfill chunk " + chunkId + " failed: " + e.getMessage(), e);
+            recordFailure(chunkId, e);
+            progress.chunkFailed();
+            return;
+        }
+        PROCESSED.add(counts[0]);
+        progress.chunkDone(counts[0], counts[1]);
+    }
+
+    /**
+     * Удаляет метрики с теми же датчиком, типом и measured_at, что и пересобранные. Остальные метрики отрезка,
+     * в том числе записанные без сырого сообщения или по уже удалённым сообщениям, не трогаются.
+     */
+    private static void deleteReplacedMetrics(EntityManager em, List<SensorMetric> metrics) {
+        Map<Class<?>, Map<UUID, List<LocalDateTime>>> keys = new HashMap<>();
+        for (SensorMetric metric : metrics) {
+            keys.computeIfAbsent(metric.getClass(), type -> new HashMap<>())
+                    .computeIfAbsent(metric.getSensorId(), sensorId -> new ArrayList<>())
+                    .add(metric.getMeasuredAt());
+        }
+        for (Map.Entry<Class<?>, Map<UUID, List<LocalDateTime>>> byType : keys.entrySet()) {
+            String jpql = "DELETE FROM " + byType.getKey().getSimpleName()
+                    + " m WHERE m.sensorId = :sensorId AND m.measuredAt IN :times";
+            for (Map.Entry<UUID, List<LocalDateTime>> bySensor : byType.getValue().entrySet()) {
+                List<LocalDateTime> times = bySensor.getValue();
+                for (int from = 0; from < times.size(); from += DELETE_BATCH_SIZE) {
+                    em.createQuery(jpql)
+                            .setParameter("sensorId", bySensor.getKey())
+                            .setParameter("times", times.subList(from, Math.min(times.size(), from + DELETE_BATCH_SIZE)))
+                            .executeUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Загружает сообщения отрезка из таблицы и, если задан, из архива, в порядке measured_at.
+     * Сообщение, оставшееся и в таблице, и в архиве после прерванной архивации, берётся один раз.
+     */
+    private List<RawSensorMessage> loadMessages(EntityManager em, LocalDateTime sliceStart, LocalDateTime sliceEnd)
+            throws IOException {
+        List<RawSensorMessage> messages = new ArrayList<>(em.createQuery("SELECT m FROM RawSensorMessage m "
+                        + "WHERE m.measuredAt >= :from AND m.measuredAt < :to ORDER BY m.measuredAt ASC, m.id ASC",
+                        RawSensorMessage.class)
+                .setParameter("from", sliceStart)
+                .setParameter("to", sliceEnd)
+                .getResultList());
+        if (archive == null) {
+            return messages;
+        }
+        Set<String> stored = new HashSet<>(messages.size() * 2);
+        for (RawSensorMessage message : messages) {
+            stored.add(message.getSensorId() + "@" + message.getMeasuredAt());
+        }
+        int fromTable = messages.size();
+        archive.read(sliceStart, sliceEnd, message -> {
+            if (message.getMeasuredAt().isBefore(sliceEnd)
+                    && !stored.contains(message.getSensorId() + "@" + message.getMeasuredAt())) {
+                messages.add(message);
+            }
+        });
+        if (messages.size() > fromTable) {
+            messages.sort(Comparator.comparing(RawSensorMessage::getMeasuredAt));
+        }
+        return messages;
+    }
+
+    private void recordFailure(long chunkId, Exception error) {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            BackfillChunk chunk = em.find(BackfillChunk.class, chunkId);
+            chunk.setAttempts(chunk.getAttempts() + 1);
+            String message = String.valueOf(error.getMessage());
+            chunk.setLastError(message.length() > 500 ? message.substring(0, 500) : message);
+            em.getTransaction().commit();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Cannot record failure of backfill chunk " + chunkId + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ход выполнения задания, общий для рабочих потоков.
+     */
+    private static final class Progress {
+        private final String jobName;
+        private final int chunks;
+        private final long startedNanos = System.nanoTime();
+        private final AtomicInteger completed;
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+
+        private Progress(String jobName, int chunks, int alreadyCompleted) {
+            this.jobName = jobName;
+            this.chunks = chunks;
+            this.completed = new AtomicInteger(alreadyCompleted);
+        }
+
+        private void chunkDone(int chunkProcessed, int chunkSkipped) {
+            int done = completed.incrementAndGet();
+            long total = processed.addAndGet(chunkProcessed);
+            skipped.addAndGet(chunkSkipped);
+            double seconds = Math.max(1e-3, (System.nanoTime() - startedNanos) / 1e9);
+            LOGGER.info(String.format("Backfill '%s': %d/%d chunks, %d messages, %.0f msg/s",
+                    jobName, done, chunks, total, total / seconds));
+        }
+
+        private void chunkFailed() {
+            failed.incrementAndGet();
+        }
+
+        private BackfillReport toReport() {
+            return new BackfillReport(chunks, completed.get(), failed.get(), processed.get(), skipped.get());
+        }
+    }
+
+    /**
+     * Ограничение общей скорости обработки: разрешения выдаются равномерно, не быстрее заданной частоты.
+     */
+    private static final class Throttle {
+        private final long nanosPerPermit;
+        private long nextFreeNanos = System.nanoTime();
+
+        private Throttle(int permitsPerSecond) {
+            this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        }
+
+        private void acquire(int permits) throws InterruptedException {
+            long waitUntil;
+            synchronized (this) {
+                long now = System.nanoTime();
+                waitUntil = Math.max(now, nextFreeNanos);
+                nextFreeNanos = waitUntil + permits * nanosPerPermit;
+            }
+            long delay = waitUntil - System.nanoTime();
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        }
+    }
+}
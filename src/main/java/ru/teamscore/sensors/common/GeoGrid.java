@@ -0,0 +1,61 @@
+package ru.teamscore.sensors.common;
+
+/**
+ * Равномерная сетка широты и долготы с шагом {@value #CELL_DEGREES}°.
+ * <p>
+ * Ячейка кодируется числом {@code строка * COLUMNS + столбец}, где строка отсчитывается от −90° широты,
+ * а столбец — от −180° долготы. Соседние по долготе ячейки одной строки имеют соседние номера,
+ * поэтому прямоугольник на карте сводится к диапазонам номеров, удобным для индекса.
+ */
+public final class GeoGrid {
+    public static final double CELL_DEGREES = 0.01;
+    public static final int ROWS = 18_000;
+    public static final int COLUMNS = 36_000;
+
+    private GeoGrid() {}
+
+    /**
+     * Номер ячейки, содержащей точку, или {@code null}, если координата не задана.
+     */
+    public static Long cellOf(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null || latitude.isNaN() || longitude.isNaN()) {
+            return null;
+        }
+        return (long) rowOf(latitude) * COLUMNS + columnOf(longitude);
+    }
+
+    public static int rowOf(double latitude) {
+        return clamp((int) Math.floor((latitude + 90) / CELL_DEGREES), ROWS);
+    }
+
+    public static int columnOf(double longitude) {
+        return clamp((int) Math.floor((longitude + 180) / CELL_DEGREES), COLUMNS);
+    }
+
+    /**
+     * Южная граница строки ячеек.
+     */
+    public static double rowLatitude(long row) {
+        return row * CELL_DEGREES - 90;
+    }
+
+    /**
+     * Западная граница столбца ячеек.
+     */
+    public static double columnLongitude(long column) {
+        return column * CELL_DEGREES - 180;
+    }
+
+    /**
+     * SQL-выражение номера ячейки по столбцам широты и долготы, совпадающее с {@link #cellOf}.
+     */
+    public static String cellSql(String latitudeColumn, String longitudeColumn) {
+        return "LEAST(CAST(FLOOR((" + latitudeColumn + " + 90) / " + CELL_DEGREES + ") AS BIGINT), " + (ROWS - 1) + ") * "
+                + COLUMNS + " + LEAST(CAST(FLOOR((" + longitudeColumn + " + 180) / " + CELL_DEGREES + ") AS BIGINT), "
+                + (COLUMNS - 1) + ")";
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+}
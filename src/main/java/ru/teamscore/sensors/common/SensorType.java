@@ -1,8 +1,21 @@
 package ru.teamscore.sensors.common;
 
 public enum SensorType {
-    LIGHT,
-    BAROMETER,
-    LOCATION,
-    ACCELEROMETER
-}
\ No newline at end of file
+    LIGHT("metric_light"),
+    BAROMETER("metric_barometer"),
+    LOCATION("metric_location"),
+    ACCELEROMETER("metric_accelerometer");
+
+    private final String tableName;
+
+    SensorType(String tableName) {
+        this.tableName = tableName;
+    }
+
+    /**
+     * Имя таблицы метрик этого типа датчика.
+     */
+    public String getTableName() {
+        return tableName;
+    }
+}
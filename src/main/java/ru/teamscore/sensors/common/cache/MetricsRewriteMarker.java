@@ -0,0 +1,71 @@
+package ru.teamscore.sensors.common.cache;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Отметка о перезаписи метрик в уже закрытых интервалах.
+ * <p>
+ * Кэш результатов агрегатора считает закрытыми интервалы, закончившиеся раньше контрольной точки
+ * потребителя за вычетом {@link #ALLOWED_LATENESS}. Кто меняет метрики раньше этой границы — перезаливка,
+ * генератор истории, потребитель при сильно опоздавших измерениях, — сдвигает отметку в processing_state
+ * в той же транзакции. Агрегатор сравнивает отметку с прочитанной ранее и при изменении очищает кэш,
+ * в том числе если писатель работает в другом процессе.
+ */
+public final class MetricsRewriteMarker {
+    public static final String COMPONENT_NAME = "metrics-rewrite";
+    /**
+     * Насколько измерение может опоздать относительно контрольной точки, не сдвигая отметку.
+     */
+    public static final Duration ALLOWED_LATENESS = Duration.ofMinutes(1);
+
+    private MetricsRewriteMarker() {}
+
+    /**
+     * Сдвигает отметку в открытой транзакции. Вызывается последним перед фиксацией,
+     * чтобы блокировка строки отметки держалась как можно меньше.
+     */
+    public static void mark(EntityManager em) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        ProcessingState state = em.find(ProcessingState.class, COMPONENT_NAME);
+        if (state == null) {
+            em.persist(new ProcessingState(COMPONENT_NAME, now));
+        } else {
+            LocalDateTime previous = state.getLastProcessedTime();
+            state.setLastProcessedTime(now.isAfter(previous) ? now : previous.plus(1, ChronoUnit.MICROS));
+            em.merge(state);
+        }
+    }
+
+    /**
+     * Сдвигает отметку в отдельной транзакции.
+     */
+    public static void mark(EntityManagerFactory emf) {
+        EntityTransaction tx = null;
+        try (EntityManager em = emf.createEntityManager()) {
+            tx = em.getTransaction();
+            tx.begin();
+            mark(em);
+            tx.commit();
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Сильно ли опоздало измерение: попадает ли оно в интервалы, которые кэш мог счесть закрытыми
+     * при контрольной точке не позже {@code checkpoint}.
+     */
+    public static boolean isLate(LocalDateTime measuredAt, LocalDateTime checkpoint) {
+        return checkpoint != null && measuredAt.isBefore(checkpoint.minus(ALLOWED_LATENESS));
+    }
+}
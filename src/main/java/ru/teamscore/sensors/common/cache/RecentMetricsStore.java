@@ -0,0 +1,314 @@
+package ru.teamscore.sensors.common.cache;
+
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.metric.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Колоночное хранилище последних метрик в памяти процесса.
+ * <p>
+ * Для каждого типа датчика данные хранятся упорядоченными по времени чанками
+ * из примитивных массивов ({@code long} — время в миллисекундах эпохи, {@code double} — значения).
+ * Хранилище наполняется потребителем и отвечает на запросы агрегатора по окну,
+ * начиная с {@link #getCoveredFrom(SensorType)}. Более старые данные вытесняются; граница покрытия
+ * у каждого типа своя и сдвигается под той же блокировкой, под которой идёт обход, поэтому
+ * {@link #scan} не может прочитать окно, вытесненное после проверки покрытия.
+ * <p>
+ * Хранилище работает только в процессе, который сам потребляет сообщения и отвечает на запросы,
+ * например в PipelineApp с опцией --server. Метрики, перезаписанные в БД в обход потребителя, оно не видит,
+ * поэтому перед обходом агрегатор сверяет {@link MetricsRewriteMarker отметку перезаписи}
+ * ({@link #invalidateIfRewritten}); после сдвига отметки хранилище сбрасывается и покрывает данные с текущего момента.
+ */
+public class RecentMetricsStore {
+    static final int CHUNK_SIZE = 4096;
+
+    private final Duration window;
+    private final Map<SensorType, Series> series = new EnumMap<>(SensorType.class);
+    private LocalDateTime validAsOf = LocalDateTime.now();
+
+    /**
+     * @param window      глубина хранимого окна относительно самого свежего измерения
+     * @param coveredFrom момент, начиная с которого хранилище содержит все метрики
+     */
+    public RecentMetricsStore(Duration window, LocalDateTime coveredFrom) {
+        if (window == null || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+        this.window = window;
+        long coveredFromMillis = toMillis(coveredFrom);
+        for (SensorType type : SensorType.values()) {
+            series.put(type, new Series(getColumnCount(type), coveredFromMillis));
+        }
+    }
+
+    public RecentMetricsStore(Duration window) {
+        this(window, LocalDateTime.now());
+    }
+
+    /**
+     * Возвращает момент, начиная с которого хранилище содержит полные данные типа датчика.
+     * Граница может сдвинуться сразу после вызова; окончательно покрытие проверяет {@link #scan}.
+     */
+    public LocalDateTime getCoveredFrom(SensorType sensorType) {
+        Series s = series.get(sensorType);
+        s.lock.readLock().lock();
+        try {
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(s.coveredFromMillis, 1000),
+                    (int) Math.floorMod(s.coveredFromMillis, 1000) * 1_000_000, ZoneOffset.UTC);
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Проверяет, покрывает ли хранилище все данные типа датчика начиная с указанного момента.
+     */
+    public boolean covers(SensorType sensorType, LocalDateTime from) {
+        Series s = series.get(sensorType);
+        s.lock.readLock().lock();
+        try {
+            return toMillis(from) >= s.coveredFromMillis;
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Сбрасывает хранилище, если метрики перезаписывались после его создания или прошлого сброса.
+     * Граница покрытия каждого типа сдвигается к текущему моменту: более ранние данные снова читаются из БД.
+     *
+     * @param rewrittenAt текущее значение отметки перезаписи или {@code null}, если метрики не перезаписывались
+     * @return {@code true}, если хранилище сброшено
+     */
+    public boolean invalidateIfRewritten(LocalDateTime rewrittenAt) {
+        synchronized (this) {
+            if (rewrittenAt == null || !rewrittenAt.isAfter(validAsOf)) {
+                return false;
+            }
+            validAsOf = rewrittenAt;
+        }
+        long now = toMillis(LocalDateTime.now());
+        for (Series s : series.values()) {
+            s.lock.writeLock().lock();
+            try {
+                s.chunks.clear();
+                s.current = null;
+                s.maxTime = Long.MIN_VALUE;
+                s.coveredFromMillis = Math.max(s.coveredFromMillis, now);
+            } finally {
+                s.lock.writeLock().unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Количество значений в строке для типа датчика.
+     */
+    public static int getColumnCount(SensorType sensorType) {
+        return switch (sensorType) {
+            case LIGHT, BAROMETER -> 1;
+            case LOCATION -> 2;
+            case ACCELEROMETER -> 3;
+        };
+    }
+
+    /**
+     * Добавляет метрику в хранилище. Метрики старше окна покрытия игнорируются.
+     */
+    public void append(SensorType sensorType, String deviceName, SensorMetric metric) {
+        long time = toMillis(metric.getMeasuredAt());
+        Series s = series.get(sensorType);
+        s.lock.writeLock().lock();
+        try {
+            if (time < s.coveredFromMillis) {
+                return;
+            }
+            s.append(time, s.deviceId(deviceName), extractValues(metric));
+            if (s.current.size == 1) {
+                evict(s);
+            }
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Обходит строки типа датчика с временем в диапазоне [from, to), если хранилище покрывает его целиком.
+     * Покрытие проверяется под той же блокировкой, что и обход.
+     *
+     * @param deviceName фильтр по устройству или {@code null}
+     * @return {@code false}, если начало диапазона уже вытеснено и обход не выполнялся
+     */
+    public boolean scan(SensorType sensorType, LocalDateTime from, LocalDateTime to, String deviceName,
+                        RowVisitor visitor) {
+        long fromMillis = toMillis(from);
+        long toMillis = toMillis(to);
+        Series s = series.get(sensorType);
+        s.lock.readLock().lock();
+        try {
+            if (fromMillis < s.coveredFromMillis) {
+                return false;
+            }
+            int deviceFilter = -1;
+            if (deviceName != null && !deviceName.isEmpty()) {
+                Integer id = s.deviceIds.get(deviceName);
+                if (id == null) {
+                    return true;
+                }
+                deviceFilter = id;
+            }
+            double[] row = new double[s.columnCount];
+            for (Chunk chunk : s.chunks) {
+                if (chunk.size == 0 || chunk.maxTime < fromMillis || chunk.minTime >= toMillis) {
+                    continue;
+                }
+                for (int i = 0; i < chunk.size; i++) {
+                    long time = chunk.times[i];
+                    if (time < fromMillis || time >= toMillis) continue;
+                    if (deviceFilter >= 0 && chunk.devices[i] != deviceFilter) continue;
+                    for (int c = 0; c < row.length; c++) {
+                        row[c] = chunk.values[c][i];
+                    }
+                    visitor.visit(s.deviceNames.get(chunk.devices[i]), time, row);
+                }
+            }
+            return true;
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Количество строк, хранящихся для типа датчика.
+     */
+    public int size(SensorType sensorType) {
+        Series s = series.get(sensorType);
+        s.lock.readLock().lock();
+        try {
+            int total = 0;
+            for (Chunk chunk : s.chunks) {
+                total += chunk.size;
+            }
+            return total;
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Вытесняет чанки, целиком вышедшие за окно относительно самого свежего измерения.
+     * Вызывается под блокировкой записи ряда.
+     */
+    private void evict(Series s) {
+        long cutoff = s.maxTime - window.toMillis();
+        if (cutoff <= s.coveredFromMillis) {
+            return;
+        }
+        s.chunks.removeIf(chunk -> chunk != s.current && chunk.maxTime < cutoff);
+        s.coveredFromMillis = cutoff;
+    }
+
+    private static double[] extractValues(SensorMetric metric) {
+        if (metric instanceof LightMetric light) {
+            return new double[]{toDouble(light.getLightValue())};
+        } else if (metric instanceof BarometerMetric barometer) {
+            return new double[]{toDouble(barometer.getAirPressure())};
+        } else if (metric instanceof LocationMetric location) {
+            return new double[]{toDouble(location.getLatitude()), toDouble(location.getLongitude())};
+        } else if (metric instanceof AccelerometerMetric accelerometer) {
+            return new double[]{toDouble(accelerometer.getX()), toDouble(accelerometer.getY()),
+                    toDouble(accelerometer.getZ())};
+        }
+        throw new IllegalArgumentException("Unsupported metric: " + metric.getClass());
+    }
+
+    private static double toDouble(Number value) {
+        return value != null ? value.doubleValue() : Double.NaN;
+    }
+
+    static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Обработчик строки при обходе хранилища.
+     * Массив значений переиспользуется между вызовами; отсутствующее значение — {@code NaN}.
+     */
+    @FunctionalInterface
+    public interface RowVisitor {
+        void visit(String deviceName, long epochMillis, double[] values);
+    }
+
+    /**
+     * Ряд данных одного типа датчика.
+     */
+    private static final class Series {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final int columnCount;
+        private final List<Chunk> chunks = new ArrayList<>();
+        private final Map<String, Integer> deviceIds = new HashMap<>();
+        private final List<String> deviceNames = new ArrayList<>();
+        private Chunk current;
+        private long maxTime = Long.MIN_VALUE;
+        private long coveredFromMillis;
+
+        private Series(int columnCount, long coveredFromMillis) {
+            this.columnCount = columnCount;
+            this.coveredFromMillis = coveredFromMillis;
+        }
+
+        private int deviceId(String deviceName) {
+            return deviceIds.computeIfAbsent(deviceName, name -> {
+                deviceNames.add(name);
+                return deviceNames.size() - 1;
+            });
+        }
+
+        private void append(long time, int device, double[] values) {
+            if (current == null || current.size == CHUNK_SIZE) {
+                current = new Chunk(columnCount);
+                chunks.add(current);
+            }
+            current.append(time, device, values);
+            maxTime = Math.max(maxTime, time);
+        }
+    }
+
+    /**
+     * Чанк фиксированного размера с колонками примитивных массивов.
+     */
+    private static final class Chunk {
+        private final long[] times = new long[CHUNK_SIZE];
+        private final int[] devices = new int[CHUNK_SIZE];
+        private final double[][] values;
+        private int size;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+
+        private Chunk(int columnCount) {
+            this.values = new double[columnCount][CHUNK_SIZE];
+        }
+
+        private void append(long time, int device, double[] row) {
+            times[size] = time;
+            devices[size] = device;
+            for (int c = 0; c < values.length; c++) {
+                values[c][size] = row[c];
+            }
+            size++;
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ru.teamscore.sensors.common.config;
+
+/**
+ * Состояние пула соединений.
+ *
+ * @param active  соединения, выданные приложению
+ * @param idle    свободные соединения
+ * @param total   все открытые соединения
+ * @param waiting потоки, ожидающие соединения
+ */
+public record ConnectionPoolStats(int active, int idle, int total, int waiting) {
+}
@@ -1,20 +1,33 @@
 package ru.teamscore.sensors.common.config;
 
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import jakarta.persistence.EntityManagerFactory;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import ru.teamscore.sensors.common.entity.BackfillChunk;
 import ru.teamscore.sensors.common.entity.ProcessingState;
 import ru.teamscore.sensors.common.entity.RawSensorMessage;
 import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.SensorPresence;
 import ru.teamscore.sensors.common.entity.metric.AccelerometerMetric;
 import ru.teamscore.sensors.common.entity.metric.BarometerMetric;
 import ru.teamscore.sensors.common.entity.metric.LightMetric;
 import ru.teamscore.sensors.common.entity.metric.LocationMetric;
 
+/**
+ * Общая фабрика EntityManager приложений.
+ * <p>
+ * Соединения выдаются пулом HikariCP, настроенным свойствами hibernate.hikari.* в hibernate.properties.
+ */
 public class EntityManagerFactoryProvider {
     private static final EntityManagerFactory ENTITY_MANAGER_FACTORY = new Configuration()
             .addAnnotatedClass(RawSensorMessage.class)
             .addAnnotatedClass(SensorDevice.class)
             .addAnnotatedClass(ProcessingState.class)
+            .addAnnotatedClass(SensorPresence.class)
+            .addAnnotatedClass(BackfillChunk.class)
             .addAnnotatedClass(LightMetric.class)
             .addAnnotatedClass(BarometerMetric.class)
             .addAnnotatedClass(LocationMetric.class)
@@ -26,4 +39,21 @@ public class EntityManagerFactoryProvider {
     public static EntityManagerFactory getEntityManagerFactory() {
         return ENTITY_MANAGER_FACTORY;
     }
-}
\ No newline at end of file
+
+    /**
+     * Возвращает состояние пула соединений фабрики или {@code null}, если фабрика работает без HikariCP.
+     */
+    public static ConnectionPoolStats getPoolStats(EntityManagerFactory emf) {
+        ConnectionProvider provider = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(ConnectionProvider.class);
+        if (provider == null || !provider.isUnwrappableAs(HikariDataSource.class)) {
+            return null;
+        }
+        HikariPoolMXBean pool = provider.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+        if (pool == null) {
+            return null;
+        }
+        return new ConnectionPoolStats(pool.getActiveConnections(), pool.getIdleConnections(),
+                pool.getTotalConnections(), pool.getThreadsAwaitingConnection());
+    }
+}
@@ -0,0 +1,69 @@
+package ru.teamscore.sensors.common.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Соединения JDBC без Hibernate — для коротких запусков, которым не нужен ORM.
+ * <p>
+ * Использует те же настройки, что и {@link EntityManagerFactoryProvider}: hibernate.connection.* из
+ * hibernate.properties, переопределяемые одноимёнными системными свойствами. Соединения не кэшируются.
+ */
+public class JdbcConnectionFactory {
+    private static final String PROPERTIES_RESOURCE = "/hibernate.properties";
+
+    private final String url;
+    private final String username;
+    private final String password;
+
+    public JdbcConnectionFactory(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Создаёт фабрику по настройкам hibernate.properties.
+     *
+     * @throws IllegalStateException если hibernate.connection.url не задан или драйвер не найден
+     */
+    public static JdbcConnectionFactory fromHibernateProperties() {
+        Properties properties = new Properties();
+        try (InputStream in = JdbcConnectionFactory.class.getResourceAsStream(PROPERTIES_RESOURCE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + PROPERTIES_RESOURCE, e);
+        }
+        properties.putAll(System.getProperties());
+
+        String url = properties.getProperty("hibernate.connection.url");
+        if (url == null) {
+            throw new IllegalStateException("hibernate.connection.url is not configured");
+        }
+        String driverClass = properties.getProperty("hibernate.connection.driver_class");
+        if (driverClass != null) {
+            try {
+                Class.forName(driverClass);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("JDBC driver not found: " + driverClass, e);
+            }
+        }
+        return new JdbcConnectionFactory(url, properties.getProperty("hibernate.connection.username"),
+                properties.getProperty("hibernate.connection.password"));
+    }
+
+    public Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+}
@@ -0,0 +1,381 @@
+package ru.teamscore.sensors.common.config;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import org.hibernate.Session;
+import ru.teamscore.sensors.common.GeoGrid;
+import ru.teamscore.sensors.common.SensorType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Управление индексами и секционированием таблиц временных рядов.
+ * <p>
+ * Создаёт составные индексы (sensor_id, measured_at) для таблиц метрик и индекс по saved_at
+ * для опроса сырых сообщений. На PostgreSQL дополнительно создаёт BRIN-индексы по столбцам времени,
+ * которые заполняются в порядке добавления, и поддерживает помесячное секционирование таблиц метрик.
+ * Для координат создаётся индекс по ячейке пространственной сетки, заполняемой при записи.
+ * Все операции идемпотентны. Индексы и заполнение новых столбцов у старых строк выполняются
+ * разовой миграцией ({@link #migrate}), а не при каждом запуске.
+ */
+public class SchemaManager {
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    private static final Logger LOGGER = Logger.getLogger(SchemaManager.class.getName());
+    private static final String RAW_TABLE = "raw_sensor_messages";
+    private static final String LOCATION_TABLE = SensorType.LOCATION.getTableName();
+    private static final String ACCELEROMETER_TABLE = SensorType.ACCELEROMETER.getTableName();
+
+    private final EntityManagerFactory emf;
+
+    public SchemaManager(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /**
+     * Создаёт недостающие индексы.
+     */
+    public void createIndexes() {
+        doInTransaction(connection -> {
+            boolean postgres = isPostgres(connection);
+            try (Statement statement = connection.createStatement()) {
+                for (SensorType type : SensorType.values()) {
+                    String table = type.getTableName();
+                    statement.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_sensor_time ON "
+                            + table + " (sensor_id, measured_at)");
+                    if (postgres) {
+                        statement.execute("CREATE INDEX IF NOT EXISTS brin_" + table + "_measured_at ON "
+                                + table + " USING BRIN (measured_at)");
+                    }
+                }
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_" + LOCATION_TABLE + "_grid_time ON "
+                        + LOCATION_TABLE + " (grid_cell, measured_at)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_" + RAW_TABLE + "_saved_at ON "
+                        + RAW_TABLE + " (saved_at)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_sensor_devices_device_name ON "
+                        + "sensor_devices (device_name)");
+                if (postgres) {
+                    statement.execute("CREATE INDEX IF NOT EXISTS brin_" + RAW_TABLE + "_measured_at ON "
+                            + RAW_TABLE + " USING BRIN (measured_at)");
+                }
+            }
+        });
+        LOGGER.info("Time-series indexes are in place");
+    }
+
+    /**
+     * Разовая миграция: создаёт недостающие индексы и заполняет столбцы, появившиеся позже сохранённых данных.
+     * Запускается отдельной командой (ConsumerApp --migrate), а не при каждом старте приложений.
+     *
+     * @param batchSize ширина диапазона id, обновляемого в одной транзакции
+     */
+    public void migrate(int batchSize) {
+        createIndexes();
+        backfillGridCells(batchSize);
+        backfillMagnitudes(batchSize);
+    }
+
+    public int backfillGridCells() {
+        return backfillGridCells(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Заполняет ячейку пространственной сетки у координат, сохранённых до появления столбца grid_cell.
+     *
+     * @return количество обновлённых строк
+     */
+    public int backfillGridCells(int batchSize) {
+        int updated = updateInBatches(LOCATION_TABLE, "grid_cell = " + GeoGrid.cellSql("latitude", "longitude"),
+                "grid_cell IS NULL AND latitude IS NOT NULL AND longitude IS NOT NULL", batchSize);
+        if (updated > 0) {
+            LOGGER.info("Grid cells backfilled for " + updated + " location metrics");
+        }
+        return updated;
+    }
+
+    public int backfillMagnitudes() {
+        return backfillMagnitudes(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Заполняет модуль вектора ускорения у измерений, сохранённых до появления столбца magnitude.
+     * Рывок для таких измерений не восстанавливается.
+     *
+     * @return количество обновлённых строк
+     */
+    public int backfillMagnitudes(int batchSize) {
+        int updated = updateInBatches(ACCELEROMETER_TABLE, "magnitude = SQRT(val_x * val_x + val_y * val_y + val_z * val_z)",
+                "magnitude IS NULL AND val_x IS NOT NULL AND val_y IS NOT NULL AND val_z IS NOT NULL", batchSize);
+        if (updated > 0) {
+            LOGGER.info("Magnitudes backfilled for " + updated + " accelerometer metrics");
+        }
+        return updated;
+    }
+
+    /**
+     * Обновляет строки, удовлетворяющие условию, диапазонами id по {@code batchSize} — каждый в своей транзакции,
+     * чтобы не держать блокировки на всю таблицу и не раздувать журнал одной транзакцией.
+     *
+     * @return количество обновлённых строк
+     */
+    private int updateInBatches(String table, String assignment, String condition, int batchSize) {
+        long[] range = new long[2];
+        boolean[] found = new boolean[1];
+        doInTransaction(connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT MIN(id), MAX(id) FROM " + table + " WHERE " + condition)) {
+                if (rs.next()) {
+                    range[0] = rs.getLong(1);
+                    found[0] = !rs.wasNull();
+                    range[1] = rs.getLong(2);
+                }
+            }
+        });
+        if (!found[0]) {
+            return 0;
+        }
+
+        String sql = "UPDATE " + table + " SET " + assignment + " WHERE id BETWEEN ? AND ? AND " + condition;
+        long step = Math.max(1, batchSize);
+        int total = 0;
+        for (long first = range[0]; first <= range[1]; first += step) {
+            long firstId = first;
+            long lastId = Math.min(range[1], first + step - 1);
+            int[] updated = new int[1];
+            doInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setLong(1, firstId);
+                    statement.setLong(2, lastId);
+                    updated[0] = statement.executeUpdate();
+                }
+            });
+            total += updated[0];
+        }
+        return total;
+    }
+
+    /**
+     * Переводит таблицы метрик на помесячное секционирование по measured_at (только PostgreSQL)
+     * и создаёт секции на указанное количество месяцев вперёд.
+     * <p>
+     * Несекционированная таблица пересоздаётся как секционированная с переносом данных
+     * в одной транзакции под исключительной блокировкой; первичный ключ становится (id, measured_at),
+     * как требует PostgreSQL, внешние ключи и ограничения CHECK сохраняются.
+     */
+    public void enablePartitioning(int monthsAhead) {
+        doInTransaction(connection -> {
+            if (!isPostgres(connection)) {
+                LOGGER.warning("Partitioning is supported only on PostgreSQL, skipping");
+                return;
+            }
+            for (SensorType type : SensorType.values()) {
+                String table = type.getTableName();
+                if (!isPartitioned(connection, table)) {
+                    convertToPartitioned(connection, table, monthsAhead);
+                }
+            }
+        });
+        createUpcomingPartitions(monthsAhead);
+        createIndexes();
+    }
+
+    /**
+     * Создаёт секции таблиц метрик с текущего месяца на указанное количество месяцев вперёд.
+     * Предназначен для периодического вызова.
+     */
+    public void createUpcomingPartitions(int monthsAhead) {
+        doInTransaction(connection -> {
+            if (!isPostgres(connection)) {
+                return;
+            }
+            YearMonth current = YearMonth.now();
+            for (SensorType type : SensorType.values()) {
+                String table = type.getTableName();
+                if (isPartitioned(connection, table)) {
+                    createPartitions(connection, table, current, current.plusMonths(monthsAhead));
+                }
+            }
+        });
+    }
+
+    /**
+     * Возвращает имя секции таблицы за месяц.
+     */
+    static String partitionName(String table, YearMonth month) {
+        return String.format("%s_p%04d%02d", table, month.getYear(), month.getMonthValue());
+    }
+
+    /**
+     * Пересоздаёт таблицу как секционированную. Таблица блокируется на всё время переноса;
+     * внешние ключи и ограничения CHECK, которые не копирует LIKE, переносятся по определению из pg_constraint.
+     * Старая таблица удаляется, только если в новую перенесены все её строки.
+     */
+    private void convertToPartitioned(Connection connection, String table, int monthsAhead) throws SQLException {
+        LOGGER.info("Converting " + table + " to a partitioned table");
+        String legacy = table + "_unpartitioned";
+        YearMonth first = YearMonth.now();
+        YearMonth last = first.plusMonths(monthsAhead);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LOCK TABLE " + table + " IN ACCESS EXCLUSIVE MODE");
+            statement.execute("ALTER TABLE " + table + " RENAME TO " + legacy);
+            for (String sql : createPartitionedTableSql(table, legacy, getConstraints(connection, legacy))) {
+                statement.execute(sql);
+            }
+
+            try (ResultSet rs = statement.executeQuery("SELECT MIN(measured_at), MAX(measured_at) FROM " + legacy)) {
+                if (rs.next() && rs.getTimestamp(1) != null) {
+                    YearMonth dataFirst = YearMonth.from(rs.getTimestamp(1).toLocalDateTime());
+                    YearMonth dataLast = YearMonth.from(rs.getTimestamp(2).toLocalDateTime());
+                    first = dataFirst.isBefore(first) ? dataFirst : first;
+                    last = dataLast.isAfter(last) ? dataLast : last;
+                }
+            }
+            createPartitions(connection, table, first, last);
+            statement.execute("CREATE TABLE IF NOT EXISTS " + table + "_default PARTITION OF " + table + " DEFAULT");
+
+            int copied = statement.executeUpdate("INSERT INTO " + table + " SELECT * FROM " + legacy);
+            long expected = count(statement, legacy);
+            if (copied != expected || count(statement, table) != expected) {
+                throw new IllegalStateException("Row count mismatch while converting " + table + ": "
+                        + copied + " of " + expected + " rows copied");
+            }
+            statement.execute("SELECT setval(pg_get_serial_sequence('" + table + "', 'id'), "
+                    + "COALESCE((SELECT MAX(id) FROM " + table + "), 0) + 1, false)");
+            statement.execute("DROP TABLE " + legacy);
+        }
+    }
+
+    /**
+     * Возвращает DDL секционированной таблицы по образцу старой: столбцы, значения по умолчанию и identity
+     * копируются через LIKE, первичный ключ дополняется measured_at, ограничения добавляются по их определениям.
+     *
+     * @param constraints определения ограничений по именам, как их возвращает pg_get_constraintdef
+     */
+    static List<String> createPartitionedTableSql(String table, String legacy, Map<String, String> constraints) {
+        List<String> sql = new ArrayList<>();
+        sql.add("CREATE TABLE " + table + " (LIKE " + legacy + " INCLUDING DEFAULTS INCLUDING IDENTITY) "
+                + "PARTITION BY RANGE (measured_at)");
+        sql.add("ALTER TABLE " + table + " ADD PRIMARY KEY (id, measured_at)");
+        constraints.forEach((name, definition) ->
+                sql.add("ALTER TABLE " + table + " ADD CONSTRAINT \"" + name + "\" " + definition));
+        return sql;
+    }
+
+    /**
+     * Возвращает внешние ключи и ограничения CHECK таблицы.
+     */
+    private Map<String, String> getConstraints(Connection connection, String table) throws SQLException {
+        Map<String, String> constraints = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT conname, pg_get_constraintdef(oid) FROM pg_constraint "
+                        + "WHERE conrelid = ?::regclass AND contype IN ('f', 'c') ORDER BY conname")) {
+            statement.setString(1, table);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    constraints.put(rs.getString(1), rs.getString(2));
+                }
+            }
+        }
+        return constraints;
+    }
+
+    private static long count(Statement statement, String table) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private void createPartitions(Connection connection, String table, YearMonth from, YearMonth to) {
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            LocalDate start = month.atDay(1);
+            LocalDate end = month.plusMonths(1).atDay(1);
+            String sql = "CREATE TABLE IF NOT EXISTS " + partitionName(table, month) + " PARTITION OF " + table
+                    + " FOR VALUES FROM ('" + start + "') TO ('" + end + "')";
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SAVEPOINT create_partition");
+                statement.execute(sql);
+                statement.execute("RELEASE SAVEPOINT create_partition");
+            } catch (SQLException e) {
+                // секция по умолчанию уже содержит строки этого месяца — оставляем их там
+                LOGGER.log(Level.WARNING, "Cannot create partition " + partitionName(table, month) + ": " + e.getMessage());
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("ROLLBACK TO SAVEPOINT create_partition");
+                } catch (SQLException rollbackError) {
+                    throw new IllegalStateException("Failed to roll back partition creation", rollbackError);
+                }
+            }
+        }
+    }
+
+    private boolean isPartitioned(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT 1 FROM pg_partitioned_table p JOIN pg_class c ON c.oid = p.partrelid "
+                        + "WHERE c.relname = ? AND pg_table_is_visible(c.oid)")) {
+            statement.setString(1, table);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Возвращает секции таблицы, созданные в текущей схеме.
+     */
+    public List<String> listPartitions(String table) {
+        List<String> partitions = new ArrayList<>();
+        doInTransaction(connection -> {
+            if (!isPostgres(connection)) {
+                return;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                            + "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ? ORDER BY c.relname")) {
+                statement.setString(1, table);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        partitions.add(rs.getString(1));
+                    }
+                }
+            }
+        });
+        return partitions;
+    }
+
+    private boolean isPostgres(Connection connection) throws SQLException {
+        return "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+    }
+
+    private void doInTransaction(ConnectionWork work) {
+        EntityTransaction tx = null;
+        try (EntityManager em = emf.createEntityManager()) {
+            tx = em.getTransaction();
+            tx.begin();
+            em.unwrap(Session.class).doWork(work::execute);
+            tx.commit();
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionWork {
+        void execute(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,65 @@
+package ru.teamscore.sensors.common.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Порция задания повторной обработки: отрезок measured_at внутри диапазона задания и её состояние.
+ * Порции задания создаются один раз при планировании, поэтому прерванное задание продолжается с незавершённых порций.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "backfill_chunks", indexes = @Index(name = "idx_backfill_chunks_job", columnList = "job_name, slice_start"))
+public class BackfillChunk {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_name", length = 64, nullable = false)
+    private String jobName;
+
+    @Column(name = "range_start", nullable = false)
+    private LocalDateTime rangeStart;
+
+    @Column(name = "range_end", nullable = false)
+    private LocalDateTime rangeEnd;
+
+    @Column(name = "slice_start", nullable = false)
+    private LocalDateTime sliceStart;
+
+    @Column(name = "slice_end", nullable = false)
+    private LocalDateTime sliceEnd;
+
+    @Column(name = "done", nullable = false)
+    private boolean done;
+
+    @Column(name = "processed_count", nullable = false)
+    private int processedCount;
+
+    @Column(name = "skipped_count", nullable = false)
+    private int skippedCount;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    public BackfillChunk(String jobName, LocalDateTime rangeStart, LocalDateTime rangeEnd,
+                         LocalDateTime sliceStart, LocalDateTime sliceEnd) {
+        this.jobName = jobName;
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+        this.sliceStart = sliceStart;
+        this.sliceEnd = sliceEnd;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.teamscore.sensors.common.entity;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ru.teamscore.sensors.common.SensorType;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Скетч HyperLogLog датчиков, приславших измерения от имени устройства за минуту.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "sensor_presence")
+@IdClass(SensorPresence.Key.class)
+public class SensorPresence {
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "sensor_type", length = 32)
+    private SensorType sensorType;
+
+    @Id
+    @Column(name = "device_name")
+    private String deviceName;
+
+    @Id
+    @Column(name = "minute_start")
+    private LocalDateTime minuteStart;
+
+    @Column(name = "sketch", length = 4200, nullable = false)
+    private byte[] sketch;
+
+    public SensorPresence(SensorType sensorType, String deviceName, LocalDateTime minuteStart, byte[] sketch) {
+        this.sensorType = sensorType;
+        this.deviceName = deviceName;
+        this.minuteStart = minuteStart;
+        this.sketch = sketch;
+    }
+
+    @Getter
+    @NoArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private SensorType sensorType;
+        private String deviceName;
+        private LocalDateTime minuteStart;
+
+        public Key(SensorType sensorType, String deviceName, LocalDateTime minuteStart) {
+            this.sensorType = sensorType;
+            this.deviceName = deviceName;
+            this.minuteStart = minuteStart;
+        }
+    }
+}
@@ -2,7 +2,10 @@ package ru.teamscore.sensors.common.entity.metric;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -26,10 +29,41 @@ public class AccelerometerMetric extends SensorMetric {
     @Column(name = "val_z")
     private Double z;
 
+    /**
+     * Модуль вектора ускорения, вычисляемый при сохранении.
+     */
+    @Setter(AccessLevel.NONE)
+    @Column(name = "magnitude")
+    private Double magnitude;
+
+    /**
+     * Рывок — модуль изменения вектора ускорения относительно предыдущего измерения датчика в секунду;
+     * {@code null}, если предыдущее измерение неизвестно.
+     */
+    @Column(name = "jerk")
+    private Double jerk;
+
     public AccelerometerMetric(UUID sensorId, LocalDateTime measuredAt, Double x, Double y, Double z) {
         super(sensorId, measuredAt);
         this.x = x;
         this.y = y;
         this.z = z;
+        this.magnitude = magnitudeOf(x, y, z);
+    }
+
+    /**
+     * Модуль вектора или {@code null}, если какая-либо составляющая не задана.
+     */
+    public static Double magnitudeOf(Double x, Double y, Double z) {
+        if (x == null || y == null || z == null) {
+            return null;
+        }
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void updateMagnitude() {
+        magnitude = magnitudeOf(x, y, z);
     }
 }
\ No newline at end of file
@@ -2,10 +2,14 @@ package ru.teamscore.sensors.common.entity.metric;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import ru.teamscore.sensors.common.GeoGrid;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -23,9 +27,23 @@ public class LocationMetric extends SensorMetric {
     @Column(name = "longitude")
     private Double longitude;
 
+    /**
+     * Ячейка пространственной сетки {@link GeoGrid}, вычисляемая при сохранении.
+     */
+    @Setter(AccessLevel.NONE)
+    @Column(name = "grid_cell")
+    private Long gridCell;
+
     public LocationMetric(UUID sensorId, LocalDateTime measuredAt, Double latitude, Double longitude) {
         super(sensorId, measuredAt);
         this.latitude = latitude;
         this.longitude = longitude;
+        this.gridCell = GeoGrid.cellOf(latitude, longitude);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void updateGridCell() {
+        gridCell = GeoGrid.cellOf(latitude, longitude);
     }
 }
\ No newline at end of file
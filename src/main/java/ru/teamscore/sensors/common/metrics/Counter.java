@@ -0,0 +1,26 @@
+package ru.teamscore.sensors.common.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Монотонно растущий счётчик. Увеличение не блокирует потоки: значение распределено по ячейкам {@link LongAdder}
+ * и суммируется только при чтении.
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,75 @@
+package ru.teamscore.sensors.common.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма с фиксированными верхними границами корзин, как histogram в Prometheus.
+ * Наблюдение увеличивает одну корзину, сумму и счётчик без блокировок; накопленные значения корзин
+ * вычисляются при чтении.
+ */
+public final class Histogram {
+    /**
+     * Границы по умолчанию для длительностей в секундах: от 1 мс до 10 с.
+     */
+    public static final double[] DEFAULT_SECONDS_BUCKETS =
+            {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final double[] upperBounds;
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum = new DoubleAdder();
+    private final LongAdder count = new LongAdder();
+
+    Histogram(double[] upperBounds) {
+        if (upperBounds.length == 0) {
+            throw new IllegalArgumentException("Histogram needs at least one bucket");
+        }
+        this.upperBounds = upperBounds.clone();
+        Arrays.sort(this.upperBounds);
+        // последняя корзина — +Inf
+        this.buckets = new LongAdder[this.upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double value) {
+        int index = Arrays.binarySearch(upperBounds, value);
+        buckets[index >= 0 ? index : -index - 1].increment();
+        sum.add(value);
+        count.increment();
+    }
+
+    /**
+     * Наблюдает длительность в секундах, прошедшую с {@code startNanos} по {@link System#nanoTime()}.
+     */
+    public void observeSince(long startNanos) {
+        observe((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    double[] getUpperBounds() {
+        return upperBounds;
+    }
+
+    /**
+     * Накопленные количества: для каждой границы — число наблюдений не больше неё, последний элемент — всего.
+     */
+    long[] getCumulativeCounts() {
+        long[] cumulative = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].sum();
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+}
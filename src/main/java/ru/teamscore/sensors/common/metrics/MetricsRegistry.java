@@ -0,0 +1,123 @@
+package ru.teamscore.sensors.common.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Реестр метрик приложения с выводом в текстовом формате Prometheus.
+ * <p>
+ * Регистрация выполняется редко и синхронизирована; сами счётчики и гистограммы обновляются без блокировок.
+ * Повторная регистрация с тем же именем возвращает уже созданную метрику, поэтому несколько экземпляров
+ * сервиса в одном процессе пишут в общие счётчики.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+    /**
+     * Общий реестр процесса, в который пишут сервисы.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public synchronized Counter counter(String name, String help) {
+        return register(name, help, "counter", Counter.class, Counter::new);
+    }
+
+    public synchronized Histogram histogram(String name, String help, double... upperBounds) {
+        return register(name, help, "histogram", Histogram.class, () -> new Histogram(upperBounds));
+    }
+
+    /**
+     * Регистрирует значение, вычисляемое при каждом чтении. Повторная регистрация заменяет источник.
+     */
+    public synchronized void gauge(String name, String help, DoubleSupplier supplier) {
+        checkName(name);
+        Metric existing = metrics.get(name);
+        if (existing != null && !"gauge".equals(existing.type())) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + existing.type());
+        }
+        metrics.put(name, new Metric(name, help, "gauge", supplier));
+    }
+
+    /**
+     * Возвращает все метрики в текстовом формате Prometheus 0.0.4.
+     */
+    public String scrape() {
+        Metric[] snapshot;
+        synchronized (this) {
+            snapshot = metrics.values().toArray(new Metric[0]);
+        }
+        StringBuilder out = new StringBuilder(snapshot.length * 128);
+        for (Metric metric : snapshot) {
+            out.append("# HELP ").append(metric.name()).append(' ').append(escapeHelp(metric.help())).append('\n');
+            out.append("# TYPE ").append(metric.name()).append(' ').append(metric.type()).append('\n');
+            if (metric.value() instanceof Counter counter) {
+                out.append(metric.name()).append(' ').append(counter.get()).append('\n');
+            } else if (metric.value() instanceof Histogram histogram) {
+                appendHistogram(out, metric.name(), histogram);
+            } else {
+                out.append(metric.name()).append(' ')
+                        .append(formatDouble(((DoubleSupplier) metric.value()).getAsDouble())).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, Histogram histogram) {
+        double[] upperBounds = histogram.getUpperBounds();
+        long[] cumulative = histogram.getCumulativeCounts();
+        for (int i = 0; i < upperBounds.length; i++) {
+            out.append(name).append("_bucket{le=\"").append(formatDouble(upperBounds[i])).append("\"} ")
+                    .append(cumulative[i]).append('\n');
+        }
+        long total = cumulative[cumulative.length - 1];
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(total).append('\n');
+        out.append(name).append("_sum ").append(formatDouble(histogram.getSum())).append('\n');
+        out.append(name).append("_count ").append(total).append('\n');
+    }
+
+    private <T> T register(String name, String help, String type, Class<T> metricClass,
+                           Supplier<T> factory) {
+        checkName(name);
+        Metric existing = metrics.get(name);
+        if (existing != null) {
+            if (!metricClass.isInstance(existing.value())) {
+                throw new IllegalArgumentException("Metric " + name + " is already registered as " + existing.type());
+            }
+            return metricClass.cast(existing.value());
+        }
+        T metric = factory.get();
+        metrics.put(name, new Metric(name, help, type, metric));
+        return metric;
+    }
+
+    private static void checkName(String name) {
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name: " + name);
+        }
+    }
+
+    static String formatDouble(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (value == Double.POSITIVE_INFINITY) return "+Inf";
+        if (value == Double.NEGATIVE_INFINITY) return "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    /**
+     * @param value {@link Counter}, {@link Histogram} или {@link DoubleSupplier} для gauge
+     */
+    private record Metric(String name, String help, String type, Object value) {}
+}
@@ -0,0 +1,99 @@
+package ru.teamscore.sensors.common.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP-точка GET /metrics для опроса Prometheus. Обслуживается одним потоком JDK HttpServer.
+ * <p>
+ * По умолчанию точка слушает только локальный интерфейс, как и сервер агрегации; чтобы Prometheus опрашивал
+ * её с другого узла, приложения принимают опцию --metrics-bind=адрес (0.0.0.0 — все интерфейсы).
+ */
+public class MetricsServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(MetricsServer.class.getName());
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+    private final HttpServer server;
+
+    public MetricsServer(MetricsRegistry registry, int port) throws IOException {
+        this(registry, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public MetricsServer(MetricsRegistry registry, InetSocketAddress address) throws IOException {
+        this.registry = registry;
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+    }
+
+    /**
+     * Запускает сервер на локальном интерфейсе с общим реестром процесса.
+     */
+    public static MetricsServer start(int port) throws IOException {
+        return start(null, port);
+    }
+
+    /**
+     * Запускает сервер с общим реестром процесса.
+     *
+     * @param bindAddress адрес из опции --metrics-bind; {@code null} или пустая строка — только локальный интерфейс
+     */
+    public static MetricsServer start(String bindAddress, int port) throws IOException {
+        InetAddress address = bindAddress == null || bindAddress.isEmpty()
+                ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress);
+        MetricsServer server = new MetricsServer(MetricsRegistry.getDefault(), new InetSocketAddress(address, port));
+        server.start();
+        return server;
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Metrics endpoint listening on " + server.getAddress() + "/metrics");
+    }
+
+    /**
+     * Адрес, на котором принимаются запросы.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Порт, на котором принимаются запросы (актуально при запуске на порту 0).
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to send metrics: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+}
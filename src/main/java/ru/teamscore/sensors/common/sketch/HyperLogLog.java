@@ -0,0 +1,123 @@
+package ru.teamscore.sensors.common.sketch;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Скетч HyperLogLog для приближённого подсчёта различных значений.
+ * <p>
+ * {@value #REGISTERS} регистров дают относительную погрешность около 1,6%. Скетчи объединяются
+ * поэлементным максимумом регистров, поэтому количество за крупный интервал получается
+ * из скетчей мелких интервалов без повторного чтения исходных данных.
+ */
+public class HyperLogLog {
+    public static final int PRECISION = 12;
+    public static final int REGISTERS = 1 << PRECISION;
+
+    private static final byte SPARSE = 1;
+    private static final byte DENSE = 2;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    public void add(UUID value) {
+        addHash(mix(value.getMostSignificantBits()) ^ mix(value.getLeastSignificantBits() + 0x9E3779B97F4A7C15L));
+    }
+
+    /**
+     * Добавляет значение по его 64-битному хешу с равномерным распределением битов.
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION), Long.SIZE - PRECISION) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Оценка количества различных значений.
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // поправка для малых количеств: линейный подсчёт по пустым регистрам
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Сериализует скетч: разреженно (номер и значение заполненных регистров), пока это короче,
+     * иначе — все регистры подряд.
+     */
+    public byte[] toBytes() {
+        int filled = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                filled++;
+            }
+        }
+        if (filled * 3 < REGISTERS) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + filled * 3).put(SPARSE);
+            for (int i = 0; i < REGISTERS; i++) {
+                if (registers[i] != 0) {
+                    buffer.putShort((short) i).put(registers[i]);
+                }
+            }
+            return buffer.array();
+        }
+        return ByteBuffer.allocate(1 + REGISTERS).put(DENSE).put(registers).array();
+    }
+
+    /**
+     * @throws IllegalArgumentException если данные не являются сериализованным скетчем
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog sketch = new HyperLogLog();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte format = bytes.length > 0 ? buffer.get() : 0;
+        if (format == DENSE && buffer.remaining() == REGISTERS) {
+            buffer.get(sketch.registers);
+        } else if (format == SPARSE && buffer.remaining() % 3 == 0) {
+            while (buffer.hasRemaining()) {
+                int index = buffer.getShort() & 0xFFFF;
+                if (index >= REGISTERS) {
+                    throw new IllegalArgumentException("Invalid HyperLogLog register index: " + index);
+                }
+                sketch.registers[index] = buffer.get();
+            }
+        } else {
+            throw new IllegalArgumentException("Invalid HyperLogLog data");
+        }
+        return sketch;
+    }
+
+    /**
+     * Финальное перемешивание MurmurHash3.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -2,20 +2,78 @@ package ru.teamscore.sensors.consumer;
 
 import jakarta.persistence.EntityManagerFactory;
 import ru.teamscore.sensors.common.config.EntityManagerFactoryProvider;
+import ru.teamscore.sensors.common.config.SchemaManager;
+import ru.teamscore.sensors.common.metrics.MetricsRegistry;
+import ru.teamscore.sensors.common.metrics.MetricsServer;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Приложение Consumer для обработки сырых сообщений от датчиков.
+ * <p>
+ * Опции:
+ *   --migrate[=N]: разовая миграция вместо запуска потребителя — создать недостающие индексы и заполнить
+ *       grid_cell и magnitude у старых строк диапазонами id по N строк (по умолчанию 10000)
+ *   --partition[=N]: помесячное секционирование таблиц метрик (PostgreSQL) с созданием секций на N месяцев вперёд
+ *   --presence: сохранение поминутных скетчей присутствия датчиков для подсчёта различных датчиков
+ *   --metrics-port=N: HTTP-точка /metrics с метриками в формате Prometheus
+ *   --metrics-bind=адрес: адрес точки /metrics (по умолчанию только локальный, 127.0.0.1)
+ *   --archive=DIR: ежедневный перенос обработанных сырых сообщений старше N суток в сжатые сегменты в каталоге DIR
+ *   --archive-after=N: возраст архивируемых сообщений в сутках (по умолчанию 30)
  */
 public class ConsumerApp {
     private static final Logger LOGGER = Logger.getLogger(ConsumerApp.class.getName());
+    private static final int DEFAULT_MONTHS_AHEAD = 3;
+    private static final int DEFAULT_ARCHIVE_AFTER_DAYS = 30;
 
     public static void main(String[] args) {
         LOGGER.info("Starting Consumer Application...");
 
+        Integer monthsAhead = parsePartitionOption(args);
+        Integer migrationBatch = parseMigrateOption(args);
+
         EntityManagerFactory emf = EntityManagerFactoryProvider.getEntityManagerFactory();
-        ConsumerService consumerService = new ConsumerService(emf);
+        SchemaManager schemaManager = new SchemaManager(emf);
+        if (migrationBatch != null) {
+            try {
+                schemaManager.migrate(migrationBatch);
+                LOGGER.info("Schema migration completed");
+            } finally {
+                emf.close();
+            }
+            return;
+        }
+        ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SchemaMaintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (monthsAhead != null) {
+            schemaManager.enablePartitioning(monthsAhead);
+            maintenance.scheduleAtFixedRate(() -> {
+                try {
+                    schemaManager.createUpcomingPartitions(monthsAhead);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Failed to create upcoming partitions: " + e.getMessage(), e);
+                }
+            }, 1, 1, TimeUnit.DAYS);
+        }
+
+        boolean recordPresence = Arrays.asList(args).contains("--presence");
+        ConsumerService consumerService = new ConsumerService(emf, new MessageParser(), 100, 1000, null, recordPresence);
+
+        MetricsServer metricsServer = startMetricsServer(args, consumerService);
+        scheduleArchiving(args, emf, maintenance);
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             LOGGER.info("Shutdown signal received");
@@ -25,8 +83,115 @@ public class ConsumerApp {
         try {
             consumerService.start();
         } finally {
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            maintenance.shutdownNow();
             emf.close();
             LOGGER.info("Consumer Application stopped");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Запускает точку /metrics, если задана опция --metrics-port, и регистрирует возраст контрольной точки.
+     *
+     * @return сервер метрик или {@code null}
+     */
+    private static MetricsServer startMetricsServer(String[] args, ConsumerService consumerService) {
+        String bindAddress = null;
+        for (String arg : args) {
+            if (arg.startsWith("--metrics-bind=")) {
+                bindAddress = arg.substring("--metrics-bind=".length());
+            }
+        }
+        for (String arg : args) {
+            if (arg.startsWith("--metrics-port=")) {
+                MetricsRegistry.getDefault().gauge("sensors_consumer_checkpoint_age_seconds",
+                        "Seconds between now and saved_at of the last processed message", () -> {
+                            LocalDateTime checkpoint = consumerService.getLastCheckpoint();
+                            return checkpoint == null ? Double.NaN
+                                    : Duration.between(checkpoint, LocalDateTime.now()).toMillis() / 1000.0;
+                        });
+                try {
+                    return MetricsServer.start(bindAddress, Integer.parseInt(arg.substring("--metrics-port=".length())));
+                } catch (NumberFormatException | IOException e) {
+                    LOGGER.log(Level.WARNING, "Metrics endpoint is disabled: " + e.getMessage(), e);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Планирует ежедневную архивацию сырых сообщений, если задана опция --archive.
+     */
+    private static void scheduleArchiving(String[] args, EntityManagerFactory emf, ScheduledExecutorService maintenance) {
+        String directory = null;
+        int afterDays = DEFAULT_ARCHIVE_AFTER_DAYS;
+        for (String arg : args) {
+            if (arg.startsWith("--archive=")) {
+                directory = arg.substring("--archive=".length());
+            } else if (arg.startsWith("--archive-after=")) {
+                try {
+                    afterDays = Math.max(0, Integer.parseInt(arg.substring("--archive-after=".length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Invalid --archive-after value, using default: " + DEFAULT_ARCHIVE_AFTER_DAYS);
+                }
+            }
+        }
+        if (directory == null || directory.isEmpty()) {
+            return;
+        }
+        RawMessageArchiver archiver = new RawMessageArchiver(emf, Path.of(directory));
+        int days = afterDays;
+        maintenance.scheduleAtFixedRate(() -> {
+            try {
+                archiver.archive(LocalDateTime.now().minusDays(days));
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to archive raw messages: " + e.getMessage(), e);
+            }
+        }, 1, 24, TimeUnit.HOURS);
+        LOGGER.info("Raw messages older than " + days + " days will be archived to " + directory);
+    }
+
+    /**
+     * Возвращает размер пакета миграции или {@code null}, если миграция не запрошена.
+     */
+    private static Integer parseMigrateOption(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--migrate")) {
+                return SchemaManager.DEFAULT_BATCH_SIZE;
+            }
+            if (arg.startsWith("--migrate=")) {
+                try {
+                    return Math.max(1, Integer.parseInt(arg.substring("--migrate=".length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Invalid --migrate value, using default: " + SchemaManager.DEFAULT_BATCH_SIZE);
+                    return SchemaManager.DEFAULT_BATCH_SIZE;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает глубину создания секций вперёд или {@code null}, если секционирование не запрошено.
+     */
+    private static Integer parsePartitionOption(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--partition")) {
+                return DEFAULT_MONTHS_AHEAD;
+            }
+            if (arg.startsWith("--partition=")) {
+                try {
+                    return Math.max(0, Integer.parseInt(arg.substring("--partition=".length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Invalid --partition value, using default: " + DEFAULT_MONTHS_AHEAD);
+                    return DEFAULT_MONTHS_AHEAD;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -3,12 +3,20 @@ package ru.teamscore.sensors.consumer;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.TypedQuery;
+import ru.teamscore.sensors.common.cache.MetricsRewriteMarker;
+import ru.teamscore.sensors.common.cache.RecentMetricsStore;
 import ru.teamscore.sensors.common.entity.ProcessingState;
 import ru.teamscore.sensors.common.entity.RawSensorMessage;
 import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.SensorPresence;
 import ru.teamscore.sensors.common.entity.metric.*;
+import ru.teamscore.sensors.common.metrics.Counter;
+import ru.teamscore.sensors.common.metrics.Histogram;
+import ru.teamscore.sensors.common.metrics.MetricsRegistry;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -21,12 +29,25 @@ import java.util.logging.Logger;
  */
 public class ConsumerService {
     private static final Logger LOGGER = Logger.getLogger(ConsumerService.class.getName());
-    private static final String COMPONENT_NAME = "consumer";
+    public static final String COMPONENT_NAME = "consumer";
+    private static final Counter CONSUMED = MetricsRegistry.getDefault().counter(
+            "sensors_consumer_messages_total", "Messages processed and committed by the consumer");
+    private static final Counter PARSE_FAILURES = MetricsRegistry.getDefault().counter(
+            "sensors_consumer_parse_failures_total", "Messages the consumer failed to parse");
+    private static final Counter BATCH_FAILURES = MetricsRegistry.getDefault().counter(
+            "sensors_consumer_batch_failures_total", "Consumer batches rolled back because of an error");
+    private static final Histogram BATCH_SECONDS = MetricsRegistry.getDefault().histogram(
+            "sensors_consumer_batch_seconds", "Duration of consumer batches, including empty polls",
+            Histogram.DEFAULT_SECONDS_BUCKETS);
 
     private final EntityManagerFactory emf;
     private final MessageParser messageParser;
+    private final RecentMetricsStore recentStore;
+    private final MotionTracker motionTracker = new MotionTracker();
+    private final PresenceRecorder presenceRecorder;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final AtomicLong processedCount = new AtomicLong(0);
+    private volatile LocalDateTime lastCheckpoint;
 
     private final int pollingIntervalMs;
     private final int batchSize;
@@ -40,8 +61,27 @@ public class ConsumerService {
     }
 
     public ConsumerService(EntityManagerFactory emf, MessageParser messageParser, int pollingIntervalMs, int batchSize) {
+        this(emf, messageParser, pollingIntervalMs, batchSize, null);
+    }
+
+    /**
+     * @param recentStore хранилище последних метрик, пополняемое после фиксации каждого пакета; может быть {@code null}
+     */
+    public ConsumerService(EntityManagerFactory emf, MessageParser messageParser, int pollingIntervalMs, int batchSize,
+                           RecentMetricsStore recentStore) {
+        this(emf, messageParser, pollingIntervalMs, batchSize, recentStore, false);
+    }
+
+    /**
+     * @param recordPresence сохранять поминутные скетчи присутствия датчиков ({@link SensorPresence}),
+     *                       сущность должна быть зарегистрирована в фабрике
+     */
+    public ConsumerService(EntityManagerFactory emf, MessageParser messageParser, int pollingIntervalMs, int batchSize,
+                           RecentMetricsStore recentStore, boolean recordPresence) {
         this.emf = emf;
         this.messageParser = messageParser;
+        this.recentStore = recentStore;
+        this.presenceRecorder = recordPresence ? new PresenceRecorder() : null;
         this.pollingIntervalMs = Math.max(100, pollingIntervalMs);
         this.batchSize = Math.max(1, batchSize);
     }
@@ -81,6 +121,14 @@ public class ConsumerService {
         return processedCount.get();
     }
 
+    /**
+     * Возвращает saved_at последнего обработанного сообщения (контрольную точку, прочитанную
+     * или зафиксированную последним пакетом) или {@code null}, если пакетов ещё не было.
+     */
+    public LocalDateTime getLastCheckpoint() {
+        return lastCheckpoint;
+    }
+
     /**
      * Основной цикл обработки сообщений.
      */
@@ -118,6 +166,7 @@ public class ConsumerService {
      * @return количество обработанных сообщений
      */
     public int processBatch() {
+        long started = System.nanoTime();
         EntityTransaction tx = null;
         try (EntityManager em = emf.createEntityManager()) {
             tx = em.getTransaction();
@@ -129,25 +178,84 @@ public class ConsumerService {
 
             if (messages.isEmpty()) {
                 tx.commit();
+                lastCheckpoint = lastProcessedTime;
                 return 0;
             }
 
-            LocalDateTime maxSavedAt = lastProcessedTime;
-
-            for (RawSensorMessage message : messages) {
-                processMessage(em, message);
-
-                if (message.getSavedAt().isAfter(maxSavedAt)) {
-                    maxSavedAt = message.getSavedAt();
-                }
-            }
-
+            List<SensorMetric> metrics = processMessages(em, messages, lastProcessedTime);
+            LocalDateTime maxSavedAt = maxSavedAt(messages, lastProcessedTime);
             updateLastProcessedTime(em, maxSavedAt);
 
             tx.commit();
-            processedCount.addAndGet(messages.size());
+            lastCheckpoint = maxSavedAt;
+            onCommitted(messages, metrics);
             return messages.size();
 
+        } catch (Exception e) {
+            onRolledBack(tx);
+            throw e;
+        } finally {
+            BATCH_SECONDS.observeSince(started);
+        }
+    }
+
+    /**
+     * Обрабатывает сообщения, переданные в памяти в обход raw_sensor_messages, в одной транзакции.
+     * Контрольная точка в БД не меняется — её сдвигает {@link #archiveMessages} после сохранения сырых сообщений.
+     */
+    public void processMessages(List<RawSensorMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        EntityTransaction tx = null;
+        try (EntityManager em = emf.createEntityManager()) {
+            tx = em.getTransaction();
+            tx.begin();
+            List<SensorMetric> metrics = processMessages(em, messages, lastCheckpoint);
+            tx.commit();
+            lastCheckpoint = maxSavedAt(messages, lastCheckpoint);
+            onCommitted(messages, metrics);
+        } catch (Exception e) {
+            onRolledBack(tx);
+            throw e;
+        } finally {
+            BATCH_SECONDS.observeSince(started);
+        }
+    }
+
+    /**
+     * Сохраняет уже обработанные сообщения в raw_sensor_messages и сдвигает контрольную точку вперёд,
+     * чтобы потребитель, опрашивающий таблицу, не обработал их повторно.
+     *
+     * @throws IllegalStateException если до новой контрольной точки в таблице есть необработанные сообщения
+     *                               другого писателя: сдвиг навсегда скрыл бы их от потребителя, поэтому пакет
+     *                               не сохраняется
+     */
+    public void archiveMessages(List<RawSensorMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        EntityTransaction tx = null;
+        try (EntityManager em = emf.createEntityManager()) {
+            tx = em.getTransaction();
+            tx.begin();
+            LocalDateTime lastProcessedTime = getLastProcessedTime(em);
+            LocalDateTime maxSavedAt = maxSavedAt(messages, lastProcessedTime);
+            if (maxSavedAt.isAfter(lastProcessedTime)) {
+                long pending = countPending(em, lastProcessedTime, maxSavedAt);
+                if (pending > 0) {
+                    throw new IllegalStateException(pending + " raw messages written by another producer are not "
+                            + "processed yet; the checkpoint cannot move past them");
+                }
+            }
+            for (RawSensorMessage message : messages) {
+                em.persist(message);
+            }
+            if (maxSavedAt.isAfter(lastProcessedTime)) {
+                updateLastProcessedTime(em, maxSavedAt);
+            }
+            tx.commit();
         } catch (Exception e) {
             if (tx != null && tx.isActive()) {
                 tx.rollback();
@@ -156,6 +264,61 @@ public class ConsumerService {
         }
     }
 
+    /**
+     * Обрабатывает сообщения в открытой транзакции. Если среди них есть измерения, сильно опоздавшие
+     * относительно прошлой контрольной точки, сдвигает отметку перезаписи метрик для кэша агрегатора.
+     *
+     * @param checkpoint контрольная точка до обработки сообщений или {@code null}
+     * @return метрики в порядке сообщений
+     */
+    private List<SensorMetric> processMessages(EntityManager em, List<RawSensorMessage> messages,
+                                               LocalDateTime checkpoint) {
+        List<SensorMetric> metrics = new ArrayList<>(messages.size());
+        boolean late = false;
+        for (RawSensorMessage message : messages) {
+            metrics.add(processMessage(em, message));
+            if (presenceRecorder != null) {
+                presenceRecorder.record(message);
+            }
+            late |= MetricsRewriteMarker.isLate(message.getMeasuredAt(), checkpoint);
+        }
+        if (presenceRecorder != null) {
+            presenceRecorder.flush(em);
+        }
+        if (late) {
+            MetricsRewriteMarker.mark(em);
+        }
+        return metrics;
+    }
+
+    private static LocalDateTime maxSavedAt(List<RawSensorMessage> messages, LocalDateTime initial) {
+        LocalDateTime maxSavedAt = initial;
+        for (RawSensorMessage message : messages) {
+            if (maxSavedAt == null || message.getSavedAt().isAfter(maxSavedAt)) {
+                maxSavedAt = message.getSavedAt();
+            }
+        }
+        return maxSavedAt;
+    }
+
+    private void onCommitted(List<RawSensorMessage> messages, List<SensorMetric> metrics) {
+        motionTracker.commit();
+        processedCount.addAndGet(messages.size());
+        CONSUMED.add(messages.size());
+        appendToRecentStore(messages, metrics);
+    }
+
+    private void onRolledBack(EntityTransaction tx) {
+        if (tx != null && tx.isActive()) {
+            tx.rollback();
+        }
+        motionTracker.rollback();
+        if (presenceRecorder != null) {
+            presenceRecorder.clear();
+        }
+        BATCH_FAILURES.increment();
+    }
+
     /**
      * Получает время последней обработки из ProcessingState.
      */
@@ -167,6 +330,28 @@ public class ConsumerService {
         return state.getLastProcessedTime();
     }
 
+    /**
+     * Возвращает количество сообщений в raw_sensor_messages, ещё не обработанных потребителем.
+     */
+    public long getPendingCount() {
+        try (EntityManager em = emf.createEntityManager()) {
+            return countPending(em, getLastProcessedTime(em), null);
+        }
+    }
+
+    /**
+     * Считает сообщения с saved_at после {@code after} и, если задано, не позже {@code until}.
+     */
+    private static long countPending(EntityManager em, LocalDateTime after, LocalDateTime until) {
+        TypedQuery<Long> query = em.createQuery("SELECT COUNT(m) FROM RawSensorMessage m WHERE m.savedAt > :after"
+                + (until != null ? " AND m.savedAt <= :until" : ""), Long.class)
+                .setParameter("after", after);
+        if (until != null) {
+            query.setParameter("until", until);
+        }
+        return query.getSingleResult();
+    }
+
     /**
      * Получает новые сообщения, которые были сохранены после lastProcessedTime.
      */
@@ -186,11 +371,34 @@ public class ConsumerService {
      * <p>
      * 2. Создаёт соответствующую метрику
      */
-    private void processMessage(EntityManager em, RawSensorMessage message) {
+    private SensorMetric processMessage(EntityManager em, RawSensorMessage message) {
         updateOrCreateDevice(em, message);
 
-        SensorMetric metric = messageParser.parseMessage(message);
+        SensorMetric metric;
+        try {
+            metric = messageParser.parseMessage(message);
+        } catch (IllegalArgumentException e) {
+            PARSE_FAILURES.increment();
+            throw e;
+        }
+        if (metric instanceof AccelerometerMetric accelerometerMetric) {
+            motionTracker.updateJerk(accelerometerMetric);
+        }
         em.persist(metric);
+        return metric;
+    }
+
+    /**
+     * Передаёт зафиксированные метрики в хранилище последних метрик, если оно задано.
+     */
+    private void appendToRecentStore(List<RawSensorMessage> messages, List<SensorMetric> metrics) {
+        if (recentStore == null) {
+            return;
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            RawSensorMessage message = messages.get(i);
+            recentStore.append(message.getSensorType(), message.getDeviceName(), metrics.get(i));
+        }
     }
 
     /**
@@ -0,0 +1,63 @@
+package ru.teamscore.sensors.consumer;
+
+import ru.teamscore.sensors.common.entity.metric.AccelerometerMetric;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Вычисление рывка акселерометра по предыдущему измерению того же датчика.
+ * <p>
+ * Хранит последнее измерение каждого датчика. Измерения текущего пакета учитываются сразу,
+ * но становятся постоянными только после {@link #commit()}; {@link #rollback()} отбрасывает их
+ * вместе с откатом транзакции пакета.
+ */
+public class MotionTracker {
+    /**
+     * Наибольший промежуток между измерениями, при котором рывок ещё вычисляется.
+     */
+    private static final Duration MAX_GAP = Duration.ofMinutes(1);
+
+    private final Map<UUID, Sample> committed = new HashMap<>();
+    private final Map<UUID, Sample> pending = new HashMap<>();
+
+    /**
+     * Вычисляет рывок для измерения и запоминает его как последнее измерение датчика.
+     * Рывок не вычисляется для первого измерения, после длительного перерыва и для измерений не по порядку.
+     */
+    public void updateJerk(AccelerometerMetric metric) {
+        if (metric.getX() == null || metric.getY() == null || metric.getZ() == null) {
+            return;
+        }
+        UUID sensorId = metric.getSensorId();
+        Sample previous = pending.getOrDefault(sensorId, committed.get(sensorId));
+        Sample current = new Sample(metric.getMeasuredAt(), metric.getX(), metric.getY(), metric.getZ());
+
+        if (previous != null && !current.time().isAfter(previous.time())) {
+            return;
+        }
+        if (previous != null && Duration.between(previous.time(), current.time()).compareTo(MAX_GAP) <= 0) {
+            double seconds = Duration.between(previous.time(), current.time()).toNanos() / 1e9;
+            double dx = current.x() - previous.x();
+            double dy = current.y() - previous.y();
+            double dz = current.z() - previous.z();
+            metric.setJerk(Math.sqrt(dx * dx + dy * dy + dz * dz) / seconds);
+        }
+        pending.put(sensorId, current);
+    }
+
+    public void commit() {
+        committed.putAll(pending);
+        pending.clear();
+    }
+
+    public void rollback() {
+        pending.clear();
+    }
+
+    private record Sample(LocalDateTime time, double x, double y, double z) {
+    }
+}
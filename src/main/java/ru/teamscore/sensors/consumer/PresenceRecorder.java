@@ -0,0 +1,49 @@
+package ru.teamscore.sensors.consumer;
+
+import jakarta.persistence.EntityManager;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorPresence;
+import ru.teamscore.sensors.common.sketch.HyperLogLog;
+
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Накопление поминутных скетчей присутствия датчиков для пакета сообщений.
+ * <p>
+ * Скетчи собираются в памяти по ключу (тип, устройство, минута) и при {@link #flush} объединяются
+ * с сохранёнными в той же транзакции, что и метрики пакета.
+ */
+public class PresenceRecorder {
+    private final Map<SensorPresence.Key, HyperLogLog> sketches = new HashMap<>();
+
+    public void record(RawSensorMessage message) {
+        SensorPresence.Key key = new SensorPresence.Key(message.getSensorType(), message.getDeviceName(),
+                message.getMeasuredAt().truncatedTo(ChronoUnit.MINUTES));
+        sketches.computeIfAbsent(key, k -> new HyperLogLog()).add(message.getSensorId());
+    }
+
+    /**
+     * Сохраняет накопленные скетчи и очищает накопитель.
+     */
+    public void flush(EntityManager em) {
+        for (Map.Entry<SensorPresence.Key, HyperLogLog> entry : sketches.entrySet()) {
+            SensorPresence.Key key = entry.getKey();
+            SensorPresence presence = em.find(SensorPresence.class, key);
+            if (presence == null) {
+                em.persist(new SensorPresence(key.getSensorType(), key.getDeviceName(), key.getMinuteStart(),
+                        entry.getValue().toBytes()));
+            } else {
+                HyperLogLog merged = HyperLogLog.fromBytes(presence.getSketch());
+                merged.merge(entry.getValue());
+                presence.setSketch(merged.toBytes());
+            }
+        }
+        sketches.clear();
+    }
+
+    public void clear() {
+        sketches.clear();
+    }
+}
@@ -0,0 +1,83 @@
+package ru.teamscore.sensors.consumer;
+
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.metric.SensorMetric;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Чтение архива сырых сообщений, созданного {@link RawMessageArchiver}.
+ * <p>
+ * Сообщения отдаются по суткам measured_at, внутри суток — в порядке исходных id. Для повторной обработки
+ * в БД сообщения можно передавать пакетами в {@link ConsumerService#processMessages(List)}.
+ */
+public class RawArchiveReader {
+    private static final Logger LOGGER = Logger.getLogger(RawArchiveReader.class.getName());
+
+    private final Path directory;
+
+    public RawArchiveReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Передаёт в обработчик архивные сообщения с measured_at в диапазоне [from, to].
+     *
+     * @return количество прочитанных сообщений
+     */
+    public long read(LocalDateTime from, LocalDateTime to, Consumer<RawSensorMessage> sink) throws IOException {
+        long[] count = new long[1];
+        for (LocalDate day = from.toLocalDate(); !day.isAfter(to.toLocalDate()); day = day.plusDays(1)) {
+            for (Path segment : listSegments(RawMessageArchiver.dayDirectory(directory, day))) {
+                RawSegmentReader.read(segment, from, to, message -> {
+                    count[0]++;
+                    sink.accept(message);
+                });
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * Повторно разбирает архивные сообщения диапазона через {@link MessageParser}.
+     * Сообщения, которые не удалось разобрать, пропускаются с предупреждением в журнале.
+     *
+     * @return количество полученных метрик
+     */
+    public long replay(LocalDateTime from, LocalDateTime to, MessageParser parser, Consumer<SensorMetric> sink)
+            throws IOException {
+        long[] parsed = new long[1];
+        read(from, to, message -> {
+            SensorMetric metric;
+            try {
+                metric = parser.parseMessage(message);
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Skipping archived message " + message + ": " + e.getMessage());
+                return;
+            }
+            parsed[0]++;
+            sink.accept(metric);
+        });
+        return parsed[0];
+    }
+
+    private static List<Path> listSegments(Path dayDirectory) throws IOException {
+        if (!Files.isDirectory(dayDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dayDirectory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(RawMessageArchiver.SEGMENT_PREFIX) && name.endsWith(RawMessageArchiver.SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ru.teamscore.sensors.consumer;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Перенос обработанных сырых сообщений из raw_sensor_messages в сжатые сегменты на локальном диске.
+ * <p>
+ * Архивируются только сообщения, сохранённые раньше порога и контрольной точки потребителя.
+ * Сообщения читаются порциями по id; каждая порция раскладывается по суткам measured_at в отдельные
+ * сегменты {@code <каталог>/<yyyy-MM-dd>/raw-<первый id>.seg} (см. {@link RawSegmentWriter}),
+ * и только после записи сегментов строки удаляются в той же транзакции. Если транзакция не зафиксировалась,
+ * следующий запуск перезапишет сегменты той же порции. Прочитать архив можно через {@link RawArchiveReader}.
+ * <p>
+ * Достигнутый порог хранится в processing_state ({@link #getArchivedBefore}), чтобы пересборка метрик
+ * и загрузка истории знали, с какого момента таблица может быть неполной.
+ */
+public class RawMessageArchiver {
+    public static final String COMPONENT_NAME = "archiver";
+    private static final Logger LOGGER = Logger.getLogger(RawMessageArchiver.class.getName());
+    static final String SEGMENT_PREFIX = "raw-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    private static final int DEFAULT_CHUNK_SIZE = 5000;
+
+    private final EntityManagerFactory emf;
+    private final Path directory;
+    private final int chunkSize;
+    private final int blockRows;
+
+    public RawMessageArchiver(EntityManagerFactory emf, Path directory) {
+        this(emf, directory, DEFAULT_CHUNK_SIZE, RawSegmentWriter.DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * @param chunkSize количество сообщений, переносимых в одной транзакции
+     * @param blockRows количество сообщений в сжатом блоке сегмента
+     */
+    public RawMessageArchiver(EntityManagerFactory emf, Path directory, int chunkSize, int blockRows) {
+        this.emf = emf;
+        this.directory = directory;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.blockRows = Math.max(1, blockRows);
+    }
+
+    /**
+     * Архивирует и удаляет из таблицы сообщения, сохранённые раньше {@code cutoff} и уже обработанные потребителем.
+     *
+     * @return количество перенесённых сообщений
+     */
+    public long archive(LocalDateTime cutoff) throws IOException {
+        long total = 0;
+        int archived;
+        do {
+            archived = archiveChunk(cutoff);
+            total += archived;
+        } while (archived == chunkSize);
+        if (total > 0) {
+            LOGGER.info("Archived " + total + " raw messages saved before " + cutoff + " to " + directory);
+        }
+        return total;
+    }
+
+    /**
+     * Каталог сегментов за сутки.
+     */
+    static Path dayDirectory(Path root, LocalDate day) {
+        return root.resolve(day.toString());
+    }
+
+    private int archiveChunk(LocalDateTime cutoff) throws IOException {
+        EntityTransaction tx = null;
+        try (EntityManager em = emf.createEntityManager()) {
+            tx = em.getTransaction();
+            tx.begin();
+
+            LocalDateTime limit = archiveLimit(em, cutoff);
+            List<RawSensorMessage> messages = limit == null ? List.of() : em.createQuery(
+                    "SELECT m FROM RawSensorMessage m WHERE m.savedAt < :limit ORDER BY m.id ASC", RawSensorMessage.class)
+                    .setParameter("limit", limit)
+                    .setMaxResults(chunkSize)
+                    .getResultList();
+            if (messages.isEmpty()) {
+                tx.commit();
+                return 0;
+            }
+
+            writeSegments(messages);
+            List<Long> ids = new ArrayList<>(messages.size());
+            for (RawSensorMessage message : messages) {
+                ids.add(message.getId());
+            }
+            em.createQuery("DELETE FROM RawSensorMessage m WHERE m.id IN :ids")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+            recordArchivedBefore(em, limit);
+
+            tx.commit();
+            return messages.size();
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Порог архивации: не позже контрольной точки потребителя, чтобы не удалить необработанные сообщения.
+     *
+     * @return порог или {@code null}, если потребитель ещё ничего не обработал
+     */
+    private LocalDateTime archiveLimit(EntityManager em, LocalDateTime cutoff) {
+        ProcessingState state = em.find(ProcessingState.class, ConsumerService.COMPONENT_NAME);
+        if (state == null || state.getLastProcessedTime() == null) {
+            return null;
+        }
+        LocalDateTime checkpoint = state.getLastProcessedTime();
+        return checkpoint.isBefore(cutoff) ? checkpoint : cutoff;
+    }
+
+    /**
+     * Запоминает порог архивации в processing_state: сообщения, сохранённые раньше него, могли быть
+     * перенесены из таблицы в архив. Порог только растёт.
+     */
+    private static void recordArchivedBefore(EntityManager em, LocalDateTime limit) {
+        ProcessingState state = em.find(ProcessingState.class, COMPONENT_NAME);
+        if (state == null) {
+            em.persist(new ProcessingState(COMPONENT_NAME, limit));
+        } else if (limit.isAfter(state.getLastProcessedTime())) {
+            state.setLastProcessedTime(limit);
+            em.merge(state);
+        }
+    }
+
+    /**
+     * Возвращает порог, раньше которого сохранённые сообщения могли быть перенесены в архив,
+     * или {@code null}, если архивация ещё не выполнялась.
+     */
+    public static LocalDateTime getArchivedBefore(EntityManager em) {
+        ProcessingState state = em.find(ProcessingState.class, COMPONENT_NAME);
+        return state != null ? state.getLastProcessedTime() : null;
+    }
+
+    private void writeSegments(List<RawSensorMessage> messages) throws IOException {
+        Map<LocalDate, List<RawSensorMessage>> byDay = new TreeMap<>();
+        for (RawSensorMessage message : messages) {
+            byDay.computeIfAbsent(message.getMeasuredAt().toLocalDate(), day -> new ArrayList<>()).add(message);
+        }
+        for (Map.Entry<LocalDate, List<RawSensorMessage>> day : byDay.entrySet()) {
+            List<RawSensorMessage> dayMessages = day.getValue();
+            Path dayDirectory = Files.createDirectories(dayDirectory(directory, day.getKey()));
+            Path segment = dayDirectory.resolve(
+                    String.format("%s%019d%s", SEGMENT_PREFIX, dayMessages.get(0).getId(), SEGMENT_SUFFIX));
+            Path temporary = dayDirectory.resolve(segment.getFileName() + ".tmp");
+            try (RawSegmentWriter writer = new RawSegmentWriter(temporary, blockRows)) {
+                for (RawSensorMessage message : dayMessages) {
+                    writer.append(message);
+                }
+            }
+            Files.move(temporary, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
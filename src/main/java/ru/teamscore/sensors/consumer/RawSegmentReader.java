@@ -0,0 +1,132 @@
+package ru.teamscore.sensors.consumer;
+
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Чтение сегмента архива сырых сообщений, записанного {@link RawSegmentWriter}.
+ */
+class RawSegmentReader {
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + 3 * Integer.BYTES + 2 * Long.BYTES;
+
+    private RawSegmentReader() {
+    }
+
+    /**
+     * Передаёт в обработчик сообщения сегмента с measured_at в диапазоне [from, to],
+     * распаковывая только блоки, пересекающие диапазон по индексу.
+     *
+     * @return количество распакованных блоков
+     */
+    static int read(Path path, LocalDateTime from, LocalDateTime to, Consumer<RawSensorMessage> sink) throws IOException {
+        long fromSecond = from.toEpochSecond(ZoneOffset.UTC);
+        long toSecond = to.toEpochSecond(ZoneOffset.UTC);
+        int blocksRead = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, 2 * Integer.BYTES);
+            if (header.getInt() != RawSegmentWriter.MAGIC || header.getInt() != RawSegmentWriter.VERSION) {
+                throw new IOException("Not a raw message segment: " + path);
+            }
+            long indexOffset = readFully(channel, channel.size() - Long.BYTES, Long.BYTES).getLong();
+            int blocks = readFully(channel, indexOffset, Integer.BYTES).getInt();
+            ByteBuffer index = readFully(channel, indexOffset + Integer.BYTES, blocks * INDEX_ENTRY_BYTES);
+
+            Inflater inflater = new Inflater();
+            try {
+                for (int i = 0; i < blocks; i++) {
+                    long offset = index.getLong();
+                    int compressedLength = index.getInt();
+                    int rawLength = index.getInt();
+                    int rows = index.getInt();
+                    long minMeasured = index.getLong();
+                    long maxMeasured = index.getLong();
+                    if (maxMeasured < fromSecond || minMeasured > toSecond) {
+                        continue;
+                    }
+                    byte[] raw = inflate(inflater, readFully(channel, offset, compressedLength), rawLength, path);
+                    readRows(new DataInputStream(new ByteArrayInputStream(raw)), rows, from, to, sink);
+                    blocksRead++;
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+        return blocksRead;
+    }
+
+    private static void readRows(DataInputStream in, int rows, LocalDateTime from, LocalDateTime to,
+                                 Consumer<RawSensorMessage> sink) throws IOException {
+        for (int i = 0; i < rows; i++) {
+            in.readLong(); // id в таблице не восстанавливается
+            UUID sensorId = new UUID(in.readLong(), in.readLong());
+            SensorType sensorType = SensorType.valueOf(in.readUTF());
+            String deviceName = in.readUTF();
+            LocalDateTime measuredAt = readTime(in);
+            LocalDateTime savedAt = readTime(in);
+            int jsonLength = in.readInt();
+            String json = null;
+            if (jsonLength >= 0) {
+                byte[] bytes = new byte[jsonLength];
+                in.readFully(bytes);
+                json = new String(bytes, StandardCharsets.UTF_8);
+            }
+            if (measuredAt.isBefore(from) || measuredAt.isAfter(to)) {
+                continue;
+            }
+            RawSensorMessage message = new RawSensorMessage(sensorId, sensorType, deviceName, measuredAt, json);
+            message.setSavedAt(savedAt);
+            sink.accept(message);
+        }
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+    }
+
+    private static byte[] inflate(Inflater inflater, ByteBuffer compressed, int rawLength, Path path) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLength];
+        try {
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(raw, length, rawLength - length);
+                if (read == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != rawLength) {
+                throw new IOException("Truncated block in " + path);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block in " + path + ": " + e.getMessage(), e);
+        }
+        return raw;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,133 @@
+package ru.teamscore.sensors.consumer;
+
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Запись сегмента архива сырых сообщений. Числа записываются в порядке big-endian.
+ * <pre>
+ * заголовок: "SRAW", int версия
+ * блок:      сжатые Deflater строки блока (не более {@value #DEFAULT_BLOCK_ROWS} по умолчанию)
+ * индекс:    int число блоков, для каждого: long смещение, int длина сжатых данных, int длина исходных данных,
+ *            int число строк, long минимальный и максимальный measured_at в секундах эпохи (UTC)
+ * конец:     long смещение индекса
+ * строка:    long id, long+long sensor_id, UTF тип датчика, UTF устройство,
+ *            long+int measured_at и saved_at (секунды эпохи и наносекунды), int длина JSON в байтах (-1 — null), JSON
+ * </pre>
+ * Индекс позволяет читателю распаковывать только блоки, пересекающие запрошенный диапазон measured_at.
+ */
+class RawSegmentWriter implements Closeable {
+    static final int MAGIC = 0x53524157; // "SRAW"
+    static final int VERSION = 1;
+    static final int DEFAULT_BLOCK_ROWS = 1024;
+
+    private final DataOutputStream out;
+    private final int blockRows;
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    private final DataOutputStream blockOut = new DataOutputStream(block);
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final List<long[]> index = new ArrayList<>();
+    private byte[] compressed = new byte[64 * 1024];
+    private long offset;
+    private int rows;
+    private long minMeasured;
+    private long maxMeasured;
+
+    RawSegmentWriter(Path path, int blockRows) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        this.blockRows = Math.max(1, blockRows);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        offset = 2 * Integer.BYTES;
+    }
+
+    void append(RawSensorMessage message) throws IOException {
+        long measured = message.getMeasuredAt().toEpochSecond(ZoneOffset.UTC);
+        if (rows == 0 || measured < minMeasured) {
+            minMeasured = measured;
+        }
+        if (rows == 0 || measured > maxMeasured) {
+            maxMeasured = measured;
+        }
+        blockOut.writeLong(message.getId());
+        blockOut.writeLong(message.getSensorId().getMostSignificantBits());
+        blockOut.writeLong(message.getSensorId().getLeastSignificantBits());
+        blockOut.writeUTF(message.getSensorType().name());
+        blockOut.writeUTF(message.getDeviceName());
+        writeTime(message.getMeasuredAt());
+        writeTime(message.getSavedAt());
+        if (message.getJsonValue() == null) {
+            blockOut.writeInt(-1);
+        } else {
+            byte[] json = message.getJsonValue().getBytes(StandardCharsets.UTF_8);
+            blockOut.writeInt(json.length);
+            blockOut.write(json);
+        }
+        if (++rows == blockRows) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Дописывает последний блок, индекс и сбрасывает файл на диск.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0) {
+                writeBlock();
+            }
+            out.writeInt(index.size());
+            for (long[] entry : index) {
+                out.writeLong(entry[0]);
+                out.writeInt((int) entry[1]);
+                out.writeInt((int) entry[2]);
+                out.writeInt((int) entry[3]);
+                out.writeLong(entry[4]);
+                out.writeLong(entry[5]);
+            }
+            out.writeLong(offset);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeTime(LocalDateTime time) throws IOException {
+        blockOut.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        blockOut.writeInt(time.getNano());
+    }
+
+    private void writeBlock() throws IOException {
+        byte[] raw = block.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        out.write(compressed, 0, length);
+        index.add(new long[]{offset, length, raw.length, rows, minMeasured, maxMeasured});
+        offset += length;
+        block.reset();
+        rows = 0;
+    }
+}
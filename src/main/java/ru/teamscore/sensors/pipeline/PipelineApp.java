@@ -0,0 +1,170 @@
+package ru.teamscore.sensors.pipeline;
+
+import jakarta.persistence.EntityManagerFactory;
+import ru.teamscore.sensors.aggregator.AggregatorServer;
+import ru.teamscore.sensors.aggregator.AggregatorService;
+import ru.teamscore.sensors.common.cache.RecentMetricsStore;
+import ru.teamscore.sensors.common.config.EntityManagerFactoryProvider;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.metrics.MetricsRegistry;
+import ru.teamscore.sensors.common.metrics.MetricsServer;
+import ru.teamscore.sensors.consumer.ConsumerService;
+import ru.teamscore.sensors.consumer.MessageParser;
+import ru.teamscore.sensors.producer.ProducerService;
+import ru.teamscore.sensors.producer.SensorDataGenerator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Производитель и потребитель в одном процессе, связанные ограниченной очередью в памяти.
+ * <p>
+ * Сообщения разбираются в метрики сразу, без записи в raw_sensor_messages и повторного чтения оттуда.
+ * Когда очередь заполнена, производитель ждёт потребителя. Для остановки нажмите Enter:
+ * оставшиеся в очереди сообщения будут обработаны. Индексы и заполнение новых столбцов у старых строк
+ * при запуске не выполняются — для этого служит разовая команда ConsumerApp --migrate.
+ * <p>
+ * С --archive-raw сохранённые сообщения сдвигают общую контрольную точку потребителя, чтобы ConsumerApp
+ * не обработал их повторно. Поэтому конвейер не запускается, пока в raw_sensor_messages есть сообщения,
+ * не обработанные потребителем, а табличный ProducerApp не должен писать в ту же БД одновременно с ним:
+ * если его необработанные сообщения окажутся раньше новой контрольной точки, пакет архива отклоняется
+ * ({@link ConsumerService#archiveMessages}), а не скрывает их от потребителя.
+ * <p>
+ * Опции:
+ *   --min-delay=N, --max-delay=N: задержка производителя между сообщениями, мс (по умолчанию 10 и 50)
+ *   --queue=N: ёмкость очереди (по умолчанию 10000)
+ *   --batch=N: размер пакета потребителя (по умолчанию 1000)
+ *   --archive-raw: асинхронно сохранять обработанные сообщения в raw_sensor_messages
+ *   --presence: сохранение поминутных скетчей присутствия датчиков
+ *   --metrics-port=N: HTTP-точка /metrics с метриками в формате Prometheus
+ *   --metrics-bind=адрес: адрес точки /metrics (по умолчанию только локальный, 127.0.0.1)
+ *   --server[=порт]: HTTP-сервер запросов агрегации в этом же процессе (по умолчанию порт 8080, только localhost);
+ *       окно последних метрик отвечает из памяти ({@link RecentMetricsStore}), остальное — из БД
+ *   --recent-window=N: глубина окна последних метрик в минутах (по умолчанию 60)
+ */
+public class PipelineApp {
+    private static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final int DEFAULT_RECENT_WINDOW_MINUTES = 60;
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq > 0 ? arg.substring(2, eq) : arg.substring(2), eq > 0 ? arg.substring(eq + 1) : "");
+            }
+        }
+        int minDelay = parseInt(options, "min-delay", 10);
+        int maxDelay = parseInt(options, "max-delay", 50);
+        int queueCapacity = parseInt(options, "queue", DEFAULT_QUEUE_CAPACITY);
+        int batchSize = parseInt(options, "batch", DEFAULT_BATCH_SIZE);
+        boolean archiveRaw = options.containsKey("archive-raw");
+
+        System.out.println("=== Sensor Data Pipeline ===");
+        System.out.println("Queue capacity: " + queueCapacity + ", batch size: " + batchSize
+                + ", raw archival: " + (archiveRaw ? "on" : "off"));
+        System.out.println("Press Enter to stop.");
+        System.out.println();
+
+        EntityManagerFactory emf = EntityManagerFactoryProvider.getEntityManagerFactory();
+
+        BlockingQueue<RawSensorMessage> queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        // хранилище заполняет потребитель этого процесса, поэтому оно покрывает данные с момента запуска
+        RecentMetricsStore recentStore = options.containsKey("server")
+                ? new RecentMetricsStore(Duration.ofMinutes(Math.max(1,
+                        parseInt(options, "recent-window", DEFAULT_RECENT_WINDOW_MINUTES))), LocalDateTime.now())
+                : null;
+        ConsumerService consumerService = new ConsumerService(emf, new MessageParser(), 100, batchSize, recentStore,
+                options.containsKey("presence"));
+        if (archiveRaw) {
+            long pending = consumerService.getPendingCount();
+            if (pending > 0) {
+                System.out.println("The consumer has " + pending + " unprocessed raw messages; "
+                        + "let ConsumerApp catch up before starting the pipeline with --archive-raw");
+                emf.close();
+                System.exit(1);
+            }
+        }
+        PipelineService pipeline = new PipelineService(consumerService, queue, batchSize, archiveRaw);
+        ProducerService producer = new ProducerService(emf, new SensorDataGenerator(), minDelay, maxDelay, queue::put);
+
+        MetricsServer metricsServer = null;
+        if (options.containsKey("metrics-port")) {
+            MetricsRegistry.getDefault().gauge("sensors_pipeline_queue_size",
+                    "Messages waiting in the in-memory pipeline queue", queue::size);
+            try {
+                metricsServer = MetricsServer.start(options.get("metrics-bind"), parseInt(options, "metrics-port", 0));
+            } catch (IOException e) {
+                System.out.println("Failed to start metrics endpoint: " + e.getMessage());
+            }
+        }
+
+        AggregatorServer aggregatorServer = null;
+        if (recentStore != null) {
+            String portValue = options.get("server");
+            int port = portValue.isEmpty() ? DEFAULT_SERVER_PORT : parseInt(options, "server", DEFAULT_SERVER_PORT);
+            try {
+                aggregatorServer = new AggregatorServer(new AggregatorService(emf, recentStore), null,
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                        Runtime.getRuntime().availableProcessors());
+                aggregatorServer.start();
+                System.out.println("Aggregation server: http://localhost:" + aggregatorServer.getPort() + "/aggregate");
+            } catch (IOException e) {
+                System.out.println("Failed to start aggregation server: " + e.getMessage());
+            }
+        }
+
+        Thread consumerThread = new Thread(pipeline::start, "PipelineConsumer");
+        Thread producerThread = new Thread(producer::start, "ProducerThread");
+        consumerThread.start();
+        producerThread.start();
+
+        new Scanner(System.in).nextLine();
+
+        System.out.println("Stopping pipeline...");
+        producer.stop();
+        try {
+            // производитель может ждать места в очереди
+            producerThread.interrupt();
+            producerThread.join(5000);
+            pipeline.stop();
+            consumerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        System.out.println("Total messages produced: " + producer.getMessageCount());
+        System.out.println("Total messages processed: " + consumerService.getProcessedCount());
+        if (aggregatorServer != null) {
+            aggregatorServer.close();
+        }
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        emf.close();
+        System.out.println("Done.");
+    }
+
+    private static int parseInt(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid --" + name + " value, using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
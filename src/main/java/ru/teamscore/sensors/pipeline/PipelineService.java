@@ -0,0 +1,153 @@
+package ru.teamscore.sensors.pipeline;
+
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.consumer.ConsumerService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Потребитель однопроцессного конвейера: забирает сообщения производителя из ограниченной очереди в памяти
+ * и обрабатывает их пакетами, не записывая и не перечитывая raw_sensor_messages.
+ * <p>
+ * Если включено архивирование, обработанные пакеты сохраняются в raw_sensor_messages асинхронно
+ * одним потоком, который заодно сдвигает контрольную точку потребителя: потребитель, запущенный позже
+ * на той же БД, не обработает их повторно. Не больше {@link #ARCHIVE_BACKLOG} пакетов ждут архивирования,
+ * дальше обработка притормаживает.
+ */
+public class PipelineService {
+    private static final Logger LOGGER = Logger.getLogger(PipelineService.class.getName());
+    static final int ARCHIVE_BACKLOG = 8;
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final ConsumerService consumerService;
+    private final BlockingQueue<RawSensorMessage> queue;
+    private final int batchSize;
+    private final ExecutorService archiver;
+    private final Semaphore archiveSlots = new Semaphore(ARCHIVE_BACKLOG);
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * @param queue      очередь, в которую пишет производитель
+     * @param archiveRaw сохранять обработанные сообщения в raw_sensor_messages
+     */
+    public PipelineService(ConsumerService consumerService, BlockingQueue<RawSensorMessage> queue, int batchSize,
+                           boolean archiveRaw) {
+        this.consumerService = consumerService;
+        this.queue = queue;
+        this.batchSize = Math.max(1, batchSize);
+        this.archiver = archiveRaw ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RawArchiver");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Обрабатывает очередь до вызова {@link #stop()}, после чего дообрабатывает оставшиеся сообщения
+     * и дожидается архивирования.
+     */
+    public void start() {
+        if (!running.compareAndSet(false, true)) {
+            LOGGER.warning("Pipeline is already running");
+            return;
+        }
+        LOGGER.info("Pipeline consumer started");
+        try {
+            while (running.get() || !queue.isEmpty()) {
+                RawSensorMessage first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<RawSensorMessage> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                processBatch(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.info("Pipeline consumer interrupted");
+        } finally {
+            shutdownArchiver();
+        }
+        LOGGER.info("Pipeline consumer stopped. Total messages: " + consumerService.getProcessedCount());
+    }
+
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            LOGGER.info("Pipeline consumer stopping...");
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Обрабатывает пакет одной транзакцией. Если пакет откатился, сообщения обрабатываются по одному,
+     * а сообщения с ошибкой пропускаются — очередь, в отличие от таблицы, не даёт повторить их позже.
+     */
+    void processBatch(List<RawSensorMessage> batch) throws InterruptedException {
+        List<RawSensorMessage> processed = batch;
+        try {
+            consumerService.processMessages(batch);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Batch of " + batch.size() + " messages failed, retrying one by one: "
+                    + e.getMessage());
+            processed = new ArrayList<>(batch.size());
+            for (RawSensorMessage message : batch) {
+                try {
+                    consumerService.processMessages(List.of(message));
+                    processed.add(message);
+                } catch (RuntimeException messageError) {
+                    LOGGER.log(Level.WARNING, "Dropping message " + message + ": " + messageError.getMessage());
+                }
+            }
+        }
+        if (archiver != null && !processed.isEmpty()) {
+            archive(processed);
+        }
+    }
+
+    private void archive(List<RawSensorMessage> messages) throws InterruptedException {
+        archiveSlots.acquire();
+        try {
+            archiver.execute(() -> {
+                try {
+                    consumerService.archiveMessages(messages);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to archive " + messages.size() + " raw messages: " + e.getMessage(), e);
+                } finally {
+                    archiveSlots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            archiveSlots.release();
+            throw e;
+        }
+    }
+
+    private void shutdownArchiver() {
+        if (archiver == null) {
+            return;
+        }
+        archiver.shutdown();
+        try {
+            if (!archiver.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOGGER.warning("Raw archival did not finish in time");
+                archiver.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            archiver.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ru.teamscore.sensors.producer;
+
+import ru.teamscore.sensors.common.config.JdbcConnectionFactory;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Запись сообщений в raw_sensor_messages пакетными вставками JDBC без Hibernate.
+ * <p>
+ * Сообщения накапливаются в пакете {@link PreparedStatement#addBatch()} и фиксируются отдельной транзакцией
+ * каждые {@code batchSize} сообщений. Для PostgreSQL вставки дополнительно ускоряет параметр драйвера
+ * reWriteBatchedInserts=true в URL соединения. Объект не потокобезопасен.
+ */
+public class BulkMessageWriter implements MessageSink, AutoCloseable {
+    private static final String INSERT_SQL = "INSERT INTO raw_sensor_messages "
+            + "(sensor_id, sensor_type, device_name, measured_at, saved_at, json_value) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final int batchSize;
+    private int pending;
+    private long written;
+
+    /**
+     * @throws IllegalStateException если не удалось открыть соединение
+     */
+    public BulkMessageWriter(JdbcConnectionFactory connectionFactory, int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        try {
+            this.connection = connectionFactory.getConnection();
+            connection.setAutoCommit(false);
+            this.statement = connection.prepareStatement(INSERT_SQL);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot open bulk insert connection: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void send(RawSensorMessage message) {
+        try {
+            statement.setObject(1, message.getSensorId());
+            statement.setString(2, message.getSensorType().name());
+            statement.setString(3, message.getDeviceName());
+            statement.setObject(4, message.getMeasuredAt());
+            statement.setObject(5, message.getSavedAt());
+            statement.setString(6, message.getJsonValue());
+            statement.addBatch();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot add message to batch: " + e.getMessage(), e);
+        }
+        if (++pending == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Выполняет и фиксирует накопленный пакет.
+     */
+    public void flush() {
+        if (pending == 0) {
+            return;
+        }
+        try {
+            statement.executeBatch();
+            connection.commit();
+            written += pending;
+            pending = 0;
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw new IllegalStateException("Bulk insert failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Количество зафиксированных сообщений.
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Фиксирует оставшийся пакет и закрывает соединение.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                statement.close();
+                connection.close();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Cannot close bulk insert connection: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package ru.teamscore.sensors.producer;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import ru.teamscore.sensors.backfill.BackfillReport;
+import ru.teamscore.sensors.backfill.BackfillService;
+import ru.teamscore.sensors.common.config.EntityManagerFactoryProvider;
+import ru.teamscore.sensors.common.config.JdbcConnectionFactory;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.consumer.ConsumerService;
+import ru.teamscore.sensors.consumer.MessageParser;
+import ru.teamscore.sensors.consumer.RawMessageArchiver;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Загрузка исторического набора данных для локальных замеров запросов агрегации и индексов.
+ * <p>
+ * Показания за N суток генерируются по модельным часам ({@link HistoricalGenerator}) и записываются
+ * в raw_sensor_messages пакетными вставками JDBC ({@link BulkMessageWriter}). С опцией --metrics
+ * таблицы метрик затем строятся параллельной повторной обработкой ({@link BackfillService}).
+ * <p>
+ * saved_at сообщений совпадает с measured_at, поэтому потребитель с контрольной точкой позже начала диапазона
+ * обработает их лишь частично. С --metrics контрольная точка потребителя сдвигается к концу диапазона, чтобы
+ * он не построил те же метрики повторно; загрузка отказывается работать, если у потребителя остались
+ * необработанные сообщения до конца диапазона. Диапазон, задевающий уже архивированный период, тоже
+ * отвергается: перезаливка без архива его пропустит. Потребитель во время загрузки запускать не следует.
+ * <p>
+ * Опции:
+ *   --days=N: длина периода в сутках (по умолчанию 30)
+ *   --end="yyyy-MM-dd HH:mm:ss": конец периода (по умолчанию — текущая минута)
+ *   --period=N: период показаний каждого датчика в секундах (по умолчанию 60)
+ *   --sensors=N: количество датчиков (по умолчанию — стандартный набор генератора)
+ *   --batch=N: размер пакета вставки (по умолчанию 5000)
+ *   --metrics: построить таблицы метрик по загруженным сообщениям и сдвинуть контрольную точку потребителя к концу периода
+ *   --threads=N: количество потоков построения метрик (по умолчанию 4)
+ */
+public class HistoricalApp {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq > 0 ? arg.substring(2, eq) : arg.substring(2), eq > 0 ? arg.substring(eq + 1) : "");
+            }
+        }
+
+        LocalDateTime end = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        if (options.containsKey("end")) {
+            try {
+                end = LocalDateTime.parse(options.get("end"), DATE_FORMAT);
+            } catch (DateTimeParseException e) {
+                System.out.println("Invalid --end format. Use: yyyy-MM-dd HH:mm:ss");
+                System.exit(1);
+            }
+        }
+        LocalDateTime start = end.minusDays(Math.max(1, parseInt(options, "days", 30)));
+        Duration period = Duration.ofSeconds(Math.max(1, parseInt(options, "period", 60)));
+        SensorDataGenerator generator = options.containsKey("sensors")
+                ? new SensorDataGenerator(SensorDataGenerator.createSensors(Math.max(1, parseInt(options, "sensors", 8))))
+                : new SensorDataGenerator();
+
+        System.out.println("=== Historical Data Generator ===");
+        System.out.println("Range: " + start.format(DATE_FORMAT) + " - " + end.format(DATE_FORMAT)
+                + ", sensors: " + generator.getSensors().size() + ", period: " + period.getSeconds() + " s");
+
+        // фабрика создаёт недостающие таблицы по hibernate.hbm2ddl.auto
+        EntityManagerFactory emf = EntityManagerFactoryProvider.getEntityManagerFactory();
+        try {
+            String conflict;
+            try (EntityManager em = emf.createEntityManager()) {
+                conflict = findConflict(em, start, end, options.containsKey("metrics"));
+            }
+            if (conflict != null) {
+                System.out.println(conflict);
+                emf.close();
+                System.exit(1);
+            }
+
+            long started = System.nanoTime();
+            long count;
+            try (BulkMessageWriter writer = new BulkMessageWriter(JdbcConnectionFactory.fromHibernateProperties(),
+                    parseInt(options, "batch", 5000))) {
+                count = new HistoricalGenerator(generator, period).generate(start, end, writer);
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+            System.out.printf("Inserted %d messages in %.1f s (%.0f msg/s)%n", count, seconds, count / seconds);
+
+            if (options.containsKey("metrics")) {
+                advanceConsumerCheckpoint(emf, end);
+                BackfillService backfill = new BackfillService(emf, new MessageParser(),
+                        parseInt(options, "threads", 4), BackfillService.DEFAULT_SLICE_WIDTH, 500, 0);
+                BackfillReport report = backfill.run("historical-" + start.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                        start, end);
+                System.out.println("Metrics built: " + report.processed() + ", chunks failed: " + report.failedChunks());
+            }
+        } finally {
+            emf.close();
+        }
+    }
+
+    /**
+     * Проверяет, что загруженные сообщения не разойдутся с состоянием потребителя и архиватора.
+     *
+     * @return описание препятствия или {@code null}, если загружать можно
+     */
+    private static String findConflict(EntityManager em, LocalDateTime start, LocalDateTime end, boolean metrics) {
+        LocalDateTime archivedBefore = RawMessageArchiver.getArchivedBefore(em);
+        if (archivedBefore != null && archivedBefore.isAfter(start)) {
+            return "Raw messages saved before " + archivedBefore.format(DATE_FORMAT)
+                    + " are archived; the generated range must start at or after it";
+        }
+        ProcessingState state = em.find(ProcessingState.class, ConsumerService.COMPONENT_NAME);
+        LocalDateTime checkpoint = state != null ? state.getLastProcessedTime() : null;
+        if (!metrics) {
+            if (checkpoint != null && checkpoint.isAfter(start)) {
+                System.out.println("Warning: consumer checkpoint " + checkpoint.format(DATE_FORMAT)
+                        + " is after the range start, earlier messages will not be processed; use --metrics");
+            }
+            return null;
+        }
+        if (checkpoint != null && !checkpoint.isBefore(end)) {
+            return null;
+        }
+        // контрольная точка будет сдвинута к концу диапазона, и эти сообщения потребитель пропустит
+        long pending = em.createQuery(
+                "SELECT COUNT(m) FROM RawSensorMessage m WHERE m.savedAt > :checkpoint AND m.savedAt <= :end", Long.class)
+                .setParameter("checkpoint", checkpoint != null ? checkpoint : LocalDateTime.of(1970, 1, 1, 0, 0, 0))
+                .setParameter("end", end)
+                .getSingleResult();
+        if (pending > 0) {
+            return "Consumer has " + pending + " unprocessed messages saved before " + end.format(DATE_FORMAT)
+                    + "; let it catch up or run without --metrics";
+        }
+        return null;
+    }
+
+    /**
+     * Сдвигает контрольную точку потребителя к концу диапазона: метрики по загруженным сообщениям
+     * строит перезаливка, потребитель их обрабатывать не должен.
+     */
+    private static void advanceConsumerCheckpoint(EntityManagerFactory emf, LocalDateTime end) {
+        EntityTransaction tx = null;
+        try (EntityManager em = emf.createEntityManager()) {
+            tx = em.getTransaction();
+            tx.begin();
+            ProcessingState state = em.find(ProcessingState.class, ConsumerService.COMPONENT_NAME);
+            if (state == null) {
+                em.persist(new ProcessingState(ConsumerService.COMPONENT_NAME, end));
+            } else if (state.getLastProcessedTime().isBefore(end)) {
+                state.setLastProcessedTime(end);
+                em.merge(state);
+            }
+            tx.commit();
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        }
+    }
+
+    private static int parseInt(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid --" + name + " value, using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
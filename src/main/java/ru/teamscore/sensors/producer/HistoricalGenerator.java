@@ -0,0 +1,72 @@
+package ru.teamscore.sensors.producer;
+
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Генерация исторических данных по модельным часам: показания за прошедший период создаются
+ * без ожидания реального времени, так быстро, как их принимает получатель.
+ * <p>
+ * Каждый датчик снимает показания с заданным периодом; начальные смещения датчиков внутри периода случайны,
+ * чтобы измерения не совпадали по времени. Сообщения передаются в порядке measured_at,
+ * saved_at совпадает с measured_at.
+ */
+public class HistoricalGenerator {
+    private static final Logger LOGGER = Logger.getLogger(HistoricalGenerator.class.getName());
+    private static final long PROGRESS_STEP = 1_000_000;
+
+    private final SensorDataGenerator generator;
+    private final Duration period;
+    private final Random random = new Random();
+
+    /**
+     * @param period период показаний каждого датчика
+     */
+    public HistoricalGenerator(SensorDataGenerator generator, Duration period) {
+        if (period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        this.generator = generator;
+        this.period = period;
+    }
+
+    /**
+     * Передаёт в получатель показания всех датчиков с measured_at в [start, end).
+     *
+     * @return количество сообщений
+     */
+    public long generate(LocalDateTime start, LocalDateTime end, MessageSink sink) throws InterruptedException {
+        List<Phase> phases = new ArrayList<>();
+        long periodNanos = period.toNanos();
+        for (SensorDataGenerator.SensorConfig sensor : generator.getSensors()) {
+            phases.add(new Phase(sensor, Duration.ofNanos((long) (random.nextDouble() * periodNanos))));
+        }
+        phases.sort(Comparator.comparing(Phase::offset));
+
+        long count = 0;
+        for (LocalDateTime tick = start; tick.isBefore(end); tick = tick.plus(period)) {
+            for (Phase phase : phases) {
+                LocalDateTime measuredAt = tick.plus(phase.offset());
+                if (!measuredAt.isBefore(end)) {
+                    break;
+                }
+                RawSensorMessage message = generator.generateMessage(phase.sensor(), measuredAt);
+                message.setSavedAt(measuredAt);
+                sink.send(message);
+                if (++count % PROGRESS_STEP == 0) {
+                    LOGGER.info("Generated " + count + " messages, simulated time " + measuredAt);
+                }
+            }
+        }
+        return count;
+    }
+
+    private record Phase(SensorDataGenerator.SensorConfig sensor, Duration offset) {}
+}
@@ -0,0 +1,14 @@
+package ru.teamscore.sensors.producer;
+
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+
+/**
+ * Получатель сгенерированных сообщений: таблица raw_sensor_messages или очередь в памяти.
+ */
+@FunctionalInterface
+public interface MessageSink {
+    /**
+     * Принимает сообщение; может блокироваться, пока получатель не освободится.
+     */
+    void send(RawSensorMessage message) throws InterruptedException;
+}
@@ -1,7 +1,11 @@
 package ru.teamscore.sensors.producer;
 
 import ru.teamscore.sensors.common.config.EntityManagerFactoryProvider;
+import ru.teamscore.sensors.common.metrics.MetricsServer;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -9,6 +13,9 @@ import java.util.Scanner;
  * Генерирует и записывает в БД сообщения от датчиков в непрерывном цикле.
  * <p>
  * Для остановки нажмите Enter.
+ * <p>
+ * Аргументы: [minDelay] [maxDelay] [--metrics-port=N] [--metrics-bind=адрес] — с опцией метрики в формате
+ * Prometheus доступны на http://localhost:N/metrics; --metrics-bind открывает точку на другом адресе.
  */
 public class ProducerApp {
     public static void main(String[] args) {
@@ -19,6 +26,24 @@ public class ProducerApp {
 
         int minDelay = 10;
         int maxDelay = 50;
+        Integer metricsPort = null;
+        String metricsBind = null;
+
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--metrics-port=")) {
+                try {
+                    metricsPort = Integer.parseInt(arg.substring("--metrics-port=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid metrics port, metrics endpoint is disabled");
+                }
+            } else if (arg.startsWith("--metrics-bind=")) {
+                metricsBind = arg.substring("--metrics-bind=".length());
+            } else {
+                positional.add(arg);
+            }
+        }
+        args = positional.toArray(new String[0]);
 
         if (args.length >= 1) {
             try {
@@ -45,6 +70,15 @@ public class ProducerApp {
                 maxDelay
         );
 
+        MetricsServer metricsServer = null;
+        if (metricsPort != null) {
+            try {
+                metricsServer = MetricsServer.start(metricsBind, metricsPort);
+            } catch (IOException e) {
+                System.out.println("Failed to start metrics endpoint: " + e.getMessage());
+            }
+        }
+
         Thread producerThread = new Thread(producer::start, "ProducerThread");
         producerThread.start();
 
@@ -62,6 +96,9 @@ public class ProducerApp {
             Thread.currentThread().interrupt();
         }
 
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
         System.out.println("Done.");
 
         EntityManagerFactoryProvider.getEntityManagerFactory().close();
@@ -4,6 +4,8 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityTransaction;
 import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.metrics.Counter;
+import ru.teamscore.sensors.common.metrics.MetricsRegistry;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -13,12 +15,18 @@ import java.util.logging.Logger;
 /**
  * Сервис производителя сенсорных данных.
  * Работает в непрерывном цикле, генерируя и записывая в БД сообщения от датчиков.
+ * Вместо БД сообщения можно передавать другому получателю ({@link MessageSink}), например очереди в памяти.
  */
 public class ProducerService {
     private static final Logger LOGGER = Logger.getLogger(ProducerService.class.getName());
+    private static final Counter PRODUCED = MetricsRegistry.getDefault().counter(
+            "sensors_producer_messages_total", "Messages written by the producer");
+    private static final Counter FAILURES = MetricsRegistry.getDefault().counter(
+            "sensors_producer_failures_total", "Messages the producer failed to write");
 
     private final EntityManagerFactory emf;
     private final SensorDataGenerator generator;
+    private final MessageSink sink;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final AtomicLong messageCount = new AtomicLong(0);
 
@@ -34,8 +42,17 @@ public class ProducerService {
     }
 
     public ProducerService(EntityManagerFactory emf, SensorDataGenerator generator, int minDelayMs, int maxDelayMs) {
+        this(emf, generator, minDelayMs, maxDelayMs, null);
+    }
+
+    /**
+     * @param sink получатель сообщений; {@code null} — запись в raw_sensor_messages
+     */
+    public ProducerService(EntityManagerFactory emf, SensorDataGenerator generator, int minDelayMs, int maxDelayMs,
+                           MessageSink sink) {
         this.emf = emf;
         this.generator = generator;
+        this.sink = sink != null ? sink : this::saveMessage;
         this.minDelayMs = Math.max(0, minDelayMs);
         this.maxDelayMs = Math.max(this.minDelayMs, maxDelayMs);
     }
@@ -83,8 +100,9 @@ public class ProducerService {
         while (running.get()) {
             try {
                 RawSensorMessage message = generator.generateRandomMessage();
-                saveMessage(message);
+                sink.send(message);
                 messageCount.incrementAndGet();
+                PRODUCED.increment();
 
                 if (messageCount.get() % 1000 == 0) {
                     LOGGER.info("Produced " + messageCount.get() + " messages");
@@ -122,6 +140,7 @@ public class ProducerService {
             tx.commit();
             LOGGER.fine("Saved message: " + message);
         } catch (Exception e) {
+            FAILURES.increment();
             if (tx != null && tx.isActive()) {
                 tx.rollback();
             }
@@ -136,6 +155,7 @@ public class ProducerService {
         RawSensorMessage message = generator.generateRandomMessage();
         saveMessage(message);
         messageCount.incrementAndGet();
+        PRODUCED.increment();
         return message;
     }
 }
\ No newline at end of file
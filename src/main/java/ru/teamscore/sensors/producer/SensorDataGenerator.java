@@ -46,6 +46,19 @@ public class SensorDataGenerator {
         );
     }
 
+    /**
+     * Создаёт заданное количество датчиков, по одному датчику каждого типа на устройство.
+     */
+    public static List<SensorConfig> createSensors(int count) {
+        SensorType[] types = SensorType.values();
+        List<SensorConfig> sensors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sensors.add(new SensorConfig(UUID.randomUUID(), types[i % types.length],
+                    String.format("Device-%04d", i / types.length)));
+        }
+        return sensors;
+    }
+
     /**
      * Генерирует случайное сообщение от случайного датчика.
      */
@@ -58,7 +71,13 @@ public class SensorDataGenerator {
      * Генерирует сообщение от конкретного датчика.
      */
     public RawSensorMessage generateMessage(SensorConfig sensor) {
-        LocalDateTime measuredAt = LocalDateTime.now();
+        return generateMessage(sensor, LocalDateTime.now());
+    }
+
+    /**
+     * Генерирует сообщение от конкретного датчика с заданным временем измерения.
+     */
+    public RawSensorMessage generateMessage(SensorConfig sensor, LocalDateTime measuredAt) {
         String jsonValue = generateJsonValue(sensor.type());
 
         return new RawSensorMessage(
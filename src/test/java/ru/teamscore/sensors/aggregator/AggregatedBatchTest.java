@@ -0,0 +1,83 @@
+package ru.teamscore.sensors.aggregator;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregatedBatchTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2025, 12, 1, 10, 0, 0);
+
+    @Test
+    void addRow_SharesDeviceIdsThroughDictionary() {
+        AggregatedBatch batch = new AggregatedBatch(1);
+        batch.addRow("A", epoch(TIME));
+        batch.addRow("B", epoch(TIME));
+        batch.addRow("A", epoch(TIME.minusHours(1)));
+
+        assertEquals(3, batch.size());
+        assertEquals(2, batch.getDeviceCount());
+        assertEquals(batch.getDeviceId(0), batch.getDeviceId(2));
+        assertNotEquals(batch.getDeviceId(0), batch.getDeviceId(1));
+        assertEquals("B", batch.getDeviceName(1));
+        assertEquals(TIME.minusHours(1), batch.getIntervalStart(2));
+    }
+
+    @Test
+    void setNull_MarksOnlyThatCell() {
+        AggregatedBatch batch = new AggregatedBatch(2);
+        int row = batch.addRow("A", epoch(TIME));
+        batch.setValue(0, row, 1.5);
+        batch.setNull(1, row);
+
+        assertFalse(batch.isNull(0, row));
+        assertTrue(batch.isNull(1, row));
+        assertEquals(1.5, batch.getValue(0, row));
+
+        batch.setValue(1, row, 2.5);
+        assertFalse(batch.isNull(1, row));
+    }
+
+    @Test
+    void addRow_GrowsBeyondInitialCapacity() {
+        AggregatedBatch batch = new AggregatedBatch(1, 2);
+        for (int i = 0; i < 200; i++) {
+            int row = batch.addRow("A", i);
+            if (i % 3 == 0) {
+                batch.setNull(0, row);
+            } else {
+                batch.setValue(0, row, i);
+            }
+        }
+
+        assertEquals(200, batch.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i % 3 == 0, batch.isNull(0, i));
+            assertEquals(i, batch.getIntervalStartEpochSecond(i));
+        }
+        assertEquals(199.0, batch.getValueColumn(0)[199]);
+    }
+
+    @Test
+    void asResults_AdaptsRowsToAggregatedResult() {
+        AggregatedBatch batch = new AggregatedBatch(2);
+        int row = batch.addRow("A", epoch(TIME));
+        batch.setValue(0, row, 10.0);
+        batch.setNull(1, row);
+
+        List<AggregatedResult> results = batch.asResults();
+
+        assertEquals(1, results.size());
+        assertEquals("A", results.get(0).getDeviceName());
+        assertEquals(TIME, results.get(0).getIntervalStart());
+        assertArrayEquals(new Double[]{10.0, null}, results.get(0).getValues());
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.getResult(1));
+    }
+
+    private static long epoch(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+}
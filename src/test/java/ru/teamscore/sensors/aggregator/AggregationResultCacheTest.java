@@ -0,0 +1,75 @@
+package ru.teamscore.sensors.aggregator;
+
+import org.junit.jupiter.api.Test;
+import ru.teamscore.sensors.common.SensorType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregationResultCacheTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+
+    @Test
+    void get_KeyNormalizesEmptyDeviceName() {
+        AggregationResultCache cache = new AggregationResultCache(10);
+        cache.put(key(START, ""), entry(1));
+
+        assertNotNull(cache.get(key(START, null)));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void put_ExceedsMaxRows_EvictsLeastRecentlyUsed() {
+        AggregationResultCache cache = new AggregationResultCache(5);
+        cache.put(key(START, "A"), entry(2));
+        cache.put(key(START, "B"), entry(2));
+        cache.get(key(START, "A"));
+
+        cache.put(key(START, "C"), entry(2));
+
+        assertNotNull(cache.get(key(START, "A")));
+        assertNull(cache.get(key(START, "B")));
+        assertNotNull(cache.get(key(START, "C")));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void put_EntryLargerThanCache_NotStored() {
+        AggregationResultCache cache = new AggregationResultCache(1);
+        cache.put(key(START, "A"), entry(2));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidateIfRewritten_MarkerChanged_ClearsEntries() {
+        AggregationResultCache cache = new AggregationResultCache(10);
+        cache.put(key(START, "A"), entry(2));
+
+        assertFalse(cache.invalidateIfRewritten(null));
+        assertEquals(1, cache.size());
+
+        assertTrue(cache.invalidateIfRewritten(START));
+        assertEquals(0, cache.size());
+
+        cache.put(key(START, "A"), entry(2));
+        assertFalse(cache.invalidateIfRewritten(START));
+        assertEquals(1, cache.size());
+    }
+
+    private AggregationResultCache.Key key(LocalDateTime start, String deviceName) {
+        return new AggregationResultCache.Key(SensorType.LIGHT, start, start.plusDays(1), TimeInterval.HOUR, deviceName);
+    }
+
+    private AggregationResultCache.Entry entry(int rows) {
+        List<AggregatedResult> results = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            results.add(new AggregatedResult("Device", START.plusHours(i), 1.0));
+        }
+        return new AggregationResultCache.Entry(results, START.plusHours(rows), false);
+    }
+}
@@ -0,0 +1,192 @@
+package ru.teamscore.sensors.aggregator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.metric.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregatorServerTest {
+
+    private static EntityManagerFactory emf;
+    private static AggregatorServer server;
+    private static AggregationResultCache resultCache;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeAll
+    static void setUpClass() throws Exception {
+        emf = new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .addAnnotatedClass(SensorDevice.class)
+                .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(LightMetric.class)
+                .addAnnotatedClass(BarometerMetric.class)
+                .addAnnotatedClass(LocationMetric.class)
+                .addAnnotatedClass(AccelerometerMetric.class)
+                .buildSessionFactory();
+
+        UUID sensorId = UUID.randomUUID();
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new SensorDevice(sensorId, "My Device", SensorType.LIGHT, LocalDateTime.now()));
+            em.persist(new LightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 100));
+            em.persist(new LightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 30, 0), 200));
+            em.persist(new LightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 0, 0), 300));
+            em.getTransaction().commit();
+        }
+
+        resultCache = new AggregationResultCache(1000);
+        AggregatorService service = new AggregatorService(emf, new PrintStream(new ByteArrayOutputStream()),
+                new ByteArrayInputStream(new byte[0]), null, resultCache);
+        server = new AggregatorServer(service, resultCache, new InetSocketAddress("localhost", 0), 4);
+        server.start();
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        if (server != null) {
+            server.close();
+        }
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    void aggregate_ReturnsJsonRows() throws Exception {
+        HttpResponse<String> response = get("/aggregate?type=light&from=2025-12-01T00:00:00"
+                + "&to=2025-12-01+23:59:59&interval=HOUR&device=My%20Device");
+
+        assertEquals(200, response.statusCode());
+        JsonNode body = objectMapper.readTree(response.body());
+        assertEquals("LIGHT", body.get("type").asText());
+        assertEquals("LIGHT", body.get("columns").get(0).asText());
+        JsonNode rows = body.get("rows");
+        assertEquals(2, rows.size());
+        assertEquals("My Device", rows.get(0).get("device").asText());
+        assertEquals("2025-12-01T11:00", rows.get(0).get("start").asText());
+        assertEquals(300.0, rows.get(0).get("values").get(0).asDouble(), 0.001);
+        assertEquals(150.0, rows.get(1).get("values").get(0).asDouble(), 0.001);
+    }
+
+    @Test
+    void aggregate_Statistics_ReturnsPerValueStatistics() throws Exception {
+        HttpResponse<String> response = get("/aggregate?type=LIGHT&from=2025-12-01T00:00:00"
+                + "&to=2025-12-01T23:59:59&interval=DAY&stats=true");
+
+        assertEquals(200, response.statusCode());
+        JsonNode row = objectMapper.readTree(response.body()).get("rows").get(0);
+        JsonNode statistics = row.get("statistics").get(0);
+        assertEquals(3, statistics.get("count").asInt());
+        assertEquals(100.0, statistics.get("min").asDouble(), 0.001);
+        assertEquals(300.0, statistics.get("max").asDouble(), 0.001);
+        assertEquals(200.0, statistics.get("avg").asDouble(), 0.001);
+    }
+
+    @Test
+    void aggregate_InvalidParameters_ReturnsBadRequest() throws Exception {
+        HttpResponse<String> missing = get("/aggregate?type=LIGHT&from=2025-12-01T00:00:00");
+        HttpResponse<String> wrongType = get("/aggregate?type=SONAR&from=2025-12-01T00:00:00&to=2025-12-02T00:00:00");
+        HttpResponse<String> wrongInterval = get("/aggregate?type=LIGHT&from=2025-12-01T00:00:00"
+                + "&to=2025-12-02T00:00:00&interval=MONTH");
+        HttpResponse<String> hugeInterval = get("/aggregate?type=LIGHT&from=2025-12-01T00:00:00"
+                + "&to=2025-12-02T00:00:00&interval=99999999999999w");
+
+        assertEquals(400, missing.statusCode());
+        assertTrue(objectMapper.readTree(missing.body()).get("error").asText().contains("to"));
+        assertEquals(400, wrongType.statusCode());
+        assertEquals(400, wrongInterval.statusCode());
+        assertEquals(400, hugeInterval.statusCode());
+    }
+
+    @Test
+    void aggregate_FailureWhileStreaming_EndsResponseWithErrorMarker() throws Exception {
+        AggregatorService failing = new AggregatorService(emf, new PrintStream(new ByteArrayOutputStream()),
+                new ByteArrayInputStream(new byte[0])) {
+            @Override
+            public void streamStatistics(SensorType sensorType, LocalDateTime startTime, LocalDateTime endTime,
+                                         TimeInterval interval, String deviceName, Consumer<AggregatedResult> sink) {
+                ValueStatistics statistics = new ValueStatistics();
+                statistics.add(1.0);
+                sink.accept(new AggregatedResult("My Device", startTime, new ValueStatistics[]{statistics}));
+                throw new IllegalStateException("Connection lost");
+            }
+        };
+        try (AggregatorServer failingServer = new AggregatorServer(failing, null, new InetSocketAddress("localhost", 0), 1)) {
+            failingServer.start();
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:"
+                    + failingServer.getPort() + "/aggregate?type=LIGHT&from=2025-12-01T00:00:00"
+                    + "&to=2025-12-01T23:59:59&stats=true")).build(), HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            JsonNode body = objectMapper.readTree(response.body());
+            assertEquals(1, body.get("rows").size());
+            assertTrue(body.has("error"), response.body());
+        }
+    }
+
+    @Test
+    void aggregate_ConcurrentRequests_AllAnswered() throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            HttpRequest request = HttpRequest.newBuilder(uri("/aggregate?type=LIGHT&from=2025-12-01T00:00:00"
+                    + "&to=2025-12-01T23:59:59&interval=" + (i % 2 == 0 ? "HOUR" : "30m"))).build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+            assertFalse(objectMapper.readTree(response.get().body()).get("rows").isEmpty());
+        }
+    }
+
+    @Test
+    void health_ReportsStatusAndCache() throws Exception {
+        HttpResponse<String> response = get("/health");
+
+        assertEquals(200, response.statusCode());
+        JsonNode body = objectMapper.readTree(response.body());
+        assertEquals("UP", body.get("status").asText());
+        assertTrue(body.has("cache"));
+    }
+
+    @Test
+    void post_ReturnsMethodNotAllowed() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri("/health"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build();
+
+        assertEquals(405, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+}
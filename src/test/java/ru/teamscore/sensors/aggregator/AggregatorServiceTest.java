@@ -4,16 +4,27 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import org.hibernate.cfg.Configuration;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.config.JdbcConnectionFactory;
+import ru.teamscore.sensors.common.cache.MetricsRewriteMarker;
+import ru.teamscore.sensors.common.cache.RecentMetricsStore;
 import ru.teamscore.sensors.common.entity.ProcessingState;
 import ru.teamscore.sensors.common.entity.RawSensorMessage;
 import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.SensorPresence;
+import ru.teamscore.sensors.common.sketch.HyperLogLog;
 import ru.teamscore.sensors.common.entity.metric.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -32,6 +43,7 @@ class AggregatorServiceTest {
                 .addAnnotatedClass(RawSensorMessage.class)
                 .addAnnotatedClass(SensorDevice.class)
                 .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(SensorPresence.class)
                 .addAnnotatedClass(LightMetric.class)
                 .addAnnotatedClass(BarometerMetric.class)
                 .addAnnotatedClass(LocationMetric.class)
@@ -65,6 +77,7 @@ class AggregatorServiceTest {
             em.createQuery("DELETE FROM SensorDevice").executeUpdate();
             em.createQuery("DELETE FROM ProcessingState").executeUpdate();
             em.createQuery("DELETE FROM RawSensorMessage").executeUpdate();
+            em.createQuery("DELETE FROM SensorPresence").executeUpdate();
             em.getTransaction().commit();
         }
     }
@@ -269,6 +282,430 @@ class AggregatorServiceTest {
         assertTrue(output.contains("Нет данных"));
     }
 
+    @Test
+    void aggregateStreaming_PrintsPagesAsRowsArriveWithoutWaiting() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "StreamDevice", SensorType.LIGHT);
+        for (int minute = 0; minute < 20; minute++) {
+            createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, minute, 0), 100 + minute);
+        }
+
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+
+        aggregatorService.aggregateStreaming(SensorType.LIGHT, start, end, TimeInterval.MINUTE, null);
+
+        String output = outputStream.toString();
+        assertTrue(output.contains("Выведено 16 строк."), output);
+        assertFalse(output.contains("Нажмите Enter"), output);
+        assertTrue(output.contains("Выведено 20 строк. Конец таблицы"), output);
+        assertTrue(output.contains("119.00"), output);
+        assertTrue(output.contains("100.00"), output);
+    }
+
+    @Test
+    void streamAggregatedData_SameRowsAsFetch() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 100);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 0, 0), 300);
+
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+
+        List<AggregatedResult> streamed = new ArrayList<>();
+        aggregatorService.streamAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null, streamed::add);
+
+        assertEquals(2, streamed.size());
+        assertEquals(300.0, streamed.get(0).getValue(), 0.001);
+        assertEquals(100.0, streamed.get(1).getValue(), 0.001);
+    }
+
+    @Test
+    void fetchAggregatedData_JdbcWithoutHibernate_SameRows() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 100);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 30, 0), 200);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 0, 0), 300);
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+
+        AggregatorService jdbcService = new AggregatorService(JdbcConnectionFactory.fromHibernateProperties(),
+                printStream, new ByteArrayInputStream(new byte[0]));
+        assertEquals(0, jdbcService.getFirstRowMillis());
+        List<AggregatedResult> viaJdbc = jdbcService.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+        List<AggregatedResult> viaHibernate = aggregatorService.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+
+        assertEquals(2, viaJdbc.size());
+        for (int i = 0; i < viaJdbc.size(); i++) {
+            assertEquals(viaHibernate.get(i).getIntervalStart(), viaJdbc.get(i).getIntervalStart());
+            assertEquals(viaHibernate.get(i).getValue(), viaJdbc.get(i).getValue(), 0.001);
+        }
+        assertTrue(jdbcService.getFirstRowMillis() > 0);
+    }
+
+    @Test
+    void fetchAggregatedBatch_MatchesRowResults() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        createDevice(first, "DeviceA", SensorType.LIGHT);
+        createDevice(second, "DeviceB", SensorType.LIGHT);
+        createLightMetric(first, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 100);
+        createLightMetric(first, LocalDateTime.of(2025, 12, 1, 10, 30, 0), 200);
+        createLightMetric(first, LocalDateTime.of(2025, 12, 1, 11, 0, 0), 300);
+        createLightMetric(second, LocalDateTime.of(2025, 12, 1, 12, 0, 0), 50);
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+
+        AggregatedBatch batch = aggregatorService.fetchAggregatedBatch(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+        List<AggregatedResult> expected = aggregatorService.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+
+        assertEquals(3, batch.size());
+        assertEquals(2, batch.getDeviceCount());
+        List<AggregatedResult> adapted = batch.asResults();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDeviceName(), adapted.get(i).getDeviceName());
+            assertEquals(expected.get(i).getIntervalStart(), adapted.get(i).getIntervalStart());
+            assertEquals(expected.get(i).getValue(), batch.getValue(0, i), 0.001);
+        }
+    }
+
+    @Test
+    void streamFilledData_Linear_DenseSeriesOverRange() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 100);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 13, 0, 0), 400);
+
+        List<AggregatedResult> streamed = new ArrayList<>();
+        aggregatorService.streamFilledData(SensorType.LIGHT, LocalDateTime.of(2025, 12, 1, 9, 0, 0),
+                LocalDateTime.of(2025, 12, 1, 14, 59, 59), TimeInterval.HOUR, null, FillMode.LINEAR, streamed::add);
+
+        assertEquals(6, streamed.size());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 14, 0, 0), streamed.get(0).getIntervalStart());
+        assertNull(streamed.get(0).getValue());
+        assertEquals(400.0, streamed.get(1).getValue(), 0.001);
+        assertEquals(300.0, streamed.get(2).getValue(), 0.001);
+        assertTrue(streamed.get(2).isFilled());
+        assertEquals(200.0, streamed.get(3).getValue(), 0.001);
+        assertEquals(100.0, streamed.get(4).getValue(), 0.001);
+        assertEquals(LocalDateTime.of(2025, 12, 1, 9, 0, 0), streamed.get(5).getIntervalStart());
+        assertNull(streamed.get(5).getValue());
+    }
+
+    @Test
+    void export_Csv_WritesRowsInResultOrder(@TempDir Path tempDir) throws IOException {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 100);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 30, 0), 200);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 0, 0), 300);
+
+        Path file = tempDir.resolve("light.csv");
+        long rows = aggregatorService.export(SensorType.LIGHT, LocalDateTime.of(2025, 12, 1, 0, 0, 0),
+                LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.HOUR, null, ExportFormat.CSV, file);
+
+        assertEquals(2, rows);
+        assertEquals(List.of(
+                "DEVICE,DATE,LIGHT",
+                "TestDevice,2025-12-01 11:00:00,300.0",
+                "TestDevice,2025-12-01 10:00:00,150.0"), Files.readAllLines(file));
+        assertEquals(0, outputStream.size());
+    }
+
+    @Test
+    void export_Columnar_SameRowsAsFetch(@TempDir Path tempDir) throws IOException {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "AccelDevice", SensorType.ACCELEROMETER);
+        for (int i = 0; i < 50; i++) {
+            createAccelerometerMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, i, 0), i, -i, 9.8);
+        }
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+
+        Path file = tempDir.resolve("accel.bin");
+        aggregatorService.export(SensorType.ACCELEROMETER, start, end, TimeInterval.parse("10m"), null,
+                ExportFormat.COLUMNAR, file);
+
+        List<AggregatedResult> expected = aggregatorService.fetchAggregatedData(
+                SensorType.ACCELEROMETER, start, end, TimeInterval.parse("10m"), null);
+        List<AggregatedResult> exported = ColumnarResultReader.read(file).getResults();
+        assertEquals(expected.size(), exported.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getIntervalStart(), exported.get(i).getIntervalStart());
+            assertArrayEquals(expected.get(i).getValues(), exported.get(i).getValues());
+        }
+    }
+
+    @Test
+    void streamTopDevices_ReturnsKDevicesPerInterval() {
+        int[][] values = {{100, 900}, {500, 200}, {300, 300}, {700, 100}};
+        for (int i = 0; i < values.length; i++) {
+            UUID sensorId = UUID.randomUUID();
+            createDevice(sensorId, "Device-" + i, SensorType.LIGHT);
+            createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 10, 0), values[i][0]);
+            createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 10, 0), values[i][1]);
+            createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 20, 0), values[i][1] / 2);
+        }
+
+        TopDevicesAggregator topDevices = new TopDevicesAggregator(aggregatorService);
+        List<TopDeviceResult> top = new ArrayList<>();
+        topDevices.streamTopDevices(SensorType.LIGHT, LocalDateTime.of(2025, 12, 1, 0, 0, 0),
+                LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.HOUR, 2, RankingMeasure.PEAK, true, top::add);
+
+        assertEquals(4, top.size());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 11, 0, 0), top.get(0).getIntervalStart());
+        assertEquals(1, top.get(0).getRank());
+        assertEquals("Device-0", top.get(0).getDeviceName());
+        assertEquals(900.0, top.get(0).getValue(), 0.001);
+        assertEquals("Device-2", top.get(1).getDeviceName());
+        assertEquals(2, top.get(1).getRank());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 10, 0, 0), top.get(2).getIntervalStart());
+        assertEquals("Device-3", top.get(2).getDeviceName());
+        assertEquals("Device-1", top.get(3).getDeviceName());
+    }
+
+    @Test
+    void streamTopDevices_LowestByAverage() {
+        int[] values = {100, 500, 300};
+        for (int i = 0; i < values.length; i++) {
+            UUID sensorId = UUID.randomUUID();
+            createDevice(sensorId, "Device-" + i, SensorType.LIGHT);
+            createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 10, 0), values[i]);
+        }
+
+        TopDevicesAggregator topDevices = new TopDevicesAggregator(aggregatorService);
+        List<TopDeviceResult> top = new ArrayList<>();
+        topDevices.streamTopDevices(SensorType.LIGHT, LocalDateTime.of(2025, 12, 1, 0, 0, 0),
+                LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.DAY, 1, RankingMeasure.AVG, false, top::add);
+
+        assertEquals(1, top.size());
+        assertEquals("Device-0", top.get(0).getDeviceName());
+        assertThrows(IllegalArgumentException.class, () -> topDevices.streamTopDevices(SensorType.LOCATION,
+                LocalDateTime.of(2025, 12, 1, 0, 0, 0), LocalDateTime.of(2025, 12, 1, 23, 59, 59),
+                TimeInterval.DAY, 1, RankingMeasure.AVG, true, top::add));
+    }
+
+    @Test
+    void streamDistinctSensors_MergesMinuteSketchesPerDeviceAndOverall() {
+        List<UUID> sensors = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sensors.add(UUID.randomUUID());
+        }
+        // Home: датчики 0-2 в 10:01 и 1-3 в 10:02; Office: датчики 3-4 в 10:01 и датчик 0 в 11:00
+        createPresence(SensorType.LIGHT, "Home", LocalDateTime.of(2025, 12, 1, 10, 1, 0), sensors.subList(0, 3));
+        createPresence(SensorType.LIGHT, "Home", LocalDateTime.of(2025, 12, 1, 10, 2, 0), sensors.subList(1, 4));
+        createPresence(SensorType.LIGHT, "Office", LocalDateTime.of(2025, 12, 1, 10, 1, 0), sensors.subList(3, 5));
+        createPresence(SensorType.LIGHT, "Office", LocalDateTime.of(2025, 12, 1, 11, 0, 0), sensors.subList(0, 1));
+        createPresence(SensorType.BAROMETER, "Home", LocalDateTime.of(2025, 12, 1, 10, 1, 0), List.of(UUID.randomUUID()));
+
+        DistinctSensorsAggregator distinctSensors = new DistinctSensorsAggregator(aggregatorService);
+        List<DistinctSensorsResult> results = new ArrayList<>();
+        distinctSensors.streamDistinctSensors(SensorType.LIGHT, LocalDateTime.of(2025, 12, 1, 0, 0, 0),
+                LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.HOUR, null, results::add);
+
+        assertEquals(5, results.size());
+        assertDistinct(results.get(0), "Home", LocalDateTime.of(2025, 12, 1, 10, 0, 0), 4);
+        assertDistinct(results.get(1), "Office", LocalDateTime.of(2025, 12, 1, 11, 0, 0), 1);
+        assertDistinct(results.get(2), "Office", LocalDateTime.of(2025, 12, 1, 10, 0, 0), 2);
+        assertDistinct(results.get(3), null, LocalDateTime.of(2025, 12, 1, 11, 0, 0), 1);
+        assertDistinct(results.get(4), null, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 5);
+
+        results.clear();
+        distinctSensors.streamDistinctSensors(null, LocalDateTime.of(2025, 12, 1, 0, 0, 0),
+                LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.DAY, "Home", results::add);
+        assertDistinct(results.get(0), "Home", LocalDateTime.of(2025, 12, 1, 0, 0, 0), 5);
+
+        assertThrows(IllegalArgumentException.class, () -> distinctSensors.streamDistinctSensors(null,
+                LocalDateTime.of(2025, 12, 1, 0, 0, 0), LocalDateTime.of(2025, 12, 1, 23, 59, 59),
+                TimeInterval.parse("30s"), null, results::add));
+    }
+
+    @Test
+    void streamMotion_RmsAndPeakMagnitudeDoNotCancelOut() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "Vibro", SensorType.ACCELEROMETER);
+        createAccelerometerMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 3.0, 0.0, 4.0);
+        createAccelerometerMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 0, 1), -3.0, 0.0, -4.0);
+        createAccelerometerMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 0, 2), 0.0, 1.0, 0.0);
+
+        List<AggregatedResult> results = new ArrayList<>();
+        new MotionAggregator(aggregatorService).streamMotion(LocalDateTime.of(2025, 12, 1, 0, 0, 0),
+                LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.HOUR, null, results::add);
+
+        assertEquals(1, results.size());
+        Double[] values = results.get(0).getValues();
+        assertEquals(Math.sqrt(51.0 / 3), values[0], 1e-9);
+        assertEquals(5.0, values[1], 1e-9);
+        assertNull(values[2]);
+
+        List<AggregatedResult> averages = aggregatorService.fetchAggregatedData(SensorType.ACCELEROMETER,
+                LocalDateTime.of(2025, 12, 1, 0, 0, 0), LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.HOUR, null);
+        assertEquals(0.0, averages.get(0).getValues()[0], 1e-9);
+    }
+
+    @Test
+    void aggregateMotion_PrintsMotionColumns() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "Vibro", SensorType.ACCELEROMETER);
+        createAccelerometerMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 3.0, 0.0, 4.0);
+
+        aggregatorService.aggregateMotion(LocalDateTime.of(2025, 12, 1, 0, 0, 0),
+                LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.HOUR, null);
+
+        String output = outputStream.toString();
+        assertTrue(output.contains("MAGNITUDE_RMS"));
+        assertTrue(output.contains("5.00"));
+    }
+
+    @Test
+    void streamStatistics_ComputesAllStatisticsInOnePass() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "StatsDevice", SensorType.BAROMETER);
+        createBarometerMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 5, 0), 100.0);
+        createBarometerMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 15, 0), 200.0);
+        createBarometerMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 25, 0), 300.0);
+        createBarometerMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 5, 0), 50.0);
+
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+
+        List<AggregatedResult> results = new ArrayList<>();
+        aggregatorService.streamStatistics(SensorType.BAROMETER, start, end, TimeInterval.HOUR, null, results::add);
+
+        assertEquals(2, results.size());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 11, 0, 0), results.get(0).getIntervalStart());
+        ValueStatistics statistics = results.get(1).getStatistics()[0];
+        assertEquals(3, statistics.getCount());
+        assertEquals(100.0, statistics.getMin());
+        assertEquals(300.0, statistics.getMax());
+        assertEquals(200.0, results.get(1).getValue(), 0.001);
+        assertEquals(100.0, statistics.getStdDev(), 0.001);
+        assertEquals(200.0, statistics.getPercentile(50), 200 * 0.02);
+    }
+
+    @Test
+    void aggregateStatistics_PrintsStatisticsColumns() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "MyHome ZZZ", SensorType.LIGHT);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 30, 0), 512);
+
+        aggregatorService.aggregateStatistics(SensorType.LIGHT, LocalDateTime.of(2025, 12, 1, 0, 0, 0),
+                LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.HOUR, null);
+
+        String output = outputStream.toString();
+        assertTrue(output.contains("LIGHT_COUNT"), output);
+        assertTrue(output.contains("LIGHT_P99"), output);
+        assertTrue(output.contains("512.00"), output);
+    }
+
+    @Test
+    void fetchAggregatedData_WithResultCache_ClosedIntervalsReusedAndTailRecomputed() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 10, 0), 100);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 10, 0), 200);
+        setConsumerCheckpoint(LocalDateTime.of(2025, 12, 1, 11, 30, 0));
+
+        AggregationResultCache cache = new AggregationResultCache(1000);
+        AggregatorService service = new AggregatorService(emf, printStream, new ByteArrayInputStream(new byte[0]), null, cache);
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+
+        assertEquals(2, service.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null).size());
+        assertEquals(1, cache.size());
+
+        // закрытый интервал 10:00 берётся из кэша, открытый 11:00 пересчитывается
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 20, 0), 900);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 20, 0), 400);
+
+        List<AggregatedResult> results = service.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+
+        assertEquals(2, results.size());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 11, 0, 0), results.get(0).getIntervalStart());
+        assertEquals(300.0, results.get(0).getValue(), 0.001);
+        assertEquals(100.0, results.get(1).getValue(), 0.001);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void fetchAggregatedData_WithResultCache_RangeClosedLaterExtendsCachedPrefix() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        createDevice(first, "DeviceA", SensorType.LIGHT);
+        createDevice(second, "DeviceB", SensorType.LIGHT);
+        createLightMetric(first, LocalDateTime.of(2025, 12, 1, 10, 10, 0), 100);
+        createLightMetric(second, LocalDateTime.of(2025, 12, 1, 10, 10, 0), 500);
+        setConsumerCheckpoint(LocalDateTime.of(2025, 12, 1, 11, 30, 0));
+
+        AggregationResultCache cache = new AggregationResultCache(1000);
+        AggregatorService service = new AggregatorService(emf, printStream, new ByteArrayInputStream(new byte[0]), null, cache);
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+        service.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+
+        // интервал 10:00 уже закэширован, поэтому новая строка в нём не видна; досчитывается только 11:00
+        createLightMetric(first, LocalDateTime.of(2025, 12, 1, 10, 20, 0), 900);
+        createLightMetric(first, LocalDateTime.of(2025, 12, 1, 11, 20, 0), 200);
+        createLightMetric(second, LocalDateTime.of(2025, 12, 1, 11, 20, 0), 600);
+        setConsumerCheckpoint(LocalDateTime.of(2025, 12, 3, 0, 0, 0));
+
+        List<AggregatedResult> results = service.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+
+        assertEquals(List.of(200.0, 100.0, 600.0, 500.0), results.stream().map(AggregatedResult::getValue).toList());
+        assertEquals(List.of("DeviceA", "DeviceA", "DeviceB", "DeviceB"),
+                results.stream().map(AggregatedResult::getDeviceName).toList());
+
+        clearDatabase();
+        setConsumerCheckpoint(LocalDateTime.of(2025, 12, 3, 0, 0, 0));
+        assertEquals(4, service.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null).size());
+    }
+
+    @Test
+    void fetchAggregatedData_WithResultCache_FullyClosedRangeServedFromCache() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 10, 0), 100);
+        setConsumerCheckpoint(LocalDateTime.of(2025, 12, 3, 0, 0, 0));
+
+        AggregatorService service = new AggregatorService(emf, printStream, new ByteArrayInputStream(new byte[0]), null,
+                new AggregationResultCache(1000));
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+        service.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+
+        clearDatabase();
+        setConsumerCheckpoint(LocalDateTime.of(2025, 12, 3, 0, 0, 0));
+
+        List<AggregatedResult> results = service.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+        assertEquals(1, results.size());
+        assertEquals(100.0, results.get(0).getValue(), 0.001);
+    }
+
+    @Test
+    void fetchAggregatedData_WithResultCache_RewriteMarkerInvalidatesCache() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 10, 0), 100);
+        setConsumerCheckpoint(LocalDateTime.of(2025, 12, 3, 0, 0, 0));
+
+        AggregationResultCache cache = new AggregationResultCache(1000);
+        AggregatorService service = new AggregatorService(emf, printStream, new ByteArrayInputStream(new byte[0]), null, cache);
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+        service.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+
+        // перезаливка закрытого интервала в обход потребителя
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 20, 0), 300);
+        MetricsRewriteMarker.mark(emf);
+
+        List<AggregatedResult> results = service.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+        assertEquals(1, results.size());
+        assertEquals(200.0, results.get(0).getValue(), 0.001);
+        assertEquals(0, cache.getHits());
+    }
+
     @Test
     void fetchAggregatedData_MinuteInterval_GroupsByMinute() {
         UUID sensorId = UUID.randomUUID();
@@ -309,6 +746,125 @@ class AggregatorServiceTest {
         assertEquals(2, results.size());
     }
 
+    @Test
+    void fetchAggregatedData_ArbitraryWidthWithOrigin_BucketsAlignedToOrigin() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 4, 0), 100);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 5, 0), 200);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 19, 59), 400);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 20, 0), 500);
+
+        TimeInterval interval = TimeInterval.parse("15m").withOrigin(LocalDateTime.of(2025, 1, 1, 0, 5, 0));
+        List<AggregatedResult> results = aggregatorService.fetchAggregatedData(SensorType.LIGHT,
+                LocalDateTime.of(2025, 12, 1, 0, 0, 0), LocalDateTime.of(2025, 12, 1, 23, 59, 59), interval, null);
+
+        assertEquals(3, results.size());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 10, 20, 0), results.get(0).getIntervalStart());
+        assertEquals(500.0, results.get(0).getValue(), 0.001);
+        assertEquals(LocalDateTime.of(2025, 12, 1, 10, 5, 0), results.get(1).getIntervalStart());
+        assertEquals(300.0, results.get(1).getValue(), 0.001);
+        assertEquals(LocalDateTime.of(2025, 12, 1, 9, 50, 0), results.get(2).getIntervalStart());
+        assertEquals(100.0, results.get(2).getValue(), 0.001);
+    }
+
+    @Test
+    void fetchAggregatedData_RangeInsideRecentStore_ServedWithoutDatabase() {
+        LocalDateTime coveredFrom = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        RecentMetricsStore store = new RecentMetricsStore(Duration.ofDays(1), coveredFrom);
+        UUID sensorId = UUID.randomUUID();
+        store.append(SensorType.LIGHT, "CachedDevice", new LightMetric(sensorId, coveredFrom.plusMinutes(10), 100));
+        store.append(SensorType.LIGHT, "CachedDevice", new LightMetric(sensorId, coveredFrom.plusMinutes(20), 200));
+        store.append(SensorType.LIGHT, "CachedDevice", new LightMetric(sensorId, coveredFrom.plusHours(1), 400));
+
+        AggregatorService service = new AggregatorService(emf, printStream, new ByteArrayInputStream(new byte[0]), store);
+        List<AggregatedResult> results = service.fetchAggregatedData(
+                SensorType.LIGHT, coveredFrom, coveredFrom.plusHours(2), TimeInterval.HOUR, null);
+
+        assertEquals(2, results.size());
+        assertEquals(coveredFrom.plusHours(1), results.get(0).getIntervalStart());
+        assertEquals(400.0, results.get(0).getValue(), 0.001);
+        assertEquals(coveredFrom, results.get(1).getIntervalStart());
+        assertEquals(150.0, results.get(1).getValue(), 0.001);
+    }
+
+    @Test
+    void fetchAggregatedData_RangeStraddlesRecentStore_MergesDatabaseAndStore() {
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 9, 15, 0), 100);
+        createLightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 10, 5, 0), 200);
+
+        // хранилище покрывает данные с 10:30, поэтому час 10:00 целиком берётся из БД
+        RecentMetricsStore store = new RecentMetricsStore(Duration.ofDays(1), LocalDateTime.of(2025, 12, 1, 10, 30, 0));
+        store.append(SensorType.LIGHT, "TestDevice", new LightMetric(sensorId, LocalDateTime.of(2025, 12, 1, 11, 10, 0), 600));
+
+        AggregatorService service = new AggregatorService(emf, printStream, new ByteArrayInputStream(new byte[0]), store);
+        List<AggregatedResult> results = service.fetchAggregatedData(SensorType.LIGHT,
+                LocalDateTime.of(2025, 12, 1, 0, 0, 0), LocalDateTime.of(2025, 12, 1, 23, 59, 59), TimeInterval.HOUR, null);
+
+        assertEquals(3, results.size());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 11, 0, 0), results.get(0).getIntervalStart());
+        assertEquals(600.0, results.get(0).getValue(), 0.001);
+        assertEquals(LocalDateTime.of(2025, 12, 1, 10, 0, 0), results.get(1).getIntervalStart());
+        assertEquals(200.0, results.get(1).getValue(), 0.001);
+        assertEquals(LocalDateTime.of(2025, 12, 1, 9, 0, 0), results.get(2).getIntervalStart());
+    }
+
+    @Test
+    void fetchAggregatedData_MetricsRewrittenUnderRecentStore_ReadsDatabase() {
+        LocalDateTime coveredFrom = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        UUID sensorId = UUID.randomUUID();
+        createDevice(sensorId, "TestDevice", SensorType.LIGHT);
+        RecentMetricsStore store = new RecentMetricsStore(Duration.ofDays(1), coveredFrom);
+        store.append(SensorType.LIGHT, "TestDevice", new LightMetric(sensorId, coveredFrom.plusMinutes(10), 100));
+        AggregatorService service = new AggregatorService(emf, printStream, new ByteArrayInputStream(new byte[0]), store);
+        assertEquals(100.0, service.fetchAggregatedData(SensorType.LIGHT, coveredFrom, coveredFrom.plusHours(1),
+                TimeInterval.HOUR, null).get(0).getValue(), 0.001);
+
+        // перезаливка заменила строку в БД в обход потребителя
+        createLightMetric(sensorId, coveredFrom.plusMinutes(10), 300);
+        MetricsRewriteMarker.mark(emf);
+
+        List<AggregatedResult> results = service.fetchAggregatedData(
+                SensorType.LIGHT, coveredFrom, coveredFrom.plusHours(1), TimeInterval.HOUR, null);
+
+        assertEquals(1, results.size());
+        assertEquals(300.0, results.get(0).getValue(), 0.001);
+        assertEquals(0, store.size(SensorType.LIGHT));
+    }
+
+    @Test
+    void deviceOrderSql_Postgres_UsesBinaryCollation() {
+        assertEquals("d.device_name COLLATE \"C\" ASC", QueryRunner.deviceOrderSql("d.device_name", true));
+        assertEquals("d.device_name ASC", QueryRunner.deviceOrderSql("d.device_name", false));
+    }
+
+    private void assertDistinct(DistinctSensorsResult result, String deviceName, LocalDateTime intervalStart, long count) {
+        assertEquals(deviceName, result.getDeviceName());
+        assertEquals(intervalStart, result.getIntervalStart());
+        assertEquals(count, result.getDistinctSensors());
+    }
+
+    private void createPresence(SensorType sensorType, String deviceName, LocalDateTime minute, List<UUID> sensors) {
+        HyperLogLog sketch = new HyperLogLog();
+        sensors.forEach(sketch::add);
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new SensorPresence(sensorType, deviceName, minute, sketch.toBytes()));
+            em.getTransaction().commit();
+        }
+    }
+
+    private void setConsumerCheckpoint(LocalDateTime lastProcessedTime) {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.merge(new ProcessingState("consumer", lastProcessedTime));
+            em.getTransaction().commit();
+        }
+    }
+
     private void createDevice(UUID sensorId, String deviceName, SensorType sensorType) {
         try (EntityManager em = emf.createEntityManager()) {
             em.getTransaction().begin();
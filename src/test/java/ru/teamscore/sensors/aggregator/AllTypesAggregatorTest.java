@@ -0,0 +1,113 @@
+package ru.teamscore.sensors.aggregator;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.metric.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AllTypesAggregatorTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+
+    private static EntityManagerFactory emf;
+
+    @BeforeAll
+    static void setUpClass() {
+        emf = new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .addAnnotatedClass(SensorDevice.class)
+                .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(LightMetric.class)
+                .addAnnotatedClass(BarometerMetric.class)
+                .addAnnotatedClass(LocationMetric.class)
+                .addAnnotatedClass(AccelerometerMetric.class)
+                .buildSessionFactory();
+
+        UUID homeLight = UUID.randomUUID();
+        UUID homeBarometer = UUID.randomUUID();
+        UUID carLocation = UUID.randomUUID();
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new SensorDevice(homeLight, "Home", SensorType.LIGHT, LocalDateTime.now()));
+            em.persist(new SensorDevice(homeBarometer, "Home", SensorType.BAROMETER, LocalDateTime.now()));
+            em.persist(new SensorDevice(carLocation, "Car", SensorType.LOCATION, LocalDateTime.now()));
+            em.persist(new LightMetric(homeLight, LocalDateTime.of(2025, 12, 1, 10, 15, 0), 100));
+            em.persist(new LightMetric(homeLight, LocalDateTime.of(2025, 12, 1, 11, 15, 0), 300));
+            em.persist(new BarometerMetric(homeBarometer, LocalDateTime.of(2025, 12, 1, 10, 45, 0), 1013.0));
+            em.persist(new LocationMetric(carLocation, LocalDateTime.of(2025, 12, 1, 10, 0, 0), 55.75, 37.61));
+            em.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    void fetchOverview_MergesTypesByDeviceAndInterval() {
+        List<DeviceOverview> overviews;
+        try (AllTypesAggregator aggregator = new AllTypesAggregator(new AggregatorService(emf))) {
+            overviews = aggregator.fetchOverview(START, END, TimeInterval.HOUR, null);
+        }
+
+        assertEquals(3, overviews.size());
+        assertEquals("Car", overviews.get(0).getDeviceName());
+        assertArrayEquals(new Double[]{55.75, 37.61}, overviews.get(0).getValues(SensorType.LOCATION));
+        assertNull(overviews.get(0).getValues(SensorType.LIGHT));
+
+        DeviceOverview homeEleven = overviews.get(1);
+        assertEquals("Home", homeEleven.getDeviceName());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 11, 0, 0), homeEleven.getIntervalStart());
+        assertEquals(300.0, homeEleven.getValues(SensorType.LIGHT)[0], 0.001);
+        assertNull(homeEleven.getValues(SensorType.BAROMETER));
+
+        DeviceOverview homeTen = overviews.get(2);
+        assertEquals(LocalDateTime.of(2025, 12, 1, 10, 0, 0), homeTen.getIntervalStart());
+        assertEquals(100.0, homeTen.getValues(SensorType.LIGHT)[0], 0.001);
+        assertEquals(1013.0, homeTen.getValues(SensorType.BAROMETER)[0], 0.001);
+    }
+
+    @Test
+    void fetchOverview_FilterByDevice() {
+        try (AllTypesAggregator aggregator = new AllTypesAggregator(new AggregatorService(emf))) {
+            List<DeviceOverview> overviews = aggregator.fetchOverview(START, END, TimeInterval.DAY, "Home");
+
+            assertEquals(1, overviews.size());
+            assertNotNull(overviews.get(0).getValues(SensorType.LIGHT));
+            assertNotNull(overviews.get(0).getValues(SensorType.BAROMETER));
+        }
+    }
+
+    @Test
+    void printOverview_PrintsColumnsOfAllTypes() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        AggregatorService service = new AggregatorService(emf, new PrintStream(outputStream),
+                new ByteArrayInputStream("\n\n".getBytes()));
+        try (AllTypesAggregator aggregator = new AllTypesAggregator(service)) {
+            service.printOverview(aggregator.fetchOverview(START, END, TimeInterval.DAY, null));
+        }
+
+        String output = outputStream.toString();
+        assertTrue(output.contains("AIR_PRESSURE"));
+        assertTrue(output.contains("LONGITUDE"));
+        assertTrue(output.contains("1013.00"));
+    }
+}
@@ -0,0 +1,85 @@
+package ru.teamscore.sensors.aggregator;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GapFillerTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 12, 1, 10, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2025, 12, 1, 15, 30, 0);
+
+    @Test
+    void empty_EmitsEveryBucketPerDevice() {
+        List<AggregatedResult> results = fill(FillMode.EMPTY,
+                result("A", 13, 30.0), result("A", 11, 10.0), result("B", 12, 5.0));
+
+        assertEquals(12, results.size());
+        assertBuckets(results.subList(0, 6), "A", 15, 14, 13, 12, 11, 10);
+        assertBuckets(results.subList(6, 12), "B", 15, 14, 13, 12, 11, 10);
+        assertFalse(results.get(2).isFilled());
+        assertEquals(30.0, results.get(2).getValue());
+        assertTrue(results.get(3).isFilled());
+        assertNull(results.get(3).getValue());
+        assertNull(results.get(0).getValue());
+        assertNull(results.get(5).getValue());
+    }
+
+    @Test
+    void previous_CarriesLastValueForward() {
+        List<AggregatedResult> results = fill(FillMode.PREVIOUS, result("A", 13, 30.0), result("A", 11, 10.0));
+
+        assertBuckets(results, "A", 15, 14, 13, 12, 11, 10);
+        assertEquals(30.0, results.get(0).getValue());
+        assertEquals(30.0, results.get(1).getValue());
+        assertEquals(10.0, results.get(3).getValue());
+        assertNull(results.get(5).getValue());
+    }
+
+    @Test
+    void linear_InterpolatesBetweenNeighbours() {
+        List<AggregatedResult> results = fill(FillMode.LINEAR,
+                new AggregatedResult("A", at(14), 40.0, null), new AggregatedResult("A", at(11), 10.0, 1.0));
+
+        assertBuckets(results, "A", 15, 14, 13, 12, 11, 10);
+        assertEquals(30.0, results.get(2).getValues()[0], 1e-9);
+        assertEquals(20.0, results.get(3).getValues()[0], 1e-9);
+        assertNull(results.get(2).getValues()[1]);
+        assertNull(results.get(0).getValue());
+        assertNull(results.get(5).getValue());
+    }
+
+    @Test
+    void noData_EmitsNothing() {
+        assertTrue(fill(FillMode.EMPTY).isEmpty());
+    }
+
+    private List<AggregatedResult> fill(FillMode mode, AggregatedResult... input) {
+        List<AggregatedResult> results = new ArrayList<>();
+        GapFiller filler = new GapFiller(START, END, TimeInterval.HOUR, mode, results::add);
+        for (AggregatedResult result : input) {
+            filler.accept(result);
+        }
+        filler.finish();
+        return results;
+    }
+
+    private static void assertBuckets(List<AggregatedResult> results, String device, int... hours) {
+        assertEquals(hours.length, results.size());
+        for (int i = 0; i < hours.length; i++) {
+            assertEquals(device, results.get(i).getDeviceName());
+            assertEquals(at(hours[i]), results.get(i).getIntervalStart());
+        }
+    }
+
+    private static AggregatedResult result(String device, int hour, double value) {
+        return new AggregatedResult(device, at(hour), value);
+    }
+
+    private static LocalDateTime at(int hour) {
+        return LocalDateTime.of(2025, 12, 1, hour, 0, 0);
+    }
+}
@@ -0,0 +1,140 @@
+package ru.teamscore.sensors.aggregator;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.metric.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GridAggregatorTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2025, 12, 1, 23, 59, 59);
+
+    private static EntityManagerFactory emf;
+    private static final UUID TRACKER = UUID.randomUUID();
+    private static final UUID OTHER_TRACKER = UUID.randomUUID();
+    private ByteArrayOutputStream outputStream;
+    private AggregatorService aggregatorService;
+    private GridAggregator gridAggregator;
+
+    @BeforeAll
+    static void setUpClass() {
+        emf = new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .addAnnotatedClass(SensorDevice.class)
+                .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(LightMetric.class)
+                .addAnnotatedClass(BarometerMetric.class)
+                .addAnnotatedClass(LocationMetric.class)
+                .addAnnotatedClass(AccelerometerMetric.class)
+                .buildSessionFactory();
+
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new SensorDevice(TRACKER, "Tracker", SensorType.LOCATION, LocalDateTime.now()));
+            em.persist(new SensorDevice(OTHER_TRACKER, "Other", SensorType.LOCATION, LocalDateTime.now()));
+            // две точки в ячейке [55.75; 55.76) x [37.61; 37.62), одна — в соседней по долготе
+            em.persist(new LocationMetric(TRACKER, LocalDateTime.of(2025, 12, 1, 10, 5, 0), 55.751, 37.611));
+            em.persist(new LocationMetric(TRACKER, LocalDateTime.of(2025, 12, 1, 10, 10, 0), 55.759, 37.619));
+            em.persist(new LocationMetric(OTHER_TRACKER, LocalDateTime.of(2025, 12, 1, 10, 20, 0), 55.755, 37.625));
+            em.persist(new LocationMetric(TRACKER, LocalDateTime.of(2025, 12, 1, 11, 0, 0), 59.93, 30.33));
+            em.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        outputStream = new ByteArrayOutputStream();
+        aggregatorService = new AggregatorService(emf, new PrintStream(outputStream),
+                new ByteArrayInputStream("\n\n\n".getBytes()));
+        gridAggregator = new GridAggregator(aggregatorService);
+    }
+
+    @Test
+    void fetchGrid_CountsAndCentroidsPerCell() {
+        List<GridCellResult> cells = gridAggregator.fetchGrid(START, END, TimeInterval.HOUR, 0.01, null, null);
+
+        assertEquals(3, cells.size());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 11, 0, 0), cells.get(0).getIntervalStart());
+
+        GridCellResult first = cells.get(1);
+        assertEquals(LocalDateTime.of(2025, 12, 1, 10, 0, 0), first.getIntervalStart());
+        assertEquals(55.75, first.getCellLatitude(), 1e-9);
+        assertEquals(37.61, first.getCellLongitude(), 1e-9);
+        assertEquals(2, first.getCount());
+        assertEquals(55.755, first.getCentroidLatitude(), 1e-9);
+        assertEquals(37.615, first.getCentroidLongitude(), 1e-9);
+
+        assertEquals(37.62, cells.get(2).getCellLongitude(), 1e-9);
+        assertEquals(1, cells.get(2).getCount());
+    }
+
+    @Test
+    void fetchGrid_CoarserCells_MergeNeighbours() {
+        List<GridCellResult> cells = gridAggregator.fetchGrid(START, END, TimeInterval.DAY, 0.1, null, null);
+
+        assertEquals(2, cells.size());
+        GridCellResult moscow = cells.get(0);
+        assertEquals(55.7, moscow.getCellLatitude(), 1e-9);
+        assertEquals(37.6, moscow.getCellLongitude(), 1e-9);
+        assertEquals(0.1, moscow.getCellDegrees(), 1e-9);
+        assertEquals(3, moscow.getCount());
+    }
+
+    @Test
+    void fetchGrid_BoundingBox_ExcludesPointsOutside() {
+        List<GridCellResult> cells = gridAggregator.fetchGrid(START, END, TimeInterval.DAY, 0.01,
+                new BoundingBox(55.75, 37.61, 55.756, 37.63), null);
+
+        assertEquals(2, cells.size());
+        assertEquals(1, cells.get(0).getCount());
+        assertEquals(55.751, cells.get(0).getCentroidLatitude(), 1e-9);
+        assertEquals(37.62, cells.get(1).getCellLongitude(), 1e-9);
+    }
+
+    @Test
+    void fetchGrid_FilterByDevice() {
+        List<GridCellResult> cells = gridAggregator.fetchGrid(START, END, TimeInterval.DAY, 0.01, null, "Other");
+
+        assertEquals(1, cells.size());
+        assertEquals(55.755, cells.get(0).getCentroidLatitude(), 1e-9);
+    }
+
+    @Test
+    void cellsPerSide_RejectsSizesNotMultipleOfBaseCell() {
+        assertEquals(10, GridAggregator.cellsPerSide(0.1));
+        assertThrows(IllegalArgumentException.class, () -> GridAggregator.cellsPerSide(0.015));
+        assertThrows(IllegalArgumentException.class, () -> GridAggregator.cellsPerSide(0));
+    }
+
+    @Test
+    void aggregateGrid_PrintsHeatmapTable() {
+        aggregatorService.aggregateGrid(START, END, TimeInterval.DAY, 0.01, null, null);
+
+        String output = outputStream.toString();
+        assertTrue(output.contains("CENTROID_LAT"));
+        assertTrue(output.contains("55.75"));
+        assertTrue(output.contains("59.93"));
+    }
+}
@@ -0,0 +1,124 @@
+package ru.teamscore.sensors.aggregator;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.metric.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelAggregatorTest {
+
+    private static EntityManagerFactory emf;
+    private AggregatorService aggregatorService;
+
+    @BeforeAll
+    static void setUpClass() {
+        emf = new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .addAnnotatedClass(SensorDevice.class)
+                .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(LightMetric.class)
+                .addAnnotatedClass(BarometerMetric.class)
+                .addAnnotatedClass(LocationMetric.class)
+                .addAnnotatedClass(AccelerometerMetric.class)
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        aggregatorService = new AggregatorService(emf);
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM LightMetric").executeUpdate();
+            em.createQuery("DELETE FROM SensorDevice").executeUpdate();
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    void splitRange_BoundariesAlignedToInterval() {
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 10, 30, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 2, 10, 30, 0);
+
+        List<LocalDateTime> boundaries = ParallelAggregator.splitRange(start, end, TimeInterval.HOUR, 4);
+
+        assertEquals(start, boundaries.get(0));
+        assertEquals(end, boundaries.get(boundaries.size() - 1));
+        for (int i = 1; i < boundaries.size() - 1; i++) {
+            assertEquals(0, boundaries.get(i).getMinute(), "Inner boundary must be aligned: " + boundaries.get(i));
+            assertTrue(boundaries.get(i).isAfter(boundaries.get(i - 1)));
+        }
+        assertTrue(boundaries.size() <= 6);
+    }
+
+    @Test
+    void splitRange_ShortRange_SingleSlice() {
+        LocalDateTime start = LocalDateTime.of(2025, 12, 1, 10, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 12, 1, 10, 0, 30);
+
+        assertEquals(List.of(start, end), ParallelAggregator.splitRange(start, end, TimeInterval.MINUTE, 8));
+    }
+
+    @Test
+    void fetchAggregatedData_SameResultAsSequential() {
+        UUID sensor1 = UUID.randomUUID();
+        UUID sensor2 = UUID.randomUUID();
+        createDevice(sensor1, "Alpha");
+        createDevice(sensor2, "Beta");
+        LocalDateTime base = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+        for (int hour = 0; hour < 48; hour += 5) {
+            createLightMetric(sensor1, base.plusHours(hour).plusMinutes(10), hour);
+            createLightMetric(sensor2, base.plusHours(hour).plusMinutes(40), 100 + hour);
+        }
+
+        LocalDateTime start = base.plusMinutes(30);
+        LocalDateTime end = base.plusDays(2);
+        List<AggregatedResult> sequential = aggregatorService.fetchAggregatedData(
+                SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+
+        List<AggregatedResult> parallel;
+        try (ParallelAggregator aggregator = new ParallelAggregator(aggregatorService, 3)) {
+            parallel = aggregator.fetchAggregatedData(SensorType.LIGHT, start, end, TimeInterval.HOUR, null);
+        }
+
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).getDeviceName(), parallel.get(i).getDeviceName());
+            assertEquals(sequential.get(i).getIntervalStart(), parallel.get(i).getIntervalStart());
+            assertEquals(sequential.get(i).getValue(), parallel.get(i).getValue(), 0.001);
+        }
+    }
+
+    private void createDevice(UUID sensorId, String deviceName) {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new SensorDevice(sensorId, deviceName, SensorType.LIGHT, LocalDateTime.now()));
+            em.getTransaction().commit();
+        }
+    }
+
+    private void createLightMetric(UUID sensorId, LocalDateTime measuredAt, int lightValue) {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new LightMetric(sensorId, measuredAt, lightValue));
+            em.getTransaction().commit();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.teamscore.sensors.aggregator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultExporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void csv_WritesHeaderAndRows() throws IOException {
+        Path file = tempDir.resolve("result.csv");
+        try (ResultExporter exporter = ResultExporter.open(ExportFormat.CSV, file, new String[]{"LATITUDE", "LONGITUDE"})) {
+            exporter.accept(new AggregatedResult("Home, \"main\"", LocalDateTime.of(2025, 12, 1, 10, 0, 0), 55.75, 37.5));
+            exporter.accept(new AggregatedResult("Office", LocalDateTime.of(2025, 12, 1, 9, 0, 0), 55.0, null));
+            assertEquals(2, exporter.getRowCount());
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(List.of(
+                "DEVICE,DATE,LATITUDE,LONGITUDE",
+                "\"Home, \"\"main\"\"\",2025-12-01 10:00:00,55.75,37.5",
+                "Office,2025-12-01 09:00:00,55.0,"), lines);
+    }
+
+    @Test
+    void columnar_RoundTripAcrossBlocks() throws IOException {
+        Path file = tempDir.resolve("result.bin");
+        int rows = ColumnarResultExporter.BLOCK_ROWS * 2 + 17;
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0, 0);
+        try (ResultExporter exporter = ResultExporter.open(ExportFormat.COLUMNAR, file, new String[]{"X", "Y", "Z"})) {
+            for (int i = 0; i < rows; i++) {
+                exporter.accept(new AggregatedResult("Device-" + (i % 3), start.plusMinutes(i),
+                        (double) i, i % 5 == 0 ? null : -i / 2.0, 0.125));
+            }
+        }
+
+        ColumnarResultReader reader = ColumnarResultReader.read(file);
+        assertArrayEquals(new String[]{"X", "Y", "Z"}, reader.getValueColumns());
+        List<AggregatedResult> results = reader.getResults();
+        assertEquals(rows, results.size());
+        for (int i = 0; i < rows; i++) {
+            AggregatedResult result = results.get(i);
+            assertEquals("Device-" + (i % 3), result.getDeviceName());
+            assertEquals(start.plusMinutes(i), result.getIntervalStart());
+            assertEquals(i, result.getValues()[0], 0.0);
+            if (i % 5 == 0) {
+                assertNull(result.getValues()[1]);
+            } else {
+                assertEquals(-i / 2.0, result.getValues()[1], 0.0);
+            }
+            assertEquals(0.125, result.getValues()[2], 0.0);
+        }
+    }
+
+    @Test
+    void columnar_EmptyExport_ReadsNoRows() throws IOException {
+        Path file = tempDir.resolve("empty.bin");
+        try (ResultExporter ignored = ResultExporter.open(ExportFormat.COLUMNAR, file, new String[]{"LIGHT"})) {
+            // нет строк
+        }
+
+        assertTrue(ColumnarResultReader.read(file).getResults().isEmpty());
+    }
+
+    @Test
+    void columnar_NotAnExportFile_ThrowsException() throws IOException {
+        Path file = tempDir.resolve("result.csv");
+        Files.writeString(file, "DEVICE,DATE,LIGHT\n");
+
+        assertThrows(IOException.class, () -> ColumnarResultReader.read(file));
+    }
+}
@@ -0,0 +1,64 @@
+package ru.teamscore.sensors.aggregator;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeIntervalTest {
+
+    @Test
+    void parse_NamedAndArbitraryWidths() {
+        assertSame(TimeInterval.HOUR, TimeInterval.parse("hour"));
+        assertEquals(10, TimeInterval.parse("10s").getSeconds());
+        assertEquals(900, TimeInterval.parse("15m").getSeconds());
+        assertEquals(21600, TimeInterval.parse("6h").getSeconds());
+        assertEquals(TimeInterval.DAY, TimeInterval.parse("1d"));
+    }
+
+    @Test
+    void parse_InvalidValue_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> TimeInterval.parse("15x"));
+        assertThrows(IllegalArgumentException.class, () -> TimeInterval.parse("0m"));
+        assertThrows(IllegalArgumentException.class, () -> TimeInterval.parse("MONTH"));
+        assertThrows(IllegalArgumentException.class, () -> TimeInterval.parse("99999999999999w"));
+        assertThrows(IllegalArgumentException.class, () -> TimeInterval.parse("99999999999999999999s"));
+    }
+
+    @Test
+    void truncate_AlignedToCalendarBoundaries() {
+        LocalDateTime time = LocalDateTime.of(2025, 12, 3, 10, 37, 42);
+
+        assertEquals(LocalDateTime.of(2025, 12, 3, 10, 37, 0), TimeInterval.MINUTE.truncate(time));
+        assertEquals(LocalDateTime.of(2025, 12, 3, 10, 30, 0), TimeInterval.parse("15m").truncate(time));
+        assertEquals(LocalDateTime.of(2025, 12, 3, 6, 0, 0), TimeInterval.parse("6h").truncate(time));
+        assertEquals(LocalDateTime.of(2025, 12, 3, 0, 0, 0), TimeInterval.DAY.truncate(time));
+    }
+
+    @Test
+    void truncate_WeekStartsOnMonday() {
+        LocalDateTime weekStart = TimeInterval.WEEK.truncate(LocalDateTime.of(2025, 12, 7, 23, 0, 0));
+
+        assertEquals(DayOfWeek.MONDAY, weekStart.getDayOfWeek());
+        assertEquals(LocalDateTime.of(2025, 12, 1, 0, 0, 0), weekStart);
+    }
+
+    @Test
+    void truncate_BeforeOrigin_RoundsDown() {
+        TimeInterval interval = TimeInterval.parse("15m").withOrigin(LocalDateTime.of(2025, 12, 1, 10, 5, 0));
+
+        assertEquals(-1, interval.bucketIndex(LocalDateTime.of(2025, 12, 1, 10, 0, 0)));
+        assertEquals(LocalDateTime.of(2025, 12, 1, 9, 50, 0), interval.truncate(LocalDateTime.of(2025, 12, 1, 10, 0, 0)));
+        assertEquals(LocalDateTime.of(2025, 12, 1, 10, 20, 0), interval.truncate(LocalDateTime.of(2025, 12, 1, 10, 20, 0)));
+    }
+
+    @Test
+    void ceil_ReturnsNextBoundaryUnlessAligned() {
+        TimeInterval interval = TimeInterval.parse("5m");
+
+        assertEquals(LocalDateTime.of(2025, 12, 1, 10, 5, 0), interval.ceil(LocalDateTime.of(2025, 12, 1, 10, 5, 0)));
+        assertEquals(LocalDateTime.of(2025, 12, 1, 10, 10, 0), interval.ceil(LocalDateTime.of(2025, 12, 1, 10, 5, 1)));
+    }
+}
@@ -0,0 +1,81 @@
+package ru.teamscore.sensors.aggregator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueStatisticsTest {
+
+    @Test
+    void add_ComputesBasicStatistics() {
+        ValueStatistics statistics = new ValueStatistics();
+        for (double value : new double[]{2, 4, 4, 4, 5, 5, 7, 9}) {
+            statistics.add(value);
+        }
+
+        assertEquals(8, statistics.getCount());
+        assertEquals(2.0, statistics.getMin());
+        assertEquals(9.0, statistics.getMax());
+        assertEquals(5.0, statistics.getMean(), 1e-9);
+        assertEquals(2.138, statistics.getStdDev(), 0.001);
+    }
+
+    @Test
+    void add_NaNSkipped() {
+        ValueStatistics statistics = new ValueStatistics();
+        statistics.add(Double.NaN);
+
+        assertEquals(0, statistics.getCount());
+        assertNull(statistics.getMean());
+        assertNull(statistics.getPercentile(50));
+    }
+
+    @Test
+    void merge_EqualsSinglePass() {
+        Random random = new Random(42);
+        ValueStatistics all = new ValueStatistics();
+        ValueStatistics left = new ValueStatistics();
+        ValueStatistics right = new ValueStatistics();
+        for (int i = 0; i < 10_000; i++) {
+            double value = -10 + random.nextDouble() * 20;
+            all.add(value);
+            (i % 3 == 0 ? left : right).add(value);
+        }
+
+        left.merge(right);
+
+        assertEquals(all.getCount(), left.getCount());
+        assertEquals(all.getMin(), left.getMin());
+        assertEquals(all.getMax(), left.getMax());
+        assertEquals(all.getMean(), left.getMean(), 1e-9);
+        assertEquals(all.getStdDev(), left.getStdDev(), 1e-9);
+        assertEquals(all.getPercentile(95), left.getPercentile(95), 1e-9);
+    }
+
+    @Test
+    void percentile_WithinRelativeAccuracy() {
+        ValueStatistics statistics = new ValueStatistics();
+        for (int i = 1; i <= 1000; i++) {
+            statistics.add(i);
+        }
+
+        assertEquals(500, statistics.getPercentile(50), 500 * 0.02);
+        assertEquals(950, statistics.getPercentile(95), 950 * 0.02);
+        assertEquals(990, statistics.getPercentile(99), 990 * 0.02);
+    }
+
+    @Test
+    void percentile_NegativeAndZeroValues() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = -50; i <= 50; i++) {
+            sketch.add(i);
+        }
+
+        assertEquals(101, sketch.getCount());
+        assertEquals(0.0, sketch.getQuantile(0.5), 1e-9);
+        assertEquals(-50, sketch.getQuantile(0), 1.0);
+        assertEquals(50, sketch.getQuantile(1), 1.0);
+    }
+}
@@ -0,0 +1,222 @@
+package ru.teamscore.sensors.backfill;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.BackfillChunk;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.metric.*;
+import ru.teamscore.sensors.consumer.ConsumerService;
+import ru.teamscore.sensors.consumer.MessageParser;
+import ru.teamscore.sensors.consumer.RawMessageArchiver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackfillServiceTest {
+    private static final LocalDateTime FROM = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2025, 12, 2, 0, 0, 0);
+
+    private static EntityManagerFactory emf;
+    private BackfillService backfillService;
+
+    @TempDir
+    Path archiveDirectory;
+
+    @BeforeAll
+    static void setUpClass() {
+        emf = new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .addAnnotatedClass(SensorDevice.class)
+                .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(BackfillChunk.class)
+                .addAnnotatedClass(LightMetric.class)
+                .addAnnotatedClass(BarometerMetric.class)
+                .addAnnotatedClass(LocationMetric.class)
+                .addAnnotatedClass(AccelerometerMetric.class)
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        backfillService = new BackfillService(emf, new MessageParser(), 2, Duration.ofHours(6), 2, 0);
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM LightMetric").executeUpdate();
+            em.createQuery("DELETE FROM BarometerMetric").executeUpdate();
+            em.createQuery("DELETE FROM LocationMetric").executeUpdate();
+            em.createQuery("DELETE FROM AccelerometerMetric").executeUpdate();
+            em.createQuery("DELETE FROM SensorDevice").executeUpdate();
+            em.createQuery("DELETE FROM BackfillChunk").executeUpdate();
+            em.createQuery("DELETE FROM RawSensorMessage").executeUpdate();
+            em.createQuery("DELETE FROM ProcessingState").executeUpdate();
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    void run_RebuildsMetricsInRange() throws InterruptedException {
+        UUID sensorId = UUID.randomUUID();
+        for (int hour = 0; hour < 10; hour++) {
+            saveMessage(sensorId, FROM.plusHours(hour), "{\"light\": " + hour + "}");
+        }
+        saveMessage(sensorId, FROM.plusHours(10), "not json");
+        saveMessage(sensorId, TO.plusHours(1), "{\"light\": 99}");
+        persist(new LightMetric(sensorId, FROM.plusHours(1), 1000));
+        persist(new LightMetric(sensorId, TO.plusHours(2), 2000));
+
+        BackfillReport report = backfillService.run("fix", FROM, TO);
+
+        assertTrue(report.isComplete());
+        assertEquals(4, report.chunks());
+        assertEquals(10, report.processed());
+        assertEquals(1, report.skipped());
+        assertEquals(10, count("SELECT COUNT(m) FROM LightMetric m WHERE m.measuredAt < :to"));
+        assertEquals(0, count("SELECT COUNT(m) FROM LightMetric m WHERE m.lightValue = 1000"));
+        assertEquals(1, count("SELECT COUNT(m) FROM LightMetric m WHERE m.lightValue = 2000"));
+        assertEquals(1, count("SELECT COUNT(d) FROM SensorDevice d"));
+    }
+
+    @Test
+    void run_SameJob_ResumesOnlyUnfinishedChunks() throws InterruptedException {
+        UUID sensorId = UUID.randomUUID();
+        for (int i = 0; i < 6; i++) {
+            saveMessage(sensorId, FROM.plusHours(i * 4L), "{\"light\": " + i + "}");
+        }
+        backfillService.run("resume", FROM, TO);
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.createQuery("UPDATE BackfillChunk c SET c.done = false WHERE c.sliceStart = "
+                    + "(SELECT MIN(c2.sliceStart) FROM BackfillChunk c2)").executeUpdate();
+            em.createQuery("DELETE FROM LightMetric m WHERE m.lightValue < 1").executeUpdate();
+            em.getTransaction().commit();
+        }
+
+        BackfillReport report = backfillService.run("resume", FROM, TO);
+
+        assertTrue(report.isComplete());
+        assertEquals(2, report.processed());
+        assertEquals(6, count("SELECT COUNT(m) FROM LightMetric m WHERE m.measuredAt < :to"));
+    }
+
+    @Test
+    void run_SameJobDifferentRange_Throws() throws InterruptedException {
+        saveMessage(UUID.randomUUID(), FROM, "{\"light\": 1}");
+        backfillService.run("range", FROM, TO);
+
+        assertThrows(IllegalStateException.class, () -> backfillService.run("range", FROM, TO.plusDays(1)));
+    }
+
+    @Test
+    void run_SliceWithoutRawMessages_KeepsMetrics() throws InterruptedException {
+        UUID sensorId = UUID.randomUUID();
+        saveMessage(sensorId, FROM.plusHours(1), "{\"light\": 1}");
+        persist(new LightMetric(sensorId, FROM.plusHours(7), 1000));
+
+        BackfillReport report = backfillService.run("gap", FROM, TO);
+
+        assertTrue(report.isComplete());
+        assertEquals(1, count("SELECT COUNT(m) FROM LightMetric m WHERE m.lightValue = 1000"));
+        assertEquals(2, count("SELECT COUNT(m) FROM LightMetric m WHERE m.measuredAt < :to"));
+    }
+
+    @Test
+    void run_MetricWithoutRawMessage_SurvivesRebuiltSlice() throws InterruptedException {
+        UUID sensorId = UUID.randomUUID();
+        saveMessage(sensorId, FROM.plusHours(1), "{\"light\": 1}");
+        persist(new LightMetric(sensorId, FROM.plusHours(1), 1000));
+        persist(new LightMetric(sensorId, FROM.plusHours(2), 2000));
+        persist(new LightMetric(UUID.randomUUID(), FROM.plusHours(1), 3000));
+
+        BackfillReport report = backfillService.run("partial", FROM, TO);
+
+        assertTrue(report.isComplete());
+        assertEquals(1, report.processed());
+        assertEquals(0, count("SELECT COUNT(m) FROM LightMetric m WHERE m.lightValue = 1000"));
+        assertEquals(1, count("SELECT COUNT(m) FROM LightMetric m WHERE m.lightValue = 2000"));
+        assertEquals(1, count("SELECT COUNT(m) FROM LightMetric m WHERE m.lightValue = 3000"));
+        assertEquals(3, count("SELECT COUNT(m) FROM LightMetric m WHERE m.measuredAt < :to"));
+    }
+
+    @Test
+    void run_WithoutArchive_StartsAtArchiverCutoff() throws InterruptedException {
+        UUID sensorId = UUID.randomUUID();
+        saveMessage(sensorId, FROM.plusHours(13), "{\"light\": 13}");
+        persist(new LightMetric(sensorId, FROM.plusHours(1), 1000));
+        persist(new ProcessingState(RawMessageArchiver.COMPONENT_NAME, FROM.plusHours(12)));
+
+        BackfillReport report = backfillService.run("clamped", FROM, TO);
+
+        assertTrue(report.isComplete());
+        assertEquals(2, report.chunks());
+        assertEquals(1, report.processed());
+        assertEquals(1, count("SELECT COUNT(m) FROM LightMetric m WHERE m.lightValue = 1000"));
+    }
+
+    @Test
+    void run_WithArchive_RebuildsArchivedMessages() throws InterruptedException, IOException {
+        UUID sensorId = UUID.randomUUID();
+        for (int hour = 0; hour < 4; hour++) {
+            saveMessage(sensorId, FROM.plusHours(hour), FROM.plusHours(hour), "{\"light\": " + hour + "}");
+        }
+        saveMessage(sensorId, FROM.plusHours(13), "{\"light\": 13}");
+        persist(new ProcessingState(ConsumerService.COMPONENT_NAME, FROM.plusHours(12)));
+        assertEquals(4, new RawMessageArchiver(emf, archiveDirectory).archive(FROM.plusHours(12)));
+        persist(new LightMetric(sensorId, FROM.plusHours(1), 1000));
+
+        BackfillReport report = new BackfillService(emf, new MessageParser(), 2, Duration.ofHours(6), 2, 0,
+                archiveDirectory).run("archived", FROM, TO);
+
+        assertTrue(report.isComplete());
+        assertEquals(4, report.chunks());
+        assertEquals(5, report.processed());
+        assertEquals(0, count("SELECT COUNT(m) FROM LightMetric m WHERE m.lightValue = 1000"));
+        assertEquals(5, count("SELECT COUNT(m) FROM LightMetric m WHERE m.measuredAt < :to"));
+    }
+
+    private void saveMessage(UUID sensorId, LocalDateTime measuredAt, String json) {
+        persist(new RawSensorMessage(sensorId, SensorType.LIGHT, "Device", measuredAt, json));
+    }
+
+    private void saveMessage(UUID sensorId, LocalDateTime measuredAt, LocalDateTime savedAt, String json) {
+        RawSensorMessage message = new RawSensorMessage(sensorId, SensorType.LIGHT, "Device", measuredAt, json);
+        message.setSavedAt(savedAt);
+        persist(message);
+    }
+
+    private void persist(Object entity) {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(entity);
+            em.getTransaction().commit();
+        }
+    }
+
+    private long count(String jpql) {
+        try (EntityManager em = emf.createEntityManager()) {
+            TypedQuery<Long> query = em.createQuery(jpql, Long.class);
+            if (jpql.contains(":to")) {
+                query.setParameter("to", TO);
+            }
+            return query.getSingleResult();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.teamscore.sensors.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeoGridTest {
+
+    @Test
+    void cellOf_NeighbouringLongitudesHaveConsecutiveCells() {
+        long cell = GeoGrid.cellOf(55.755, 37.615);
+
+        assertEquals(cell + 1, GeoGrid.cellOf(55.755, 37.625));
+        assertEquals(cell + GeoGrid.COLUMNS, GeoGrid.cellOf(55.765, 37.615));
+        assertEquals(14575, cell / GeoGrid.COLUMNS);
+        assertEquals(21761, cell % GeoGrid.COLUMNS);
+    }
+
+    @Test
+    void cellOf_CornerBoundsContainPoint() {
+        long cell = GeoGrid.cellOf(-33.8688, 151.2093);
+        double south = GeoGrid.rowLatitude(cell / GeoGrid.COLUMNS);
+        double west = GeoGrid.columnLongitude(cell % GeoGrid.COLUMNS);
+
+        assertTrue(south <= -33.8688 && -33.8688 < south + GeoGrid.CELL_DEGREES);
+        assertTrue(west <= 151.2093 && 151.2093 < west + GeoGrid.CELL_DEGREES);
+    }
+
+    @Test
+    void cellOf_EdgesClampedAndMissingCoordinates() {
+        assertEquals((long) GeoGrid.ROWS * GeoGrid.COLUMNS - 1, GeoGrid.cellOf(90.0, 180.0));
+        assertEquals(0L, GeoGrid.cellOf(-90.0, -180.0));
+        assertNull(GeoGrid.cellOf(null, 10.0));
+        assertNull(GeoGrid.cellOf(10.0, Double.NaN));
+    }
+}
@@ -0,0 +1,113 @@
+package ru.teamscore.sensors.common.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.metric.AccelerometerMetric;
+import ru.teamscore.sensors.common.entity.metric.LightMetric;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentMetricsStoreTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+
+    private RecentMetricsStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new RecentMetricsStore(Duration.ofHours(6), START);
+    }
+
+    @Test
+    void append_BeforeCoveredFrom_Ignored() {
+        store.append(SensorType.LIGHT, "Device", new LightMetric(UUID.randomUUID(), START.minusSeconds(1), 100));
+
+        assertEquals(0, store.size(SensorType.LIGHT));
+    }
+
+    @Test
+    void invalidateIfRewritten_MarkerAfterCreation_DropsRowsAndMovesCoverage() {
+        store.append(SensorType.LIGHT, "Device", new LightMetric(UUID.randomUUID(), START.plusMinutes(5), 100));
+
+        assertFalse(store.invalidateIfRewritten(null));
+        assertFalse(store.invalidateIfRewritten(START));
+        assertEquals(1, store.size(SensorType.LIGHT));
+
+        LocalDateTime marker = LocalDateTime.now().plusSeconds(1);
+        assertTrue(store.invalidateIfRewritten(marker));
+        assertFalse(store.invalidateIfRewritten(marker));
+
+        assertEquals(0, store.size(SensorType.LIGHT));
+        assertFalse(store.covers(SensorType.LIGHT, START));
+        assertFalse(store.scan(SensorType.LIGHT, START, START.plusHours(1), null, (device, epochMillis, row) -> fail()));
+    }
+
+    @Test
+    void scan_ReturnsOnlyRowsInRange() {
+        UUID sensorId = UUID.randomUUID();
+        store.append(SensorType.LIGHT, "Device", new LightMetric(sensorId, START.plusMinutes(5), 100));
+        store.append(SensorType.LIGHT, "Device", new LightMetric(sensorId, START.plusMinutes(10), 200));
+        store.append(SensorType.LIGHT, "Device", new LightMetric(sensorId, START.plusMinutes(15), 300));
+
+        List<Double> values = new ArrayList<>();
+        store.scan(SensorType.LIGHT, START.plusMinutes(5), START.plusMinutes(15), null,
+                (device, epochMillis, row) -> values.add(row[0]));
+
+        assertEquals(List.of(100.0, 200.0), values);
+    }
+
+    @Test
+    void scan_FilterByDeviceName() {
+        store.append(SensorType.ACCELEROMETER, "A",
+                new AccelerometerMetric(UUID.randomUUID(), START.plusMinutes(1), 1.0, 2.0, 3.0));
+        store.append(SensorType.ACCELEROMETER, "B",
+                new AccelerometerMetric(UUID.randomUUID(), START.plusMinutes(1), 4.0, 5.0, 6.0));
+
+        List<String> devices = new ArrayList<>();
+        store.scan(SensorType.ACCELEROMETER, START, START.plusHours(1), "B", (device, epochMillis, row) -> {
+            devices.add(device);
+            assertArrayEquals(new double[]{4.0, 5.0, 6.0}, row);
+        });
+
+        assertEquals(List.of("B"), devices);
+        store.scan(SensorType.ACCELEROMETER, START, START.plusHours(1), "Unknown",
+                (device, epochMillis, row) -> fail("Unknown device should not match"));
+    }
+
+    @Test
+    void append_BeyondWindow_EvictsOldChunksAndAdvancesCoverage() {
+        UUID sensorId = UUID.randomUUID();
+        for (int i = 0; i < RecentMetricsStore.CHUNK_SIZE; i++) {
+            store.append(SensorType.LIGHT, "Device", new LightMetric(sensorId, START.plusSeconds(i), i));
+        }
+        LocalDateTime later = START.plusDays(1);
+        store.append(SensorType.LIGHT, "Device", new LightMetric(sensorId, later, 1));
+
+        assertEquals(1, store.size(SensorType.LIGHT));
+        assertEquals(later.minusHours(6), store.getCoveredFrom(SensorType.LIGHT));
+        assertFalse(store.covers(SensorType.LIGHT, START));
+        assertTrue(store.covers(SensorType.LIGHT, later.minusHours(1)));
+        assertTrue(store.covers(SensorType.BAROMETER, START));
+    }
+
+    @Test
+    void scan_EvictedStart_ReturnsFalseWithoutVisiting() {
+        UUID sensorId = UUID.randomUUID();
+        for (int i = 0; i < RecentMetricsStore.CHUNK_SIZE; i++) {
+            store.append(SensorType.LIGHT, "Device", new LightMetric(sensorId, START.plusSeconds(i), i));
+        }
+        store.append(SensorType.LIGHT, "Device", new LightMetric(sensorId, START.plusDays(1), 1));
+
+        assertFalse(store.scan(SensorType.LIGHT, START, START.plusDays(2), null,
+                (device, epochMillis, row) -> fail("Evicted range should not be scanned")));
+        assertTrue(store.scan(SensorType.LIGHT, START.plusDays(1).minusHours(1), START.plusDays(2), null,
+                (device, epochMillis, row) -> {}));
+    }
+}
@@ -0,0 +1,60 @@
+package ru.teamscore.sensors.common.config;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.Test;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityManagerFactoryProviderTest {
+
+    @Test
+    void getPoolStats_HikariPool_ReportsActiveAndIdleConnections() {
+        try (EntityManagerFactory emf = new Configuration()
+                .addAnnotatedClass(ProcessingState.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:pooldb;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.provider_class",
+                        "org.hibernate.hikaricp.internal.HikariCPConnectionProvider")
+                .setProperty("hibernate.hikari.minimumIdle", "1")
+                .setProperty("hibernate.hikari.maximumPoolSize", "4")
+                .buildSessionFactory()) {
+
+            try (EntityManager em = emf.createEntityManager()) {
+                em.getTransaction().begin();
+                em.persist(new ProcessingState("pool-test", LocalDateTime.now()));
+                em.flush();
+
+                ConnectionPoolStats during = EntityManagerFactoryProvider.getPoolStats(emf);
+                assertNotNull(during);
+                assertEquals(1, during.active());
+                assertEquals(0, during.waiting());
+                assertTrue(during.total() <= 4);
+                em.getTransaction().commit();
+            }
+
+            ConnectionPoolStats after = EntityManagerFactoryProvider.getPoolStats(emf);
+            assertEquals(0, after.active());
+            assertTrue(after.idle() >= 1);
+        }
+    }
+
+    @Test
+    void getPoolStats_BuiltInConnections_ReturnsNull() {
+        try (EntityManagerFactory emf = new Configuration()
+                .addAnnotatedClass(ProcessingState.class)
+                .setProperty("hibernate.connection.provider_class",
+                        "org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl")
+                .buildSessionFactory()) {
+            try (EntityManager em = emf.createEntityManager()) {
+                em.unwrap(Session.class).doWork(connection -> assertFalse(connection.isClosed()));
+            }
+
+            assertNull(EntityManagerFactoryProvider.getPoolStats(emf));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package ru.teamscore.sensors.common.config;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ru.teamscore.sensors.common.GeoGrid;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.metric.*;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaManagerTest {
+
+    private static EntityManagerFactory emf;
+
+    @BeforeAll
+    static void setUpClass() {
+        emf = new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .addAnnotatedClass(SensorDevice.class)
+                .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(LightMetric.class)
+                .addAnnotatedClass(BarometerMetric.class)
+                .addAnnotatedClass(LocationMetric.class)
+                .addAnnotatedClass(AccelerometerMetric.class)
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    void createIndexes_CreatesTimeSeriesIndexesIdempotently() {
+        SchemaManager schemaManager = new SchemaManager(emf);
+
+        schemaManager.createIndexes();
+        schemaManager.createIndexes();
+
+        List<String> indexes = getIndexNames();
+        assertTrue(indexes.contains("IDX_METRIC_LIGHT_SENSOR_TIME"), indexes.toString());
+        assertTrue(indexes.contains("IDX_METRIC_ACCELEROMETER_SENSOR_TIME"), indexes.toString());
+        assertTrue(indexes.contains("IDX_RAW_SENSOR_MESSAGES_SAVED_AT"), indexes.toString());
+        assertTrue(indexes.contains("IDX_METRIC_LOCATION_GRID_TIME"), indexes.toString());
+    }
+
+    @Test
+    void backfillGridCells_FillsMissingCellsLikeIngest() {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new LocationMetric(UUID.randomUUID(), LocalDateTime.of(2025, 12, 1, 10, 0, 0), 55.7558, 37.6173));
+            em.persist(new LocationMetric(UUID.randomUUID(), LocalDateTime.of(2025, 12, 1, 10, 0, 0), -33.8688, 151.2093));
+            em.createNativeQuery("UPDATE metric_location SET grid_cell = NULL").executeUpdate();
+            em.getTransaction().commit();
+        }
+
+        SchemaManager schemaManager = new SchemaManager(emf);
+        assertEquals(2, schemaManager.backfillGridCells());
+        assertEquals(0, schemaManager.backfillGridCells());
+
+        try (EntityManager em = emf.createEntityManager()) {
+            for (LocationMetric metric : em.createQuery("SELECT m FROM LocationMetric m", LocationMetric.class).getResultList()) {
+                assertEquals(GeoGrid.cellOf(metric.getLatitude(), metric.getLongitude()), metric.getGridCell());
+            }
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM LocationMetric").executeUpdate();
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    void backfillMagnitudes_FillsMissingMagnitudes() {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new AccelerometerMetric(UUID.randomUUID(), LocalDateTime.of(2025, 12, 1, 10, 0, 0), 2.0, 3.0, 6.0));
+            em.createNativeQuery("UPDATE metric_accelerometer SET magnitude = NULL").executeUpdate();
+            em.getTransaction().commit();
+        }
+
+        SchemaManager schemaManager = new SchemaManager(emf);
+        assertEquals(1, schemaManager.backfillMagnitudes());
+        assertEquals(0, schemaManager.backfillMagnitudes());
+
+        try (EntityManager em = emf.createEntityManager()) {
+            AccelerometerMetric metric = em.createQuery("SELECT m FROM AccelerometerMetric m", AccelerometerMetric.class)
+                    .getSingleResult();
+            assertEquals(7.0, metric.getMagnitude(), 1e-9);
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM AccelerometerMetric").executeUpdate();
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    void migrate_SmallBatches_FillsAllRows() {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            for (int i = 0; i < 5; i++) {
+                em.persist(new AccelerometerMetric(UUID.randomUUID(), LocalDateTime.of(2025, 12, 1, 10, i, 0), 3.0, 4.0, 0.0));
+            }
+            em.createNativeQuery("UPDATE metric_accelerometer SET magnitude = NULL").executeUpdate();
+            em.getTransaction().commit();
+        }
+
+        new SchemaManager(emf).migrate(2);
+
+        try (EntityManager em = emf.createEntityManager()) {
+            List<AccelerometerMetric> metrics = em.createQuery("SELECT m FROM AccelerometerMetric m", AccelerometerMetric.class)
+                    .getResultList();
+            assertEquals(5, metrics.size());
+            metrics.forEach(metric -> assertEquals(5.0, metric.getMagnitude(), 1e-9));
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM AccelerometerMetric").executeUpdate();
+            em.getTransaction().commit();
+        }
+        assertTrue(getIndexNames().contains("IDX_METRIC_ACCELEROMETER_SENSOR_TIME"));
+    }
+
+    @Test
+    void enablePartitioning_H2_SkippedWithoutErrors() {
+        SchemaManager schemaManager = new SchemaManager(emf);
+
+        assertDoesNotThrow(() -> schemaManager.enablePartitioning(2));
+        assertTrue(schemaManager.listPartitions("metric_light").isEmpty());
+    }
+
+    @Test
+    void partitionName_ContainsYearAndMonth() {
+        assertEquals("metric_light_p202512", SchemaManager.partitionName("metric_light", YearMonth.of(2025, 12)));
+        assertEquals("metric_light_p202601", SchemaManager.partitionName("metric_light", YearMonth.of(2026, 1)));
+    }
+
+    @Test
+    void createPartitionedTableSql_RecreatesConstraintsOnPartitionedParent() {
+        Map<String, String> constraints = new LinkedHashMap<>();
+        constraints.put("fk_metric_light_sensor", "FOREIGN KEY (sensor_id) REFERENCES sensor_devices(sensor_id)");
+        constraints.put("chk_metric_light_value", "CHECK ((light_value >= 0))");
+
+        List<String> sql = SchemaManager.createPartitionedTableSql("metric_light", "metric_light_unpartitioned", constraints);
+
+        assertEquals(List.of(
+                "CREATE TABLE metric_light (LIKE metric_light_unpartitioned INCLUDING DEFAULTS INCLUDING IDENTITY) "
+                        + "PARTITION BY RANGE (measured_at)",
+                "ALTER TABLE metric_light ADD PRIMARY KEY (id, measured_at)",
+                "ALTER TABLE metric_light ADD CONSTRAINT \"fk_metric_light_sensor\" "
+                        + "FOREIGN KEY (sensor_id) REFERENCES sensor_devices(sensor_id)",
+                "ALTER TABLE metric_light ADD CONSTRAINT \"chk_metric_light_value\" CHECK ((light_value >= 0))"), sql);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> getIndexNames() {
+        try (EntityManager em = emf.createEntityManager()) {
+            return em.createNativeQuery("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES").getResultList();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.teamscore.sensors.common.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    @Test
+    void scrape_CounterAndGauge() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("test_messages_total", "Messages");
+        registry.gauge("test_lag_seconds", "Lag", () -> 1.5);
+        counter.add(41);
+        counter.increment();
+
+        assertEquals("""
+                # HELP test_messages_total Messages
+                # TYPE test_messages_total counter
+                test_messages_total 42
+                # HELP test_lag_seconds Lag
+                # TYPE test_lag_seconds gauge
+                test_lag_seconds 1.5
+                """, registry.scrape());
+    }
+
+    @Test
+    void scrape_HistogramBucketsAreCumulative() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram histogram = registry.histogram("test_duration_seconds", "Duration", 0.1, 1);
+        histogram.observe(0.05);
+        histogram.observe(0.1);
+        histogram.observe(0.5);
+        histogram.observe(3);
+
+        String output = registry.scrape();
+        assertTrue(output.contains("# TYPE test_duration_seconds histogram\n"), output);
+        assertTrue(output.contains("test_duration_seconds_bucket{le=\"0.1\"} 2\n"), output);
+        assertTrue(output.contains("test_duration_seconds_bucket{le=\"1\"} 3\n"), output);
+        assertTrue(output.contains("test_duration_seconds_bucket{le=\"+Inf\"} 4\n"), output);
+        assertTrue(output.contains("test_duration_seconds_sum 3.65\n"), output);
+        assertTrue(output.contains("test_duration_seconds_count 4\n"), output);
+    }
+
+    @Test
+    void counter_SameNameReturnsSameInstance() {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        assertSame(registry.counter("test_total", "A"), registry.counter("test_total", "A"));
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("test_total", "B", 1));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("bad name", "C"));
+    }
+
+    @Test
+    void counter_ConcurrentIncrementsAreNotLost() throws InterruptedException {
+        Counter counter = new MetricsRegistry().counter("test_concurrent_total", "Concurrent");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    counter.increment();
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(40_000, counter.get());
+    }
+}
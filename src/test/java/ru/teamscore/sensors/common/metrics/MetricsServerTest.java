@@ -0,0 +1,53 @@
+package ru.teamscore.sensors.common.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsServerTest {
+
+    @Test
+    void get_ServesPrometheusText() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_requests_total", "Requests").add(3);
+
+        try (MetricsServer server = new MetricsServer(registry, 0)) {
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = URI.create("http://" + server.getAddress().getAddress().getHostAddress() + ":"
+                    + server.getPort() + "/metrics");
+
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain; version=0.0.4"));
+            assertTrue(response.body().contains("test_requests_total 3\n"), response.body());
+
+            HttpResponse<String> post = client.send(HttpRequest.newBuilder(uri)
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(405, post.statusCode());
+        }
+    }
+
+    @Test
+    void create_DefaultsToLoopback() throws Exception {
+        try (MetricsServer server = new MetricsServer(new MetricsRegistry(), 0)) {
+            assertTrue(server.getAddress().getAddress().isLoopbackAddress());
+        }
+    }
+
+    @Test
+    void create_ExplicitAddress_BindsToIt() throws Exception {
+        InetAddress any = InetAddress.getByName("0.0.0.0");
+        try (MetricsServer server = new MetricsServer(new MetricsRegistry(), new InetSocketAddress(any, 0))) {
+            assertTrue(server.getAddress().getAddress().isAnyLocalAddress());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.teamscore.sensors.common.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimate_SmallCountsAreExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        List<UUID> sensors = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sensors.add(UUID.randomUUID());
+        }
+        for (int repeat = 0; repeat < 3; repeat++) {
+            sensors.forEach(sketch::add);
+        }
+
+        assertEquals(0, new HyperLogLog().estimate());
+        assertEquals(20, sketch.estimate());
+    }
+
+    @Test
+    void estimate_LargeCountWithinFivePercent() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 200_000; i++) {
+            sketch.add(UUID.randomUUID());
+        }
+
+        assertEquals(200_000, sketch.estimate(), 10_000);
+    }
+
+    @Test
+    void merge_EqualsSketchOfUnion() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 0; i < 5000; i++) {
+            UUID sensor = UUID.randomUUID();
+            (i % 2 == 0 ? left : right).add(sensor);
+            union.add(sensor);
+            if (i % 10 == 0) {
+                left.add(sensor);
+                right.add(sensor);
+            }
+        }
+
+        left.merge(right);
+
+        assertEquals(union.estimate(), left.estimate());
+        assertArrayEquals(union.toBytes(), left.toBytes());
+    }
+
+    @Test
+    void toBytes_SparseAndDenseRoundTrip() {
+        HyperLogLog sparse = new HyperLogLog();
+        sparse.add(UUID.randomUUID());
+        HyperLogLog dense = new HyperLogLog();
+        for (int i = 0; i < 50_000; i++) {
+            dense.add(UUID.randomUUID());
+        }
+
+        assertEquals(4, sparse.toBytes().length);
+        assertEquals(HyperLogLog.REGISTERS + 1, dense.toBytes().length);
+        assertEquals(sparse.estimate(), HyperLogLog.fromBytes(sparse.toBytes()).estimate());
+        assertArrayEquals(dense.toBytes(), HyperLogLog.fromBytes(dense.toBytes()).toBytes());
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{7, 1}));
+    }
+}
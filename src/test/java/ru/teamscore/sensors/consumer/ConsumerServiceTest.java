@@ -5,12 +5,18 @@ import jakarta.persistence.EntityManagerFactory;
 import org.hibernate.cfg.Configuration;
 import org.junit.jupiter.api.*;
 import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.cache.MetricsRewriteMarker;
 import ru.teamscore.sensors.common.entity.ProcessingState;
 import ru.teamscore.sensors.common.entity.RawSensorMessage;
 import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.SensorPresence;
 import ru.teamscore.sensors.common.entity.metric.*;
+import ru.teamscore.sensors.common.metrics.Counter;
+import ru.teamscore.sensors.common.metrics.MetricsRegistry;
+import ru.teamscore.sensors.common.sketch.HyperLogLog;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.UUID;
 
@@ -27,6 +33,7 @@ class ConsumerServiceTest {
                 .addAnnotatedClass(RawSensorMessage.class)
                 .addAnnotatedClass(SensorDevice.class)
                 .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(SensorPresence.class)
                 .addAnnotatedClass(LightMetric.class)
                 .addAnnotatedClass(BarometerMetric.class)
                 .addAnnotatedClass(LocationMetric.class)
@@ -57,6 +64,7 @@ class ConsumerServiceTest {
             em.createQuery("DELETE FROM SensorDevice").executeUpdate();
             em.createQuery("DELETE FROM ProcessingState").executeUpdate();
             em.createQuery("DELETE FROM RawSensorMessage").executeUpdate();
+            em.createQuery("DELETE FROM SensorPresence").executeUpdate();
             em.getTransaction().commit();
         }
     }
@@ -215,6 +223,79 @@ class ConsumerServiceTest {
         }
     }
 
+    @Test
+    void processBatch_LateMeasurement_MarksMetricsRewritten() {
+        LocalDateTime now = LocalDateTime.now();
+        setProcessingState(now.minusMinutes(3));
+        saveRawMessage(UUID.randomUUID(), SensorType.LIGHT, "OnTime", now.minusMinutes(3).minusSeconds(30),
+                now.minusMinutes(2), "{\"light\": 100}");
+
+        consumerService.processBatch();
+        assertNull(findState(MetricsRewriteMarker.COMPONENT_NAME));
+
+        saveRawMessage(UUID.randomUUID(), SensorType.LIGHT, "Late", now.minusHours(1),
+                now.minusMinutes(1), "{\"light\": 200}");
+
+        consumerService.processBatch();
+        assertNotNull(findState(MetricsRewriteMarker.COMPONENT_NAME));
+    }
+
+    @Test
+    void processBatch_AccelerometerMessages_MagnitudeAndJerkStored() {
+        UUID sensorId = UUID.randomUUID();
+        LocalDateTime measuredAt = LocalDateTime.now().minusMinutes(5);
+
+        saveRawMessage(sensorId, SensorType.ACCELEROMETER, "Accel", measuredAt, measuredAt.plusSeconds(1),
+                "{\"x\": 0, \"y\": 0, \"z\": 0}");
+        saveRawMessage(sensorId, SensorType.ACCELEROMETER, "Accel", measuredAt.plusSeconds(2), measuredAt.plusSeconds(3),
+                "{\"x\": 2, \"y\": 3, \"z\": 6}");
+
+        assertEquals(2, consumerService.processBatch());
+
+        try (EntityManager em = emf.createEntityManager()) {
+            List<AccelerometerMetric> metrics = em.createQuery(
+                    "SELECT m FROM AccelerometerMetric m ORDER BY m.measuredAt", AccelerometerMetric.class).getResultList();
+            assertEquals(0.0, metrics.get(0).getMagnitude(), 1e-9);
+            assertNull(metrics.get(0).getJerk());
+            assertEquals(7.0, metrics.get(1).getMagnitude(), 1e-9);
+            assertEquals(3.5, metrics.get(1).getJerk(), 1e-9);
+        }
+    }
+
+    @Test
+    void processBatch_RecordPresence_MergesMinuteSketches() {
+        ConsumerService service = new ConsumerService(emf, new MessageParser(), 100, 1000, null, true);
+        LocalDateTime minute = LocalDateTime.now().minusMinutes(10).withSecond(0).withNano(0);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        saveRawMessage(first, SensorType.LIGHT, "Home", minute.plusSeconds(5), minute.plusSeconds(6), "{\"light\": 1}");
+        saveRawMessage(second, SensorType.LIGHT, "Home", minute.plusSeconds(10), minute.plusSeconds(11), "{\"light\": 2}");
+        assertEquals(2, service.processBatch());
+        saveRawMessage(first, SensorType.LIGHT, "Home", minute.plusSeconds(30), minute.plusSeconds(31), "{\"light\": 3}");
+        saveRawMessage(UUID.randomUUID(), SensorType.LIGHT, "Home", minute.plusSeconds(40), minute.plusSeconds(41), "{\"light\": 4}");
+        assertEquals(2, service.processBatch());
+
+        try (EntityManager em = emf.createEntityManager()) {
+            SensorPresence presence = em.find(SensorPresence.class,
+                    new SensorPresence.Key(SensorType.LIGHT, "Home", minute));
+            assertNotNull(presence);
+            assertEquals(3, HyperLogLog.fromBytes(presence.getSketch()).estimate());
+        }
+    }
+
+    @Test
+    void processBatch_PresenceDisabledByDefault() {
+        saveRawMessage(UUID.randomUUID(), SensorType.LIGHT, "Home", LocalDateTime.now().minusMinutes(5),
+                LocalDateTime.now().minusMinutes(4), "{\"light\": 1}");
+
+        assertEquals(1, consumerService.processBatch());
+
+        try (EntityManager em = emf.createEntityManager()) {
+            assertEquals(0L, em.createQuery("SELECT COUNT(p) FROM SensorPresence p", Long.class).getSingleResult());
+        }
+    }
+
     @Test
     void processBatch_InvalidJson_TransactionRolledBack() {
         LocalDateTime now = LocalDateTime.now();
@@ -226,17 +307,64 @@ class ConsumerServiceTest {
 
         assertThrows(Exception.class, () -> consumerService.processBatch());
 
+        // метрика и устройство первого сообщения уже вставлены в БД, но откатываются вместе с пакетом
         try (EntityManager em = emf.createEntityManager()) {
             List<LightMetric> metrics = em.createQuery("SELECT m FROM LightMetric m", LightMetric.class)
                     .getResultList();
-            assertEquals(1, metrics.size());
+            assertEquals(0, metrics.size());
 
             List<SensorDevice> devices = em.createQuery("SELECT d FROM SensorDevice d", SensorDevice.class)
                     .getResultList();
-            assertEquals(1, devices.size());
+            assertEquals(0, devices.size());
         }
     }
 
+    @Test
+    void processBatch_InvalidJson_CountsParseFailure() {
+        LocalDateTime now = LocalDateTime.now();
+        saveRawMessage(UUID.randomUUID(), SensorType.LIGHT, "BadDevice", now.minusMinutes(3),
+                now.minusMinutes(2), "{\"invalid\": \"json\"}");
+        Counter parseFailures = MetricsRegistry.getDefault().counter("sensors_consumer_parse_failures_total", "");
+        long before = parseFailures.get();
+
+        assertThrows(Exception.class, () -> consumerService.processBatch());
+
+        assertEquals(before + 1, parseFailures.get());
+        assertTrue(MetricsRegistry.getDefault().scrape().contains("sensors_consumer_batch_seconds_count "));
+    }
+
+    @Test
+    void archiveMessages_PendingMessagesOfAnotherWriter_KeepsCheckpoint() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        setProcessingState(now.minusMinutes(3));
+        saveRawMessage(UUID.randomUUID(), SensorType.LIGHT, "TableProducer", now.minusMinutes(2),
+                now.minusMinutes(2), "{\"light\": 100}");
+        assertEquals(1, consumerService.getPendingCount());
+
+        RawSensorMessage archived = new RawSensorMessage(UUID.randomUUID(), SensorType.LIGHT, "Pipeline",
+                now.minusMinutes(1), "{\"light\": 200}");
+        archived.setSavedAt(now.minusMinutes(1));
+        assertThrows(IllegalStateException.class, () -> consumerService.archiveMessages(List.of(archived)));
+
+        assertEquals(now.minusMinutes(3), findState(ConsumerService.COMPONENT_NAME).getLastProcessedTime());
+        assertEquals(1, consumerService.processBatch());
+        assertEquals(0, consumerService.getPendingCount());
+    }
+
+    @Test
+    void archiveMessages_NoPendingMessages_MovesCheckpoint() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        setProcessingState(now.minusMinutes(3));
+        RawSensorMessage archived = new RawSensorMessage(UUID.randomUUID(), SensorType.LIGHT, "Pipeline",
+                now.minusMinutes(1), "{\"light\": 200}");
+        archived.setSavedAt(now.minusMinutes(1));
+
+        consumerService.archiveMessages(List.of(archived));
+
+        assertEquals(now.minusMinutes(1), findState(ConsumerService.COMPONENT_NAME).getLastProcessedTime());
+        assertEquals(0, consumerService.processBatch());
+    }
+
     private void saveRawMessage(UUID sensorId, SensorType sensorType, String deviceName,
                                  LocalDateTime measuredAt, LocalDateTime savedAt, String jsonValue) {
         try (EntityManager em = emf.createEntityManager()) {
@@ -248,6 +376,12 @@ class ConsumerServiceTest {
         }
     }
 
+    private ProcessingState findState(String componentName) {
+        try (EntityManager em = emf.createEntityManager()) {
+            return em.find(ProcessingState.class, componentName);
+        }
+    }
+
     private void setProcessingState(LocalDateTime lastProcessedTime) {
         try (EntityManager em = emf.createEntityManager()) {
             em.getTransaction().begin();
@@ -0,0 +1,67 @@
+package ru.teamscore.sensors.consumer;
+
+import org.junit.jupiter.api.Test;
+import ru.teamscore.sensors.common.entity.metric.AccelerometerMetric;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MotionTrackerTest {
+
+    private static final UUID SENSOR = UUID.randomUUID();
+    private static final LocalDateTime START = LocalDateTime.of(2025, 12, 1, 10, 0, 0);
+
+    @Test
+    void updateJerk_ComputedAgainstPreviousSample() {
+        MotionTracker tracker = new MotionTracker();
+        AccelerometerMetric first = new AccelerometerMetric(SENSOR, START, 0.0, 0.0, 9.8);
+        AccelerometerMetric second = new AccelerometerMetric(SENSOR, START.plusNanos(500_000_000), 3.0, 4.0, 9.8);
+
+        tracker.updateJerk(first);
+        tracker.updateJerk(second);
+
+        assertNull(first.getJerk());
+        assertEquals(10.0, second.getJerk(), 1e-9); // |(3, 4, 0)| / 0.5 с
+    }
+
+    @Test
+    void updateJerk_SensorsTrackedSeparately() {
+        MotionTracker tracker = new MotionTracker();
+        tracker.updateJerk(new AccelerometerMetric(SENSOR, START, 0.0, 0.0, 0.0));
+        AccelerometerMetric other = new AccelerometerMetric(UUID.randomUUID(), START.plusSeconds(1), 1.0, 1.0, 1.0);
+
+        tracker.updateJerk(other);
+
+        assertNull(other.getJerk());
+    }
+
+    @Test
+    void updateJerk_LongGapOrOutOfOrder_NotComputed() {
+        MotionTracker tracker = new MotionTracker();
+        tracker.updateJerk(new AccelerometerMetric(SENSOR, START, 0.0, 0.0, 0.0));
+        AccelerometerMetric late = new AccelerometerMetric(SENSOR, START.plusMinutes(5), 1.0, 0.0, 0.0);
+        AccelerometerMetric outOfOrder = new AccelerometerMetric(SENSOR, START.plusMinutes(1), 2.0, 0.0, 0.0);
+
+        tracker.updateJerk(late);
+        tracker.updateJerk(outOfOrder);
+
+        assertNull(late.getJerk());
+        assertNull(outOfOrder.getJerk());
+    }
+
+    @Test
+    void rollback_DiscardsSamplesOfFailedBatch() {
+        MotionTracker tracker = new MotionTracker();
+        tracker.updateJerk(new AccelerometerMetric(SENSOR, START, 0.0, 0.0, 0.0));
+        tracker.commit();
+        tracker.updateJerk(new AccelerometerMetric(SENSOR, START.plusSeconds(1), 5.0, 0.0, 0.0));
+        tracker.rollback();
+
+        AccelerometerMetric retried = new AccelerometerMetric(SENSOR, START.plusSeconds(1), 1.0, 0.0, 0.0);
+        tracker.updateJerk(retried);
+
+        assertEquals(1.0, retried.getJerk(), 1e-9);
+    }
+}
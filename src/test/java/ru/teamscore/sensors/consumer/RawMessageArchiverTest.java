@@ -0,0 +1,154 @@
+package ru.teamscore.sensors.consumer;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.metric.LightMetric;
+import ru.teamscore.sensors.common.entity.metric.SensorMetric;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawMessageArchiverTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+
+    private static EntityManagerFactory emf;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void setUpClass() {
+        emf = new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .addAnnotatedClass(ProcessingState.class)
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM ProcessingState").executeUpdate();
+            em.createQuery("DELETE FROM RawSensorMessage").executeUpdate();
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    void archive_MovesOnlyProcessedMessagesBeforeCutoff() throws IOException {
+        UUID sensorId = UUID.randomUUID();
+        for (int minute = 0; minute < 10; minute++) {
+            saveMessage(sensorId, DAY.plusMinutes(minute), DAY.plusMinutes(minute).plusSeconds(1), minute * 10);
+        }
+        setCheckpoint(DAY.plusMinutes(8));
+
+        RawMessageArchiver archiver = new RawMessageArchiver(emf, directory, 3, 2);
+        assertEquals(6, archiver.archive(DAY.plusMinutes(6)));
+        assertEquals(4, countMessages());
+
+        assertEquals(2, archiver.archive(DAY.plusDays(1)));
+        assertEquals(2, countMessages());
+        assertTrue(Files.isDirectory(directory.resolve("2025-12-01")));
+    }
+
+    @Test
+    void archive_WithoutCheckpoint_KeepsMessages() throws IOException {
+        saveMessage(UUID.randomUUID(), DAY, DAY, 1);
+
+        assertEquals(0, new RawMessageArchiver(emf, directory).archive(DAY.plusDays(1)));
+        assertEquals(1, countMessages());
+    }
+
+    @Test
+    void replay_ParsesArchivedRangeAcrossDays() throws IOException {
+        UUID sensorId = UUID.randomUUID();
+        for (int hour = 0; hour < 48; hour += 6) {
+            saveMessage(sensorId, DAY.plusHours(hour), DAY.plusHours(hour), hour);
+        }
+        setCheckpoint(DAY.plusDays(3));
+        new RawMessageArchiver(emf, directory, 100, 2).archive(DAY.plusDays(3));
+
+        List<SensorMetric> metrics = new ArrayList<>();
+        long parsed = new RawArchiveReader(directory)
+                .replay(DAY.plusHours(12), DAY.plusHours(30), new MessageParser(), metrics::add);
+
+        assertEquals(4, parsed);
+        assertEquals(List.of(12, 18, 24, 30), metrics.stream()
+                .map(metric -> ((LightMetric) metric).getLightValue()).toList());
+        assertEquals(sensorId, metrics.get(0).getSensorId());
+        assertEquals(DAY.plusHours(12), metrics.get(0).getMeasuredAt());
+    }
+
+    @Test
+    void read_SkipsBlocksOutsideRangeByIndex() throws IOException {
+        Path segment = directory.resolve("segment.seg");
+        try (RawSegmentWriter writer = new RawSegmentWriter(segment, 2)) {
+            for (int minute = 0; minute < 6; minute++) {
+                writer.append(archived(minute, DAY.plusMinutes(minute)));
+            }
+        }
+
+        List<RawSensorMessage> messages = new ArrayList<>();
+        int blocks = RawSegmentReader.read(segment, DAY.plusMinutes(2), DAY.plusMinutes(2), messages::add);
+
+        assertEquals(1, blocks);
+        assertEquals(1, messages.size());
+        assertEquals(DAY.plusMinutes(2), messages.get(0).getMeasuredAt());
+        assertEquals("{\"light\": 2}", messages.get(0).getJsonValue());
+    }
+
+    private RawSensorMessage archived(long id, LocalDateTime measuredAt) {
+        return new RawSensorMessage(UUID.randomUUID(), SensorType.LIGHT, "Device", measuredAt,
+                "{\"light\": " + id + "}") {
+            @Override
+            public Long getId() {
+                return id;
+            }
+        };
+    }
+
+    private void saveMessage(UUID sensorId, LocalDateTime measuredAt, LocalDateTime savedAt, int light) {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            RawSensorMessage message = new RawSensorMessage(sensorId, SensorType.LIGHT, "Device", measuredAt,
+                    "{\"light\": " + light + "}");
+            message.setSavedAt(savedAt);
+            em.persist(message);
+            em.getTransaction().commit();
+        }
+    }
+
+    private void setCheckpoint(LocalDateTime checkpoint) {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new ProcessingState(ConsumerService.COMPONENT_NAME, checkpoint));
+            em.getTransaction().commit();
+        }
+    }
+
+    private long countMessages() {
+        try (EntityManager em = emf.createEntityManager()) {
+            return em.createQuery("SELECT COUNT(m) FROM RawSensorMessage m", Long.class).getSingleResult();
+        }
+    }
+}
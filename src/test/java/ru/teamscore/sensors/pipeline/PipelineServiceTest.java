@@ -0,0 +1,186 @@
+package ru.teamscore.sensors.pipeline;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import ru.teamscore.sensors.aggregator.AggregatedResult;
+import ru.teamscore.sensors.aggregator.AggregatorService;
+import ru.teamscore.sensors.aggregator.TimeInterval;
+import ru.teamscore.sensors.common.SensorType;
+import ru.teamscore.sensors.common.cache.RecentMetricsStore;
+import ru.teamscore.sensors.common.entity.ProcessingState;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+import ru.teamscore.sensors.common.entity.SensorDevice;
+import ru.teamscore.sensors.common.entity.metric.*;
+import ru.teamscore.sensors.consumer.ConsumerService;
+import ru.teamscore.sensors.consumer.MessageParser;
+import ru.teamscore.sensors.producer.SensorDataGenerator;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineServiceTest {
+    private static final int MESSAGES = 50;
+
+    private static EntityManagerFactory emf;
+    private ConsumerService consumerService;
+    private BlockingQueue<RawSensorMessage> queue;
+
+    @BeforeAll
+    static void setUpClass() {
+        emf = new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .addAnnotatedClass(SensorDevice.class)
+                .addAnnotatedClass(ProcessingState.class)
+                .addAnnotatedClass(LightMetric.class)
+                .addAnnotatedClass(BarometerMetric.class)
+                .addAnnotatedClass(LocationMetric.class)
+                .addAnnotatedClass(AccelerometerMetric.class)
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        consumerService = new ConsumerService(emf);
+        queue = new ArrayBlockingQueue<>(MESSAGES);
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM LightMetric").executeUpdate();
+            em.createQuery("DELETE FROM BarometerMetric").executeUpdate();
+            em.createQuery("DELETE FROM LocationMetric").executeUpdate();
+            em.createQuery("DELETE FROM AccelerometerMetric").executeUpdate();
+            em.createQuery("DELETE FROM SensorDevice").executeUpdate();
+            em.createQuery("DELETE FROM ProcessingState").executeUpdate();
+            em.createQuery("DELETE FROM RawSensorMessage").executeUpdate();
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    void start_ProcessesQueueWithoutRawTable() throws InterruptedException {
+        fillQueue();
+
+        runUntilDrained(new PipelineService(consumerService, queue, 16, false));
+
+        assertEquals(MESSAGES, consumerService.getProcessedCount());
+        assertEquals(MESSAGES, countMetrics());
+        assertEquals(0, count("SELECT COUNT(m) FROM RawSensorMessage m"));
+        assertEquals(0, count("SELECT COUNT(s) FROM ProcessingState s"));
+    }
+
+    @Test
+    void start_ArchiveRaw_SavesMessagesAndAdvancesCheckpoint() throws InterruptedException {
+        List<RawSensorMessage> messages = fillQueue();
+
+        runUntilDrained(new PipelineService(consumerService, queue, 16, true));
+
+        assertEquals(MESSAGES, countMetrics());
+        assertEquals(MESSAGES, count("SELECT COUNT(m) FROM RawSensorMessage m"));
+        LocalDateTime maxSavedAt = messages.stream().map(RawSensorMessage::getSavedAt)
+                .max(LocalDateTime::compareTo).orElseThrow();
+        try (EntityManager em = emf.createEntityManager()) {
+            LocalDateTime checkpoint = em.find(ProcessingState.class, ConsumerService.COMPONENT_NAME).getLastProcessedTime();
+            // БД хранит время с точностью до микросекунды
+            assertTrue(Duration.between(maxSavedAt, checkpoint).abs().toNanos() < 1000, checkpoint + " vs " + maxSavedAt);
+        }
+        // потребитель, опрашивающий таблицу, не обрабатывает архив повторно
+        assertEquals(0, new ConsumerService(emf).processBatch());
+    }
+
+    @Test
+    void processBatch_InvalidMessage_OthersProcessed() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        List<RawSensorMessage> batch = List.of(
+                new RawSensorMessage(UUID.randomUUID(), SensorType.LIGHT, "BadDevice", now, "{\"invalid\": \"json\"}"),
+                new RawSensorMessage(UUID.randomUUID(), SensorType.LIGHT, "GoodDevice", now, "{\"light\": 100}"),
+                new RawSensorMessage(UUID.randomUUID(), SensorType.LIGHT, "OtherDevice", now, "{\"light\": 200}"));
+
+        new PipelineService(consumerService, queue, 16, false).processBatch(batch);
+
+        assertEquals(2, countMetrics());
+        assertEquals(2, consumerService.getProcessedCount());
+    }
+
+    @Test
+    void start_WithRecentStore_AggregatorServesWindowFromMemory() throws InterruptedException {
+        LocalDateTime coveredFrom = LocalDateTime.now().minusMinutes(1);
+        RecentMetricsStore store = new RecentMetricsStore(Duration.ofHours(1), coveredFrom);
+        ConsumerService storeConsumer = new ConsumerService(emf, new MessageParser(), 100, 1000, store);
+        fillQueue();
+
+        runUntilDrained(new PipelineService(storeConsumer, queue, 16, false));
+
+        LocalDateTime end = LocalDateTime.now().plusMinutes(1);
+        AggregatorService withStore = new AggregatorService(emf, store);
+        List<AggregatedResult> fromDatabase = new AggregatorService(emf)
+                .fetchAggregatedData(SensorType.BAROMETER, coveredFrom.minusHours(1), end, TimeInterval.MINUTE, null);
+        List<AggregatedResult> merged = withStore
+                .fetchAggregatedData(SensorType.BAROMETER, coveredFrom.minusHours(1), end, TimeInterval.MINUTE, null);
+        assertFalse(fromDatabase.isEmpty());
+        assertEquals(fromDatabase.size(), merged.size());
+        for (int i = 0; i < merged.size(); i++) {
+            assertEquals(fromDatabase.get(i).getDeviceName(), merged.get(i).getDeviceName());
+            assertEquals(fromDatabase.get(i).getIntervalStart(), merged.get(i).getIntervalStart());
+            assertEquals(fromDatabase.get(i).getValue(), merged.get(i).getValue(), 1e-6);
+        }
+
+        // окно внутри покрытия читается только из памяти
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM BarometerMetric").executeUpdate();
+            em.getTransaction().commit();
+        }
+        assertEquals(merged.size(), withStore
+                .fetchAggregatedData(SensorType.BAROMETER, coveredFrom, end, TimeInterval.MINUTE, null).size());
+    }
+
+    private List<RawSensorMessage> fillQueue() {
+        SensorDataGenerator generator = new SensorDataGenerator();
+        List<RawSensorMessage> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            RawSensorMessage message = generator.generateRandomMessage();
+            messages.add(message);
+            queue.add(message);
+        }
+        return messages;
+    }
+
+    private void runUntilDrained(PipelineService pipeline) throws InterruptedException {
+        Thread thread = new Thread(pipeline::start);
+        thread.start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!pipeline.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        pipeline.stop();
+        thread.join(10_000);
+        assertFalse(thread.isAlive());
+        assertTrue(queue.isEmpty());
+    }
+
+    private long countMetrics() {
+        return count("SELECT COUNT(m) FROM LightMetric m") + count("SELECT COUNT(m) FROM BarometerMetric m")
+                + count("SELECT COUNT(m) FROM LocationMetric m") + count("SELECT COUNT(m) FROM AccelerometerMetric m");
+    }
+
+    private long count(String jpql) {
+        try (EntityManager em = emf.createEntityManager()) {
+            return em.createQuery(jpql, Long.class).getSingleResult();
+        }
+    }
+}
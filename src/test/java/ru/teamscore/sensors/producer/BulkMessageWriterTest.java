@@ -0,0 +1,64 @@
+package ru.teamscore.sensors.producer;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import ru.teamscore.sensors.common.config.JdbcConnectionFactory;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkMessageWriterTest {
+    private static EntityManagerFactory emf;
+
+    @BeforeAll
+    static void setUpClass() {
+        emf = new Configuration()
+                .addAnnotatedClass(RawSensorMessage.class)
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM RawSensorMessage").executeUpdate();
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    void send_WritesMessagesInBatches() {
+        SensorDataGenerator generator = new SensorDataGenerator(SensorDataGenerator.createSensors(4));
+        LocalDateTime measuredAt = LocalDateTime.of(2025, 12, 1, 10, 0, 0);
+
+        try (BulkMessageWriter writer = new BulkMessageWriter(JdbcConnectionFactory.fromHibernateProperties(), 3)) {
+            for (SensorDataGenerator.SensorConfig sensor : generator.getSensors()) {
+                RawSensorMessage message = generator.generateMessage(sensor, measuredAt);
+                message.setSavedAt(measuredAt);
+                writer.send(message);
+            }
+            assertEquals(3, writer.getWritten());
+        }
+
+        try (EntityManager em = emf.createEntityManager()) {
+            List<RawSensorMessage> saved = em.createQuery("SELECT m FROM RawSensorMessage m", RawSensorMessage.class)
+                    .getResultList();
+            assertEquals(4, saved.size());
+            assertEquals(measuredAt, saved.get(0).getMeasuredAt());
+            assertEquals(measuredAt, saved.get(0).getSavedAt());
+            assertNotNull(saved.get(0).getJsonValue());
+        }
+    }
+}
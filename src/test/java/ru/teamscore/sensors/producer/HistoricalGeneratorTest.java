@@ -0,0 +1,47 @@
+package ru.teamscore.sensors.producer;
+
+import org.junit.jupiter.api.Test;
+import ru.teamscore.sensors.common.entity.RawSensorMessage;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoricalGeneratorTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 12, 1, 0, 0, 0);
+
+    @Test
+    void generate_EverySensorOncePerPeriodInTimeOrder() throws InterruptedException {
+        SensorDataGenerator generator = new SensorDataGenerator(SensorDataGenerator.createSensors(8));
+        List<RawSensorMessage> messages = new ArrayList<>();
+
+        long count = new HistoricalGenerator(generator, Duration.ofMinutes(1))
+                .generate(START, START.plusHours(1), messages::add);
+
+        assertEquals(8 * 60, count);
+        assertEquals(count, messages.size());
+        for (int i = 1; i < messages.size(); i++) {
+            assertFalse(messages.get(i).getMeasuredAt().isBefore(messages.get(i - 1).getMeasuredAt()));
+        }
+        UUID sensorId = messages.get(0).getSensorId();
+        List<LocalDateTime> times = messages.stream()
+                .filter(message -> message.getSensorId().equals(sensorId))
+                .map(RawSensorMessage::getMeasuredAt)
+                .toList();
+        assertEquals(60, times.size());
+        assertEquals(Duration.ofMinutes(1), Duration.between(times.get(0), times.get(1)));
+        assertFalse(times.get(0).isBefore(START));
+        assertTrue(times.get(59).isBefore(START.plusHours(1)));
+        assertEquals(messages.get(0).getMeasuredAt(), messages.get(0).getSavedAt());
+    }
+
+    @Test
+    void constructor_NonPositivePeriod_Throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new HistoricalGenerator(new SensorDataGenerator(), Duration.ZERO));
+    }
+}
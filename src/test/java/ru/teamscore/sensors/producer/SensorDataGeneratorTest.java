@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import ru.teamscore.sensors.common.SensorType;
 import ru.teamscore.sensors.common.entity.RawSensorMessage;
 
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -151,4 +152,24 @@ class SensorDataGeneratorTest {
         SensorDataGenerator nullGenerator = new SensorDataGenerator(null);
         assertFalse(nullGenerator.getSensors().isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGenerateMessage_WithMeasuredAt_UsesGivenTime() {
+        SensorDataGenerator.SensorConfig sensor = generator.getSensors().get(0);
+        LocalDateTime measuredAt = LocalDateTime.of(2020, 1, 1, 12, 0, 0);
+
+        RawSensorMessage message = generator.generateMessage(sensor, measuredAt);
+
+        assertEquals(measuredAt, message.getMeasuredAt());
+        assertEquals(sensor.sensorId(), message.getSensorId());
+    }
+
+    @Test
+    void testCreateSensors_CyclesThroughTypes() {
+        List<SensorDataGenerator.SensorConfig> sensors = SensorDataGenerator.createSensors(10);
+
+        assertEquals(10, sensors.size());
+        assertEquals(SensorType.values().length, sensors.stream().map(SensorDataGenerator.SensorConfig::type).distinct().count());
+        assertEquals(10, sensors.stream().map(SensorDataGenerator.SensorConfig::sensorId).distinct().count());
+    }
+}